@@ -12,6 +12,7 @@ import java.awt.geom.*;
 import java.awt.image.*;
 import javax.swing.event.*;
 
+import edu.umd.cs.jazz.animation.ZBatchTransformAnimation;
 import edu.umd.cs.jazz.io.*;
 import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazz.event.*;
@@ -135,6 +136,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
                                 // Define here for efficiency
     private  ZBounds  paintBounds;
     private transient ZBounds  tmpBounds = new ZBounds();
+    private transient AffineTransform tmpTransform = new AffineTransform();
 
                                 // Create the default render context factory
     static private ZRenderContextFactory renderContextFactory = new ZRenderContextFactory() {
@@ -196,6 +198,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         newCamera.originalViewTransform = new AffineTransform();
         newCamera.paintBounds = new ZBounds();
         newCamera.tmpBounds = new ZBounds();
+        newCamera.tmpTransform = new AffineTransform();
         newCamera.surface = null;
         newCamera.debugRenderCount = 0;
         newCamera.inverseViewTransform = null;
@@ -286,6 +289,9 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
 
         layers.add(layer);
         layer.addCamera(this);
+        if (surface != null) {
+            surface.invalidateTiles();
+        }
     }
 
     /**
@@ -295,6 +301,9 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
     public void removeLayer(ZLayerGroup layer) {
         if (layers.remove(layer)) {
             layer.removeCamera(this);
+            if (surface != null) {
+                surface.invalidateTiles();
+            }
         }
     }
 
@@ -311,6 +320,9 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         if (layers.replaceWith(original, replacement)) {
             original.removeCamera(this);
             replacement.addCamera(this);
+            if (surface != null) {
+                surface.invalidateTiles();
+            }
         }
     }
 
@@ -379,6 +391,9 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
      */
     public void setFillColor(Color aColor) {
         fillColor = aColor;
+        if (surface != null) {
+            surface.invalidateTiles();
+        }
         repaint();
     }
 
@@ -465,6 +480,12 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
             return;
         }
 
+                                // Cached tiles may show these bounds even if they
+                                // are not currently visible, so invalidate them before clipping
+        if (surface != null) {
+            surface.invalidateTiles(repaintBounds);
+        }
+
                                 // Set render context based on this camera so that
                                 // context-sensitive objects can compute bounds dependent on it
         ZRoot root = getRoot();
@@ -564,8 +585,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
 
                                 // Draw fill (background) color if specified
         if (fillColor != null) {
-            g2.setColor(fillColor);
-            g2.fill(paintBounds);
+            renderContext.fill(paintBounds, fillColor);
         }
 
         if (ZDebug.debug && ZDebug.debugRender) {
@@ -582,7 +602,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         ZLayerGroup layer;
         for (int i = 0; i < getNumLayers(); i++) {
             layer = layersRef[i];
-            g2.transform(layer.getParent().getLocalToGlobalTransform());
+            g2.transform(layer.getParent().getLocalToGlobalTransform(tmpTransform));
             layer.render(renderContext);
             g2.setTransform(origTransform);
         }
@@ -627,10 +647,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
      * @see ZDrawingSurface#pick(int, int)
      */
     public boolean pick(Rectangle2D rect, ZSceneGraphPath path) {
-        Rectangle2D viewRect = (Rectangle2D)(rect.clone());
-        Rectangle2D transformedRect = new Rectangle2D.Double();
         ZLayerGroup layer;
-        AffineTransform localToGlobal, globalToLocal;
 
                                 // First check if pick rectangle intersects this camera's bounds
         if (!getBoundsReference().intersects(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight())) {
@@ -645,33 +662,34 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         path.pushTransformer(this);
 
                                 // Concatenate the camera's transform with the one stored in the path
-        AffineTransform origTm = path.getTransform();
-        AffineTransform tm = new AffineTransform(origTm);
+        AffineTransform tm = path.getTransformReference();
+        path.setCameraTransform(tm);
         tm.concatenate(viewTransform);
-        path.setTransform(tm);
-        path.setCameraTransform(origTm);
 
+                                // The path's rectangles are reused by nested picks, so this
+                                // doesn't allocate them every time
+        Rectangle2D viewRect = path.pushRectangle();
+        Rectangle2D transformedRect = path.pushRectangle();
+        try {
                                 // Convert the rect from parent's coordinate system to local coordinates
-        AffineTransform inverse = getInverseViewTransformReference();
-        ZTransformGroup.transform(viewRect, inverse);
+            viewRect.setRect(rect);
+            AffineTransform inverse = getInverseViewTransformReference();
+            ZTransformGroup.transform(viewRect, inverse);
 
                                 // Search nodes in reverse (front-to-back) order.
-        ZLayerGroup[] layersRef = getLayersReference();
-        for (int i=(layers.size() - 1); i>=0; i--) {
-            layer = layersRef[i];
-            localToGlobal = layer.getLocalToGlobalTransform();
-
-            try {
-                globalToLocal = localToGlobal.createInverse();
+            ZLayerGroup[] layersRef = getLayersReference();
+            for (int i=(layers.size() - 1); i>=0; i--) {
+                layer = layersRef[i];
                                 // Convert view rectangle to layer's coordinate system
                 transformedRect.setRect(viewRect);
-                ZTransformGroup.transform(transformedRect, globalToLocal);
+                ZTransformGroup.transform(transformedRect, layer.getGlobalToLocalTransform(tmpTransform));
                 if (layer.pick(transformedRect, path)) {
                     return true;
                 }
-            } catch (NoninvertibleTransformException e) {
-                throw new ZNoninvertibleTransformException(e);
             }
+        } finally {
+            path.popRectangle();
+            path.popRectangle();
         }
 
         return true;
@@ -794,6 +812,15 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         return (AffineTransform) viewTransform.clone();
     }
 
+    /**
+     * Returns a reference to the view transform that specifes where in
+     * space this camera looks.  It must not be modified.
+     * @return The current camera view transform.
+     */
+    public AffineTransform getViewTransformReference() {
+        return viewTransform;
+    }
+
     /**
      * Internal method to compute the inverse camera transform based on the camera transform.
      * This gets called from within ZCamera
@@ -1130,6 +1157,28 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
      * @param <code>surface</code> The surface to be updated during the animation
      */
     public void center(Rectangle2D refBounds, int millis, ZDrawingSurface aSurface) {
+        animate(getCenterTransform(refBounds), millis, aSurface);
+    }
+
+    /**
+     * Animates the camera view so that the specified bounds (in global coordinates)
+     * is centered within the view of the camera, as {@link #center(Rectangle2D, int, ZDrawingSurface)}
+     * does, but from the animation scheduler's timer, and return the animation that is running it.
+     * @param <code>refBounds</code> The bounds (in global coordinates) to be centered.
+     * @param <code>millis</code> The time in milliseconds to perform the animation
+     * @param <code>surface</code> The surface to be updated during the animation
+     * @return the running animation, or null if the change was made without animating
+     * @see ZTransformGroup#startAnimation(ZTransformable, AffineTransform, int, ZDrawingSurface)
+     */
+    public ZBatchTransformAnimation startCenter(Rectangle2D refBounds, int millis, ZDrawingSurface aSurface) {
+        return ZTransformGroup.startAnimation(this, getCenterTransform(refBounds), millis, aSurface);
+    }
+
+    /**
+     * internal method: Return the view transform that centers the specified bounds
+     * (in global coordinates) within the view of the camera.
+     */
+    private AffineTransform getCenterTransform(Rectangle2D refBounds) {
         AffineTransform at = new AffineTransform();
         ZBounds bounds = getBoundsReference();
                                 // First compute transform that will result in bounds being centered
@@ -1144,8 +1193,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         at.translate(ctrX + (- refBoundsX * scale), ctrY + (- refBoundsY * scale));
         at.scale(scale, scale);
 
-                                // Then, change camera to new transform
-        animate(at, millis, aSurface);
+        return at;
     }
 
     /**
@@ -1577,6 +1625,7 @@ public class ZCamera extends ZVisualComponent implements ZFillColor, ZTransforma
         in.defaultReadObject();
 
         tmpBounds = new ZBounds();
+        tmpTransform = new AffineTransform();
         inverseViewTransformDirty = true;
         debugRenderCount = 0;
     }
@@ -79,6 +79,7 @@ public class ZClipGroup extends ZGroup {
      */
     public void setClipPickable(boolean aBoolean) {
         isClipPickable = aBoolean;
+        pickableVersion++;
     }
 
     protected void computeBounds() {
@@ -146,7 +147,7 @@ public class ZClipGroup extends ZGroup {
             g2.clip(clip.getShape());
 
             if (isClipVisible) {
-                clip.render(renderContext);
+                renderContext.renderVisualComponent(clip);
             }
 
             super.render(renderContext);
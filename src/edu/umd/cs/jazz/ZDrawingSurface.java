@@ -8,12 +8,16 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
 import java.awt.print.*;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.util.*;
 import java.io.*;
 import javax.swing.JComponent;
 import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import edu.umd.cs.jazz.animation.ZAnimationScheduler;
 import edu.umd.cs.jazz.io.*;
 import edu.umd.cs.jazz.util.*;
 
@@ -47,6 +51,28 @@ public class ZDrawingSurface implements Printable, Serializable {
      */
     static public final int DEFAULT_HALO = 2;
 
+    /**
+     * Default number of milliseconds a progressive render works before
+     * letting other events be processed.
+     */
+    static public final int DEFAULT_PROGRESSIVE_SLICE_TIME = 20;
+
+                                // Height of the bands a progressive render draws, in pixels
+    static private final int PROGRESSIVE_BAND_HEIGHT = 64;
+
+                                // Pixels the pointer can move from where an object was picked
+                                // before pickCached has to pick again
+    static private final int PICK_CACHE_MARGIN = 3;
+
+                                // Input events that interrupt a slice of a progressive render
+    static private final int[] PROGRESSIVE_INPUT_EVENTS = {
+        MouseEvent.MOUSE_PRESSED,
+        MouseEvent.MOUSE_RELEASED,
+        MouseEvent.MOUSE_DRAGGED,
+        KeyEvent.KEY_PRESSED,
+        KeyEvent.KEY_RELEASED
+    };
+
                                 // The camera this surface is associated with.
     private transient ZCamera camera = null;
 
@@ -61,10 +87,16 @@ public class ZDrawingSurface implements Printable, Serializable {
 
                                 // True when items within this view are being animated
     private boolean               animating;
+                                // The number of animations running on this surface
+    private int                   numAnimations = 0;
 
                                 // True if fractional font metrics should be used
     private boolean               useFractionalMetrics = true;
 
+                                // Text smaller than this on the screen, in pixels,
+                                // is drawn at whole pixel font sizes
+    private double                pixelTextSize = 0.0;
+
                                 // The render quality to use when painting this surface.
     private int                   currentRenderQuality = RENDER_QUALITY_LOW;
 
@@ -74,13 +106,87 @@ public class ZDrawingSurface implements Printable, Serializable {
                                 // The render quality when interacting with surface.
     private int                   interactingRenderQuality = RENDER_QUALITY_LOW;
 
-                                // Rectangle used for calculating repaint region.
+                                // The regions damaged since they were last painted. They are
+                                // painted together once a frame rather than at every repaint request
+    private ZDirtyRegionManager   dirtyRegions = null;
+
+                                // The regions handed to Swing that have not been painted yet.
+                                // Swing paints their union, so the component can ask for them
+                                // and paint each one separately
+    private ArrayList             paintRegions = null;
+
+                                // Bounds used for calculating the paint region.
                                 // Defined once per surface, and reused for efficiency.
-    private Rectangle             tmpRepaintRect = null;
+    private ZBounds               tmpPaintBounds = null;
+
+                                // The render context that paint reuses, or null if none has been
+                                // created for the current camera, or it is in use
+    private transient ZRenderContext spareRenderContext = null;
+
+                                // The display list last replayed, the inverse of the view it was
+                                // compiled with, and the transform and bounds it is replayed with
+    private transient ZDisplayList replayedDisplayList = null;
+    private transient AffineTransform replayInverseView = null;
+    private transient AffineTransform replayTransform = null;
+    private transient ZBounds     replayBounds = null;
 
                                 // Only allow paintingImmediately to be called once at a time
     private boolean               paintingImmediately = false;
 
+                                // The optional cache of rendered tiles, or null to render directly
+    private transient ZTileCache  tileCache = null;
+
+                                // The optional renderer that renders large areas with several threads
+    private transient ZParallelRenderer parallelRenderer = null;
+
+                                // The published display list to paint from, or null to render
+                                // the scenegraph. It may be set from any thread
+    private transient volatile ZDisplayList displayList = null;
+
+                                // The display list that was published when this surface last painted
+    private transient ZDisplayList paintedDisplayList = null;
+
+                                // True if the higher quality render at the end of
+                                // interaction or animation is done progressively
+    private boolean               progressiveRendering = false;
+
+                                // Milliseconds each slice of a progressive render may take
+    private int                   progressiveSliceTime = DEFAULT_PROGRESSIVE_SLICE_TIME;
+
+                                // The progressive render in progress, or null if none
+    private transient ProgressivePass progressivePass = null;
+
+                                // The back buffer a progressive render draws into
+    private transient BufferedImage progressiveBuffer = null;
+
+                                // True if the back buffer holds a complete, up to date render
+    private transient boolean     progressiveBufferValid = false;
+
+                                // The last path returned by pickCached, or null if it can't be reused
+    private transient ZSceneGraphPath cachedPickPath = null;
+
+                                // The area around the cached pick, in window coordinates, where nothing is
+                                // picked in front of the cached path's object. Repaints there invalidate it
+    private transient ZBounds     cachedPickBounds = null;
+
+                                // The halo and versions the cached path was picked with
+    private transient int         cachedPickHalo;
+    private transient int         cachedPickTransformVersion;
+    private transient int         cachedPickPickableVersion;
+
+                                // Scratch bounds and path for pickCached, so checking the
+                                // cached pick doesn't allocate on every mouse movement
+    private transient ZBounds     pickCachedRect = null;
+    private transient ZBounds     pickCachedGuardRect = null;
+    private transient ZBounds     pickCachedLocalRect = null;
+    private transient ZSceneGraphPath pickCachedScratchPath = null;
+
+                                // The optional buffer of object ids that picks are looked up in,
+                                // or null to pick geometrically, and the versions it was drawn at
+    private transient ZPickBuffer pickBuffer = null;
+    private transient int         pickBufferTransformVersion;
+    private transient int         pickBufferPickableVersion;
+
     //****************************************************************************
     //
     //                 Constructors
@@ -105,7 +211,9 @@ public class ZDrawingSurface implements Printable, Serializable {
      * @param cameraNode The node the camera is attached to
      */
     public ZDrawingSurface(ZCamera camera, ZNode cameraNode) {
-        tmpRepaintRect = new Rectangle();
+        dirtyRegions = new ZDirtyRegionManager();
+        paintRegions = new ArrayList();
+        tmpPaintBounds = new ZBounds();
         setCamera(camera, cameraNode);
     }
 
@@ -119,7 +227,9 @@ public class ZDrawingSurface implements Printable, Serializable {
      * @param aComponent The component this surface is connected to
      */
     public ZDrawingSurface(ZCamera camera, ZNode cameraNode, JComponent aComponent) {
-        tmpRepaintRect = new Rectangle();
+        dirtyRegions = new ZDirtyRegionManager();
+        paintRegions = new ArrayList();
+        tmpPaintBounds = new ZBounds();
         component = aComponent;
         setCamera(camera, cameraNode);
     }
@@ -136,6 +246,7 @@ public class ZDrawingSurface implements Printable, Serializable {
     public void setRenderQuality(int qualityRequested) {
         normalRenderQuality = qualityRequested;
         if (!isInteracting()) {
+            cancelProgressivePass();
             if (qualityRequested > currentRenderQuality) {
                 currentRenderQuality = qualityRequested;
                 repaint();
@@ -189,6 +300,7 @@ public class ZDrawingSurface implements Printable, Serializable {
     public void setUseFractionalMetrics(boolean useFractionalMetrics) {
 	if (this.useFractionalMetrics != useFractionalMetrics) {
 	    this.useFractionalMetrics = useFractionalMetrics; 
+	    invalidateTiles();
 	    repaint();
 	}
     }
@@ -202,6 +314,31 @@ public class ZDrawingSurface implements Printable, Serializable {
 	return useFractionalMetrics;
     }
 
+    /**
+     * Set the size, in pixels, below which text is drawn at the nearest
+     * smaller whole pixel font size rather than scaled to its exact size.
+     * Java2D keeps the glyphs it has rasterized for each font size, so small
+     * text drawn this way is drawn from the same few cached sizes while it is
+     * zoomed, rather than rasterized again at every magnification.  Text drawn
+     * this way may be slightly narrower than its exact size.  It is off by default.
+     * @param size The size in pixels, or 0 to always draw text at its exact size
+     */
+    public void setPixelTextSize(double size) {
+	if (pixelTextSize != size) {
+	    pixelTextSize = size;
+	    invalidateTiles();
+	    repaint();
+	}
+    }
+
+    /**
+     * Get the size, in pixels, below which text is drawn at whole pixel font sizes.
+     * @return the size in pixels
+     */
+    public double getPixelTextSize() {
+	return pixelTextSize;
+    }
+
     /**
      * Get the component that this surface is attached to, or null if none.
      * @return The component this surface is attached to, or null if none.
@@ -227,8 +364,19 @@ public class ZDrawingSurface implements Printable, Serializable {
         if (camera != null) {
             camera.setDrawingSurface(null);
         }
+        if (progressivePass != null) {
+            currentRenderQuality = progressivePass.quality;
+            cancelProgressivePass();
+        }
+        progressiveBufferValid = false;
+        cachedPickPath = null;
+        if (pickBuffer != null) {
+            pickBuffer.invalidate();
+        }
         camera = cam;
         cameraNode = camNode;
+        spareRenderContext = null;
+        invalidateTiles();
         if (camera != null) {
             camera.setDrawingSurface(this);
         }
@@ -250,6 +398,130 @@ public class ZDrawingSurface implements Printable, Serializable {
         return cameraNode;
     }
 
+    /**
+     * Specify a cache of rendered tiles that this surface paints from, or null
+     * to render the camera directly every time the surface is painted.
+     * With a tile cache, panning only renders the newly exposed parts of
+     * the surface, at the cost of the memory used to store the tiles.
+     * @param aTileCache The tile cache, or null for none.
+     * @see ZTileCache
+     */
+    public void setTileCache(ZTileCache aTileCache) {
+        if (tileCache != null) {
+            tileCache.invalidateAll();
+        }
+        tileCache = aTileCache;
+        if (tileCache != null) {
+            tileCache.invalidateAll();
+        }
+        repaint();
+    }
+
+    /**
+     * Get the cache of rendered tiles this surface paints from.
+     * @return the tile cache, or null if none.
+     */
+    public ZTileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Specify a renderer that renders large areas of this surface with several
+     * threads, or null to render on the calling thread only. The parallel renderer
+     * is used when painting or printing areas larger than one of its tiles.
+     * @param aParallelRenderer The parallel renderer, or null for none.
+     * @see ZParallelRenderer
+     */
+    public void setParallelRenderer(ZParallelRenderer aParallelRenderer) {
+        parallelRenderer = aParallelRenderer;
+    }
+
+    /**
+     * Get the renderer that renders large areas of this surface with several threads.
+     * @return the parallel renderer, or null if none.
+     */
+    public ZParallelRenderer getParallelRenderer() {
+        return parallelRenderer;
+    }
+
+    /**
+     * Specify a buffer of object ids that this surface looks up picks in, or null
+     * to pick by testing the geometry of the objects. A pick buffer makes picking
+     * take the same time however many objects there are, at the cost of drawing
+     * the buffer again after anything changes.
+     * @param aPickBuffer The pick buffer, or null for none.
+     * @see ZPickBuffer
+     */
+    public void setPickBuffer(ZPickBuffer aPickBuffer) {
+        pickBuffer = aPickBuffer;
+        if (pickBuffer != null) {
+            pickBuffer.invalidate();
+        }
+    }
+
+    /**
+     * Get the buffer of object ids this surface looks up picks in.
+     * @return the pick buffer, or null if none.
+     */
+    public ZPickBuffer getPickBuffer() {
+        return pickBuffer;
+    }
+
+    /**
+     * Publish a display list for this surface to paint from, in place of rendering
+     * the scenegraph, or null to render the scenegraph again. The display list is
+     * normally a snapshot compiled by the thread that owns the model, which may
+     * call this method directly, without going through the event dispatch thread.
+     * The surface repaints once the display list is published.
+     * <P>
+     * The display list is drawn with the camera's current view, so the camera can
+     * still be navigated while the surface paints from it. Only the part of the
+     * scene that was compiled is drawn.
+     * <P>
+     * Only painting uses the display list. Picking, including the hover picks made
+     * as the mouse moves, still walks the live scenegraph on the event dispatch
+     * thread, so a model that is changed by another thread must still be
+     * protected from picks while a snapshot is published.
+     * @param aDisplayList The display list, or null to render the scenegraph.
+     * @see ZDisplayList#compile(ZDrawingSurface, Rectangle2D, int, boolean)
+     */
+    public void setDisplayList(ZDisplayList aDisplayList) {
+        displayList = aDisplayList;
+        JComponent aComponent = component;
+        if (aComponent != null) {
+            aComponent.repaint();
+        }
+    }
+
+    /**
+     * Get the display list this surface paints from.
+     * @return the display list, or null if the surface renders the scenegraph.
+     */
+    public ZDisplayList getDisplayList() {
+        return displayList;
+    }
+
+    /**
+     * Internal method to notify the surface that the specified bounds have changed,
+     * so any cached tiles that show them are out of date.
+     * @param globalBounds The bounds that changed (in global coordinates).
+     */
+    void invalidateTiles(ZBounds globalBounds) {
+        if (tileCache != null) {
+            tileCache.invalidate(globalBounds);
+        }
+    }
+
+    /**
+     * Internal method to notify the surface that everything it shows has changed,
+     * so all cached tiles are out of date.
+     */
+    void invalidateTiles() {
+        if (tileCache != null) {
+            tileCache.invalidateAll();
+        }
+    }
+
     /**
      * Determine if the user interacting with the surface
      * @return true if the user is interacting with the surface, false otherwise.
@@ -270,6 +542,7 @@ public class ZDrawingSurface implements Printable, Serializable {
     public void setInteracting(boolean v) {
         if (v && !interacting) {
             interacting = true;
+            cancelProgressivePass();
             if (interactingRenderQuality > currentRenderQuality) {
                 currentRenderQuality = interactingRenderQuality;
                 repaint();
@@ -278,7 +551,9 @@ public class ZDrawingSurface implements Printable, Serializable {
             }
         } else if (!v && interacting) {
             interacting = false;
-            if (normalRenderQuality >= currentRenderQuality) {
+            if ((normalRenderQuality > currentRenderQuality) && startProgressivePass(normalRenderQuality)) {
+                                // The current frame stays up until the progressive render is done
+            } else if (normalRenderQuality >= currentRenderQuality) {
                 currentRenderQuality = normalRenderQuality;
                 repaint();
             } else {
@@ -288,22 +563,31 @@ public class ZDrawingSurface implements Printable, Serializable {
     }
 
     /**
-     * Internal method to specify whether items within this view are currently
-     * being animated.
-     * @param v true when animating
+     * Specify whether items within this view are currently being animated. While they are,
+     * the surface renders at its interacting render quality. Animations may overlap, so
+     * the surface is animating until every call with true has been matched by a call with false.
+     * @param v true when an animation starts, and false when it ends
      */
-    void setAnimating(boolean v) {
+    public void setAnimating(boolean v) {
+        if (v) {
+            numAnimations++;
+        } else if (numAnimations > 0) {
+            numAnimations--;
+        }
         if (v && !animating) {
             animating = true;
+            cancelProgressivePass();
             if (interactingRenderQuality > currentRenderQuality) {
                 currentRenderQuality = interactingRenderQuality;
                 repaint();
             } else {
                 currentRenderQuality = interactingRenderQuality;
             }
-        } else if (!v && animating) {
+        } else if (!v && animating && (numAnimations == 0)) {
             animating = false;
-            if (normalRenderQuality > currentRenderQuality) {
+            if ((normalRenderQuality > currentRenderQuality) && startProgressivePass(normalRenderQuality)) {
+                                // The current frame stays up until the progressive render is done
+            } else if (normalRenderQuality > currentRenderQuality) {
                 currentRenderQuality = normalRenderQuality;
                 repaint();
             } else {
@@ -319,6 +603,115 @@ public class ZDrawingSurface implements Printable, Serializable {
         return animating;
     }
 
+    /**
+     * Specify if the higher quality render at the end of interaction or animation
+     * should be done progressively. When progressive rendering is on, the lower
+     * quality frame stays on the screen while the higher quality frame is rendered
+     * into a back buffer, a band at a time, in slices of bounded time. Other events
+     * are processed between slices, so the surface stays responsive, and new interaction
+     * cancels the render. The back buffer is copied to the screen when it is complete.
+     * Progressive rendering requires the surface to be attached to a component.
+     * @param v true to render progressively, false to render all at once.
+     * @see #setProgressiveSliceTime
+     */
+    public void setProgressiveRendering(boolean v) {
+        progressiveRendering = v;
+        if (!progressiveRendering) {
+            if (progressivePass != null) {
+                                // Finish the render all at once
+                currentRenderQuality = progressivePass.quality;
+                cancelProgressivePass();
+                repaint();
+            }
+            progressiveBuffer = null;
+            progressiveBufferValid = false;
+        }
+    }
+
+    /**
+     * Determine if the higher quality render at the end of interaction or animation
+     * is done progressively.
+     * @return true if progressive rendering is on.
+     */
+    public boolean getProgressiveRendering() {
+        return progressiveRendering;
+    }
+
+    /**
+     * Specify the number of milliseconds each slice of a progressive render may take
+     * before other events are processed. A slice always renders at least one band.
+     * @param millis The slice time.
+     */
+    public void setProgressiveSliceTime(int millis) {
+        progressiveSliceTime = millis;
+    }
+
+    /**
+     * Determine the number of milliseconds each slice of a progressive render may take.
+     * @return the slice time.
+     */
+    public int getProgressiveSliceTime() {
+        return progressiveSliceTime;
+    }
+
+    /**
+     * Determine if a progressive render is in progress.
+     * @return true if a progressive render has started and is not yet complete.
+     */
+    public boolean isRenderingProgressively() {
+        return (progressivePass != null);
+    }
+
+    /**
+     * Internal method to start a progressive render at the specified quality.
+     * @param quality The quality to render at.
+     * @return true if the render was started, or false if the surface
+     * can not render progressively and must be repainted directly.
+     */
+    private boolean startProgressivePass(int quality) {
+        cancelProgressivePass();
+        if (!progressiveRendering || (component == null) || (camera == null) || (camera.getRoot() == null)) {
+            return false;
+        }
+        ZBounds cameraBounds = camera.getBoundsReference();
+        int width = (int)Math.ceil(cameraBounds.getWidth());
+        int height = (int)Math.ceil(cameraBounds.getHeight());
+        if ((width <= 0) || (height <= 0)) {
+            return false;
+        }
+        if ((progressiveBuffer == null) ||
+            (progressiveBuffer.getWidth() != width) ||
+            (progressiveBuffer.getHeight() != height)) {
+            progressiveBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        progressiveBufferValid = false;
+        progressivePass = new ProgressivePass(quality, height);
+        progressivePass.start();
+        return true;
+    }
+
+    /**
+     * Internal method to stop the progressive render in progress, if there is one.
+     */
+    private void cancelProgressivePass() {
+        if (progressivePass != null) {
+            progressivePass.stop();
+            progressivePass = null;
+        }
+    }
+
+    /**
+     * Internal method called when a progressive render is complete, to swap
+     * in the back buffer.
+     */
+    private void finishProgressivePass(ProgressivePass pass) {
+        pass.stop();
+        progressivePass = null;
+        currentRenderQuality = pass.quality;
+        progressiveBufferValid = true;
+        component.repaint();
+    }
+
     /**
      * A utility function to repaint the entire component.
      * This results in request being queued for the entire component to be painted.
@@ -333,7 +726,8 @@ public class ZDrawingSurface implements Printable, Serializable {
 
     /**
      * Internal method to notify the surface that the specified bounds should be repainted.
-     * This queues an event requesting the repaint to happen.
+     * The bounds are added to the surface's dirty regions, and the first repaint
+     * of a frame queues an event that paints them with {@link #flushRepaints}.
      * Note that the input parameter may be modified as a result of this call.
      * @param repaintBounds The bounds that need to be redrawn (in global coordinates).
      */
@@ -342,13 +736,31 @@ public class ZDrawingSurface implements Printable, Serializable {
             System.out.println("ZDrawingSurface.repaint: repaintBounds = " + repaintBounds);
         }
 
+        if ((cachedPickPath != null) && cachedPickBounds.intersects(repaintBounds)) {
+            cachedPickPath = null;
+        }
+        if (pickBuffer != null) {
+            pickBuffer.invalidate();
+        }
+        progressiveBufferValid = false;
+        if (progressivePass != null) {
+            progressivePass.damage(repaintBounds);
+        }
+
         if (component != null) {
                                 // We need to round conservatively so the repainted area is big enough
-            tmpRepaintRect.setRect((int)(repaintBounds.getX() - 1.0),
-                                   (int)(repaintBounds.getY() - 1.0),
-                                   (int)(repaintBounds.getWidth() + 3.0),
-                                   (int)(repaintBounds.getHeight() + 3.0));
-            component.repaint(tmpRepaintRect);
+            boolean firstRepaint = dirtyRegions.add((int)(repaintBounds.getX() - 1.0),
+                                                    (int)(repaintBounds.getY() - 1.0),
+                                                    (int)(repaintBounds.getWidth() + 3.0),
+                                                    (int)(repaintBounds.getHeight() + 3.0));
+                                // Animation frames are painted as soon as they are animated
+            if (!ZAnimationScheduler.instance().paintWithCurrentFrame(this) && firstRepaint) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        flushRepaints();
+                    }
+                });
+            }
         }
 
         if (ZDebug.debug && ZDebug.debugRepaint) {
@@ -363,12 +775,34 @@ public class ZDrawingSurface implements Printable, Serializable {
     public void paint(Graphics g) {
         Graphics2D g2 = (Graphics2D)g;
 
+                                // Regions the component did not take are painted as part of the union
+        synchronized (paintRegions) {
+            paintRegions.clear();
+        }
+
+                                // Anything rendered before a new display list was published is out of date
+        ZDisplayList aDisplayList = displayList;
+        if (aDisplayList != paintedDisplayList) {
+            paintedDisplayList = aDisplayList;
+            progressiveBufferValid = false;
+            invalidateTiles();
+        }
+
+                                // Copy a completed progressive render to the screen
+        if (progressiveBufferValid &&
+            ((g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) == 0)) {
+            ZBounds cameraBounds = camera.getBoundsReference();
+            g2.drawImage(progressiveBuffer, (int)cameraBounds.getX(), (int)cameraBounds.getY(), null);
+            return;
+        }
+
         Rectangle rectSrc = g2.getClipBounds();
-        ZBounds paintBounds;
+        ZBounds paintBounds = tmpPaintBounds;
+        paintBounds.reset();
         if (rectSrc == null) {
-            paintBounds = camera.getBounds();
+            paintBounds.add(camera.getBoundsReference());
         } else {
-            paintBounds = new ZBounds(rectSrc);
+            paintBounds.setRect(rectSrc);
         }
 
         if (ZDebug.debug && ZDebug.debugRender) {
@@ -378,11 +812,18 @@ public class ZDrawingSurface implements Printable, Serializable {
             ZDebug.clearPaintCount();
         }
 
-        ZRenderContext rc = camera.createRenderContext(g2, paintBounds, this, currentRenderQuality);
-	rc.setAccurateSpacing(useFractionalMetrics);
-        camera.getRoot().setCurrentRenderContext(rc);
-        camera.render(rc);
-        camera.getRoot().setCurrentRenderContext(null);
+        if (aDisplayList != null) {
+            renderDisplayList(g2, paintBounds, aDisplayList, currentRenderQuality);
+        } else if (((tileCache == null) || !tileCache.paint(g2, paintBounds, this, currentRenderQuality)) &&
+                   ((parallelRenderer == null) || !parallelRenderer.render(g2, paintBounds, this, currentRenderQuality))) {
+                                // Reuse the render context from the last paint, unless
+                                // this paint is nested in another one that is using it
+            ZRenderContext rc = getSpareRenderContext(g2, paintBounds, currentRenderQuality);
+            camera.getRoot().setCurrentRenderContext(rc);
+            camera.render(rc);
+            camera.getRoot().setCurrentRenderContext(null);
+            spareRenderContext = rc;
+        }
 
         if (ZDebug.debug && ZDebug.debugRender) {
             System.out.println("ZDrawingSurface.paint: Rendered " + ZDebug.getPaintCount() + " objects this pass");
@@ -390,6 +831,66 @@ public class ZDrawingSurface implements Printable, Serializable {
         }
     }
 
+    /**
+     * Replay a published display list with the camera's current view.
+     * @param g2 The graphics to render onto.
+     * @param bounds The bounds to render, in camera coordinates.
+     * @param aDisplayList The display list.
+     * @param quality The render quality.
+     */
+    private void renderDisplayList(Graphics2D g2, ZBounds bounds, ZDisplayList aDisplayList, int quality) {
+                                // The view a display list was compiled with doesn't change,
+                                // so its inverse is only computed when it is first replayed
+        if (aDisplayList != replayedDisplayList) {
+            try {
+                replayInverseView = aDisplayList.getViewTransform().createInverse();
+            } catch (NoninvertibleTransformException e) {
+                return;
+            }
+            replayedDisplayList = aDisplayList;
+            if (replayTransform == null) {
+                replayTransform = new AffineTransform();
+                replayBounds = new ZBounds();
+            }
+        }
+
+                                // Map the view the display list was compiled with to the current view
+        AffineTransform viewChange = replayTransform;
+        viewChange.setTransform(camera.getViewTransformReference());
+        viewChange.concatenate(replayInverseView);
+        replayBounds.reset();
+        replayBounds.add(bounds);
+        try {
+            replayBounds.inverseTransform(viewChange);
+        } catch (NoninvertibleTransformException e) {
+            return;
+        }
+
+        AffineTransform saveTransform = g2.getTransform();
+        g2.transform(viewChange);
+        ZRenderContext rc = getSpareRenderContext(g2, replayBounds, quality);
+        aDisplayList.render(rc);
+        spareRenderContext = rc;
+        g2.setTransform(saveTransform);
+    }
+
+    /**
+     * Return the render context from the last paint, reset for this one, or a new
+     * render context if this paint is nested in another one that is using it.
+     * The caller makes it the spare render context again when it is done with it.
+     */
+    private ZRenderContext getSpareRenderContext(Graphics2D g2, ZBounds bounds, int quality) {
+        ZRenderContext rc = spareRenderContext;
+        spareRenderContext = null;
+        if (rc == null) {
+            rc = camera.createRenderContext(g2, bounds, this, quality);
+        } else {
+            rc.reset(g2, bounds, this, quality);
+        }
+        rc.setAccurateSpacing(useFractionalMetrics);
+        return rc;
+    }
+
     /**
      * Force this surface to immediately paint any regions that are out of date
      * and marked for future repainting.
@@ -401,10 +902,96 @@ public class ZDrawingSurface implements Printable, Serializable {
         }
 
         paintingImmediately = true;
-        if (component != null) {
-            RepaintManager.currentManager(component).paintDirtyRegions();
+        try {
+            flushRepaints();
+            if (component != null) {
+                RepaintManager.currentManager(component).paintDirtyRegions();
+            }
+        } finally {
+            paintingImmediately = false;
+        }
+    }
+
+    /**
+     * Pass the regions of this surface that have been repainted since they were
+     * last flushed on to Swing's RepaintManager. Repaint requests are accumulated
+     * into a few disjoint regions, so the many repaints of a frame cost a few calls
+     * to the RepaintManager. Swing paints the union of a component's dirty regions,
+     * so the regions are also remembered until the next paint, and a component that
+     * gets them with {@link #takePaintRegions} can paint each region separately, so
+     * scattered changes don't repaint everything between them. This is called
+     * automatically once a frame from the event dispatch thread, and by
+     * {@link #paintImmediately}, and must only be called from the event dispatch thread.
+     * @see ZDirtyRegionManager
+     */
+    public void flushRepaints() {
+        Rectangle[] regions = dirtyRegions.flush();
+        if (component == null) {
+            return;
+        }
+        RepaintManager repaintManager = RepaintManager.currentManager(component);
+        for (int i = 0; i < regions.length; i++) {
+            Rectangle region = regions[i];
+            addPaintRegion(region.x, region.y, region.width, region.height);
+            repaintManager.addDirtyRegion(component, region.x, region.y, region.width, region.height);
+        }
+    }
+
+    /**
+     * Note that a region of this surface's component is about to be painted by Swing,
+     * because it has been repainted other than through this surface. A component that
+     * paints the regions returned by {@link #takePaintRegions} must call this from its
+     * <code>repaint</code> method, so that the regions cover everything Swing paints.
+     * This may be called from any thread.
+     * @param x The X coordinate of the region.
+     * @param y The Y coordinate of the region.
+     * @param width The width of the region.
+     * @param height The height of the region.
+     * @see edu.umd.cs.jazz.util.ZCanvas#repaint(long, int, int, int, int)
+     */
+    public void addPaintRegion(int x, int y, int width, int height) {
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+        synchronized (paintRegions) {
+            paintRegions.add(new Rectangle(x, y, width, height));
+        }
+    }
+
+    /**
+     * Return the regions that Swing is about to paint with the specified clip, so
+     * they can each be painted with their own clip instead of the clip, which is
+     * their union. The regions are forgotten, so they are only painted once.
+     * If the clip reaches outside the regions, for instance because part of the
+     * component has been exposed, it is returned as the only region.
+     * @param clip The clip bounds Swing paints with.
+     * @return the regions to paint, within the clip.
+     */
+    public Rectangle[] takePaintRegions(Rectangle clip) {
+        ArrayList regions = new ArrayList();
+        Rectangle union = null;
+        synchronized (paintRegions) {
+            for (int i = 0; i < paintRegions.size(); i++) {
+                Rectangle region = ((Rectangle)paintRegions.get(i)).intersection(clip);
+                if (region.isEmpty()) {
+                    continue;
+                }
+                regions.add(region);
+                if (union == null) {
+                    union = new Rectangle(region);
+                } else {
+                    union.add(region);
+                }
+            }
+            paintRegions.clear();
+        }
+
+        if ((union == null) || !union.contains(clip)) {
+            return new Rectangle[] {clip};
         }
-        paintingImmediately = false;
+        Rectangle[] result = new Rectangle[regions.size()];
+        regions.toArray(result);
+        return result;
     }
 
     /**
@@ -429,6 +1016,157 @@ public class ZDrawingSurface implements Printable, Serializable {
      * @return The ZSceneGraphPath to the picked object.
      */
     public ZSceneGraphPath pick(int x, int y, int halo) {
+        if (pickBuffer != null) {
+            if ((pickBufferTransformVersion != ZNode.transformVersion) ||
+                (pickBufferPickableVersion != ZNode.pickableVersion)) {
+                pickBuffer.invalidate();
+                pickBufferTransformVersion = ZNode.transformVersion;
+                pickBufferPickableVersion = ZNode.pickableVersion;
+            }
+            ZSceneGraphPath path = pickBuffer.pick(this, x, y, halo);
+            if (path != null) {
+                return path;
+            }
+        }
+        return pick(new ZBounds(x-halo, y-halo, halo+halo, halo+halo));
+    }
+
+    /**
+     * Returns the path to the first object under the specified point, like {@link #pick(int, int)},
+     * but reuses the path it returned last time when it can. This is much faster than picking
+     * for every mouse movement while the pointer stays over an object.
+     * <P>
+     * The previous path is reused when the point is still over its object, a few pixels
+     * from where it was picked at most, nothing that could be picked in front of the object
+     * there has been repainted, and no transform or pickability has changed. As the path may be returned again, it must not be modified.
+     * @param x X-coord of pick point in window coordinates.
+     * @param y Y-coord of pick point in window coordinates.
+     * @return The ZSceneGraphPath to the picked object.
+     * @see #pick(int, int)
+     */
+    public ZSceneGraphPath pickCached(int x, int y) {
+        return pickCached(x, y, DEFAULT_HALO);
+    }
+
+    /**
+     * Returns the path to the first object under the specified point within halo pixels,
+     * like {@link #pick(int, int, int)}, but reuses the path it returned last time when it can.
+     * As the path may be returned again, it must not be modified.
+     * @param x X-coord of pick point in window coordinates.
+     * @param y Y-coord of pick point in window coordinates.
+     * @param halo The amount the point can miss an object and still pick it
+     * @return The ZSceneGraphPath to the picked object.
+     * @see #pickCached(int, int)
+     */
+    public ZSceneGraphPath pickCached(int x, int y, int halo) {
+                                // A pick buffer is faster than checking the cached path
+        if (pickBuffer != null) {
+            return pick(x, y, halo);
+        }
+
+        if (pickCachedRect == null) {
+            pickCachedRect = new ZBounds();
+            pickCachedGuardRect = new ZBounds();
+            pickCachedLocalRect = new ZBounds();
+            pickCachedScratchPath = new ZSceneGraphPath();
+            cachedPickBounds = new ZBounds();
+        }
+        ZBounds rect = pickCachedRect;
+        rect.setRect(x-halo, y-halo, halo+halo, halo+halo);
+        if (isCachedPickValid(rect, halo)) {
+            return cachedPickPath;
+        }
+        cachedPickPath = null;
+        if ((camera == null) || !camera.getBoundsReference().intersects(rect)) {
+            return pick(rect);
+        }
+
+                                // Pick the area around the rectangle. If that finds an object
+                                // under the rectangle, nothing is in front of it there, so it is
+                                // also what the rectangle picks, and the path can be cached
+        ZBounds guardBounds = pickCachedGuardRect;
+        guardBounds.setRect(rect.getX() - PICK_CACHE_MARGIN, rect.getY() - PICK_CACHE_MARGIN,
+                            rect.getWidth() + 2 * PICK_CACHE_MARGIN, rect.getHeight() + 2 * PICK_CACHE_MARGIN);
+        ZSceneGraphPath path = pick(guardBounds);
+        ZSceneGraphObject object = path.getObject();
+        if (object == camera) {
+                                // Nothing is picked around the rectangle, so nothing is in it
+            return path;
+        }
+        if (!isPickedInside(path, rect)) {
+            return pick(rect);
+        }
+        if (isCacheable(path)) {
+            cachedPickPath = path;
+            cachedPickBounds.setRect(guardBounds);
+            cachedPickHalo = halo;
+            cachedPickTransformVersion = ZNode.transformVersion;
+            cachedPickPickableVersion = ZNode.pickableVersion;
+        }
+        return path;
+    }
+
+    /**
+     * Determine if the cached pick path is still the path to the object under the
+     * specified pick rectangle.
+     */
+    private boolean isCachedPickValid(ZBounds rect, int halo) {
+        if ((cachedPickPath == null) ||
+            (camera == null) ||
+            (halo != cachedPickHalo) ||
+            (cachedPickTransformVersion != ZNode.transformVersion) ||
+            (cachedPickPickableVersion != ZNode.pickableVersion) ||
+            !cachedPickBounds.contains(rect) ||
+            !camera.getBoundsReference().intersects(rect)) {
+            return false;
+        }
+
+                                // Nothing else can be picked around the cached pick, so the path is
+                                // still right if the point is still over the object
+        return isPickedInside(cachedPickPath, rect);
+    }
+
+    /**
+     * Determine if the object at the end of a path picked through this surface's camera
+     * only is under the specified rectangle, in window coordinates.
+     */
+    private boolean isPickedInside(ZSceneGraphPath path, ZBounds rect) {
+        ZSceneGraphObject object = path.getObject();
+        if (!(object instanceof ZVisualComponent) ||
+            (object instanceof ZCamera) ||
+            (path.getNumCameras() != 1)) {
+            return false;
+        }
+        ZBounds localRect = pickCachedLocalRect;
+        localRect.setRect(rect);
+        try {
+            path.screenToLocal(localRect);
+        } catch (ZNoninvertibleTransformException e) {
+            return false;
+        }
+        return ((ZVisualComponent)object).pick(localRect, pickCachedScratchPath);
+    }
+
+    /**
+     * Determine if a path to an object picked through this surface's camera only
+     * can be reused: there are no volatile bounds on the way to its object.
+     */
+    private boolean isCacheable(ZSceneGraphPath path) {
+        if (path.getObject().getVolatileBounds()) {
+            return false;
+        }
+        for (int i = 0; i < path.getNumParents(); i++) {
+            if (path.getParent(i).getVolatileBounds()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the path to the first object intersecting the specified rectangle in window coordinates.
+     */
+    private ZSceneGraphPath pick(ZBounds rect) {
         ZSceneGraphPath path = new ZSceneGraphPath();
 
         if (camera != null) {
@@ -437,7 +1175,6 @@ public class ZDrawingSurface implements Printable, Serializable {
                 startTime = System.currentTimeMillis();
             }
 
-            ZBounds rect = new ZBounds(x-halo, y-halo, halo+halo, halo+halo);
             path.setRoot(camera.getRoot());
             path.setTopCamera(camera);
             path.setTopCameraNode(cameraNode);
@@ -527,14 +1264,131 @@ public class ZDrawingSurface implements Printable, Serializable {
         g2.scale(scaleFactor, scaleFactor);
 
                                 // paint onto the printer graphics
-        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(cameraBounds), this, RENDER_QUALITY_HIGH);
-        camera.getRoot().setCurrentRenderContext(rc);
-        camera.render(rc);
-        camera.getRoot().setCurrentRenderContext(null);
+        ZDisplayList aDisplayList = displayList;
+        if (aDisplayList != null) {
+            renderDisplayList(g2, cameraBounds, aDisplayList, RENDER_QUALITY_HIGH);
+        } else if ((parallelRenderer == null) || !parallelRenderer.render(g2, cameraBounds, this, RENDER_QUALITY_HIGH)) {
+            ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(cameraBounds), this, RENDER_QUALITY_HIGH);
+            camera.getRoot().setCurrentRenderContext(rc);
+            camera.render(rc);
+            camera.getRoot().setCurrentRenderContext(null);
+        }
 
         return PAGE_EXISTS;
     }
 
+    /**
+     * internal class: A progressive render in progress. It renders the camera into
+     * the surface's back buffer a band at a time, driven by a timer so other events
+     * are processed between slices.
+     */
+    private class ProgressivePass implements ActionListener {
+        int quality;
+        Timer timer;
+        boolean[] bandDone;
+
+        ProgressivePass(int aQuality, int height) {
+            quality = aQuality;
+            bandDone = new boolean[(height + PROGRESSIVE_BAND_HEIGHT - 1) / PROGRESSIVE_BAND_HEIGHT];
+            timer = new Timer(0, this);
+            timer.setCoalesce(true);
+        }
+
+        void start() {
+            timer.start();
+        }
+
+        void stop() {
+            timer.stop();
+        }
+
+        /**
+         * Mark the bands that show the specified bounds as needing to be rendered again.
+         * @param repaintBounds The bounds that changed (in screen coordinates).
+         */
+        void damage(ZBounds repaintBounds) {
+            ZBounds cameraBounds = camera.getBoundsReference();
+            int first = (int)Math.floor((repaintBounds.getMinY() - 1 - cameraBounds.getY()) / PROGRESSIVE_BAND_HEIGHT);
+            int last = (int)Math.floor((repaintBounds.getMaxY() + 2 - cameraBounds.getY()) / PROGRESSIVE_BAND_HEIGHT);
+            for (int i = Math.max(first, 0); i <= Math.min(last, bandDone.length - 1); i++) {
+                bandDone[i] = false;
+            }
+        }
+
+        /**
+         * Render bands until the slice time is used up or there is input waiting.
+         */
+        public void actionPerformed(ActionEvent e) {
+            if (progressivePass != this) {
+                stop();
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            do {
+                int band = 0;
+                while ((band < bandDone.length) && bandDone[band]) {
+                    band++;
+                }
+                if (band == bandDone.length) {
+                    finishProgressivePass(this);
+                    return;
+                }
+                renderBand(band);
+                bandDone[band] = true;
+            } while ((System.currentTimeMillis() - startTime < progressiveSliceTime) && !isInputPending());
+        }
+
+        /**
+         * Render one band of the camera into the back buffer.
+         */
+        void renderBand(int band) {
+            ZBounds cameraBounds = camera.getBoundsReference();
+            int x = (int)cameraBounds.getX();
+            int y = (int)cameraBounds.getY();
+            int top = band * PROGRESSIVE_BAND_HEIGHT;
+            int height = Math.min(PROGRESSIVE_BAND_HEIGHT, progressiveBuffer.getHeight() - top);
+            int width = progressiveBuffer.getWidth();
+
+            Graphics2D bg = progressiveBuffer.createGraphics();
+            bg.setComposite(AlphaComposite.Clear);
+            bg.fillRect(0, top, width, height);
+            bg.setComposite(AlphaComposite.SrcOver);
+            bg.clipRect(0, top, width, height);
+            bg.translate(-x, -y);
+
+            ZBounds bandBounds = new ZBounds(x, y + top, width, height);
+            ZDisplayList aDisplayList = displayList;
+            if (aDisplayList != null) {
+                renderDisplayList(bg, bandBounds, aDisplayList, quality);
+            } else {
+                ZRenderContext rc = camera.createRenderContext(bg, bandBounds, ZDrawingSurface.this, quality);
+                rc.setAccurateSpacing(useFractionalMetrics);
+                camera.getRoot().setCurrentRenderContext(rc);
+                camera.render(rc);
+                camera.getRoot().setCurrentRenderContext(null);
+            }
+            bg.dispose();
+        }
+
+        /**
+         * Determine if there are input events waiting to be processed.
+         */
+        boolean isInputPending() {
+            EventQueue queue;
+            try {
+                queue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+            } catch (SecurityException e) {
+                return false;
+            }
+            for (int i = 0; i < PROGRESSIVE_INPUT_EVENTS.length; i++) {
+                if (queue.peekEvent(PROGRESSIVE_INPUT_EVENTS[i]) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Generate a string that represents this object for debugging.
      * @return the string that represents this object for debugging
@@ -48,6 +48,20 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      */
     protected transient boolean childrenVolatileBoundsCache = false;
 
+    /**
+     * The union of the children's bounds. It is kept up to date incrementally
+     * as children are added and change, so the group's bounds can be computed
+     * without visiting every child. It is only valid if childBoundsValid is true.
+     */
+    private transient ZBounds childBounds = null;
+    private transient boolean childBoundsValid = false;
+
+    /**
+     * Children whose bounds were added, or may have grown, since the children's
+     * bounds were last computed.
+     */
+    private transient ArrayList grownChildren = null;
+
     /**
      *  True if pick should pick children.
      */
@@ -95,6 +109,9 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      */
     protected Object duplicateObject() {
         ZGroup newGroup = (ZGroup)super.duplicateObject();
+        newGroup.childBounds = null;
+        newGroup.childBoundsValid = false;
+        newGroup.grownChildren = null;
 
                                 // Do a deep copy of children
         if (!children.isNull()) {
@@ -104,6 +121,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
                 ZNode newChild = (ZNode) childrenRef[i].clone();
                 newGroup.children.add(newChild);
                 newChild.parent = newGroup;
+                transformVersion++;
             }
         }
 
@@ -156,6 +174,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
             p.children.replaceWith(child, this);
             child.parent = null;
             parent = p;
+            transformVersion++;
         }
 
                                 // Mark self as in a transaction if the node we are replacing was
@@ -342,11 +361,12 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
 
                                 // Finally, update parent pointer.
         child.parent = this;
+        transformVersion++;
 
         updateVolatility();     // Need to update volatility since new child could be volatile
 
         if (!hasNodeListener && child.hasNodeListener) {
-            updateHasNodeListener(); // Need to update hasNodeListener since new child could have a node listener
+            childrenChangedHasNodeListener(); // Need to update hasNodeListener since new child could have a node listener
         }
 
                                 // Make the childs transaction state match our own.
@@ -361,7 +381,8 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
                                 // Manually update bounds and repaint since reshape would result
                                 // in entire group being painted twice.  Since we're adding a new
                                 // item, we only have to repaint the new part.
-        updateBounds();
+        addChildBounds(child);
+        super.updateBounds();
         child.repaint();
 
         if (fireEvent) {
@@ -410,6 +431,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
             }
 
             children.add(child);
+            addChildBounds(child);
 
                                 // Make the childs transaction state match our own.
             if (inTransaction != child.inTransaction) {
@@ -422,18 +444,19 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
 
                                 // Finally, update parent pointer.
             child.parent = this;
+            transformVersion++;
             if (fireGroupEvents) {
                 childAddedNotification(child, false);
             }
         }
 
         updateVolatility();     // Need to update volatility since new child could be volatile
-        updateHasNodeListener();// Need to update hasNodeListener since new child could have a node listener
+        childrenChangedHasNodeListener();// Need to update hasNodeListener since new child could have a node listener
 
                                 // Manually update bounds and repaint since reshape would result
                                 // in entire group being painted twice.  Since we're adding a new
                                 // item, we only have to repaint the new part.
-        updateBounds();
+        super.updateBounds();
         repaint();
     }
 
@@ -483,6 +506,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
         ZNode[] childrenNodes = getChildrenReference();
         for (int i = 0; i < numChildren; i++) {
             childrenNodes[i].parent = null;
+            transformVersion++;
 
             if (fireGroupEvents) {
                 childRemovedNotification(childrenNodes[i], false);
@@ -492,7 +516,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
         children = ZListImpl.NullList;
 
         repaint();
-        updateHasNodeListener();
+        childrenChangedHasNodeListener();
         updateVolatility();
         updateBounds();
     }
@@ -568,16 +592,22 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
 
         removedChild.repaint(); // Repaint area that child was in before removing it so it damages the proper area
         removedChild.parent = null;
+        transformVersion++;
 
         updateVolatility(); // Need to update volatility since previous child could have be volatile
 
         if (removedChild.hasNodeListener()) {
-            updateHasNodeListener(); // Need to update node listener since previous child could have been the last node listener
+            childrenChangedHasNodeListener(); // Need to update node listener since previous child could have been the last node listener
         }
                             // Manually update bounds and repaint since reshape would result
                             // in entire group being painted twice.  Since we're removing a single
                             // we only have to repaint that area.
-        updateBounds();
+                            // If the child's bounds are invalid, this group was told about its
+                            // old bounds when they were invalidated
+        if (!removedChild.invalidBounds) {
+            removeChildBounds(removedChild.bounds);
+        }
+        super.updateBounds();
 
         if (children.size() == 0) {
             children = ZListImpl.NullList;
@@ -671,6 +701,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      */
     public void raise(ZNode child) {
         children.moveElementToIndex(child, children.size() - 1);
+        childReorderedNotification(child);
         child.repaint();
     }
 
@@ -725,6 +756,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
                 }
                 childrenRef[afterIndex + 1] = child;
             }
+            childReorderedNotification(child);
         }
         child.repaint();
     }
@@ -737,6 +769,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      */
     public void lower(ZNode child) {
         children.moveElementToIndex(child, 0);
+        childReorderedNotification(child);
         child.repaint();
     }
 
@@ -791,6 +824,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
                 }
                 childrenRef[beforeIndex] = child;
             }
+            childReorderedNotification(child);
         }
         child.repaint();
     }
@@ -832,6 +866,7 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      */
     public void setChildrenPickable(boolean childrenPickable) {
         this.childrenPickable = childrenPickable;
+        pickableVersion++;
     }
 
     /**
@@ -923,8 +958,103 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      * of its children's bounds
      */
     protected void computeBounds() {
+        if (childBounds == null) {
+            childBounds = new ZBounds();
+            childBoundsValid = false;
+        }
+                                // Volatile children can change without telling this group
+        if (!childBoundsValid || getVolatileBounds()) {
+            childBounds.reset();
+            childBounds = children.collectiveBoundsReference(childBounds);
+            childBoundsValid = true;
+        } else if (grownChildren != null) {
+            for (int i = 0; i < grownChildren.size(); i++) {
+                ZNode child = (ZNode)grownChildren.get(i);
+                if (child.parent == this) {
+                    childBounds.add(child.getBoundsReference());
+                }
+            }
+        }
+        if (grownChildren != null) {
+            grownChildren.clear();
+        }
+
         bounds.reset();
-        bounds = children.collectiveBoundsReference(bounds);
+        bounds.add(childBounds);
+    }
+
+    /**
+     * Internal method that causes this group and all of its ancestors to invalidate
+     * their bounds. The union of the children's bounds is recomputed from every child
+     * when the bounds are next computed.
+     */
+    protected void updateBounds() {
+        childBoundsValid = false;
+        super.updateBounds();
+    }
+
+    /**
+     * Internal method that causes this group and all of its ancestors to invalidate
+     * their bounds when only the way this group transforms its children changed.
+     * The union of the children's bounds is still valid, so it is not recomputed
+     * from every child, and the group's bounds are computed from it again.
+     */
+    void updateTransformedBounds() {
+        super.updateBounds();
+    }
+
+    /**
+     * Internal method called when the bounds of the specified child are invalidated,
+     * to invalidate the bounds of this group and its ancestors.  If the child's old
+     * bounds were inside the union of the children's bounds, the union only has to grow
+     * to include the child's new bounds, so the other children are not visited.
+     * @param child The child whose bounds changed.
+     * @param childWasValid True if the child's bounds were valid, so its
+     * bounds field holds the bounds this group last saw.
+     */
+    void updateChildBounds(ZNode child, boolean childWasValid) {
+        removeChildBounds(childWasValid ? child.bounds : null);
+        addChildBounds(child);
+        super.updateBounds();
+    }
+
+    /**
+     * Internal method to record that the specified bounds of a child no longer
+     * contribute to the union of the children's bounds.  The union shrinks only if
+     * the bounds touched its edge, in which case it is recomputed from every child.
+     * @param oldBounds The child's old bounds, or null if they are not known.
+     */
+    private void removeChildBounds(ZBounds oldBounds) {
+        if (!childBoundsValid || ((oldBounds != null) && oldBounds.isEmpty())) {
+            return;
+        }
+        if ((oldBounds == null) || childBounds.isEmpty() ||
+            (oldBounds.getMinX() <= childBounds.getMinX()) ||
+            (oldBounds.getMinY() <= childBounds.getMinY()) ||
+            (oldBounds.getMaxX() >= childBounds.getMaxX()) ||
+            (oldBounds.getMaxY() >= childBounds.getMaxY())) {
+            childBoundsValid = false;
+        }
+    }
+
+    /**
+     * Internal method to record that the bounds of the specified child must be added
+     * to the union of the children's bounds when it is next computed.
+     * @param child The child that was added or grew.
+     */
+    private void addChildBounds(ZNode child) {
+        if (!childBoundsValid) {
+            return;
+        }
+        if (grownChildren == null) {
+            grownChildren = new ArrayList();
+        }
+        grownChildren.add(child);
+                                // Visiting every child is cheaper once most of them have changed
+        if (grownChildren.size() > children.size()) {
+            childBoundsValid = false;
+            grownChildren.clear();
+        }
     }
 
     /**
@@ -1004,6 +1134,20 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
         }
     }
 
+    /**
+     * Internal method to update the hasNodeListener bit after the children
+     * of this group have changed. If a batch is open, the bit is updated
+     * once at the end of the batch instead.
+     */
+    private void childrenChangedHasNodeListener() {
+        ZRoot batchRoot = getBatchRoot();
+        if (batchRoot != null) {
+            batchRoot.batchUpdateHasNodeListener(this);
+        } else {
+            updateHasNodeListener();
+        }
+    }
+
     /**
      * Adds the specified group listener to receive group events from this node.
      *
@@ -1029,12 +1173,20 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      * group, then percolates the event up scenegraph, notifying any
      * listeners on any higher ZGroup nodes. The listener list is processed in last to
      * first order.
+     * If a batch is open, the event is fired at the end of the batch instead.
      * @param child The child being added or removed from this node
      * @param isModification true if this is a modification event.
      * @see EventListenerList
      * @see ZGroupEvent
+     * @see ZRoot#startBatch
      */
     public void childAddedNotification(ZNode child, boolean isModification) {
+        ZRoot batchRoot = getBatchRoot();
+        if (batchRoot != null) {
+            batchRoot.batchGroupChange(this, child, isModification, true);
+            return;
+        }
+
         ZGroupEvent e = null;
         ZNode node = this;
         do {
@@ -1061,12 +1213,20 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
      * group, then percolates the event up scenegraph, notifying any
      * listeners on any higher ZGroup nodes. The listener list is processed in last to
      * first order.
+     * If a batch is open, the event is fired at the end of the batch instead.
      * @param child The child being added or removed from this node
      * @param isModification true if this is a modification event.
      * @see EventListenerList
      * @see ZGroupEvent
+     * @see ZRoot#startBatch
      */
     public void childRemovedNotification(ZNode child, boolean isModification) {
+        ZRoot batchRoot = getBatchRoot();
+        if (batchRoot != null) {
+            batchRoot.batchGroupChange(this, child, isModification, false);
+            return;
+        }
+
         ZGroupEvent e = null;
         ZNode node = this;
         do {
@@ -1087,6 +1247,26 @@ public class ZGroup extends ZNode implements ZSerializable, Serializable {
         } while (node != null);
     }
 
+    /**
+     * Notifies a ZSpatialIndexGroup directly above this group, if there is one,
+     * and the closest ZLayerGroup at or above this group, that a child has moved
+     * within this node's children list. Group events are not fired when children
+     * are reordered, so spatial indexes need to be told in order to keep their
+     * draw order up to date.
+     * @param child The child that was moved.
+     */
+    protected void childReorderedNotification(ZNode child) {
+        if (parent instanceof ZSpatialIndexGroup) {
+            ((ZSpatialIndexGroup)parent).childReordered(child);
+        }
+        for (ZNode node = this; node != null; node = node.getParent()) {
+            if (node instanceof ZLayerGroup) {
+                ((ZLayerGroup)node).childReordered(child);
+                break;
+            }
+        }
+    }
+
     //****************************************************************************
     //
     //                  Other Methods
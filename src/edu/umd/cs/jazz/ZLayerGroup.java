@@ -15,6 +15,11 @@ import edu.umd.cs.jazz.util.*;
  * <b>ZLayerGroup</b> is used exclusively to specify the portion of the scenegraph
  * that a camera can see. It has no other function.
  * <P>
+ * A layer with a very large number of nodes below it can be spatially indexed
+ * with {@link #setSpatialIndexed}. The layer then keeps a {@link ZLayerSpatialIndex}
+ * of the nodes below it, at any depth, and renders and picks only the nodes that
+ * intersect the area being rendered or picked.
+ * <P>
  * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
  * compatible with future Jazz releases. The current serialization support is
  * appropriate for short term storage or RMI between applications running the
@@ -31,6 +36,11 @@ public class ZLayerGroup extends ZGroup implements ZSerializable, Serializable {
      */
     private ZList.ZCameraList cameras = new ZListImpl.ZCameraListImpl(1);
 
+    /**
+     * The spatial index of the nodes below this layer, or null if the layer is not indexed.
+     */
+    private transient ZLayerSpatialIndex spatialIndex = null;
+
     //****************************************************************************
     //
     //                 Constructors
@@ -70,6 +80,9 @@ public class ZLayerGroup extends ZGroup implements ZSerializable, Serializable {
         if (!cameras.isNull()) {
             newLayer.cameras = (ZList.ZCameraList) cameras.clone();
         }
+                                // The clone does not have this layer's listeners,
+                                // so it can not share its index.
+        newLayer.spatialIndex = null;
         return newLayer;
     }
 
@@ -165,6 +178,119 @@ public class ZLayerGroup extends ZGroup implements ZSerializable, Serializable {
         return cameras.size();
     }
 
+    /**
+     * Turn spatial indexing of the nodes below this layer on and off.
+     * When indexing is on, the layer keeps an R-tree index of all the
+     * nodes below it, at any depth, and only renders and picks the
+     * nodes that intersect the area being rendered or picked.
+     * This can be much faster when there are thousands of nodes below
+     * the layer and only a few of them are visible at a time.
+     * @param indexed true to turn indexing on, false otherwise.
+     * @see ZLayerSpatialIndex
+     */
+    public void setSpatialIndexed(boolean indexed) {
+        if (indexed == (spatialIndex != null)) {
+            return;
+        }
+        if (indexed) {
+            spatialIndex = new ZLayerSpatialIndex(this);
+        } else {
+            spatialIndex.dispose();
+            spatialIndex = null;
+        }
+    }
+
+    /**
+     * Return true if the nodes below this layer are spatially indexed.
+     * @return true if spatial indexing is on.
+     */
+    public boolean isSpatialIndexed() {
+        return (spatialIndex != null);
+    }
+
+    /**
+     * Return the spatial index of the nodes below this layer.
+     * @return the index, or null if spatial indexing is off.
+     */
+    public ZLayerSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Internal method called by a group below this layer when one of its
+     * children has moved within its children list.
+     * @param child The child that was moved.
+     */
+    void childReordered(ZNode child) {
+        if (spatialIndex != null) {
+            spatialIndex.childReordered(child);
+        }
+    }
+
+    /**
+     * Renders this node.  If the layer is spatially indexed, only the
+     * nodes below it that intersect the visible bounds are rendered.
+     * @param renderContext The graphics context to use for rendering.
+     */
+    public void render(ZRenderContext renderContext) {
+        if (spatialIndex == null) {
+            super.render(renderContext);
+        } else {
+            spatialIndex.render(renderContext);
+        }
+    }
+
+    /**
+     * Internal method used to return the list of nodes that are accepted by the specified
+     * filter in the subtree rooted with this. If the layer is spatially indexed and the
+     * filter is a {@link ZBoundedFindFilter} with a bounds hint, only the nodes below
+     * the layer that overlap the hint, and the groups above them, are searched. So a
+     * group that the index walks through is only found if a node below it overlaps the hint.
+     * @param filter The filter that decides whether or not to include individual nodes in the find list
+     * @param nodes the accumulation list (results will be place here).
+     * @return the number of nodes searched
+     * @see ZBoundedFindFilter
+     */
+    protected int findNodes(ZFindFilter filter, ArrayList nodes) {
+        ZBounds hint = null;
+        if ((spatialIndex != null) && (filter instanceof ZBoundedFindFilter)) {
+            hint = ((ZBoundedFindFilter)filter).getBoundsHint();
+        }
+        if (hint == null) {
+            return super.findNodes(filter, nodes);
+        }
+
+        int nodesSearched = 1;
+        if (isFindable()) {
+            if (filter.accept(this)) {
+                nodes.add(this);
+            }
+            if (getChildrenFindable() && filter.childrenFindable(this)) {
+                Rectangle2D localHint = new Rectangle2D.Double();
+                localHint.setRect(hint);
+                globalToLocal(localHint);
+                nodesSearched += spatialIndex.findNodes(filter, localHint, nodes);
+            }
+        }
+        return nodesSearched;
+    }
+
+    /**
+     * Returns the first object under the specified rectangle (if there is one)
+     * in the subtree rooted with this as searched in reverse (front-to-back) order.
+     * If the layer is spatially indexed, only the nodes below it that intersect
+     * the rectangle are searched.
+     * @param rect Coordinates of pick rectangle in local coordinates
+     * @param path The path through the scenegraph to the picked node. Modified by this call.
+     * @return true if an object was picked
+     */
+    public boolean pick(Rectangle2D rect, ZSceneGraphPath path) {
+        if (spatialIndex == null) {
+            return super.pick(rect, path);
+        }
+        return spatialIndex.pick(rect, path);
+    }
+
     /**
      * Repaint causes the portions of the surfaces that this object
      * appears in to be marked as needing painting, and queues events to cause
@@ -193,7 +319,12 @@ public class ZLayerGroup extends ZGroup implements ZSerializable, Serializable {
                                 // so it can pass on the repaint call to the cameras that
                                 // look at this layer.
         if (!inTransaction) {
-            repaint(getBounds());
+            ZRoot batchRoot = getBatchRoot();
+            if (batchRoot != null) {
+                batchRoot.batchRepaint(this);
+            } else {
+                repaint(getBounds());
+            }
         }
     }
 
@@ -212,6 +343,11 @@ public class ZLayerGroup extends ZGroup implements ZSerializable, Serializable {
 
         if (inTransaction) {
             return;
+        }
+        ZRoot batchRoot = getBatchRoot();
+        if (batchRoot != null) {
+            batchRoot.batchRepaint(this);
+            return;
         }
                                 // The camera could modify the repaint bounds,
                                 // so make a copy of them,
@@ -0,0 +1,700 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz;
+
+import java.util.*;
+import java.awt.*;
+import java.awt.geom.*;
+
+import edu.umd.cs.jazz.util.*;
+import edu.umd.cs.jazz.event.*;
+
+/**
+ * <b>ZLayerSpatialIndex</b> is an R-tree index of all the nodes below a
+ * {@link ZLayerGroup}, at any depth. It is created with
+ * {@link ZLayerGroup#setSpatialIndexed}, and lets the layer render and pick
+ * only the nodes that intersect the area of interest instead of visiting
+ * every node below it.
+ * <P>
+ * The index walks down through nodes whose class is exactly ZGroup or
+ * ZTransformGroup, and indexes the nodes it finds below them (typically
+ * ZVisualLeafs) with their bounds in the coordinate system of the layer.
+ * A node of any other class, such as a ZVisualGroup, ZClipGroup, or
+ * ZSpatialIndexGroup, is indexed as a single unit, so that its own rendering
+ * and picking behavior is kept. Indexed nodes are given draw orders that
+ * follow a depth-first traversal of the layer, so they are rendered in the
+ * same order as they would be without the index.
+ * <P>
+ * The index listens to the layer for group and bounds events, and updates
+ * itself as nodes are added, removed, changed, and reordered. A change to the
+ * transform of a transform group is noticed from the bounds event of the
+ * transform group, so a transform change that leaves the bounds of the
+ * transform group unchanged is not seen. Call {@link #reIndex} after such
+ * a change. When a batch of changes to the layer ends (see {@link ZRoot#startBatch}),
+ * the index is rebuilt with a bulk load before it is next used rather than
+ * updated for each change.
+ * <P>
+ * The index is not saved when the layer is serialized.
+ *
+ * @see ZLayerGroup
+ * @see ZSpatialIndex
+ */
+public class ZLayerSpatialIndex extends ZSpatialIndex {
+    /**
+     * The layer whose nodes are indexed.
+     */
+    private ZLayerGroup layer;
+
+    /**
+     * The last known transform of each transform group the index walks through,
+     * used to tell a change of transform from a change of bounds below it.
+     */
+    private Hashtable transforms = new Hashtable();
+
+    /**
+     * False when nodes have been inserted or reordered since the draw orders were
+     * last assigned.
+     */
+    private boolean drawOrderValid = true;
+
+    /**
+     * False when the index must be rebuilt before it is used, because
+     * a batch has changed the layer.
+     */
+    private boolean indexValid = true;
+
+    /**
+     * True while a render or pick is using the query result buffer of the index.
+     */
+    private transient boolean queryInProgress = false;
+
+    /**
+     * Transform used to compute the bounds of indexed nodes.
+     */
+    private AffineTransform boundsTransform = new AffineTransform();
+
+    /**
+     * Transform, bounds and count used by a render that is not nested in another one.
+     */
+    private AffineTransform renderTransform = new AffineTransform();
+    private ZBounds renderBounds = new ZBounds();
+    private int[] renderCount = new int[1];
+
+    /**
+     * Transform, bounds and count used by a pick that is not nested in another one.
+     */
+    private AffineTransform pickTransform = new AffineTransform();
+    private ZBounds pickBounds = new ZBounds();
+    private int[] pickCount = new int[1];
+
+    private transient ZNodeListener nodeListener;
+    private transient ZGroupListener groupListener;
+
+    //****************************************************************************
+    //
+    //                 Constructors
+    //
+    //***************************************************************************
+
+    /**
+     * Constructs a new index of the nodes below the specified layer,
+     * and indexes them.
+     * @param aLayer the layer.
+     */
+    ZLayerSpatialIndex(ZLayerGroup aLayer) {
+        layer = aLayer;
+
+        nodeListener = new ZNodeAdapter() {
+            public void globalBoundsChanged(ZNodeEvent e) {
+                ZLayerSpatialIndex.this.boundsChanged(e.getNode());
+            }
+        };
+        groupListener = new ZGroupAdapter() {
+            public void nodeAdded(ZGroupEvent e) {
+                ZLayerSpatialIndex.this.nodeAdded(e.getChild());
+            }
+            public void nodeRemoved(ZGroupEvent e) {
+                ZLayerSpatialIndex.this.nodeRemoved(e.getChild());
+            }
+        };
+        layer.addNodeListener(nodeListener);
+        layer.addGroupListener(groupListener);
+
+        reIndex();
+    }
+
+    /**
+     * Stop listening to the layer, and empty the index.
+     */
+    void dispose() {
+        layer.removeNodeListener(nodeListener);
+        layer.removeGroupListener(groupListener);
+        transforms.clear();
+        clear();
+    }
+
+    /**
+     * Return the layer whose nodes are indexed.
+     * @return the layer.
+     */
+    public ZLayerGroup getLayer() {
+        return layer;
+    }
+
+    /**
+     * Completely re-index the layer. The tree is rebuilt from scratch with a
+     * bulk load of the nodes currently below the layer, and draw orders are
+     * reassigned.
+     */
+    public void reIndex() {
+        if ((layer == null) || !getStatus()) {
+            return;
+        }
+
+        transforms.clear();
+        ArrayList nodes = new ArrayList();
+        ZNode[] childrenRef = layer.getChildrenReference();
+        for (int i=0; i<layer.getNumChildren(); i++) {
+            addSubtree(childrenRef[i], nodes);
+        }
+        bulkLoad(nodes);
+        drawOrderValid = true;
+        indexValid = true;
+    }
+
+    /**
+     * Internal method to make the index rebuild itself the next time it is used.
+     * Changes to the layer are ignored until then.
+     */
+    void invalidate() {
+        indexValid = false;
+    }
+
+    //****************************************************************************
+    //
+    //                  Index maintenance
+    //
+    //***************************************************************************
+
+    /**
+     * Return true if the index walks through the specified node rather than
+     * indexing it.
+     */
+    static boolean isTraversed(ZNode node) {
+        Class nodeClass = node.getClass();
+        return ((nodeClass == ZGroup.class) || (nodeClass == ZTransformGroup.class));
+    }
+
+    /**
+     * Return true if the specified node is the layer, or a node that the index
+     * walks through on the way down from the layer.
+     */
+    boolean isTraversedPath(ZNode node) {
+        while (node != layer) {
+            if ((node == null) || !isTraversed(node)) {
+                return false;
+            }
+            node = node.getParent();
+        }
+        return true;
+    }
+
+    /**
+     * Collect the nodes to be indexed in the subtree rooted at the specified node,
+     * in depth-first order, and remember the transforms of the transform groups in it.
+     */
+    private void addSubtree(ZNode node, ArrayList nodes) {
+        if (isTraversed(node)) {
+            if (node instanceof ZTransformGroup) {
+                transforms.put(node, ((ZTransformGroup)node).getTransform());
+            }
+            ZGroup group = (ZGroup)node;
+            ZNode[] childrenRef = group.getChildrenReference();
+            for (int i=0; i<group.getNumChildren(); i++) {
+                addSubtree(childrenRef[i], nodes);
+            }
+        } else {
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * Remove the indexed nodes in the subtree rooted at the specified node.
+     */
+    private void removeSubtree(ZNode node) {
+        if (isTraversed(node)) {
+            transforms.remove(node);
+            ZGroup group = (ZGroup)node;
+            ZNode[] childrenRef = group.getChildrenReference();
+            for (int i=0; i<group.getNumChildren(); i++) {
+                removeSubtree(childrenRef[i]);
+            }
+        } else {
+            removeNode(node);
+        }
+    }
+
+    /**
+     * Update the index entries of the indexed nodes in the subtree rooted at the specified node.
+     */
+    private void updateSubtree(ZNode node) {
+        if (isTraversed(node)) {
+            ZGroup group = (ZGroup)node;
+            ZNode[] childrenRef = group.getChildrenReference();
+            for (int i=0; i<group.getNumChildren(); i++) {
+                updateSubtree(childrenRef[i]);
+            }
+        } else {
+            updateNode(node);
+        }
+    }
+
+    /**
+     * Return true if the specified node comes last in a depth-first traversal of the layer.
+     */
+    private boolean isLast(ZNode node) {
+        while (node != layer) {
+            ZGroup parent = node.getParent();
+            if (parent.getChildrenReference()[parent.getNumChildren() - 1] != node) {
+                return false;
+            }
+            node = parent;
+        }
+        return true;
+    }
+
+    /**
+     * Assign draw orders to the indexed nodes in the subtree rooted at the specified node,
+     * in depth-first order.
+     * @return the next draw order to assign.
+     */
+    private int assignDrawOrder(ZNode node, int order, int spacing) {
+        if (isTraversed(node)) {
+            ZGroup group = (ZGroup)node;
+            ZNode[] childrenRef = group.getChildrenReference();
+            for (int i=0; i<group.getNumChildren(); i++) {
+                order = assignDrawOrder(childrenRef[i], order, spacing);
+            }
+        } else if (setDrawOrder(node, order)) {
+            order += spacing;
+        }
+        return order;
+    }
+
+    /**
+     * Internal method called when a node has been added somewhere below the layer.
+     */
+    void nodeAdded(ZNode child) {
+        if (!indexValid) {
+            return;
+        }
+        ZGroup parent = child.getParent();
+        if ((parent == null) || !isTraversedPath(parent)) {
+            return;
+        }
+
+        ArrayList nodes = new ArrayList();
+        addSubtree(child, nodes);
+        for (int i=0; i<nodes.size(); i++) {
+            addNode((ZNode)nodes.get(i));
+        }
+                                // New nodes are drawn last, which is only
+                                // right if they come last in the layer.
+        if (!isLast(child)) {
+            drawOrderValid = false;
+        }
+    }
+
+    /**
+     * Internal method called when a node has been removed from somewhere below the layer.
+     */
+    void nodeRemoved(ZNode child) {
+        if (!indexValid) {
+            return;
+        }
+                                // The node may have been moved to
+                                // another place below the layer.
+        ZGroup parent = child.getParent();
+        if ((parent != null) && isTraversedPath(parent)) {
+            return;
+        }
+        removeSubtree(child);
+    }
+
+    /**
+     * Internal method called when a child has moved within its parent's children list,
+     * somewhere below the layer.
+     */
+    void childReordered(ZNode child) {
+        if (!indexValid) {
+            return;
+        }
+        ZGroup parent = child.getParent();
+        if ((parent != null) && isTraversedPath(parent)) {
+            drawOrderValid = false;
+        }
+    }
+
+    /**
+     * Internal method called when the bounds of a node below the layer have changed.
+     */
+    void boundsChanged(ZNode node) {
+        if (!indexValid) {
+            return;
+        }
+        if (updateNode(node)) {
+            return;
+        }
+        AffineTransform oldTransform = (AffineTransform)transforms.get(node);
+        if (oldTransform != null) {
+            AffineTransform transform = ((ZTransformGroup)node).getTransformReference();
+            if (!oldTransform.equals(transform)) {
+                oldTransform.setTransform(transform);
+                updateSubtree(node);
+            }
+        }
+    }
+
+    /**
+     * Bring the index up to date before it is used. Pending bounds changes are
+     * computed, which fires the events the index listens to, and draw orders
+     * are reassigned if needed. If a batch has changed the layer, the index is
+     * rebuilt.
+     */
+    public void validate() {
+        layer.getBoundsReference();
+        if (!indexValid) {
+            reIndex();
+        }
+        if (!drawOrderValid) {
+            int spacing = DRAW_ORDER_SPACING;
+            if (size() > (Integer.MAX_VALUE / DRAW_ORDER_SPACING)) {
+                spacing = 1;
+            }
+            int order = 0;
+            ZNode[] childrenRef = layer.getChildrenReference();
+            for (int i=0; i<layer.getNumChildren(); i++) {
+                order = assignDrawOrder(childrenRef[i], order, spacing);
+            }
+            drawOrderValid = true;
+        }
+    }
+
+    /**
+     * Return the transform from the local coordinate system of the specified node
+     * to the coordinate system of the layer.
+     * @param node a node below the layer.
+     * @param result the transform to set, which is also returned.
+     * @return the transform.
+     */
+    public AffineTransform getLayerTransform(ZNode node, AffineTransform result) {
+        result.setToIdentity();
+        while ((node != layer) && (node != null)) {
+            if (node instanceof ZTransformGroup) {
+                result.preConcatenate(((ZTransformGroup)node).getTransformReference());
+            }
+            node = node.getParent();
+        }
+        return result;
+    }
+
+    /**
+     * Return the bounds of an indexed node in the coordinate system of the layer.
+     */
+    protected ZBounds getCurrentBounds(ZNode node) {
+        ZBounds bbox = node.getBounds();
+        ZGroup parent = node.getParent();
+        if ((parent != null) && (parent != layer)) {
+            bbox.transform(getLayerTransform(parent, boundsTransform));
+        }
+        return bbox;
+    }
+
+    //****************************************************************************
+    //
+    //                  Rendering, picking, and finding
+    //
+    //***************************************************************************
+
+    /**
+     * Find the nodes below the layer that are accepted by a filter, searching only the
+     * indexed nodes that overlap the specified region, and the groups between them and
+     * the layer. The nodes are found in the same order as a traversal of the layer would
+     * find them.
+     * @param filter The filter that decides whether or not to include individual nodes in the find list
+     * @param rect The region that contains every node the filter accepts, in the layer's coordinates.
+     * @param nodes the accumulation list (results will be place here).
+     * @return the number of nodes searched
+     */
+    int findNodes(ZFindFilter filter, Rectangle2D rect, ArrayList nodes) {
+        validate();
+
+        ArrayList candidates = new ArrayList();
+        queryWindow(candidates, rect);
+
+                                // Whether the children of each group that has been
+                                // visited are searched
+        Hashtable visited = new Hashtable();
+        visited.put(layer, Boolean.TRUE);
+        ArrayList ancestors = new ArrayList();
+        int nodesSearched = 0;
+        for (int i=0; i<candidates.size(); i++) {
+            ZNode node = (ZNode)candidates.get(i);
+
+                                // Visit the groups above the node that have not been
+                                // visited yet, from the top down
+            ancestors.clear();
+            ZGroup parent = node.getParent();
+            while (!visited.containsKey(parent)) {
+                ancestors.add(parent);
+                parent = parent.getParent();
+            }
+            Boolean searchChildren = (Boolean)visited.get(parent);
+            for (int j=ancestors.size() - 1; j>=0; j--) {
+                ZGroup group = (ZGroup)ancestors.get(j);
+                if (searchChildren.booleanValue()) {
+                    nodesSearched++;
+                    searchChildren = Boolean.FALSE;
+                    if (group.isFindable()) {
+                        if (filter.accept(group)) {
+                            nodes.add(group);
+                        }
+                        if (group.getChildrenFindable() && filter.childrenFindable(group)) {
+                            searchChildren = Boolean.TRUE;
+                        }
+                    }
+                }
+                visited.put(group, searchChildren);
+            }
+
+            if (searchChildren.booleanValue()) {
+                nodesSearched += node.findNodes(filter, nodes);
+            }
+        }
+        return nodesSearched;
+    }
+
+    /**
+     * internal method: Return the indexed nodes larger than a minimum size that
+     * intersect the specified rectangle, in draw order. If the result buffer of
+     * the index is in use, the results are returned in a new array instead.
+     * @param rect the rectangle, in the layer's coordinates.
+     * @param minSize miminum size of the nodes to be found.
+     * @param mag the current magnification.
+     * @param count set to the number of nodes found.
+     * @return the nodes found.
+     */
+    private ZNode[] query(Rectangle2D rect, double minSize, double mag, int[] count) {
+        if (queryInProgress) {
+            ArrayList result = new ArrayList();
+            queryWindow(result, rect, minSize, mag);
+            count[0] = result.size();
+            return (ZNode[])result.toArray(new ZNode[count[0]]);
+        }
+        count[0] = queryWindow(rect, minSize, mag);
+        return getQueryResultsReference();
+    }
+
+    /**
+     * Render the indexed nodes that intersect the visible bounds of the render context.
+     * Each node is rendered with the transforms of the transform groups above it
+     * applied, just as it would be by a traversal of the layer.
+     * If there is a level of detail policy, nodes that are too small are not rendered,
+     * and the policy's proxies are drawn for them beneath the other nodes.
+     * @param renderContext The graphics context to use for rendering.
+     */
+    void render(ZRenderContext renderContext) {
+        validate();
+
+        Graphics2D      g2 = renderContext.getGraphics2D();
+        ZBounds         visibleBounds = renderContext.getVisibleBounds();
+        AffineTransform saveTransform = g2.getTransform();
+        boolean         nested = queryInProgress;
+        AffineTransform tm = nested ? new AffineTransform() : renderTransform;
+        ZBounds         paintBounds = nested ? new ZBounds() : renderBounds;
+        int[]           count = nested ? new int[1] : renderCount;
+
+        ZLevelOfDetailPolicy policy = getLevelOfDetailPolicy();
+        double          minSize = 0;
+        double          mag = 1;
+        if (policy != null) {
+            minSize = policy.getMinimumSize();
+            mag = renderContext.getCompositeMagnification();
+        }
+
+        ZNode[] nodes = query(visibleBounds, minSize, mag, count);
+        renderPrunedProxies(renderContext);
+        queryInProgress = true;
+        try {
+            for (int i=0; i<count[0]; i++) {
+                ZNode node = nodes[i];
+                ZGroup parent = node.getParent();
+                if (parent == layer) {
+                    node.render(renderContext);
+                    continue;
+                }
+
+                getLayerTransform(parent, tm);
+                paintBounds.reset();
+                paintBounds.add(visibleBounds);
+                try {
+                    paintBounds.inverseTransform(tm);
+                } catch (NoninvertibleTransformException e) {
+                    continue;
+                }
+                renderContext.pushVisibleBounds(paintBounds);
+                g2.setTransform(saveTransform);
+                g2.transform(tm);
+
+                node.render(renderContext);
+
+                renderContext.popVisibleBounds();
+            }
+        } finally {
+            g2.setTransform(saveTransform);
+            queryInProgress = nested;
+        }
+
+        if (ZDebug.debug && ZDebug.debugSpatialIndexing) {
+            System.out.println("ZLayerSpatialIndex.render: rendered " + count[0] + " of " + size() + " nodes");
+        }
+    }
+
+    /**
+     * Pick the front-most indexed node under the specified rectangle. The path is
+     * built as a traversal of the layer would build it, with the groups and transform
+     * groups between the layer and the picked node.
+     * @param rect Coordinates of pick rectangle in the layer's coordinates
+     * @param path The path through the scenegraph to the picked node. Modified by this call.
+     * @return true if a node was picked
+     */
+    boolean pick(Rectangle2D rect, ZSceneGraphPath path) {
+        if (!layer.isPickable()) {
+            return false;
+        }
+        validate();
+
+        path.push(layer);
+
+        boolean         nested = queryInProgress;
+        AffineTransform tm = nested ? new AffineTransform() : pickTransform;
+        ZBounds         localBounds = nested ? new ZBounds() : pickBounds;
+        int[]           count = nested ? new int[1] : pickCount;
+
+        ZNode[] nodes = query(rect, 0, 1, count);
+        queryInProgress = true;
+        try {
+            for (int i=count[0] - 1; i>=0; i--) {
+                if (pickNode(nodes[i], rect, path, tm, localBounds)) {
+                    if (!layer.getChildrenPickable()) {
+                        path.pop(layer);
+                        path.setObject(layer);
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            queryInProgress = nested;
+        }
+
+        path.pop(layer);
+        return false;
+    }
+
+    /**
+     * internal method: Pick an indexed node, pushing the nodes between the layer
+     * and the indexed node onto the path.
+     * @param tm a transform to use while picking.
+     * @param localBounds bounds to hold the pick rectangle in the node's coordinates.
+     */
+    private boolean pickNode(ZNode node, Rectangle2D rect, ZSceneGraphPath path, AffineTransform tm, ZBounds localBounds) {
+        ZGroup parent = node.getParent();
+        if (parent == layer) {
+            return (node.getBoundsReference().intersects(rect) && node.pick(rect, path));
+        }
+
+                                // Find the group just below the layer, and the
+                                // top-most transform group on the way
+        ZNode top = parent;
+        ZTransformGroup firstTransformGroup = null;
+        for (ZNode each = parent; each != layer; each = each.getParent()) {
+            if (!each.isPickable()) {
+                return false;
+            }
+            if (each instanceof ZTransformGroup) {
+                firstTransformGroup = (ZTransformGroup)each;
+            }
+            top = each;
+        }
+
+        getLayerTransform(parent, tm);
+        localBounds.setRect(rect);
+        try {
+            localBounds.inverseTransform(tm);
+        } catch (NoninvertibleTransformException e) {
+            return false;
+        }
+        if (!node.getBoundsReference().intersects(localBounds)) {
+            return false;
+        }
+
+        AffineTransform origTm = path.pushTransform();
+        pushAncestors(parent, path);
+
+        if (node.pick(localBounds, path)) {
+                                // Groups whose children are not pickable are
+                                // picked instead of the node, as in ZGroup.pick().
+            ZGroup picked = null;
+            ZGroup pickedTransformGroup = null;
+            for (ZGroup each = parent; each != layer; each = each.getParent()) {
+                if (!each.getChildrenPickable()) {
+                    picked = each;
+                    if (each instanceof ZTransformGroup) {
+                        pickedTransformGroup = each;
+                    }
+                }
+            }
+            if (picked != null) {
+                path.pop(picked);
+                path.setObject(picked);
+            }
+            if (pickedTransformGroup != null) {
+                AffineTransform pathTm = path.getTransformReference();
+                pathTm.setTransform(origTm);
+                pathTm.concatenate(getLayerTransform(pickedTransformGroup, tm));
+            }
+            path.popTransform();
+            return true;
+        }
+
+                                // Restore the path
+        path.pop(top);
+        if (!path.getCameraFound()) {
+            path.setTransform(origTm);
+            if (firstTransformGroup != null) {
+                path.popTransformer(firstTransformGroup);
+            }
+        }
+        path.popTransform();
+        return false;
+    }
+
+    /**
+     * internal method: Push the groups between the layer and the specified node,
+     * including the node, onto the path from the top down, concatenating the
+     * transforms of the transform groups to the path's transform.
+     */
+    private void pushAncestors(ZNode node, ZSceneGraphPath path) {
+        if (node == layer) {
+            return;
+        }
+        pushAncestors(node.getParent(), path);
+        if (node instanceof ZTransformGroup) {
+            path.pushTransformer((ZTransformGroup)node);
+            path.getTransformReference().concatenate(((ZTransformGroup)node).getTransformReference());
+        }
+        path.push(node);
+    }
+}
\ No newline at end of file
@@ -75,6 +75,25 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
      */
     boolean hasNodeListener = hasNodeListener_DEFAULT;
 
+    /**
+     * The version of the transforms in all scenegraphs. It changes whenever any
+     * transform or parent changes, so a cached local to global transform is
+     * up to date as long as the version it was computed at is current.
+     * It is volatile so that threads that compile display lists see the changes
+     * made by the thread that changes the scenegraph.
+     * (package private for access in ZGroup and ZTransformGroup)
+     */
+    static volatile int transformVersion = 0;
+
+    /**
+     * The version of the pickability of all nodes. It changes whenever a node
+     * changes what can be picked without being repainted, so a cached pick
+     * is only reused while the version it was picked at is current.
+     * It is volatile for the same reason as transformVersion.
+     * (package private for access in ZGroup, ZVisualGroup, ZClipGroup and ZDrawingSurface)
+     */
+    static volatile int pickableVersion = 0;
+
     //****************************************************************************
     //
     //                Constructors
@@ -188,16 +207,24 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
      * @return The inverse of the concatenation of transforms from the root down to this node.
      */
     public AffineTransform getGlobalToLocalTransform() {
-        AffineTransform at = getLocalToGlobalTransform();
-        AffineTransform globalToLocal = null;
+        return getGlobalToLocalTransform(new AffineTransform());
+    }
 
-        try {
-            globalToLocal = at.createInverse();
-        } catch (NoninvertibleTransformException exc) {
-            throw new ZNoninvertibleTransformException(exc);
+    /**
+     * Set the specified transform to the one that converts global coordinates at the
+     * root node to local coordinates at this node. This does not allocate any objects
+     * unless the transforms above this node have changed since it was last called.
+     * @param result The transform to set.
+     * @return The result transform.
+     */
+    public AffineTransform getGlobalToLocalTransform(AffineTransform result) {
+        if (parent != null) {
+            parent.getGlobalToLocalTransform(result);
+        } else {
+            result.setToIdentity();
         }
 
-        return globalToLocal;
+        return result;
     }
 
     /**
@@ -206,12 +233,20 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
      * @return The concatenation of transforms from the root down to this node.
      */
     public AffineTransform getLocalToGlobalTransform() {
-        AffineTransform result = null;
+        return getLocalToGlobalTransform(new AffineTransform());
+    }
 
+    /**
+     * Set the specified transform to the one that converts local coordinates at this
+     * node to global coordinates at the root node. This does not allocate any objects.
+     * @param result The transform to set.
+     * @return The result transform.
+     */
+    public AffineTransform getLocalToGlobalTransform(AffineTransform result) {
         if (parent != null) {
-            result = parent.getLocalToGlobalTransform();
+            parent.getLocalToGlobalTransform(result);
         } else {
-            result = new AffineTransform();
+            result.setToIdentity();
         }
 
         return result;
@@ -242,6 +277,23 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
         return null;
     }
 
+    /**
+     * Internal method to return the root of this node's scenegraph if it has a
+     * batch open, or null otherwise.
+     * @return the root with a batch open, or null.
+     * @see ZRoot#startBatch
+     */
+    ZRoot getBatchRoot() {
+        if (ZRoot.numOpenBatches == 0) {
+            return null;
+        }
+        ZRoot root = getRoot();
+        if ((root != null) && root.isInBatch()) {
+            return root;
+        }
+        return null;
+    }
+
     /**
      * Transform the specified dimension (in global coordinates) to local coordinates
      * in this node's coordinate system.
@@ -611,7 +663,12 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
         }
 
         if (!inTransaction && parent != null) {
-            parent.repaint(getBounds());
+            ZRoot batchRoot = getBatchRoot();
+            if (batchRoot != null) {
+                batchRoot.batchRepaint(this);
+            } else {
+                parent.repaint(getBounds());
+            }
         }
     }
     /**
@@ -627,7 +684,12 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
         }
 
         if (!inTransaction && parent != null) {
-            parent.repaint(repaintBounds);
+            ZRoot batchRoot = getBatchRoot();
+            if (batchRoot != null) {
+                batchRoot.batchRepaint(this);
+            } else {
+                parent.repaint(repaintBounds);
+            }
         }
     }
     /**
@@ -771,6 +833,7 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
      */
     public void setPickable(boolean pickable) {
         this.pickable = pickable;
+        pickableVersion++;
     }
     /**
      * Specify if this node should be saved.  If not, then all references to this
@@ -814,12 +877,17 @@ public class ZNode extends ZSceneGraphObject implements ZSerializable, Serializa
      * Internal method that causes this node and all of its ancestors
      * to invalidate their bounds. The bounds will get recomputed on the
      * next call to getBoundsReference();
+     * The parent is told which child changed, so it can update its bounds
+     * from that child rather than from all of its children.
      */
     protected void updateBounds() {
+        boolean wasValid = !invalidBounds;
         super.updateBounds();
 
-        if (parent != null && !parent.invalidBounds) {
-            parent.updateBounds();
+                                // Ancestors that are already invalid were told when this node
+                                // was last invalidated, unless its bounds have been computed since
+        if (parent != null && (wasValid || !parent.invalidBounds)) {
+            parent.updateChildBounds(this, wasValid);
         }
     }
 
@@ -6,7 +6,9 @@ package edu.umd.cs.jazz;
 
 import java.awt.geom.AffineTransform;
 import java.io.*;
+import java.util.*;
 import edu.umd.cs.jazz.util.*;
+import edu.umd.cs.jazz.event.*;
 
 /** 
  * <b>ZRoot</b> extends ZNode overiding several methods of ZNode to ensure that ZRoot is
@@ -15,6 +17,29 @@ import edu.umd.cs.jazz.util.*;
  * one root.  
  * 
  * <P>
+ * <b>Batches</b><br>
+ * A root can collect the changes made to its scenegraph in a batch, which makes
+ * bulk edits of many nodes much cheaper. While a batch is open, changes to the
+ * scenegraph are not repainted, ZGroupEvents and bounds changed ZNodeEvents are
+ * not fired, and bounds are only recomputed when they are asked for. When the
+ * batch is ended, the bounds of each changed layer are recomputed once, the
+ * spatial index of each changed layer is rebuilt with a bulk load, the events are
+ * fired in the order the changes were made (a node added and then removed from
+ * the same group during the batch gets no events at all), each ZSpatialIndexGroup
+ * that the events reach is rebuilt with a bulk load rather than updated for each
+ * of them, and each changed layer is repainted once. Since events are fired after the fact, listeners see the
+ * scenegraph as it is at the end of the batch. Batches can be nested, and only
+ * the outermost {@link #endBatch} ends the batch.
+ * <pre>
+ *     root.startBatch();
+ *     try {
+ *         ... add, remove, and change many nodes ...
+ *     } finally {
+ *         root.endBatch();
+ *     }
+ * </pre>
+ * 
+ * <P>
  * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
  * compatible with future Jazz releases. The current serialization support is
  * appropriate for short term storage or RMI between applications running the
@@ -25,9 +50,43 @@ import edu.umd.cs.jazz.util.*;
  * @author Britt McAlister
  */
 public class ZRoot extends ZGroup implements Serializable {
+    /**
+     * The number of roots with a batch open, so nodes can tell quickly that
+     * no batch is open (package private for access in ZNode). It is volatile
+     * as roots may be used by different threads, and is only changed through
+     * {@link #addOpenBatches}.
+     */
+    static volatile int numOpenBatches = 0;
+
     // The current render context for this tree
     private transient ZRenderContext currentRenderContext;
 
+                                // The number of nested batches open
+    private transient int batchDepth = 0;
+
+                                // The layers changed during the batch, and their bounds before it
+    private transient Hashtable batchLayers = null;
+
+                                // The nodes changed during the batch that are not in a layer,
+                                // such as nodes stuck to a camera, and their bounds before it
+    private transient Hashtable batchNodes = null;
+
+                                // The group events of the batch, in order, and the last
+                                // add of each child so that a later removal can cancel it
+    private transient Vector batchGroupChanges = null;
+    private transient Hashtable batchAdds = null;
+
+                                // The nodes whose bounds changed during the batch, in order
+    private transient Vector batchBoundsChanges = null;
+    private transient Hashtable batchBoundsChanged = null;
+
+                                // The spatial index groups changed during the batch, which are
+                                // rebuilt with a bulk load once the batch's events are fired
+    private transient Vector batchIndexGroups = null;
+
+                                // The groups whose hasNodeListener bit needs updating
+    private transient Hashtable batchListenerGroups = null;
+
     /**
      * Set the current render context.  This is meant to be used
      * by context-sensitive objects to determine the render context
@@ -57,4 +116,241 @@ public class ZRoot extends ZGroup implements Serializable {
     protected void setParent(ZNode parent) throws RuntimeException {
 	throw new RuntimeException("Can't set parent of ZRoot");
     }
+
+    //****************************************************************************
+    //
+    //                  Batches
+    //
+    //***************************************************************************
+
+    /**
+     * Start a batch of changes to the scenegraph rooted at this root. Until the
+     * matching call to {@link #endBatch}, repaints and events are collected rather
+     * than being issued, and bounds are only computed on demand. Batches can be nested.
+     * @see #endBatch
+     */
+    public void startBatch() {
+        if (batchDepth == 0) {
+            batchLayers = new Hashtable();
+            batchNodes = new Hashtable();
+            batchGroupChanges = new Vector();
+            batchAdds = new Hashtable();
+            batchBoundsChanges = new Vector();
+            batchBoundsChanged = new Hashtable();
+            batchListenerGroups = new Hashtable();
+            if (batchIndexGroups == null) {
+                batchIndexGroups = new Vector();
+            }
+            addOpenBatches(1);
+        }
+        batchDepth++;
+    }
+
+    /**
+     * End a batch of changes to the scenegraph rooted at this root. If this ends the
+     * outermost batch, the bounds of the layers that were changed are recomputed,
+     * their spatial indexes are rebuilt, the collected events are fired, the
+     * spatial index groups that they change are rebuilt, and the changed layers,
+     * and the changed nodes that are not in a layer, are repainted.
+     * @see #startBatch
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new RuntimeException("ZRoot.endBatch: No batch is open");
+        }
+        if (batchDepth > 1) {
+            batchDepth--;
+            return;
+        }
+
+                                // Compute the new bounds of the changed layers while the
+                                // batch is still open, so each node's bounds changed
+                                // events are fired only once below.
+        Hashtable layers = batchLayers;
+        Hashtable nodes = batchNodes;
+        try {
+            for (Enumeration e = layers.keys(); e.hasMoreElements();) {
+                ZLayerGroup layer = (ZLayerGroup)e.nextElement();
+                ((ZBounds)layers.get(layer)).add(layer.getBoundsReference());
+                if (layer.getSpatialIndex() != null) {
+                    layer.getSpatialIndex().invalidate();
+                }
+            }
+            for (Enumeration e = nodes.keys(); e.hasMoreElements();) {
+                ZNode node = (ZNode)e.nextElement();
+                ((ZBounds)nodes.get(node)).add(node.getBoundsReference());
+            }
+        } finally {
+            batchDepth = 0;
+            addOpenBatches(-1);
+        }
+
+        Vector groupChanges = batchGroupChanges;
+        Vector boundsChanges = batchBoundsChanges;
+        Hashtable listenerGroups = batchListenerGroups;
+        batchLayers = null;
+        batchNodes = null;
+        batchGroupChanges = null;
+        batchAdds = null;
+        batchBoundsChanges = null;
+        batchBoundsChanged = null;
+        batchListenerGroups = null;
+
+        for (Enumeration e = listenerGroups.keys(); e.hasMoreElements();) {
+            ((ZGroup)e.nextElement()).updateHasNodeListener();
+        }
+
+                                // Spatial index groups that get the events below put off
+                                // updating their indexes, and are rebuilt once afterwards
+        try {
+            for (int i = 0; i < groupChanges.size(); i++) {
+                GroupChange change = (GroupChange)groupChanges.elementAt(i);
+                if (change.cancelled) {
+                    continue;
+                }
+                if (change.added) {
+                    change.group.childAddedNotification(change.child, change.isModification);
+                } else {
+                    change.group.childRemovedNotification(change.child, change.isModification);
+                }
+            }
+
+            for (int i = 0; i < boundsChanges.size(); i++) {
+                ZNode node = (ZNode)boundsChanges.elementAt(i);
+                node.percolateEventUpSceneGraph(ZNodeEvent.createBoundsChangedEvent(node));
+                node.percolateEventUpSceneGraph(ZNodeEvent.createGlobalBoundsChangedEvent(node));
+            }
+        } finally {
+            Vector indexGroups = batchIndexGroups;
+            batchIndexGroups = null;
+                                // A batch started by a listener above has rebuilt them already
+            if (indexGroups != null) {
+                for (int i = 0; i < indexGroups.size(); i++) {
+                    ((ZSpatialIndexGroup)indexGroups.elementAt(i)).reIndex();
+                }
+            }
+        }
+
+        for (Enumeration e = layers.keys(); e.hasMoreElements();) {
+            ZLayerGroup layer = (ZLayerGroup)e.nextElement();
+            ZBounds repaintBounds = (ZBounds)layers.get(layer);
+            if (!repaintBounds.isEmpty()) {
+                layer.repaint(repaintBounds);
+            }
+        }
+
+        for (Enumeration e = nodes.keys(); e.hasMoreElements();) {
+            ZNode node = (ZNode)e.nextElement();
+            ZBounds repaintBounds = (ZBounds)nodes.get(node);
+            if (!repaintBounds.isEmpty() && (node.getParent() != null)) {
+                node.getParent().repaint(repaintBounds);
+            }
+        }
+    }
+
+    /**
+     * Return true if a batch of changes is open on this root.
+     * @return true if a batch is open.
+     * @see #startBatch
+     */
+    public boolean isInBatch() {
+        return (batchDepth > 0);
+    }
+
+    /**
+     * Internal method to record that the specified node, which is in the
+     * scenegraph of this root, needs to be repainted at the end of the batch.
+     * The layer the node is in is recorded along with its bounds before any
+     * change is made to it.  A node that is not in a layer, such as a node
+     * stuck to a camera, is recorded itself, and its parent repaints it.
+     */
+    void batchRepaint(ZNode node) {
+        for (ZNode layer = node; layer != null; layer = layer.getParent()) {
+            if (layer instanceof ZLayerGroup) {
+                if (!batchLayers.containsKey(layer)) {
+                    batchLayers.put(layer, layer.getBounds());
+                }
+                return;
+            }
+        }
+        if (!batchNodes.containsKey(node)) {
+            batchNodes.put(node, node.getBounds());
+        }
+    }
+
+    /**
+     * Internal method to record a child being added to or removed from a group
+     * during the batch. Removing a child cancels an add of the same child to the
+     * same group earlier in the batch.
+     */
+    void batchGroupChange(ZGroup group, ZNode child, boolean isModification, boolean added) {
+        if (!added) {
+            GroupChange add = (GroupChange)batchAdds.remove(child);
+            if ((add != null) && (add.group == group) && !add.isModification && !isModification) {
+                add.cancelled = true;
+                return;
+            }
+        }
+
+        GroupChange change = new GroupChange();
+        change.group = group;
+        change.child = child;
+        change.isModification = isModification;
+        change.added = added;
+        batchGroupChanges.addElement(change);
+        if (added) {
+            batchAdds.put(child, change);
+        }
+    }
+
+    /**
+     * Internal method to put off updating the index of a spatial index group until
+     * the end of the batch, if a batch is open, or its events are being fired.
+     * The group is rebuilt with {@link ZSpatialIndexGroup#reIndex} once they have been.
+     * @param group The spatial index group.
+     * @return true if the update is put off.
+     */
+    boolean batchReIndex(ZSpatialIndexGroup group) {
+        if (batchIndexGroups == null) {
+            return false;
+        }
+        batchIndexGroups.addElement(group);
+        return true;
+    }
+
+    /**
+     * Internal method to change the number of roots with a batch open.
+     */
+    static synchronized void addOpenBatches(int delta) {
+        numOpenBatches += delta;
+    }
+
+    /**
+     * Internal method to record a change of the bounds of a node during the batch.
+     */
+    void batchBoundsChanged(ZNode node) {
+        if (!batchBoundsChanged.containsKey(node)) {
+            batchBoundsChanged.put(node, node);
+            batchBoundsChanges.addElement(node);
+        }
+    }
+
+    /**
+     * Internal method to record that a group needs its hasNodeListener bit
+     * updated at the end of the batch.
+     */
+    void batchUpdateHasNodeListener(ZGroup group) {
+        batchListenerGroups.put(group, group);
+    }
+
+    /**
+     * internal class: A child added to or removed from a group during a batch.
+     */
+    static class GroupChange {
+        ZGroup group;
+        ZNode child;
+        boolean isModification;
+        boolean added;
+        boolean cancelled;
+    }
 }
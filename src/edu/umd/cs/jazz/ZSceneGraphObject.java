@@ -151,29 +151,32 @@ public abstract class ZSceneGraphObject implements ZSerializable, Serializable,
     public Object clone() {
         Object newObject;
 
-        if (inClone) {
+                                // The reference table is shared, so only one thread clones at a time
+        synchronized (objRefTable) {
+            if (inClone) {
 
-            // Recursive call of clone (e.g. by a group to copy its children)
-            newObject = duplicateObject();
-
-        } else {
-            try {
-                inClone = true;
-                objRefTable.reset();
+                // Recursive call of clone (e.g. by a group to copy its children)
                 newObject = duplicateObject();
 
-                // Updates cloned objects. This iterates through all the cloned
-                // objects in the reference table, notifying them to update their
-                // internal references, passing in a reference
-                // to objRefTable so it can be queried for original/new object mappings.
-
-                for (Iterator iter = objRefTable.iterator() ; iter.hasNext() ;) {
-                    ZSceneGraphObject clonedObject = (ZSceneGraphObject) iter.next();
-                    clonedObject.updateObjectReferences(objRefTable);
+            } else {
+                try {
+                    inClone = true;
+                    objRefTable.reset();
+                    newObject = duplicateObject();
+
+                    // Updates cloned objects. This iterates through all the cloned
+                    // objects in the reference table, notifying them to update their
+                    // internal references, passing in a reference
+                    // to objRefTable so it can be queried for original/new object mappings.
+
+                    for (Iterator iter = objRefTable.iterator() ; iter.hasNext() ;) {
+                        ZSceneGraphObject clonedObject = (ZSceneGraphObject) iter.next();
+                        clonedObject.updateObjectReferences(objRefTable);
+                    }
+
+                } finally {
+                    inClone = false;
                 }
-
-            } finally {
-                inClone = false;
             }
         }
         return newObject;
@@ -428,8 +431,13 @@ public abstract class ZSceneGraphObject implements ZSerializable, Serializable,
 
             if (this instanceof ZNode) {
                 ZNode thisNode = (ZNode) this;
-                thisNode.percolateEventUpSceneGraph(ZNodeEvent.createBoundsChangedEvent(thisNode));
-                thisNode.percolateEventUpSceneGraph(ZNodeEvent.createGlobalBoundsChangedEvent(thisNode));
+                ZRoot batchRoot = thisNode.getBatchRoot();
+                if (batchRoot != null) {
+                    batchRoot.batchBoundsChanged(thisNode);
+                } else {
+                    thisNode.percolateEventUpSceneGraph(ZNodeEvent.createBoundsChangedEvent(thisNode));
+                    thisNode.percolateEventUpSceneGraph(ZNodeEvent.createGlobalBoundsChangedEvent(thisNode));
+                }
             }
         }
         return bounds;
@@ -416,7 +416,7 @@ public class ZSelectionGroup extends ZVisualGroup implements ZSerializable, Seri
 
                                 // Paint back visual component
         if (backVisualComponent != null) {
-            backVisualComponent.render(renderContext);
+            renderContext.renderVisualComponent(backVisualComponent);
         }
 
         super.render(renderContext);
@@ -425,12 +425,12 @@ public class ZSelectionGroup extends ZVisualGroup implements ZSerializable, Seri
                                 // Paint auxiliary visual components
         ZVisualComponent[] visualComponentsRef = visualComponents.getVisualComponentsReference();
         for (int i = visualComponents.size()-1; i >= 0; i--) {
-            visualComponentsRef[i].render(renderContext);
+            renderContext.renderVisualComponent(visualComponentsRef[i]);
         }
 
                                 // Paint front visual component
         if (frontVisualComponent != null) {
-            frontVisualComponent.render(renderContext);
+            renderContext.renderVisualComponent(frontVisualComponent);
         }
 
 
@@ -18,6 +18,26 @@ import edu.umd.cs.jazz.util.*;
 /**
  * <b>ZSpatialIndex</b> is a jazz utility class, supporting ZSpatialIndexGroup.
  * See {@link ZSpatialIndexGroup} for details.
+ * <P>
+ * Nodes can be added to the index one at a time with {@link #addNode}, or
+ * all at once with {@link #bulkLoad}. Bulk loading packs the tree using the
+ * Sort-Tile-Recursive (STR) algorithm, which is much faster than repeated
+ * insertion and produces a tree with less overlap between regions.
+ * When an indexed node's bounds change, {@link #updateNode} moves its entry
+ * within the tree instead of removing and reinserting it.
+ * <P>
+ * Each indexed node has an integer draw order. Queries return nodes sorted by
+ * draw order, lowest first. Nodes added with {@link #addNode(ZNode)} are drawn
+ * after all other nodes. Draw orders are handed out with gaps of
+ * {@link #DRAW_ORDER_SPACING}, so that a node can usually be given an order
+ * between two others with {@link #setDrawOrder} without renumbering.
+ * <P>
+ * Window queries can skip nodes that are smaller than a minimum size at the
+ * current magnification. Each node of the tree records the largest extent of
+ * the nodes below it, so a whole subtree of small nodes is skipped without being
+ * searched. The skipped subtrees are available after the query from
+ * {@link #getPrunedRegionsReference}, so that a {@link ZLevelOfDetailPolicy} can
+ * draw a cheap proxy in their place.
  *
  * <P>
  * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
@@ -31,6 +51,12 @@ import edu.umd.cs.jazz.util.*;
  */
 
 public class ZSpatialIndex implements Serializable {
+    /**
+     * The difference between the draw orders of consecutive nodes
+     * when draw orders are assigned by the index.
+     */
+    public static final int DRAW_ORDER_SPACING = 256;
+
     /**
      * Minimum number of children per node
      */
@@ -62,20 +88,96 @@ public class ZSpatialIndex implements Serializable {
     protected RTreeNode root;
 
     /**
-     * List of r-tree nodes in draw-order order.
+     * Table mapping each indexed node to its index entry.
+     */
+    protected Hashtable entries;
+
+    /**
+     * The draw order given to the next node appended to the index.
+     */
+    private int nextDrawOrder = 0;
+
+    /**
+     * Entries found by the most recent query, sorted by draw order.
+     */
+    private IndexEntry[] queryEntries = new IndexEntry[16];
+
+    /**
+     * Nodes found by the most recent query, sorted by draw order.
+     */
+    private ZNode[] queryNodes = new ZNode[16];
+
+    /**
+     * Number of results of the most recent query.
+     */
+    private int queryCount = 0;
+
+    /**
+     * Regions of the subtrees and nodes skipped by the most recent window query
+     * because they were too small.
+     */
+    private Rectangle2D[] prunedRegions = new Rectangle2D[16];
+
+    /**
+     * Number of nodes in each region skipped by the most recent window query.
+     */
+    private int[] prunedSizes = new int[16];
+
+    /**
+     * Number of regions skipped by the most recent window query.
      */
-    protected Hashtable drawOrder;
+    private int prunedCount = 0;
 
     /**
-     * Comparator for sort.
+     * The level of detail policy used when rendering through this index, or null.
      */
-    private DrawOrderComp doc;
+    private ZLevelOfDetailPolicy levelOfDetailPolicy = null;
 
     /**
      * The localToGlobal transform for the associated group node.
      */
     private AffineTransform groupNodeTransform = null;
 
+    /**
+     * The inverse of the group node transform, or null if it is not invertible.
+     * It is only up to date if inverseGroupNodeTransformValid is true.
+     */
+    private transient AffineTransform inverseGroupNodeTransform = null;
+    private transient boolean inverseGroupNodeTransformValid = false;
+
+    /**
+     * Orders bulk load entries by the x coordinate of their center.
+     */
+    private static final Comparator X_ORDER = new Comparator() {
+        public int compare(Object a, Object b) {
+            double ca = ((BulkLoadEntry)a).centerX;
+            double cb = ((BulkLoadEntry)b).centerX;
+            return (ca < cb) ? -1 : ((ca > cb) ? 1 : 0);
+        }
+    };
+
+    /**
+     * Orders index entries by their draw order.
+     */
+    private static final Comparator DRAW_ORDER = new Comparator() {
+        public int compare(Object a, Object b) {
+            int oa = ((IndexEntry)a).drawOrder;
+            int ob = ((IndexEntry)b).drawOrder;
+            return (oa < ob) ? -1 : ((oa > ob) ? 1 : 0);
+        }
+    };
+
+    /**
+     * Orders bulk load entries by the y coordinate of their center.
+     */
+    private static final Comparator Y_ORDER = new Comparator() {
+        public int compare(Object a, Object b) {
+            double ca = ((BulkLoadEntry)a).centerY;
+            double cb = ((BulkLoadEntry)b).centerY;
+            return (ca < cb) ? -1 : ((ca > cb) ? 1 : 0);
+        }
+    };
+
     //****************************************************************************
     //
     //                 Constructors
@@ -86,11 +188,7 @@ public class ZSpatialIndex implements Serializable {
      * Constructs a new ZSpatialIndex.
      */
     public ZSpatialIndex() {
-        camera = new ZCamera();
-        status = true;
-        root = new RTreeNodeLeaf();
-        drawOrder = new Hashtable();
-        doc = new DrawOrderComp();
+        this(new ZCamera());
      }
 
     /**
@@ -101,8 +199,7 @@ public class ZSpatialIndex implements Serializable {
         camera = aCamera;
         status = true;
         root = new RTreeNodeLeaf();
-        drawOrder = new Hashtable();
-        doc = new DrawOrderComp();
+        entries = new Hashtable();
     }
 
     /**
@@ -133,6 +230,9 @@ public class ZSpatialIndex implements Serializable {
                                 // Turning indexing off
                 status = false;
                 root = null;
+                for (Iterator i=entries.values().iterator(); i.hasNext();) {
+                    ((IndexEntry)i.next()).leaf = null;
+                }
             }
         }
     }
@@ -150,6 +250,7 @@ public class ZSpatialIndex implements Serializable {
      */
     public void setGroupNodeTransform(AffineTransform at) {
         getGroupNodeTransform().setTransform(at);
+        inverseGroupNodeTransformValid = false;
     }
 
     /**
@@ -163,41 +264,316 @@ public class ZSpatialIndex implements Serializable {
     }
 
     /**
-     * Completely re-index all objects
+     * Return the inverse of the localToGlobal transform for the ZSpatialIndexGroup node
+     * associated with this index. It is computed again only when the transform is set.
+     * @return the inverse transform, or null if the transform is not invertible.
+     */
+    public AffineTransform getInverseGroupNodeTransform() {
+        if (!inverseGroupNodeTransformValid) {
+            try {
+                inverseGroupNodeTransform = getGroupNodeTransform().createInverse();
+            } catch (NoninvertibleTransformException e) {
+                inverseGroupNodeTransform = null;
+            }
+            inverseGroupNodeTransformValid = true;
+        }
+        return inverseGroupNodeTransform;
+    }
+
+    /**
+     * Set the level of detail policy used when rendering through this index.
+     * Nodes smaller than the policy's minimum size are not rendered, and the
+     * policy is asked to draw a proxy for them instead.
+     * @param policy the policy, or null to render all nodes.
+     */
+    public void setLevelOfDetailPolicy(ZLevelOfDetailPolicy policy) {
+        levelOfDetailPolicy = policy;
+    }
+
+    /**
+     * Return the level of detail policy used when rendering through this index.
+     * @return the policy, or null if there is none.
+     */
+    public ZLevelOfDetailPolicy getLevelOfDetailPolicy() {
+        return levelOfDetailPolicy;
+    }
+
+    /**
+     * Return the number of nodes in the index.
+     * @return the number of indexed nodes.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Determine if the specified node is in the index.
+     * @param node the node.
+     * @return true if the node is indexed.
+     */
+    public boolean containsNode(ZNode node) {
+        return entries.containsKey(node);
+    }
+
+    /**
+     * Return the draw order of an indexed node.
+     * @param node the node.
+     * @return the draw order of the node, or -1 if the node is not indexed.
+     */
+    public int getDrawOrder(ZNode node) {
+        IndexEntry entry = (IndexEntry)entries.get(node);
+        if (entry == null) {
+            return -1;
+        }
+        return entry.drawOrder;
+    }
+
+    /**
+     * Change the draw order of an indexed node. Nodes with a lower draw order
+     * are returned before nodes with a higher one. The tree is not changed.
+     * @param node the node.
+     * @param order the new draw order, which must not be negative.
+     * @return true if the node was found in the index, false otherwise.
+     */
+    public boolean setDrawOrder(ZNode node, int order) {
+        IndexEntry entry = (IndexEntry)entries.get(node);
+        if (entry == null) {
+            return false;
+        }
+        entry.drawOrder = order;
+        if (order >= nextDrawOrder) {
+            nextDrawOrder = nextDrawOrder(order);
+        }
+        return true;
+    }
+
+    /**
+     * internal method: Return the draw order to follow the specified one.
+     * The result saturates rather than overflowing.
+     */
+    private int nextDrawOrder(int order) {
+        if (order > Integer.MAX_VALUE - DRAW_ORDER_SPACING) {
+            return Integer.MAX_VALUE;
+        }
+        return order + DRAW_ORDER_SPACING;
+    }
+
+    /**
+     * Renumber the draw orders of all nodes so that they are evenly spaced,
+     * keeping their relative order.
+     */
+    public void compactDrawOrder() {
+        IndexEntry[] entryArray = new IndexEntry[entries.size()];
+        entries.values().toArray(entryArray);
+        Arrays.sort(entryArray, DRAW_ORDER);
+
+        int spacing = DRAW_ORDER_SPACING;
+        if (entryArray.length > (Integer.MAX_VALUE / DRAW_ORDER_SPACING)) {
+            spacing = Math.max(1, Integer.MAX_VALUE / (entryArray.length + 1));
+        }
+        for (int i=0; i<entryArray.length; i++) {
+            entryArray[i].drawOrder = i * spacing;
+        }
+        nextDrawOrder = entryArray.length * spacing;
+    }
+
+    /**
+     * Remove all nodes from the index.
+     */
+    public void clear() {
+        entries.clear();
+        nextDrawOrder = 0;
+        if (status) {
+            root = new RTreeNodeLeaf();
+        }
+    }
+
+    /**
+     * Completely re-index all objects. The tree is rebuilt from scratch
+     * with a bulk load of the currently indexed nodes.
+     * Draw orders are not changed.
      */
     public void reIndex() {
-        root = new RTreeNodeLeaf();
-        ZFindFilter filter = new ZMagBoundsFindFilter(camera.getViewBounds(), camera.getMagnification());
-        ZNode node;
-        ArrayList nodes = camera.findNodes(filter);
+        if (status == false) {
+            return;
+        }
+
+        IndexEntry[] entryArray = new IndexEntry[entries.size()];
+        entries.values().toArray(entryArray);
+        build(entryArray);
+    }
+
+    /**
+     * Replace the contents of this index with the specified nodes.
+     * The tree is built bottom-up with the Sort-Tile-Recursive algorithm:
+     * the nodes are sorted into vertical slices by the x coordinate of their
+     * centers, each slice is sorted by y and packed into leaves, and the
+     * process is repeated on the leaves until a single root remains.
+     * This is much faster than adding the nodes one at a time.
+     * <P>
+     * The nodes are given draw orders matching their order in the collection.
+     * @param nodes the nodes to index.
+     */
+    public void bulkLoad(Collection nodes) {
+        entries.clear();
+        nextDrawOrder = 0;
+
+        ArrayList newEntries = new ArrayList(nodes.size());
         for (Iterator i=nodes.iterator(); i.hasNext();) {
-            node = (ZNode)i.next();
-            add(node);
+            ZNode node = (ZNode)i.next();
+            if (!entries.containsKey(node)) {
+                IndexEntry entry = new IndexEntry(node, nextDrawOrder);
+                entries.put(node, entry);
+                newEntries.add(entry);
+                nextDrawOrder = nextDrawOrder(nextDrawOrder);
+            }
+        }
+        if (nextDrawOrder == Integer.MAX_VALUE) {
+            compactDrawOrder();
         }
+
+        if (status == false) {
+            return;
+        }
+
+        IndexEntry[] entryArray = new IndexEntry[newEntries.size()];
+        newEntries.toArray(entryArray);
+        build(entryArray);
     }
 
     /**
-     * Add a node to the rtree index.
-     * @param obj the object.
+     * internal method: Build the tree from the specified entries,
+     * replacing the current tree.
+     * @param entryArray the entries to index.
+     */
+    private void build(IndexEntry[] entryArray) {
+        if (entryArray.length == 0) {
+            root = new RTreeNodeLeaf();
+            return;
+        }
+
+        BulkLoadEntry[] items = new BulkLoadEntry[entryArray.length];
+        for (int i=0; i<entryArray.length; i++) {
+            entryArray[i].bounds = getCurrentBounds(entryArray[i].node);
+            items[i] = new BulkLoadEntry(entryArray[i], entryArray[i].bounds);
+        }
+
+                                // Pack the objects into leaves, and then keep
+                                // packing each level until there is a single root.
+        RTreeNode[] level = packLevel(items, true);
+        while (level.length > 1) {
+            items = new BulkLoadEntry[level.length];
+            for (int i=0; i<level.length; i++) {
+                items[i] = new BulkLoadEntry(level[i], level[i].getRegion());
+            }
+            level = packLevel(items, false);
+        }
+
+        root = level[0];
+        root.parent = null;
+    }
+
+    /**
+     * internal method: Pack one level of the tree using Sort-Tile-Recursive.
+     * Entries are distributed evenly so that no node has fewer than the
+     * minimum number of children unless the whole level fits in one node.
+     * @param entries the index entries (or tree nodes) to pack.
+     * @param leaves true if the entries are index entries and leaves should be created.
+     * @return the new nodes.
+     */
+    private RTreeNode[] packLevel(BulkLoadEntry[] entries, boolean leaves) {
+        int numEntries = entries.length;
+        int aMaxChildren = getMaxChildren();
+        int numNodes = (numEntries + aMaxChildren - 1) / aMaxChildren;
+        int numSlices = (int)Math.ceil(Math.sqrt(numNodes));
+        ArrayList result = new ArrayList(numNodes + numSlices);
+
+        Arrays.sort(entries, X_ORDER);
+        for (int s=0; s<numSlices; s++) {
+            int sliceStart = (int)(((long)numEntries * s) / numSlices);
+            int sliceEnd = (int)(((long)numEntries * (s + 1)) / numSlices);
+            int sliceSize = sliceEnd - sliceStart;
+            if (sliceSize == 0) {
+                continue;
+            }
+
+            Arrays.sort(entries, sliceStart, sliceEnd, Y_ORDER);
+            int sliceNodes = (sliceSize + aMaxChildren - 1) / aMaxChildren;
+            for (int n=0; n<sliceNodes; n++) {
+                int from = sliceStart + (sliceSize * n) / sliceNodes;
+                int to = sliceStart + (sliceSize * (n + 1)) / sliceNodes;
+                RTreeNode node;
+                if (leaves) {
+                    node = new RTreeNodeLeaf();
+                    for (int i=from; i<to; i++) {
+                        ((RTreeNodeLeaf)node).add((IndexEntry)entries[i].item);
+                    }
+                } else {
+                    node = new RTreeNodeInternal();
+                    for (int i=from; i<to; i++) {
+                        node.add((RTreeNode)entries[i].item);
+                    }
+                }
+                result.add(node);
+            }
+        }
+
+        RTreeNode[] nodes = new RTreeNode[result.size()];
+        result.toArray(nodes);
+        return nodes;
+    }
+
+    /**
+     * Add a node to the rtree index. The node is drawn after
+     * all nodes already in the index.
+     * @param node the node.
      */
   public void addNode(ZNode node) {
-    add(node);
-    drawOrder.put(node, new Integer(drawOrder.size()));
+    if (nextDrawOrder == Integer.MAX_VALUE) {
+      compactDrawOrder();
+    }
+    addNode(node, nextDrawOrder);
   }
 
     /**
-     * internal method: Add a node to the rtree index.
-     * @param obj the object.
+     * Add a node to the rtree index with the specified draw order.
+     * If the node is already indexed, its draw order is changed and
+     * its entry is moved to match its current bounds.
+     * @param node the node.
+     * @param order the draw order, which must not be negative.
+     */
+    public void addNode(ZNode node, int order) {
+        if (updateNode(node)) {
+            setDrawOrder(node, order);
+            return;
+        }
+
+        IndexEntry entry = (IndexEntry)entries.get(node);
+        if (entry == null) {
+            entry = new IndexEntry(node, order);
+            entries.put(node, entry);
+        }
+        entry.drawOrder = order;
+        if (order >= nextDrawOrder) {
+            nextDrawOrder = nextDrawOrder(order);
+        }
+        add(entry);
+    }
+
+    /**
+     * internal method: Add an entry to the rtree index.
+     * @param entry the entry.
      */
-    protected void add(ZNode obj) {
+    private void add(IndexEntry entry) {
         boolean split;
 
         if (status == false) {
             return;
         }
 
+        entry.bounds = getCurrentBounds(entry.node);
         RTreeNode nodeArray[] = new RTreeNode[2];
-        split = root.add(obj, nodeArray);
+        split = root.add(entry, nodeArray);
         if (split) {
                                 // Root was split, need to add a new root
             root = new RTreeNodeInternal();
@@ -206,71 +582,131 @@ public class ZSpatialIndex implements Serializable {
         }
     }
 
+    /**
+     * Update the index entry of a node whose bounds have changed.
+     * If the node's new bounds still fit within the region of the leaf that holds it,
+     * the entry is updated in place and the regions above it are tightened.
+     * Otherwise the entry is moved to a better place in the tree.
+     * The draw order of the node is not changed.
+     * @param node the node whose bounds changed.
+     * @return true if the node was found in the index, false otherwise.
+     */
+    public boolean updateNode(ZNode node) {
+        if (status == false) {
+            return false;
+        }
+
+        IndexEntry entry = (IndexEntry)entries.get(node);
+        if ((entry == null) || (entry.leaf == null)) {
+            return false;
+        }
+
+        RTreeNodeLeaf leaf = entry.leaf;
+        Rectangle2D newBounds = getCurrentBounds(node);
+        if (leaf.getRegion().contains(newBounds)) {
+                                // Entry stays in the same leaf, just tighten
+                                // the regions on the path to the root.
+            entry.bounds = newBounds;
+            RTreeNode n = leaf;
+            while (n != null) {
+                n.updateRegion();
+                n = n.parent;
+            }
+        } else {
+            remove(entry);
+            add(entry);
+        }
+        return true;
+    }
+
     /**
      * Remove an object from the index.
      * Return true if object was found, and thus removed.
      * @param obj the object to be removed.
      */
   public boolean removeNode(ZNode node) {
-    boolean result = remove(node);
-    if (result) {
-      drawOrder.remove(node);
+    IndexEntry entry = (IndexEntry)entries.remove(node);
+    if (entry == null) {
+      return(false);
     }
-    return(result);
+    remove(entry);
+    return(true);
   }
 
     /**
-     * internal method: Remove an object from the index.
-     * Return true if object was found, and thus removed.
-     * @param obj the object to be removed.
+     * internal method: Remove an entry from the tree.
+     * Return true if entry was found, and thus removed.
+     * @param entry the entry to be removed.
      */
-    protected boolean remove(ZNode obj) {
-        boolean rc;
-        RTreeNode node;
-        ArrayList reinsertList = new ArrayList();
-        ArrayList objList = new ArrayList();
-
+    private boolean remove(IndexEntry entry) {
         if (status == false) {
             return(false);
         }
 
-        rc = root.remove(obj, reinsertList);
-        if (rc) {
-                                // Object was removed.
-                                // Check if root has now just one child.
-                                // If so, make child the new root
-            if ((root.getNumRegions() == 1) && (!root.isLeaf())) {
-                RTreeNode oldRoot;
-                oldRoot = root;
-                root = ((RTreeNodeInternal)root).getChildNode(0);
-            }
+        RTreeNodeLeaf leaf = entry.leaf;
+        if (leaf == null) {
+            return(false);
+        }
 
-                                // Now, reinsert nodes that were removed
-                                // because they had two few members.
-                                // Start by extracting objects
-            Object reinsertListArray[] = reinsertList.toArray();
-            for (int i=0; i<reinsertListArray.length; i++) {
-                ((RTreeNode)reinsertListArray[i]).extractObjs(objList);
-            }
+        leaf.remove(entry);
+        condenseTree(leaf);
+
+        return(true);
+    }
 
-                                // Finally, reinsert objects
-            Object objListArray[] = objList.toArray();
-            for (int i=0; i<objListArray.length; i++) {
-                add((ZNode)objListArray[i]);
+    /**
+     * internal method: Walk from a leaf that just had an object removed up to the root,
+     * removing nodes that have too few children and tightening the regions of the rest.
+     * The objects of removed nodes are reinserted afterwards.
+     * @param leaf the leaf an object was removed from.
+     */
+    private void condenseTree(RTreeNodeLeaf leaf) {
+        ArrayList reinsertList = new ArrayList();
+        int aMinChildren = getMinChildren();
+        RTreeNode node = leaf;
+
+        while (node != root) {
+            RTreeNodeInternal parent = node.parent;
+            if (node.getNumRegions() < aMinChildren) {
+                                // Node is now too small, so remove it and reinsert afterwards
+                parent.remove(node);
+                reinsertList.add(node);
+            } else {
+                node.updateRegion();
             }
+            node = parent;
+        }
+        root.updateRegion();
 
+                                // Check if root has now just one child.
+                                // If so, make child the new root
+        while ((!root.isLeaf()) && (root.getNumRegions() == 1)) {
+            root = ((RTreeNodeInternal)root).getChildNode(0);
+            root.parent = null;
+        }
+        if ((!root.isLeaf()) && (root.getNumRegions() == 0)) {
+            root = new RTreeNodeLeaf();
         }
 
-        return(rc);
+                                // Now, reinsert objects of nodes that were removed
+                                // because they had two few members.
+        ArrayList objList = new ArrayList();
+        for (int i=0; i<reinsertList.size(); i++) {
+            ((RTreeNode)reinsertList.get(i)).extractObjs(objList);
+        }
+        for (int i=0; i<objList.size(); i++) {
+            add((IndexEntry)objList.get(i));
+        }
     }
 
+    /**
+     * Orders indexed nodes by their draw order.
+     */
     public class DrawOrderComp implements Comparator {
         public int compare(Object a, Object b) {
-            ZNode nodeA = (ZNode)a;
-            ZNode nodeB = (ZNode)b;
-            Integer valA = (Integer)drawOrder.get(nodeA);
-            Integer valB = (Integer)drawOrder.get(nodeB);
-            return valA.compareTo(valB);
+            int valA = getDrawOrder((ZNode)a);
+            int valB = getDrawOrder((ZNode)b);
+            return (valA < valB) ? -1 : ((valA > valB) ? 1 : 0);
         }
     }
 
@@ -298,16 +734,23 @@ public class ZSpatialIndex implements Serializable {
         }
         result.clear();
 
-        nodesSearched = 0;
-        root.queryPoint(result, pt, minSize, currentMag);
-
-        Object resultArray[] = result.toArray();
-        Arrays.sort(resultArray, doc);
+        searchPoint(pt, minSize, currentMag);
+        copyResults(result);
+    }
 
-        result.clear();
-        for (int i=0; i<resultArray.length; i++) {
-            result.add(resultArray[i]);
-        }
+    /**
+     * Find objects larger than a minimum size that overlap a point.
+     * The objects are stored, sorted by draw order, in a buffer that is reused
+     * by every query; see {@link #getQueryResultsReference}.
+     * @param pt the point.
+     * @param minSize miminum size of the objects to be found.
+     * @param currentMag the current magnification.
+     * @return the number of objects found.
+     */
+    public int queryPoint(Point2D pt, double minSize, double currentMag) {
+        searchPoint(pt, minSize, currentMag);
+        copyResults();
+        return queryCount;
     }
 
     /**
@@ -331,17 +774,226 @@ public class ZSpatialIndex implements Serializable {
         if (status == false) {
             return;
         }
-
         result.clear();
+
+        searchWindow(queryBBox, minSize, currentMag);
+        copyResults(result);
+    }
+
+    /**
+     * Find objects larger than a minimum size that overlap a bounding rectangle.
+     * The objects are stored, sorted by draw order, in a buffer that is reused
+     * by every query; see {@link #getQueryResultsReference}.
+     * @param queryBBox the bounding box.
+     * @param minSize miminum size of the objects to be found.
+     * @param currentMag the current magnification.
+     * @return the number of objects found.
+     */
+    public int queryWindow(Rectangle2D queryBBox, double minSize, double currentMag) {
+        searchWindow(queryBBox, minSize, currentMag);
+        copyResults();
+        return queryCount;
+    }
+
+    /**
+     * internal method: Find the entries larger than a minimum size that overlap a point,
+     * sorted by draw order.
+     */
+    private void searchPoint(Point2D pt, double minSize, double currentMag) {
+        queryCount = 0;
         nodesSearched = 0;
-        root.queryWindow(result, queryBBox, minSize, currentMag);
+        if (status == false) {
+            return;
+        }
 
-        Object resultArray[] = result.toArray();
-        Arrays.sort(resultArray, doc);
+        root.queryPoint(pt, minSize, currentMag);
+        sortByDrawOrder(queryEntries, 0, queryCount - 1);
+    }
 
-        result.clear();
-        for (int i=0; i<resultArray.length; i++) {
-            result.add(resultArray[i]);
+    /**
+     * internal method: Find the entries larger than a minimum size that overlap a
+     * bounding rectangle, sorted by draw order, and record the regions that were
+     * skipped because they were too small.
+     */
+    private void searchWindow(Rectangle2D queryBBox, double minSize, double currentMag) {
+        queryCount = 0;
+        nodesSearched = 0;
+        for (int i=0; i<prunedCount; i++) {
+            prunedRegions[i] = null;
+        }
+        prunedCount = 0;
+        if (status == false) {
+            return;
+        }
+
+        root.queryWindow(queryBBox, minSize, currentMag);
+        sortByDrawOrder(queryEntries, 0, queryCount - 1);
+    }
+
+    /**
+     * Return a reference to the results of the most recent query, sorted by draw order.
+     * Only the first n entries are valid, where n is the value returned by the query.
+     * The array is reused by the next query, so it must not be modified or kept.
+     * Queries that return their results in a list do not change it.
+     * @return the nodes found by the most recent query.
+     */
+    public ZNode[] getQueryResultsReference() {
+        return queryNodes;
+    }
+
+    /**
+     * Return the number of regions skipped by the most recent window query
+     * because everything in them was smaller than the minimum size.
+     * @return the number of regions.
+     */
+    public int getNumPruned() {
+        return prunedCount;
+    }
+
+    /**
+     * Return a reference to the regions skipped by the most recent window query
+     * because everything in them was smaller than the minimum size. Each region is
+     * the bounds of a subtree of the index, or of a single node.
+     * Only the first n entries are valid, where n is the value of {@link #getNumPruned}.
+     * The array and its rectangles belong to the index, so they must not be modified or kept.
+     * @return the regions skipped by the most recent window query.
+     */
+    public Rectangle2D[] getPrunedRegionsReference() {
+        return prunedRegions;
+    }
+
+    /**
+     * Return a reference to the number of nodes in each region skipped by the
+     * most recent window query. See {@link #getPrunedRegionsReference}.
+     * @return the number of nodes in each region.
+     */
+    public int[] getPrunedSizesReference() {
+        return prunedSizes;
+    }
+
+    /**
+     * Render proxies, with the level of detail policy, for the regions skipped by
+     * the most recent window query. The Graphics2D of the render context must be
+     * set up to draw in the coordinate system of the index.
+     * Nothing is rendered if there is no level of detail policy.
+     * @param renderContext The graphics context to use for rendering.
+     */
+    public void renderPrunedProxies(ZRenderContext renderContext) {
+        if (levelOfDetailPolicy == null) {
+            return;
+        }
+        for (int i=0; i<prunedCount; i++) {
+            renderContext.renderProxy(levelOfDetailPolicy, prunedRegions[i], prunedSizes[i]);
+        }
+    }
+
+    /**
+     * internal method: Record a region skipped by the current window query.
+     * @param region the region.
+     * @param size the number of nodes in the region.
+     */
+    private void addPruned(Rectangle2D region, int size) {
+        if (prunedCount == prunedRegions.length) {
+            Rectangle2D[] newRegions = new Rectangle2D[prunedCount * 2];
+            System.arraycopy(prunedRegions, 0, newRegions, 0, prunedCount);
+            prunedRegions = newRegions;
+            int[] newSizes = new int[prunedCount * 2];
+            System.arraycopy(prunedSizes, 0, newSizes, 0, prunedCount);
+            prunedSizes = newSizes;
+        }
+        prunedRegions[prunedCount] = region;
+        prunedSizes[prunedCount] = size;
+        prunedCount++;
+    }
+
+    /**
+     * internal method: Record an entry found by the current query.
+     * @param entry the entry.
+     */
+    private void addQueryResult(IndexEntry entry) {
+        if (queryCount == queryEntries.length) {
+            IndexEntry[] newEntries = new IndexEntry[queryCount * 2];
+            System.arraycopy(queryEntries, 0, newEntries, 0, queryCount);
+            queryEntries = newEntries;
+        }
+        queryEntries[queryCount++] = entry;
+    }
+
+    /**
+     * internal method: Copy the nodes of the entries found by the current query
+     * to the result buffer.
+     */
+    private void copyResults() {
+        if (queryNodes.length < queryEntries.length) {
+            queryNodes = new ZNode[queryEntries.length];
+        }
+        for (int i=0; i<queryCount; i++) {
+            queryNodes[i] = queryEntries[i].node;
+            queryEntries[i] = null;
+        }
+        for (int i=queryCount; (i<queryNodes.length) && (queryNodes[i] != null); i++) {
+            queryNodes[i] = null;
+        }
+    }
+
+    /**
+     * internal method: Copy the nodes of the entries found by the current query
+     * to a list, leaving the result buffer alone.
+     * @param result the list.
+     */
+    private void copyResults(ArrayList result) {
+        for (int i=0; i<queryCount; i++) {
+            result.add(queryEntries[i].node);
+            queryEntries[i] = null;
+        }
+    }
+
+    /**
+     * internal method: Sort a range of entries by draw order. This works directly on
+     * the int draw order of each entry, so no comparator or lookup is needed.
+     * @param a the entries.
+     * @param lo index of the first entry to sort.
+     * @param hi index of the last entry to sort.
+     */
+    private static void sortByDrawOrder(IndexEntry[] a, int lo, int hi) {
+        while (hi - lo > 12) {
+                                // Quicksort large ranges, recursing on the smaller half
+            int pivot = a[(lo + hi) >>> 1].drawOrder;
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i].drawOrder < pivot) {
+                    i++;
+                }
+                while (a[j].drawOrder > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    IndexEntry tmp = a[i];
+                    a[i] = a[j];
+                    a[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (j - lo < hi - i) {
+                sortByDrawOrder(a, lo, j);
+                lo = i;
+            } else {
+                sortByDrawOrder(a, i, hi);
+                hi = j;
+            }
+        }
+                                // Insertion sort small ranges
+        for (int i=lo + 1; i<=hi; i++) {
+            IndexEntry entry = a[i];
+            int order = entry.drawOrder;
+            int j = i - 1;
+            while ((j >= lo) && (a[j].drawOrder > order)) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = entry;
         }
     }
 
@@ -393,17 +1045,54 @@ public class ZSpatialIndex implements Serializable {
     /**
      * Return local bounds for an indexed object, modified by any transform
      * apearing between the node and it's group node.
+     * Subclasses may override this to index nodes in another coordinate system.
      */
-    private ZBounds getCurrentBounds(ZNode obj) {
+    protected ZBounds getCurrentBounds(ZNode obj) {
         ZBounds bbox;
         bbox = obj.getBounds();
         if (obj.editor().hasTransformGroup()) {
             bbox.transform(obj.editor().getTransformGroup().getTransform());
         }
-        bbox.transform(groupNodeTransform);
+        if (!getGroupNodeTransform().isIdentity()) {
+            bbox.transform(getGroupNodeTransform());
+        }
         return(bbox);
     }
 
+    /**
+     * internal class: An indexed node, with its bounds, draw order,
+     * and the r-tree leaf that holds it.
+     */
+    static class IndexEntry {
+        ZNode node;
+        Rectangle2D bounds;
+        int drawOrder;
+        RTreeNodeLeaf leaf;
+
+        IndexEntry(ZNode node, int drawOrder) {
+            this.node = node;
+            this.drawOrder = drawOrder;
+        }
+    }
+
+    /**
+     * internal class: An index entry (or a tree node) and its bounds,
+     * used while bulk loading the tree.
+     */
+    private static class BulkLoadEntry {
+        Object item;
+        Rectangle2D bounds;
+        double centerX;
+        double centerY;
+
+        BulkLoadEntry(Object item, Rectangle2D bounds) {
+            this.item = item;
+            this.bounds = bounds;
+            centerX = bounds.getCenterX();
+            centerY = bounds.getCenterY();
+        }
+    }
+
     //****************************************************************************
     //
     //       Inner Classes: RTreeNode, RTreeNodeInternal, RTreeNodeLeaf
@@ -415,28 +1104,12 @@ public class ZSpatialIndex implements Serializable {
         protected int numChildren;
 
         RTreeNodeInternal() {
-            int i;
-            int aMaxChildren;
-
-            aMaxChildren = getMaxChildren();
             numChildren = 0;
-            child = new RTreeNode[aMaxChildren];
-            for (i=0; i<aMaxChildren; i++) {
-                child[i] = null;
-            }
+            child = new RTreeNode[getMaxChildren()];
         }
 
         RTreeNodeInternal(RTreeNode node) {
-            int i;
-            int aMaxChildren;
-
-            aMaxChildren = getMaxChildren();
-            numChildren = 0;
-            child = new RTreeNode[aMaxChildren];
-            for (i=0; i<aMaxChildren; i++) {
-                child[i] = null;
-            }
-
+            this();
             add(node);
         }
 
@@ -481,15 +1154,6 @@ public class ZSpatialIndex implements Serializable {
             }
         }
 
-        /**
-         * Objects can not be added to internal nodes.
-         * @param the object
-         */
-        void add(ZNode obj) {
-            System.err.println("add(): ERROR: Can't add object directly to internal node");
-            System.exit(1);
-        }
-
         /**
          * Add the specified node to be a child of the current node.
          * If this node is already full, this will result in a fatal error.
@@ -502,9 +1166,31 @@ public class ZSpatialIndex implements Serializable {
             }
             child[numChildren] = node;
             numChildren++;
+            node.parent = this;
             updateRegion();
         }
 
+        /**
+         * Remove the specified child node from this node.
+         * The region of this node is not updated.
+         * @param node A child node
+         */
+        void remove(RTreeNode node) {
+            int i, j;
+
+            for (i=0; i<numChildren; i++) {
+                if (child[i] == node) {
+                    for (j=i; j<(numChildren - 1); j++) {
+                        child[j] = child[j + 1];
+                    }
+                    numChildren--;
+                    child[numChildren] = null;
+                    node.parent = null;
+                    break;
+                }
+            }
+        }
+
         /**
          * Add object to the sub-tree starting at this node
          * If that results in a split, this will return TRUE,
@@ -512,10 +1198,10 @@ public class ZSpatialIndex implements Serializable {
          * the existing children plus the new one.
          * NOTE: It is up to the caller to replace this node
          * with the two new ones in the case of a split.
-         * @param obj the object
+         * @param entry the entry
          * @param nodeArray sub-tree
          */
-        boolean add(ZNode obj, RTreeNode[] nodeArray) {
+        boolean add(IndexEntry entry, RTreeNode[] nodeArray) {
             int i;
             boolean split = false;
             boolean first = true;
@@ -530,17 +1216,12 @@ public class ZSpatialIndex implements Serializable {
             double minExpansion=0;
 
             double expansion1, expansion2;
-            Rectangle2D bbox;
             RTreeNode nodeToAdd;
             RTreeNode node1, node2;
 
-            node1 = nodeArray[0];
-            node2 = nodeArray[1];
-
                                 // Determine appropriate child and descend tree
-            bbox = getCurrentBounds(obj);
             for (i=0; i<numChildren; i++) {
-                expansion = child[i].computeExpansion(bbox);
+                expansion = child[i].computeExpansion(entry.bounds);
                 if (first) {
                     minExpansion = expansion;
                     aChild = i;
@@ -555,9 +1236,10 @@ public class ZSpatialIndex implements Serializable {
                                 // Best child to add obj to has been found, so
                                 // recursively add object to that region
 
-            if (child[aChild].add(obj, nodeArray)) {
+            if (child[aChild].add(entry, nodeArray)) {
                                 // Adding caused a split, so add new nodes to self
                 child[aChild] = nodeArray[0];
+                nodeArray[0].parent = this;
                 if (numChildren == getMaxChildren()) {
                                 // Self is full, so split self, and add extra node
                                 // to appropriate new node
@@ -646,59 +1328,26 @@ public class ZSpatialIndex implements Serializable {
             nodeArray[1] = node2;
         }
 
-        /**
-         * Remove object from the subtree starting at this node
-         * Return true if object was found, and thus removed.
-         * @param obj the object
-         * @param reinsertList
-         * @return true if object was removed, false otherwise.
-         */
-        protected boolean remove(ZNode obj, ArrayList reinsertList) {
-            int i, j;
-            int aMinChildren;
-            boolean rc = false;
-
-                                // Try to remove object from each child region
-                                // that overlaps object
-            aMinChildren = getMinChildren();
-            for (i=0; i<numChildren; i++) {
-
-                Rectangle2D reg = child[i].getRegion();
-                Rectangle2D glob = getCurrentBounds(obj);
-                boolean overlaps = ! (reg.createUnion(glob)).isEmpty();
-                if (overlaps) {
-                    rc = child[i].remove(obj, reinsertList);
-                    if (rc) {
-                        if (child[i].getNumRegions() < aMinChildren) {
-                                // Child is now too small, so remove it and reinsert afterwards
-                            reinsertList.add(child[i]);
-                            for (j=i; j<(numChildren - 1); j++) {
-                                child[j] = child[j + 1];
-                            }
-                            numChildren--;
-                        }
-                        updateRegion();
-                        break;
-                    }
-                }
-            }
-
-            return(rc);
-        }
-
         /**
          * Update region's bounding box to match members
          */
         void updateRegion() {
             int i;
 
+            maxExtent = 0;
+            size = 0;
             if (numChildren == 0) {
                 region.setRect(0, 0, 0, 0);
+                return;
             }
 
-            region = child[0].getRegion();
-            for (i=1; i<numChildren; i++) {
-                region = (Rectangle2D)region.createUnion(child[i].getRegion());
+            region.setRect(child[0].getRegion());
+            for (i=0; i<numChildren; i++) {
+                if (i > 0) {
+                    Rectangle2D.union(region, child[i].getRegion(), region);
+                }
+                maxExtent = Math.max(maxExtent, child[i].maxExtent);
+                size += child[i].size;
             }
         }
 
@@ -742,22 +1391,12 @@ public class ZSpatialIndex implements Serializable {
         }
 
         /**
-         * Return all objects that overlap a point.
-         * @param result a list of the objects.
-         * @param pt the point
-         */
-        void queryPoint(ArrayList result, Point2D pt) {
-            queryPoint(result, pt, 0, 1);
-        }
-
-        /**
-         * Return objects larger than a minimum size that overlap a point.
-         * @param result a list of the objects.
+         * Find objects larger than a minimum size that overlap a point.
          * @param pt the point
          * @param minSize the minimum dimension of objects found.
          * @param currentMag the current magnification.
          */
-        void queryPoint(ArrayList result, Point2D pt, double minSize, double currentMag) {
+        void queryPoint(Point2D pt, double minSize, double currentMag) {
             int i;
             Rectangle2D bbox;
 
@@ -765,31 +1404,22 @@ public class ZSpatialIndex implements Serializable {
             for (i=0; i<numChildren; i++) {
                 incrementNodesSearched();
                 bbox = child[i].getRegion();
-                double maxDim = Math.max(bbox.getHeight(), bbox.getWidth()) * currentMag;
+                double maxDim = child[i].maxExtent * currentMag;
 
                 if (bbox.contains(pt.getX(), pt.getY()) &&
                     (maxDim >= minSize)) {
-                    child[i].queryPoint(result, pt, minSize, currentMag);
+                    child[i].queryPoint(pt, minSize, currentMag);
                 }
             }
         }
 
         /**
-         * Return all objects that overlap a bounding rectangle.
-         * @param result the objects
-         * @param queryBBox the bounding box
-         */
-        void queryWindow(ArrayList result, Rectangle2D queryBBox) {
-            queryWindow(result, queryBBox, 0, 1);
-        }
-
-        /**
-         * Return objects overlapping a bounding rectangle.
-         * @param result the objects
+         * Find objects overlapping a bounding rectangle.
          * @param queryBBox the bounding box
          * @param minSize the minimum dimension of objects found.
+         * @param currentMag the current magnification.
          */
-        void queryWindow(ArrayList result, Rectangle2D queryBBox, double minSize, double currentMag) {
+        void queryWindow(Rectangle2D queryBBox, double minSize, double currentMag) {
             int i;
             Rectangle2D bbox;
 
@@ -797,11 +1427,17 @@ public class ZSpatialIndex implements Serializable {
             for (i=0; i<numChildren; i++) {
                 incrementNodesSearched();
                 bbox = child[i].getRegion();
-                double maxDim = Math.max(bbox.getHeight(), bbox.getWidth()) * currentMag;
+                                // The largest node below the child decides
+                                // whether anything there is big enough
+                double maxDim = child[i].maxExtent * currentMag;
                 boolean overlaps = bbox.intersects(queryBBox.getX(), queryBBox.getY(), queryBBox.getWidth(), queryBBox.getHeight());
 
-                if (overlaps && (maxDim >= minSize)) {
-                    child[i].queryWindow(result, queryBBox, minSize, currentMag);
+                if (overlaps) {
+                    if (maxDim >= minSize) {
+                        child[i].queryWindow(queryBBox, minSize, currentMag);
+                    } else {
+                        addPruned(bbox, child[i].size);
+                    }
                 }
             }
         }
@@ -809,32 +1445,16 @@ public class ZSpatialIndex implements Serializable {
 
 class RTreeNodeLeaf extends RTreeNode {
     int numObjs;
-    ZNode[] object;
+    IndexEntry[] object;
 
     RTreeNodeLeaf() {
-        int i;
-        int aMaxChildren;
-
-        aMaxChildren = getMaxChildren();
         numObjs = 0;
-        object = new ZNode[aMaxChildren];
-        for (i=0; i<aMaxChildren; i++) {
-            object[i] = new ZNode();
-        }
+        object = new IndexEntry[getMaxChildren()];
     }
 
-    RTreeNodeLeaf(ZNode obj) {
-        int i;
-        int aMaxChildren;
-
-        aMaxChildren = getMaxChildren();
-        numObjs = 0;
-        object = new ZNode[aMaxChildren];
-        for (i=0; i<aMaxChildren; i++) {
-            object[i] = new ZNode();
-        }
-
-        add(obj);
+    RTreeNodeLeaf(IndexEntry entry) {
+        this();
+        add(entry);
     }
 
     /**
@@ -860,25 +1480,26 @@ class RTreeNodeLeaf extends RTreeNode {
      */
     Rectangle2D getChildRegion(int regionNum) {
         if (regionNum < numObjs) {
-            return(getCurrentBounds(object[regionNum]));
+            return(object[regionNum].bounds);
         } else {
             return(null);
         }
     }
 
     /**
-     * Add the specified object to be a member of the current node.
+     * Add the specified entry to be a member of the current node.
      * If this node is already full, this will result in a fatal error.
-     * @param obj the object
+     * @param entry the entry
      */
-    void add(ZNode obj) {
+    void add(IndexEntry entry) {
         if (numObjs == getMaxChildren()) {
             System.err.println("add(): ERROR: Node is full, can't add object");
             System.exit(1);
         }
 
-        object[numObjs] = obj;
+        object[numObjs] = entry;
         numObjs++;
+        entry.leaf = this;
         updateRegion();
     }
 
@@ -899,25 +1520,25 @@ class RTreeNodeLeaf extends RTreeNode {
      * the existing children plus the new one.
      * NOTE: It is up to the caller to replace this node
      * with the two new ones in the case of a split.
-     * @param obj the object to add
+     * @param entry the entry to add
      * @param nodeArray the sub-tree
      */
-    boolean add(ZNode obj, RTreeNode[] nodeArray) {
+    boolean add(IndexEntry entry, RTreeNode[] nodeArray) {
         double expansion1, expansion2;
         boolean split;
-        RTreeNode node1, node2;
+        RTreeNodeLeaf node1, node2;
                                 // Determine if node is full
         if (numObjs == getMaxChildren()) {
                                 // Node is full, so split
             split(nodeArray);
-            node1 = nodeArray[0];
-            node2 = nodeArray[1];
-            expansion1 = node1.computeExpansion(getCurrentBounds(obj));
-            expansion2 = node2.computeExpansion(getCurrentBounds(obj));
+            node1 = (RTreeNodeLeaf)nodeArray[0];
+            node2 = (RTreeNodeLeaf)nodeArray[1];
+            expansion1 = node1.computeExpansion(entry.bounds);
+            expansion2 = node2.computeExpansion(entry.bounds);
             if (expansion1 < expansion2) {
-                node1.add(obj);
+                node1.add(entry);
             } else {
-                node2.add(obj);
+                node2.add(entry);
             }
             split = true;
             nodeArray[0] = node1;
@@ -925,7 +1546,7 @@ class RTreeNodeLeaf extends RTreeNode {
 
         } else {
                                 // Node not full, so add it
-            add(obj);
+            add(entry);
             split = false;
         }
 
@@ -982,8 +1603,8 @@ class RTreeNodeLeaf extends RTreeNode {
                 node2.add(object[i]);
             } else {
                                 // Else, compute the best place for this object
-                expansion1 = node1.computeExpansion(getCurrentBounds(object[i]));
-                expansion2 = node2.computeExpansion(getCurrentBounds(object[i]));
+                expansion1 = node1.computeExpansion(object[i].bounds);
+                expansion2 = node2.computeExpansion(object[i].bounds);
                 if (expansion1 < expansion2) {
                     node1.add(object[i]);
                 } else {
@@ -997,12 +1618,12 @@ class RTreeNodeLeaf extends RTreeNode {
     }
 
     /**
-     * Remove object from this node.
-     * Return true if object was found, and thus removed.
-     * @param obj the object
-     * @param list not used.
+     * Remove entry from this node.
+     * The region of this node is not updated.
+     * Return true if entry was found, and thus removed.
+     * @param obj the entry
      */
-    boolean remove(ZNode obj, ArrayList list) {
+    boolean remove(IndexEntry obj) {
         int i, j;
         boolean rc = false;
 
@@ -1014,7 +1635,8 @@ class RTreeNodeLeaf extends RTreeNode {
                     object[j] = object[j + 1];
                 }
                 numObjs--;
-                updateRegion();
+                object[numObjs] = null;
+                obj.leaf = null;
                 rc = true;
                 break;
             }
@@ -1028,14 +1650,22 @@ class RTreeNodeLeaf extends RTreeNode {
      */
     void updateRegion() {
         int i;
+        Rectangle2D bbox;
 
+        maxExtent = 0;
+        size = numObjs;
         if (numObjs == 0) {
             region.setRect(0, 0, 0, 0);
+            return;
         }
 
-        region = getCurrentBounds(object[0]);
-        for (i=1; i<numObjs; i++) {
-            region = (Rectangle2D)region.createUnion(getCurrentBounds(object[i]));
+        region.setRect(object[0].bounds);
+        for (i=0; i<numObjs; i++) {
+            bbox = object[i].bounds;
+            if (i > 0) {
+                Rectangle2D.union(region, bbox, region);
+            }
+            maxExtent = Math.max(maxExtent, Math.max(bbox.getWidth(), bbox.getHeight()));
         }
     }
 
@@ -1065,8 +1695,8 @@ class RTreeNodeLeaf extends RTreeNode {
         System.out.println("");
         System.out.println("{");
         for (i=0; i<numObjs; i++) {
-            System.out.println(object[i].toString());
-            System.out.println("  "+getCurrentBounds(object[i]));
+            System.out.println(object[i].node.toString());
+            System.out.println("  "+object[i].bounds+" order: "+object[i].drawOrder);
         }
         System.out.println("}\n");
     }
@@ -1087,67 +1717,51 @@ class RTreeNodeLeaf extends RTreeNode {
     }
 
     /**
-     * Return all objects that overlap a point.
-     * @param result return list of the objects found.
-     * @param pt the point
-     */
-    void queryPoint(ArrayList result, Point2D pt) {
-        queryPoint(result, pt, 0, 1);
-    }
-
-    /**
-     * Return objects larger than a minimum size that overlap a point.
-     * @param result return list of the objects found.
+     * Find objects larger than a minimum size that overlap a point.
      * @param pt the point
      * @param minSize return only objects larger than this size
      * @param currentMag the current magnification.
      */
-    void queryPoint(ArrayList result, Point2D pt, double minSize, double currentMag) {
+    void queryPoint(Point2D pt, double minSize, double currentMag) {
         int i;
         Rectangle2D bbox;
 
                                 // Check each object
         for (i=0; i<numObjs; i++) {
             incrementNodesSearched();
-            bbox = getCurrentBounds(object[i]);
+            bbox = object[i].bounds;
             double maxDim = (Math.max(bbox.getHeight(), bbox.getWidth())) * currentMag;
             if (bbox.contains(pt.getX(), pt.getY()) &&
                 (maxDim >= minSize)) {
-                result.add(object[i]);
+                addQueryResult(object[i]);
             }
         }
     }
 
     /**
-     * Return all objects that overlap a bounding rectangle.
-     * @param result the objects returned.
-     * @param queryBBox the bounding box to search
-     */
-    void queryWindow(ArrayList result, Rectangle2D queryBBox) {
-        queryWindow(result, queryBBox, 0, 1);
-    }
-
-    /**
-     * Return objects overlapping bounding rectangle.
-     * @param result the objects returned.
+     * Find objects overlapping bounding rectangle.
      * @param queryBBox the bounding box to search
      * @param minSize return only objects larger than this size adjusted for magnification
      * @param currentMag the current magnification
      */
-    void queryWindow(ArrayList result, Rectangle2D queryBBox, double minSize, double currentMag) {
+    void queryWindow(Rectangle2D queryBBox, double minSize, double currentMag) {
         int i;
         Rectangle2D bbox;
                                 // Check each object
         for (i=0; i<numObjs; i++) {
             incrementNodesSearched();
-            bbox = getCurrentBounds(object[i]);
+            bbox = object[i].bounds;
 
             double maxDim = Math.max(bbox.getHeight(), bbox.getWidth()) * currentMag;
 
             boolean overlaps = bbox.intersects(queryBBox.getX(), queryBBox.getY(), queryBBox.getWidth(), queryBBox.getHeight());
 
-            if (overlaps && (maxDim >= minSize)) {
-                result.add(object[i]);
+            if (overlaps) {
+                if (maxDim >= minSize) {
+                    addQueryResult(object[i]);
+                } else {
+                    addPruned(bbox, 1);
+                }
             }
         }
     }
@@ -1156,18 +1770,23 @@ class RTreeNodeLeaf extends RTreeNode {
 
         Rectangle2D region;
 
+                                // Largest width or height of the nodes below this one
+        double maxExtent;
+
+                                // Number of nodes below this one
+        int size;
+
+        RTreeNodeInternal parent;
+
         RTreeNode() {
             region = new Rectangle2D.Double();
         }
 
-                                // Add object to be a member of this node
-        abstract void      add(ZNode obj);
-
                                 // Add node to be a child of this node
         abstract void      add(RTreeNode node);
 
                                 // Add object to the sub-tree starting at this node
-        abstract boolean  add(ZNode obj, RTreeNode[] nodeArray);
+        abstract boolean  add(IndexEntry entry, RTreeNode[] nodeArray);
 
                                 // Extract objects from node and add to list
         abstract void      extractObjs(ArrayList objList);
@@ -1179,22 +1798,14 @@ class RTreeNodeLeaf extends RTreeNode {
                                 // Returns true if node is a leaf node
         abstract boolean  isLeaf();
 
-                                // Remove object from the subtree starting at this node
-        abstract boolean  remove(ZNode obj, ArrayList reinsertList);
-
                                 // Update region to match members
         abstract void      updateRegion();
 
                                 // Query index to find objects within specified area
                                 // no smaller than the minimum dimension.
-        abstract void      queryPoint(ArrayList result, Point2D pt, double minSize, double currentMag);
-
-                                // no minimum dimension
-        abstract void      queryPoint(ArrayList result, Point2D pt);
-
-        abstract void      queryWindow(ArrayList result, Rectangle2D bbox, double minSize, double currentMag);
+        abstract void      queryPoint(Point2D pt, double minSize, double currentMag);
 
-        abstract void      queryWindow(ArrayList result, Rectangle2D bbox);
+        abstract void      queryWindow(Rectangle2D bbox, double minSize, double currentMag);
 
         abstract void      displaySelf(String tree);
 
@@ -1206,14 +1817,12 @@ class RTreeNodeLeaf extends RTreeNode {
          * @param aRegion the region.
          */
         double computeExpansion(Rectangle2D aRegion) {
-            Rectangle2D bbox;
-            double expansion;
-
-            bbox = region;
-            bbox.union(bbox, aRegion, bbox);
-            expansion = ((bbox.getHeight() * bbox.getWidth()) - (region.getHeight() * region.getWidth()));
+            double minX = Math.min(region.getMinX(), aRegion.getMinX());
+            double minY = Math.min(region.getMinY(), aRegion.getMinY());
+            double maxX = Math.max(region.getMaxX(), aRegion.getMaxX());
+            double maxY = Math.max(region.getMaxY(), aRegion.getMaxY());
 
-            return(expansion);
+            return(((maxX - minX) * (maxY - minY)) - (region.getHeight() * region.getWidth()));
         }
 
         /**
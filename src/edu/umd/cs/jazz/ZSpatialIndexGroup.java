@@ -30,6 +30,8 @@ import edu.umd.cs.jazz.event.*;
  * The Jazz render methods will detect the
  * ZSpatialIndexGroup node and use the appropriate rendering calls. When any
  * indexed node's bounds are changed, Jazz automatically updates the index.
+ * Changes made in a batch (see {@link ZRoot#startBatch}) are not applied one
+ * at a time, and the index is rebuilt with a bulk load at the end of the batch.
  * To return to regular rendering, simply remove the ZSpatialIndexNode:
  * <code> groupNode.editor().removeSpatialIndexGroup(); </code><P>
  *
@@ -130,9 +132,22 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
     private Hashtable nodeListenerHT;
 
     /**
-     * List to hold queryWindow results.
+     * True while the results of an index query are being used. If this node is
+     * rendered again during that time (e.g., through a camera that looks at it),
+     * the nested query must not overwrite the index's shared result buffer.
      */
-    private ArrayList queryResults = new ArrayList();
+    private transient boolean queryInProgress = false;
+
+    /**
+     * The bounds queried by a render that is not nested in another one.
+     */
+    private transient ZBounds renderBounds = null;
+
+    /**
+     * True if the index is to be rebuilt at the end of a batch of changes,
+     * so changes are not applied to it one at a time until then.
+     */
+    private transient boolean reIndexPending = false;
 
     /**
      * Constructs a new ZSpatialIndexGroup node.
@@ -160,10 +175,33 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
         nodeListenerHT = new Hashtable();
         ZGroupListener indexGroupListener = new ZGroupListener() {
             public void nodeAdded(ZGroupEvent e) {
-                indexChildren((ZGroup)e.getChild());
+                if (deferToBatch()) {
+                    return;
+                }
+                                // Group events percolate up the scenegraph, so this
+                                // is either the group of nodes to index being added
+                                // directly below us, or some node added further down.
+                if (e.getChild().getParent() == ZSpatialIndexGroup.this) {
+                    if (e.getChild() instanceof ZGroup) {
+                        indexChildren((ZGroup)e.getChild());
+                    }
+                } else {
+                    ZSpatialIndexGroup.this.nodeAdded(e);
+                }
             }
             public void nodeRemoved(ZGroupEvent e) {
-                unIndexChildren((ZGroup)e.getChild());
+                if (deferToBatch()) {
+                    return;
+                }
+                                // We have one child, so if it is gone the removed
+                                // node was the group of indexed nodes.
+                if (getNumChildren() == 0) {
+                    if (e.getChild() instanceof ZGroup) {
+                        unIndexChildren((ZGroup)e.getChild());
+                    }
+                } else {
+                    ZSpatialIndexGroup.this.nodeRemoved(e);
+                }
             }
         };
         addGroupListener(indexGroupListener);
@@ -187,10 +225,18 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
      */
     public ZSpatialIndexGroup(ZNode child, ZCamera camera) {
         rIndex = new ZSpatialIndex(camera);
-        rIndex.setGroupNodeTransform(getLocalToGlobalTransform());
+        initialize();
         insertAbove(child);
     }
 
+    /**
+     * Returns the r-tree index used by this node.
+     * @return the spatial index.
+     */
+    public ZSpatialIndex getSpatialIndex() {
+        return rIndex;
+    }
+
     /**
      * Displays the spatial index tree, for debugging.
      * @param treeName string displayed when tree is printed.
@@ -202,10 +248,163 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
     /**
      * internal method: add a node to the rtree index.
      * Add a nodeListener to it's transformGroup node, if it has one.
+     * If the node is already indexed, its entry is moved to match its current bounds.
      * @param node The node to be indexed.
      * @return true if the node was added to the index, false otherwise.
      */
     private boolean indexNode(ZNode node) {
+        if (! isIndexable(node)) {
+            return false;
+        }
+
+                                // updateNode does nothing if node is not already indexed
+        if (! rIndex.updateNode(node)) {
+            rIndex.addNode(node, 0);
+            updateDrawOrder(node);
+        }
+                                // if the indexed node has a transformGroup,
+                                // add a bounds-change listener to that transformGroup.
+        if (node.editor().hasTransformGroup()) {
+            ZTransformGroup tg = node.editor().getTransformGroup();
+            addListener(tg);
+        }
+        return true;
+    }
+
+    /**
+     * internal method: give an indexed node a draw order that matches the position
+     * of its top edit group in the children of the indexed group. The order is chosen
+     * between the orders of the nearest indexed siblings, and all nodes are
+     * renumbered only when there is no room between them.
+     * @param node The indexed node.
+     */
+    private void updateDrawOrder(ZNode node) {
+        ZGroup group = (ZGroup)getChild(0);
+        ZNode top = node.editor().getTop();
+        ZNode[] siblings = group.getChildrenReference();
+        int numSiblings = group.getNumChildren();
+
+                                // Nodes are usually added at the end, so check there first
+        int index = numSiblings - 1;
+        if ((index < 0) || (siblings[index] != top)) {
+            index = group.indexOf(top);
+        }
+        if (index < 0) {
+            return;
+        }
+
+        long lower = -1;
+        for (int i=index - 1; i>=0; i--) {
+            int order = rIndex.getDrawOrder(siblings[i].editor().getNode());
+            if (order >= 0) {
+                lower = order;
+                break;
+            }
+        }
+        long upper = Integer.MAX_VALUE;
+        for (int i=index + 1; i<numSiblings; i++) {
+            int order = rIndex.getDrawOrder(siblings[i].editor().getNode());
+            if (order >= 0) {
+                upper = order;
+                break;
+            }
+        }
+
+        if (upper - lower > 1) {
+            long order;
+            if (upper == Integer.MAX_VALUE) {
+                                // Leave room for other nodes to be added after this one
+                order = Math.min(lower + ZSpatialIndex.DRAW_ORDER_SPACING, lower + ((upper - lower) / 2));
+            } else {
+                order = lower + ((upper - lower) / 2);
+            }
+            rIndex.setDrawOrder(node, (int)order);
+        } else {
+            renumberDrawOrder(group);
+        }
+    }
+
+    /**
+     * internal method: give every indexed node a draw order, evenly spaced,
+     * that matches the order of the children of the indexed group.
+     * @param group the group whose children are indexed.
+     */
+    private void renumberDrawOrder(ZGroup group) {
+        ZNode[] siblings = group.getChildrenReference();
+        int numSiblings = group.getNumChildren();
+        int spacing = ZSpatialIndex.DRAW_ORDER_SPACING;
+        if (numSiblings > (Integer.MAX_VALUE / spacing)) {
+            spacing = Math.max(1, Integer.MAX_VALUE / (numSiblings + 1));
+        }
+        for (int i=0; i<numSiblings; i++) {
+            rIndex.setDrawOrder(siblings[i].editor().getNode(), i * spacing);
+        }
+    }
+
+    /**
+     * Notifies this node that a child of the indexed group was moved within
+     * that group's children, e.g., by {@link ZNode#raise} or {@link ZNode#lower}.
+     * The draw order of the child's node is updated to match.
+     * @param child the child that was moved.
+     */
+    void childReordered(ZNode child) {
+        if (! rIndex.getStatus() || deferToBatch()) {
+            return;
+        }
+        ZNode node = child.editor().getNode();
+        if (rIndex.containsNode(node)) {
+            updateDrawOrder(node);
+        }
+    }
+
+    /**
+     * Rebuild the index from scratch with a bulk load of the children of the
+     * indexed group. This is done at the end of a batch of changes, rather
+     * than updating the index for each of them.
+     * @see ZRoot#endBatch
+     */
+    public void reIndex() {
+        reIndexPending = false;
+        if (! rIndex.getStatus()) {
+            return;
+        }
+        for (Enumeration e = nodeListenerHT.keys(); e.hasMoreElements();) {
+            ZTransformGroup tg = (ZTransformGroup)e.nextElement();
+            tg.removeNodeListener((ZNodeListener)nodeListenerHT.get(tg));
+        }
+        nodeListenerHT.clear();
+        if ((getNumChildren() > 0) && (getChild(0) instanceof ZGroup)) {
+            indexChildren((ZGroup)getChild(0));
+        } else {
+            rIndex.clear();
+        }
+    }
+
+    /**
+     * internal method: If a batch of changes is open on this node's root, or its
+     * events are being fired, put off updating the index until the end of the batch,
+     * when it is rebuilt with a bulk load.
+     * @return true if the update is put off.
+     * @see ZRoot#startBatch
+     */
+    private boolean deferToBatch() {
+        if (reIndexPending) {
+            return true;
+        }
+        ZRoot root = getRoot();
+        if ((root != null) && root.batchReIndex(this)) {
+            reIndexPending = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * internal method: determine if a node belongs in the rtree index.
+     * @param node The node to be checked.
+     * @return true if the node should be indexed, false otherwise.
+     */
+    private boolean isIndexable(ZNode node) {
         if (getNumChildren() == 0) {
             return false;
         }
@@ -222,20 +421,8 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
         if (node instanceof ZSelectionGroup) {
             return false;
         }
-                                // if node is a child of this group
-        if (node.editor().getTop().getParent() == getChild(0)) {
-                                // removeNode does nothing if node is not already indexed
-            rIndex.removeNode(node);
-            rIndex.addNode(node);
-                                // if the indexed node has a transformGroup,
-                                // add a bounds-change listener to that transformGroup.
-            if (node.editor().hasTransformGroup()) {
-                ZTransformGroup tg = node.editor().getTransformGroup();
-                addListener(tg);
-            }
-            return true;
-        }
-        return false;
+                                // only index children of this group
+        return (node.editor().getTop().getParent() == getChild(0));
     }
 
     /**
@@ -243,17 +430,15 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
      * already have one. If a indexed node's bounds change, it needs to be re-indexed.
      * @param tg the transformGroup node.
      */
-    public void addListener(ZTransformGroup tg) {
+    public void addListener(final ZTransformGroup tg) {
         if (! nodeListenerHT.containsKey(tg)) {
             ZNodeListener nodeListener = new ZNodeListener() {
                 public void boundsChanged(ZNodeEvent e) {
-                    ZNode pnode = e.getNode();
-                    if (pnode instanceof ZTransformGroup) {
-                        ZTransformGroup ptg = (ZTransformGroup)pnode;
-                        if (ptg.getNumChildren() > 0) {
-                            ZNode primary = pnode.editor().getNode();
-                            indexNode(primary);
-                        }
+                                // Bounds events percolate up from the nodes below
+                                // the transformGroup, so always re-index its node.
+                    if ((tg.getNumChildren() > 0) && !deferToBatch()) {
+                        ZNode primary = tg.editor().getNode();
+                        indexNode(primary);
                     }
                 }
                 public void globalBoundsChanged(ZNodeEvent e) {
@@ -286,9 +471,9 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
                 ZTransformGroup tg = node.editor().getTransformGroup();
                 ZNodeListener nodeListener = (ZNodeListener)(nodeListenerHT.get(tg));
                 if (nodeListener != null) {
-                    node.removeNodeListener(nodeListener);
+                    tg.removeNodeListener(nodeListener);
                 }
-                nodeListenerHT.remove(node);
+                nodeListenerHT.remove(tg);
             }
             return true;
         }
@@ -321,11 +506,14 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
     public void unregisterAllListeners(ZGroup group) {
         for (int i = 0; i < group.getNumChildren(); i++) {
             ZNode node = group.getChild(i).editor().getNode();
-            ZNodeListener nodeListener = (ZNodeListener) (nodeListenerHT.get(node));
-            if (nodeListener != null) {
-                node.removeNodeListener(nodeListener);
+            if (node.editor().hasTransformGroup()) {
+                ZTransformGroup tg = node.editor().getTransformGroup();
+                ZNodeListener nodeListener = (ZNodeListener) (nodeListenerHT.get(tg));
+                if (nodeListener != null) {
+                    tg.removeNodeListener(nodeListener);
+                }
+                nodeListenerHT.remove(tg);
             }
-            nodeListenerHT.remove(node);
         }
     }
 
@@ -363,10 +551,7 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
 
                 // find the children who should be picked
                 // this skips over the edit group nodes
-              queryResults.clear();
-
-                rIndex.queryWindow(queryResults, rect);
-                Object result[] = queryResults.toArray();
+                Object result[] = query(rect);
                 for (int i=(result.length - 1); i >=0; i--) {
                         // call pick on group node above the top edit group node
                         // this will pick thru the 'hasOneChild' edit
@@ -409,15 +594,49 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
                                 // Paint children
         if (rIndex.getStatus()) {
 
-            ZCamera camera = renderContext.getRenderingCamera();
-            Rectangle2D viewBounds = camera.getViewBounds();
-            rIndex.queryWindow(queryResults, camera.getViewBounds());
-            Object result[] = queryResults.toArray();
-            if (ZDebug.debugSpatialIndexing) {
-                System.out.println("ZSpatialIndexGroup: Number of objects rendered: "+result.length);
+                                // Query the visible bounds rather than the camera's view,
+                                // which may be smaller when rendering offscreen tiles.
+                                // The index is in global coordinates.
+            if (renderBounds == null) {
+                renderBounds = new ZBounds();
+            }
+            ZBounds viewBounds = queryInProgress ? new ZBounds() : renderBounds;
+            viewBounds.reset();
+            viewBounds.add(renderContext.getVisibleBounds());
+            if (!rIndex.getGroupNodeTransform().isIdentity()) {
+                viewBounds.transform(rIndex.getGroupNodeTransform());
+            }
+            ZLevelOfDetailPolicy policy = rIndex.getLevelOfDetailPolicy();
+            double minSize = 0;
+            double mag = 1;
+            if (policy != null) {
+                minSize = policy.getMinimumSize();
+                mag = renderContext.getCompositeMagnification() / ZTransformGroup.computeScale(rIndex.getGroupNodeTransform());
             }
-            for (int i=0; i<result.length; i++) {
-              ((ZNode)result[i]).editor().getTop().render(renderContext);
+
+            if (queryInProgress) {
+                                // Nested render - the shared result buffer is in use
+                Object result[] = query(viewBounds, minSize, mag);
+                renderPrunedProxies(renderContext);
+                for (int i=0; i<result.length; i++) {
+                    ((ZNode)result[i]).editor().getTop().render(renderContext);
+                }
+                return;
+            }
+
+            queryInProgress = true;
+            try {
+                int count = rIndex.queryWindow(viewBounds, minSize, mag);
+                ZNode[] result = rIndex.getQueryResultsReference();
+                renderPrunedProxies(renderContext);
+                if (ZDebug.debugSpatialIndexing) {
+                    System.out.println("ZSpatialIndexGroup: Number of objects rendered: "+count);
+                }
+                for (int i=0; i<count; i++) {
+                    result[i].editor().getTop().render(renderContext);
+                }
+            } finally {
+                queryInProgress = false;
             }
 
         } else { // not using RTree indexing
@@ -426,40 +645,74 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
     }
 
     /**
-     * Removes the ZGroup child from this ZSpatialIndexGroup. Stops listening to
-     * NodeEvents from indexed nodes, and re-initializes the rtree index.
-     * @param child the ZGroup node whose children are indexed.
-     */
-    public void removeChild(ZNode child) {
-        super.removeChild(child);
-        unregisterAllListeners((ZGroup)child);
-        rIndex = new ZSpatialIndex();
-    }
-
-    /**
-     * Index the children of the group node.
+     * Index the children of the group node. All of the children are
+     * loaded into the rtree index at once, which is much faster than
+     * adding them one at a time.
      * @param group a group node.
      */
     private void indexChildren(ZGroup group) {
         ZNode node;
         ZNode[] children = group.getChildren();
+        ArrayList nodes = new ArrayList(children.length);
         for (int i=0; i<children.length; i++) {
             node = children[i].editor().getNode();
-            indexNode(node);
+            if (isIndexable(node)) {
+                nodes.add(node);
+                if (node.editor().hasTransformGroup()) {
+                    addListener(node.editor().getTransformGroup());
+                }
+            }
         }
+        rIndex.bulkLoad(nodes);
     }
 
     /**
      * Remove all index nodes, and their attached node listeners.
+     * The rtree index is emptied, but not discarded.
      * @param group The group node whose children should be unindexed.
      */
     private void unIndexChildren(ZGroup group) {
-        ZNode node;
-        ZNode[] children = group.getChildren();
+        unregisterAllListeners(group);
+        rIndex.clear();
+    }
 
-        for (int i=0; i<children.length; i++) {
-            node = children[i].editor().getNode();
-            unIndexNode(node);
+    /**
+     * internal method: Return the indexed nodes that overlap a rectangle,
+     * in draw order. The result is a copy, so it is not affected by later queries.
+     * @param rect the rectangle.
+     * @return the nodes found.
+     */
+    private Object[] query(Rectangle2D rect) {
+        return query(rect, 0, 1);
+    }
+
+    /**
+     * internal method: Return the indexed nodes larger than a minimum size that
+     * overlap a rectangle, in draw order. The index's result buffer is not used,
+     * so this is safe while another query's results are in use.
+     */
+    private Object[] query(Rectangle2D rect, double minSize, double mag) {
+        ArrayList result = new ArrayList();
+        rIndex.queryWindow(result, rect, minSize, mag);
+        return result.toArray();
+    }
+
+    /**
+     * internal method: Render the level of detail proxies for the regions skipped
+     * by the most recent render query. The regions are in global coordinates.
+     */
+    private void renderPrunedProxies(ZRenderContext renderContext) {
+        AffineTransform inverse = rIndex.getInverseGroupNodeTransform();
+        if ((rIndex.getNumPruned() == 0) || (inverse == null)) {
+            return;
+        }
+        Graphics2D g2 = renderContext.getGraphics2D();
+        AffineTransform saveTransform = g2.getTransform();
+        try {
+            g2.transform(inverse);
+            rIndex.renderPrunedProxies(renderContext);
+        } finally {
+            g2.setTransform(saveTransform);
         }
     }
 
@@ -476,47 +729,63 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
     }
 
     /**
-     * internal method for findNodes.
+     * internal method for findNodes. Only the indexed nodes that overlap the bounds
+     * are searched, along with the group that holds them and the edit groups above them.
+     * @param filter The filter that decides whether or not to include individual nodes in the find list
+     * @param bounds The region that contains every node the filter accepts, in global coordinates.
+     * @param nodes the accumulation list (results will be place here).
+     * @return the number of nodes searched
      */
     private int find(ZFindFilter filter, ZBounds bounds, ArrayList nodes) {
+        if (!rIndex.getStatus() || (children.size() == 0)) {
+            return super.findNodes(filter, nodes);
+        }
         int nodesSearched = 1;
 
                                 // Only search if node is findable.
         if (isFindable()) {
-
-            if (rIndex.getStatus()) {
                                 // Check if this node is accepted by the filter
-                queryResults.clear();
-                rIndex.queryWindow(queryResults, bounds);
-                Object result[] = queryResults.toArray();
-                for (int i=0; i<result.length; i++) {
-                    if ((ZNode)this == (ZNode)result[i]) {
-                        nodes.add(this);
-                        break;
-                    }
-                }
+            if (filter.accept(this)) {
+                nodes.add(this);
+            }
+            if (!getChildrenFindable() || !filter.childrenFindable(this)) {
+                return nodesSearched;
+            }
 
-                                // Check node's children
-                if (getChildrenFindable() && childrenFindable(this, bounds)) {
-                    ZNode[] childrenRef = getChildrenReference();
-                    for (int i=0; i<children.size(); i++) {
-                        nodesSearched += childrenRef[i].findNodes(filter, nodes);
-                    }
-                }
+                                // Check the group whose children are indexed
+            ZNode group = getChild(0);
+            nodesSearched++;
+            if (!group.isFindable()) {
+                return nodesSearched;
+            }
+            if (filter.accept(group)) {
+                nodes.add(group);
+            }
+            if (!(group instanceof ZGroup) ||
+                !((ZGroup)group).getChildrenFindable() || !filter.childrenFindable(group)) {
+                return nodesSearched;
+            }
 
-            } else { // not using RTree indexing
-                                // Check if this node is accepted by the filter
-                if (filter.accept(this)) {
-                    nodes.add(this);
+                                // Search only the indexed nodes that overlap the bounds,
+                                // starting from their top edit group
+            if (queryInProgress) {
+                                // Nested query - the shared result buffer is in use
+                Object result[] = query(bounds);
+                for (int i=0; i<result.length; i++) {
+                    nodesSearched += ((ZNode)result[i]).editor().getTop().findNodes(filter, nodes);
                 }
+                return nodesSearched;
+            }
 
-                                // Check node's children
-                if (getChildrenFindable() && filter.childrenFindable(this)) {
-                    ZNode[] childrenRef = getChildrenReference();
-                    for (int i=0; i<children.size(); i++) {
-                        nodesSearched += childrenRef[i].findNodes(filter, nodes);
-                    }
+            queryInProgress = true;
+            try {
+                int count = rIndex.queryWindow(bounds, 0, 1);
+                ZNode[] result = rIndex.getQueryResultsReference();
+                for (int i=0; i<count; i++) {
+                    nodesSearched += result[i].editor().getTop().findNodes(filter, nodes);
                 }
+            } finally {
+                queryInProgress = false;
             }
         }
         return nodesSearched;
@@ -526,8 +795,11 @@ public class ZSpatialIndexGroup extends ZGroup implements ZGroupListener, ZSeria
      * Search from this spatialIndexGroup node down, return a list of nodes that match filter bounds.
      */
     public int findNodes(ZFindFilter filter, ArrayList nodes) {
-        if (filter instanceof ZBoundsFindFilter) {
-            ZBounds bounds = ((ZBoundsFindFilter)filter).getBounds();
+        ZBounds bounds = null;
+        if (filter instanceof ZBoundedFindFilter) {
+            bounds = ((ZBoundedFindFilter)filter).getBoundsHint();
+        }
+        if (bounds != null) {
             return(find(filter, bounds, nodes));
         } else {
             return(super.findNodes(filter, nodes));
@@ -14,7 +14,7 @@ import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import edu.umd.cs.jazz.animation.ZAlpha;
-import edu.umd.cs.jazz.animation.ZTransformAnimation;
+import edu.umd.cs.jazz.animation.ZBatchTransformAnimation;
 import edu.umd.cs.jazz.event.ZNodeEvent;
 import edu.umd.cs.jazz.event.ZNodeListener;
 import edu.umd.cs.jazz.event.ZTransformEvent;
@@ -146,7 +146,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
 	 * implementation. These two methods differ in a significant way, the old
 	 * implementation animates in a hard loop that blocks until the animation
 	 * finished, while the animation framework is timer based so it is non-
-	 * blocking.
+	 * blocking. The startAnimation methods always use the animation framework,
+	 * and return the ZBatchTransformAnimation that can be used to stop or finish
+	 * the animation, or to run code once it has finished.
 	 */
 	public static boolean ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK = false;
 	
@@ -156,13 +158,33 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
     private transient AffineTransform inverseTransform = null;
                                 // A dirty bit specifying if the inverse transform is up to date.
     private boolean inverseTransformDirty = true;
+                                // The version of this node's own transform
+    private transient int ownTransformVersion = 0;
+                                // True while reshaping because only the transform changed,
+                                // so the union of the children's bounds is still valid
+    private transient boolean transformReshape = false;
+                                // The cached transforms between this node and the root.
+                                // The local to global transform is stamped with the nearest
+                                // transform group above this node, that group's stamp, and
+                                // this node's own transform version, so that it is only
+                                // computed again when the transforms above this node change.
+                                // It is validated again whenever the global version changes.
+    private transient AffineTransform localToGlobal = null;
+    private transient int localToGlobalStamp = 0;
+    private transient int localToGlobalValidVersion;
+    private transient ZTransformGroup localToGlobalAncestor = null;
+    private transient int localToGlobalAncestorStamp;
+    private transient int localToGlobalOwnVersion;
+    private transient AffineTransform globalToLocal = null;
+    private transient int globalToLocalStamp;
 
                                 // Some thangs that get reused.
                                 // Define here for efficiency.
     private transient AffineTransform tmpTransform;
     private transient ZBounds   paintBounds;
     private transient Rectangle2D tmpRect;
-    static private double[] pts = new double[8];
+    private transient ZBounds   repaintBounds;
+    static private final double SQRT_2 = Math.sqrt(2.0);
 
     //****************************************************************************
     //
@@ -178,6 +200,7 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
         transform = new AffineTransform();
         paintBounds = new ZBounds();
         tmpRect = new Rectangle2D.Double();
+        repaintBounds = new ZBounds();
     }
 
     /**
@@ -194,6 +217,7 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
         transform = new AffineTransform();
         paintBounds = new ZBounds();
         tmpRect = new Rectangle2D.Double();
+        repaintBounds = new ZBounds();
         insertAbove(child);
     }
 
@@ -209,8 +233,12 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
         newTransform.tmpTransform = new AffineTransform();
         newTransform.inverseTransform = new AffineTransform();
         newTransform.inverseTransformDirty = true;
+        newTransform.localToGlobal = null;
+        newTransform.localToGlobalAncestor = null;
+        newTransform.globalToLocal = null;
         newTransform.paintBounds = new ZBounds();
         newTransform.tmpRect = new Rectangle2D.Double();
+        newTransform.repaintBounds = new ZBounds();
 
         return newTransform;
     }
@@ -334,14 +362,19 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
         // Fix suggested by David Wang.
         // Directly repaints the bounds when volatile
         if (!inTransaction && getVolatileBounds()) {
-            ZBounds tBounds = (ZBounds)bounds.clone();
-            transform(tBounds,getInverseTransform());
-            repaint(tBounds);
+            repaintBounds.reset();
+            repaintBounds.add(bounds);
+            transform(repaintBounds,getInverseTransform());
+            repaint(repaintBounds);
         } else {
             repaint();
         }
 
-        updateBounds();
+        if (transformReshape) {
+            updateTransformedBounds();
+        } else {
+            updateBounds();
+        }
         repaint();
     }
 
@@ -366,10 +399,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
             path.pushTransformer(this);
 
                 // Concatenate this object's transform with the one stored in the path
-            AffineTransform origTm = path.getTransform();
-            AffineTransform tm = new AffineTransform(origTm);
+            AffineTransform origTm = path.pushTransform();
+            AffineTransform tm = path.getTransformReference();
             tm.concatenate(transform);
-            path.setTransform(tm);
 
                 // Convert the rect from parent's coordinate system to local coordinates
             tmpRect.setRect(rect);
@@ -382,8 +414,10 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
                         // the path's transform may be reflecting the transform to the child that
                         // was picked, rather than the transform to this node. Reset the
                         // transform.
-                    path.setTransform(tm);
+                    tm.setTransform(origTm);
+                    tm.concatenate(transform);
                 }
+                path.popTransform();
                 return true;
             }
 
@@ -392,6 +426,7 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
                 path.setTransform(origTm);
                 path.popTransformer(this);
             }
+            path.popTransform();
         }
 
         return false;
@@ -474,13 +509,20 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
 
         transform.setTransform(newTransform);
         inverseTransformDirty = true;
+        ownTransformVersion++;
+        transformVersion++;
 
         if (hasListenerOfType(ZTransformListener.class)) {
             fireEvent(ZTransformEvent.createTransformChangedEvent(this, origTransform));
         }
 
         tmpTransform = origTransform;    // Reuse previous transform for internal temporary transform
-        reshape();
+        transformReshape = true;
+        try {
+            reshape();
+        } finally {
+            transformReshape = false;
+        }
     }
 
     /**
@@ -538,23 +580,91 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
     }
 
     /**
-     * Return the transform that converts local coordinates at this node to global coordinates
-     * at the root node.
-     * @return The concatenation of transforms from the root down to this node.
+     * Set the specified transform to the one that converts local coordinates at this
+     * node to global coordinates at the root node. The transform is cached, and is
+     * only computed again after the transform of this node or of a node above it
+     * changes, or this node is moved to a new parent.
+     * @param result The transform to set.
+     * @return The result transform.
      */
-    public AffineTransform getLocalToGlobalTransform() {
-        AffineTransform result = null;
+    public AffineTransform getLocalToGlobalTransform(AffineTransform result) {
+        result.setTransform(getLocalToGlobalTransformReference());
+        return result;
+    }
 
-        if (parent != null) {
-            result = parent.getLocalToGlobalTransform();
-            result.concatenate(transform);
-        } else {
-            result = (AffineTransform) transform.clone();
+    /**
+     * Set the specified transform to the one that converts global coordinates at the
+     * root node to local coordinates at this node.
+     * @param result The transform to set.
+     * @return The result transform.
+     */
+    public AffineTransform getGlobalToLocalTransform(AffineTransform result) {
+        AffineTransform at = getLocalToGlobalTransformReference();
+        int stamp = localToGlobalStamp;
+        if ((globalToLocal == null) || (globalToLocalStamp != stamp)) {
+            try {
+                globalToLocal = at.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                throw new ZNoninvertibleTransformException(e);
+            }
+            globalToLocalStamp = stamp;
         }
-
+        result.setTransform(globalToLocal);
         return result;
     }
 
+    /**
+     * Internal method to return the cached transform from this node to the root.
+     * Once any transform or parent has changed, the nearest transform group above
+     * this node is validated first, and the transform is only computed again if that
+     * group, its transform to the root, or this node's transform has changed.
+     */
+    private AffineTransform getLocalToGlobalTransformReference() {
+                                // Read the versions before computing, so that a change
+                                // made meanwhile leaves the cache out of date
+        int version = transformVersion;
+        if ((localToGlobal != null) && (localToGlobalValidVersion == version)) {
+            return localToGlobal;
+        }
+
+        ZTransformGroup ancestor = null;
+        for (ZNode node = parent; node != null; node = node.getParent()) {
+            if (node instanceof ZTransformGroup) {
+                ancestor = (ZTransformGroup)node;
+                break;
+            }
+        }
+        AffineTransform ancestorTransform = null;
+        int ancestorStamp = 0;
+        if (ancestor != null) {
+            ancestorTransform = ancestor.getLocalToGlobalTransformReference();
+            ancestorStamp = ancestor.localToGlobalStamp;
+        }
+        int ownVersion = ownTransformVersion;
+
+        if ((localToGlobal == null) ||
+            (localToGlobalAncestor != ancestor) ||
+            (localToGlobalAncestorStamp != ancestorStamp) ||
+            (localToGlobalOwnVersion != ownVersion)) {
+
+            if (localToGlobal == null) {
+                localToGlobal = new AffineTransform();
+            }
+            if (ancestorTransform != null) {
+                localToGlobal.setTransform(ancestorTransform);
+            } else {
+                localToGlobal.setToIdentity();
+            }
+            localToGlobal.concatenate(transform);
+            localToGlobalAncestor = ancestor;
+            localToGlobalAncestorStamp = ancestorStamp;
+            localToGlobalOwnVersion = ownVersion;
+            localToGlobalStamp++;
+        }
+        localToGlobalValidVersion = version;
+        return localToGlobal;
+    }
+
     /**
      * Internal method to compute the inverse transform based on the transform.
      * This gets called from within ZTransformGroup
@@ -1001,12 +1111,10 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * is computed by transforming a vector and seeing how its length changes.
      */
     static public double computeScale(AffineTransform at) {
-        Point2D pt1 = new Point2D.Double(0.0, 0.0);
-        Point2D pt2 = new Point2D.Double(1.0, 1.0);
-        double origDist = pt1.distance(pt2);
-        at.transform(pt1, pt1);
-        at.transform(pt2, pt2);
-        double mag = (pt1.distance(pt2) / origDist);
+                                // The vector (1, 1) transforms to (m00 + m01, m10 + m11)
+        double dx = at.getScaleX() + at.getShearX();
+        double dy = at.getShearY() + at.getScaleY();
+        double mag = Math.sqrt(dx * dx + dy * dy) / SQRT_2;
         return mag;
     }
 
@@ -1040,37 +1148,26 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * @param at The transform to use to transform the rectangle
      */
     static public void transform(Rectangle2D rect, AffineTransform at) {
-                                // First, transform all 4 corners of the rectangle
-        pts[0] = rect.getX();          // top left corner
-        pts[1] = rect.getY();
-        pts[2] = rect.getX() + rect.getWidth();  // top right corner
-        pts[3] = rect.getY();
-        pts[4] = rect.getX() + rect.getWidth();  // bottom right corner
-        pts[5] = rect.getY() + rect.getHeight();
-        pts[6] = rect.getX();          // bottom left corner
-        pts[7] = rect.getY() + rect.getHeight();
-        at.transform(pts, 0, pts, 0, 4);
-
-                                // Then, find the bounds of those 4 transformed points.
-        double minX = pts[0];
-        double minY = pts[1];
-        double maxX = pts[0];
-        double maxY = pts[1];
-        int i;
-        for (i=1; i<4; i++) {
-            if (pts[2*i] < minX) {
-                minX = pts[2*i];
-            }
-            if (pts[2*i+1] < minY) {
-                minY = pts[2*i+1];
-            }
-            if (pts[2*i] > maxX) {
-                maxX = pts[2*i];
-            }
-            if (pts[2*i+1] > maxY) {
-                maxY = pts[2*i+1];
-            }
-        }
+                                // Transform the x and y extents separately, as ZBounds.transform
+                                // does, so no temporary points are needed.
+        double x = rect.getX();
+        double y = rect.getY();
+        double m00 = at.getScaleX();
+        double m01 = at.getShearX();
+        double m10 = at.getShearY();
+        double m11 = at.getScaleY();
+        double x0 = m00 * x;
+        double x1 = m00 * (x + rect.getWidth());
+        double y0 = m01 * y;
+        double y1 = m01 * (y + rect.getHeight());
+        double minX = Math.min(x0, x1) + Math.min(y0, y1) + at.getTranslateX();
+        double maxX = Math.max(x0, x1) + Math.max(y0, y1) + at.getTranslateX();
+        x0 = m10 * x;
+        x1 = m10 * (x + rect.getWidth());
+        y0 = m11 * y;
+        y1 = m11 * (y + rect.getHeight());
+        double minY = Math.min(x0, x1) + Math.min(y0, y1) + at.getTranslateY();
+        double maxY = Math.max(x0, x1) + Math.max(y0, y1) + at.getTranslateY();
         rect.setRect(minX, minY, maxX - minX, maxY - minY);
     }
 
@@ -1085,6 +1182,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * If millis is 0, then the transform is updated once, and the scene
      * is not repainted immediately, but rather a repaint request is queued,
      * and will be processed by an event handler.
+     * Otherwise, this blocks until the animation has finished, unless
+     * ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK is true, in which case the animation
+     * runs from the animation scheduler's timer, and this returns as soon as it has started.
      * @param node The node to be animated
      * @param tx Final transformation
      * @param millis Number of milliseconds over which to perform the animation
@@ -1105,6 +1205,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * If millis is 0, then the transform is updated once, and the scene
      * is not repainted immediately, but rather a repaint request is queued,
      * and will be processed by an event handler.
+     * Otherwise, this blocks until the animation has finished, unless
+     * ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK is true, in which case the animation
+     * runs from the animation scheduler's timer, and this returns as soon as it has started.
      * <p>
      * The timing of the animation is controlled by the <tt>lerpTimeFunction</tt>.
      * This is used to specify the rate the animation occurs over time.  If this
@@ -1142,6 +1245,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * If millis is 0, then the transform is updated once, and the scene
      * is not repainted immediately, but rather a repaint request is queued,
      * and will be processed by an event handler.
+     * Otherwise, this blocks until the animation has finished, unless
+     * ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK is true, in which case the animation
+     * runs from the animation scheduler's timer, and this returns as soon as it has started.
      * <p>
      * The following code fragment demonstrates the use of this animate
      * method.  It creates three rectangles, and animates two of them
@@ -1210,6 +1316,9 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * If millis is 0, then the transform is updated once, and the scene
      * is not repainted immediately, but rather a repaint request is queued,
      * and will be processed by an event handler.
+     * Otherwise, this blocks until the animation has finished, unless
+     * ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK is true, in which case the animation
+     * runs from the animation scheduler's timer, and this returns as soon as it has started.
      * <p>
      * The timing of the animation is controlled by the <tt>lerpTimeFunction</tt>.
      * This is used to specify the rate the animation occurs over time.  If this
@@ -1265,9 +1374,93 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
      * @param millis Number of milliseconds over which to perform the animation
      * @param surface The surface to updated during animation.
      * @param lerpTimeFunction The function that determines how the timing of the animation should be calculated
+     * @see #startAnimation(ZTransformable[], AffineTransform[], int, ZDrawingSurface, ZLerp)
      */
     static public void animate(ZTransformable[] nodes, AffineTransform[] txs, int millis, ZDrawingSurface surface, ZLerp lerpTimeFunction) {
-    	
+        animate(nodes, txs, millis, surface, lerpTimeFunction, ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK);
+    }
+
+    /**
+     * Set the transform of the specified node to the specified transform, and animate
+     * the change as {@link #animate(ZTransformable, AffineTransform, int, ZDrawingSurface)} does,
+     * but from the animation scheduler's timer, and return the animation that is running it.
+     * @param node The node to be animated
+     * @param tx Final transformation
+     * @param millis Number of milliseconds over which to perform the animation
+     * @param surface The surface to updated during animation.
+     * @return the running animation, or null if the change was made without animating
+     */
+    static public ZBatchTransformAnimation startAnimation(ZTransformable node, AffineTransform tx, int millis, ZDrawingSurface surface) {
+        return startAnimation(new ZTransformable[] {node}, new AffineTransform[] {tx}, millis, surface);
+    }
+
+    /**
+     * Set the transform of the specified node to the specified transform, and animate
+     * the change as {@link #animate(ZTransformable, AffineTransform, int, ZDrawingSurface, ZLerp)} does,
+     * but from the animation scheduler's timer, and return the animation that is running it.
+     * @param node The node to be animated
+     * @param tx Final transformation
+     * @param millis Number of milliseconds over which to perform the animation
+     * @param surface The surface to updated during animation.
+     * @param lerpTimeFunction The function that determines how the timing of the animation should be calculated
+     * @return the running animation, or null if the change was made without animating
+     */
+    static public ZBatchTransformAnimation startAnimation(ZTransformable node, AffineTransform tx, int millis, ZDrawingSurface surface, ZLerp lerpTimeFunction) {
+        return startAnimation(new ZTransformable[] {node}, new AffineTransform[] {tx}, millis, surface, lerpTimeFunction);
+    }
+
+    /**
+     * Set the transforms of the specified array of nodes to the specified array of
+     * transforms, and animate the change as
+     * {@link #animate(ZTransformable[], AffineTransform[], int, ZDrawingSurface)} does,
+     * but from the animation scheduler's timer, and return the animation that is running it.
+     * @param nodes The array of nodes to be animated
+     * @param txs The array of final transformations of the nodes
+     * @param millis Number of milliseconds over which to perform the animation
+     * @param surface The surface to updated during animation.
+     * @return the running animation, or null if the change was made without animating
+     */
+    static public ZBatchTransformAnimation startAnimation(ZTransformable[] nodes, AffineTransform[] txs, int millis, ZDrawingSurface surface) {
+        return startAnimation(nodes, txs, millis, surface, new ZSISOLerp());
+    }
+
+    /**
+     * Set the transforms of the specified array of nodes to the specified array of
+     * transforms, and animate the change as
+     * {@link #animate(ZTransformable[], AffineTransform[], int, ZDrawingSurface, ZLerp)} does,
+     * and return the animation that is running it. The animation always runs from the
+     * animation scheduler's timer, whatever ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK is, so
+     * this returns as soon as it has started. The animation can be used to stop or
+     * finish the animation, or to run code once it has finished.
+     * @param nodes The array of nodes to be animated
+     * @param txs The array of final transformations of the nodes
+     * @param millis Number of milliseconds over which to perform the animation
+     * @param surface The surface to updated during animation.
+     * @param lerpTimeFunction The function that determines how the timing of the animation should be calculated
+     * @return the running animation, or null if the change was made without animating
+     */
+    static public ZBatchTransformAnimation startAnimation(ZTransformable[] nodes, AffineTransform[] txs, int millis, ZDrawingSurface surface, ZLerp lerpTimeFunction) {
+        return animate(nodes, txs, millis, surface, lerpTimeFunction, true);
+    }
+
+    /**
+     * internal method: Set the transforms of the specified nodes, and animate the
+     * change either from the animation scheduler's timer, or in a loop that blocks
+     * until the animation has finished.
+     * @return the running animation, or null if the change was made without
+     * animating, or the animation has already finished
+     */
+    static private ZBatchTransformAnimation animate(ZTransformable[] nodes, AffineTransform[] txs, int millis, ZDrawingSurface surface, ZLerp lerpTimeFunction, boolean useAnimationFramework) {
+                                // Animate all the nodes together from the animation scheduler's timer
+        if (millis > 0 && useAnimationFramework) {
+            ZBatchTransformAnimation animation = new ZBatchTransformAnimation(nodes, txs);
+            animation.setAlpha(ZAlpha.createStandardAlpha(millis));
+            animation.setLerp(lerpTimeFunction);
+            animation.setSurface(surface);
+            animation.play();
+            return animation;
+        }
+
         int i;
         int len = Math.min(nodes.length, txs.length);
         double[][] srcTx = new double[len][6];
@@ -1283,17 +1476,6 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
             txs[i].getMatrix(destTx[i]);
         }
 
-		// hack for the mac, might be useful in other cases as well. This 
-    	if (millis > 0 && ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK) {
-    		for (i = 0; i < len; i++) {
-    			ZTransformAnimation animation = new ZTransformAnimation(srcTx[i], destTx[i]);
-    			animation.setTransformTarget(nodes[i]);
-    			animation.setAlpha(ZAlpha.createStandardSlowInSlowOutAlpha(millis));    
-    			animation.play();			
-    		}
-    		return;
-    	}
-
         if (millis > 0) {
             double lerp;
             double straightLerp = millis / (1000.0 * 30.0);   // Estimate first transition at 30 frames per second
@@ -1351,6 +1533,7 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
             surface.paintImmediately();
 	        surface.setAnimating(false);
         }	
+        return null;
     }
 
     /**
@@ -1413,6 +1596,7 @@ public class ZTransformGroup extends ZGroup implements ZSerializable, ZTransform
         tmpTransform = new AffineTransform();
         paintBounds = new ZBounds();
         tmpRect = new Rectangle2D.Double();
+        repaintBounds = new ZBounds();
         inverseTransformDirty = true;
     }
 }
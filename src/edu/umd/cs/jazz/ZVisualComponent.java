@@ -216,6 +216,21 @@ public class ZVisualComponent extends ZSceneGraphObject implements ZSerializable
         return pickBounds(rect);
     }
 
+    /**
+     * Paints the area where this visual component is picked into a pick buffer.
+     * The area must be painted with the paint the graphics has when this is called,
+     * and without changing the graphics' paint or composite.
+     * <p>
+     * The implementation of this method for the base visual component fills the bounds
+     * of the component, where its pick method picks it. A sub-class that extends
+     * pick should also extend this method to paint the area it picks.
+     * @param renderContext The render context to paint with.
+     * @see ZPickBuffer
+     */
+    public void renderPickArea(ZRenderContext renderContext) {
+        renderContext.getGraphics2D().fill(getBoundsReference());
+    }
+
     /**
      * Paints this component. This method is called when the contents of the
      * visual component should be painted, either when the component is being
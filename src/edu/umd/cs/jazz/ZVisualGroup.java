@@ -201,6 +201,7 @@ public class ZVisualGroup extends ZGroup implements ZSerializable, Serializable
      */
     public void setFrontVisualComponentPickable(boolean frontVisualComponentPickable) {
         this.frontVisualComponentPickable = frontVisualComponentPickable;
+        pickableVersion++;
     }
 
     /**
@@ -219,6 +220,7 @@ public class ZVisualGroup extends ZGroup implements ZSerializable, Serializable
      */
     public void setBackVisualComponentPickable(boolean backVisualComponentPickable) {
         this.backVisualComponentPickable = backVisualComponentPickable;
+        pickableVersion++;
     }
 
     /**
@@ -251,14 +253,14 @@ public class ZVisualGroup extends ZGroup implements ZSerializable, Serializable
     public void render(ZRenderContext renderContext) {
                                 // Paint back visual component
         if (backVisualComponent != null) {
-            backVisualComponent.render(renderContext);
+            renderContext.renderVisualComponent(backVisualComponent);
         }
 
         super.render(renderContext);
 
                                 // Paint front visual component
         if (frontVisualComponent != null) {
-            frontVisualComponent.render(renderContext);
+            renderContext.renderVisualComponent(frontVisualComponent);
         }
 
         if (ZDebug.debug) {
@@ -331,7 +331,7 @@ public class ZVisualLeaf extends ZLeaf implements ZSerializable, Serializable {
         ZVisualComponent[] visualComponentsRef = getVisualComponents();
         for (int i=0; i<visualComponents.size(); i++) {
         	if (visibleBounds.intersects(visualComponentsRef[i].getBoundsReference())) {
-	            visualComponentsRef[i].render(renderContext);
+	            renderContext.renderVisualComponent(visualComponentsRef[i]);
         	}
         }
 
@@ -117,7 +117,7 @@ public class ZAlpha {
      */
     public static ZAlpha createStandardSlowInSlowOutAlpha(long aIncreasingAlphaDuration) {
         return new ZAlpha(1,
-                          System.currentTimeMillis(),
+                          ZAnimationScheduler.currentTimeMillis(),
                           0,
                           aIncreasingAlphaDuration,
                           aIncreasingAlphaDuration / 2,
@@ -130,7 +130,7 @@ public class ZAlpha {
     public ZAlpha() {
         fLoopCount = -1;
         fMode = ALPHA_INCREASING;
-        fTriggerTime = System.currentTimeMillis();
+        fTriggerTime = ZAnimationScheduler.currentTimeMillis();
         fPhaseDelayDuration = 0;
         fIncreasingAlphaRampDuration = 0;
         fAlphaAtOneDuration = 0;
@@ -293,8 +293,8 @@ public class ZAlpha {
      * <code>setPhaseDelayDuration</code>. The alpha will start running as soon as possible
      * after <code>System.currentTimeMillis() >= triggerTime + phaseDelayDuration</code>.
      * <p>
-     * The default value for trigger time is the value of System.currentTimeMillis()
-     * when the alpha object is constructed. This means that normally as soon as an alpha
+     * The default value for trigger time is the value of ZAnimationScheduler.currentTimeMillis(),
+     * which has the same epoch as System.currentTimeMillis(), when the alpha object is constructed. This means that normally as soon as an alpha
      * is constructed it will also be started.
      */
     public long getTriggerTime() {
@@ -307,8 +307,8 @@ public class ZAlpha {
      * <code>setPhaseDelayDuration</code>. The alpha will start running as soon as possible
      * after <code>System.currentTimeMillis() >= triggerTime + phaseDelayDuration</code>.
      * <p>
-     * The default value for trigger time is the value of System.currentTimeMillis()
-     * when the alpha object is constructed. This means that normally as soon as an alpha
+     * The default value for trigger time is the value of ZAnimationScheduler.currentTimeMillis(),
+     * which has the same epoch as System.currentTimeMillis(), when the alpha object is constructed. This means that normally as soon as an alpha
      * is constructed it will also be started.
      */
     public void setTriggerTime(long aTriggerTime) {
@@ -7,7 +7,9 @@ package edu.umd.cs.jazz.animation;
 
 import java.util.*;
 import java.awt.event.*;
+import java.lang.reflect.*;
 
+import edu.umd.cs.jazz.*;
 import edu.umd.cs.jazz.util.*;
 
 /**
@@ -15,6 +17,15 @@ import edu.umd.cs.jazz.util.*;
  * the event dispatch thread, each time the timer fires it animates one frame from all animations
  * that have been scheduled and are ready to animate at that time.
  * <p>
+ * Each frame is painted as soon as it has been animated, so the animations of a frame are
+ * processed exactly once for every frame that is painted. The timer is started again once the
+ * frame has been painted, so frames never queue up behind a slow frame. Instead, the interval
+ * between frames grows to fit the time that frames take to animate and paint, and frames that
+ * could not be shown in time are dropped and counted. The time each frame took is available
+ * from <code>getLastAnimateTime</code> and <code>getLastRenderTime</code>. Frames are timed
+ * with System.nanoTime where the JDK has it, and with System.currentTimeMillis otherwise,
+ * and animations are animated at the frame's time on that clock, in milliseconds.
+ * <p>
  * Normally you will not need to use this class directly, unless you are creating your own custom
  * subclass of ZAnimation. This class is a singleton, only one instance should ever exist at the same
  * time. This instance is accessed through the <code>instance</code> method.
@@ -25,13 +36,49 @@ public class ZAnimationScheduler implements ActionListener {
 
     private static ZAnimationScheduler theAnimationScheduler;
 
+                                // The clock that frames are timed with: System.nanoTime, which
+                                // is found by reflection as older JDKs don't have it, or null
+                                // to use System.currentTimeMillis, and its ticks per millisecond
+    private static Method theNanoTime;
+    private static long theTicksPerMilli = 1;
+    private static final Object[] NO_ARGS = new Object[0];
+
+                                // The clock's time and System.currentTimeMillis when the clock was
+                                // found, which give animation times the epoch of currentTimeMillis
+    private static long theClockBase;
+    private static long theMillisBase;
+
+    static {
+        theMillisBase = System.currentTimeMillis();
+        try {
+            theNanoTime = System.class.getMethod("nanoTime", new Class[0]);
+            theClockBase = ((Long) theNanoTime.invoke(null, NO_ARGS)).longValue();
+            theTicksPerMilli = 1000000;
+        } catch (Exception e) {
+            theNanoTime = null;
+            theClockBase = theMillisBase;
+        }
+    }
+
     private javax.swing.Timer fTimer;
+    private boolean fRunning = false;
     private int fFrameDelay = 20;
     private long fCurrentTime = 0;
     private long fCurrentFrame = 0;
     private ArrayList fProcessList = new ArrayList();
     private Runnable fFrameEndedRunnable;
 
+                                // The surfaces repainted while the current frame is animated
+    private boolean fProcessingFrame = false;
+    private ArrayList fFrameSurfaces = new ArrayList();
+
+                                // Frame timing, in ticks of the frame clock
+    private long fNextFrameTime = 0;
+    private double fAverageFrameCost = 0;
+    private long fLastAnimateTime = 0;
+    private long fLastRenderTime = 0;
+    private long fDroppedFrameCount = 0;
+
     private ZPriorityQueue fTimeConditionQueue = new ZPriorityQueue();
     private ZPriorityQueue fFrameConditionQueue = new ZPriorityQueue();
 
@@ -81,6 +128,17 @@ public class ZAnimationScheduler implements ActionListener {
         super();
     }
 
+    /**
+     * Return the time on the clock that animation frames are timed with, in milliseconds
+     * since the epoch of System.currentTimeMillis(). Unlike System.currentTimeMillis(), it
+     * never goes backwards, and where System.nanoTime is available it advances smoothly
+     * rather than in steps of the system timer. The scheduler animates each frame at the
+     * time on this clock when the frame started.
+     */
+    public static long currentTimeMillis() {
+        return toMillis(frameClock());
+    }
+
     /**
      * Return the current time for the animation scheduler. All animations should use this instead of
      * System.currentTimeMillis(). This will make sure that all animations in the system are synchronized.
@@ -114,6 +172,66 @@ public class ZAnimationScheduler implements ActionListener {
         startAnimationScheduler();
     }
 
+    /**
+     * Return the interval between frames. This is the frame delay, unless frames take
+     * so long to animate and paint that they can't keep up with it. Then it is half as long
+     * again as the average frame takes, which leaves time between frames to handle input.
+     */
+    public int getFrameInterval() {
+        return Math.max(fFrameDelay, (int)Math.ceil(1.5 * fAverageFrameCost / theTicksPerMilli));
+    }
+
+    /**
+     * Return the number of milliseconds that the animations of the last frame took to animate.
+     */
+    public long getLastAnimateTime() {
+        return fLastAnimateTime / theTicksPerMilli;
+    }
+
+    /**
+     * Return the number of milliseconds that the last frame took to paint.
+     */
+    public long getLastRenderTime() {
+        return fLastRenderTime / theTicksPerMilli;
+    }
+
+    /**
+     * Return the number of frames that have been dropped because the frames before them
+     * took too long to animate and paint, or the timer fired late.
+     */
+    public long getDroppedFrameCount() {
+        return fDroppedFrameCount;
+    }
+
+    /**
+     * Reset the frame timing statistics, and forget how long frames have taken, so the
+     * frame interval starts again from the frame delay.
+     */
+    public void resetFrameStatistics() {
+        fAverageFrameCost = 0;
+        fLastAnimateTime = 0;
+        fLastRenderTime = 0;
+        fDroppedFrameCount = 0;
+    }
+
+    /**
+     * Internal method called by a drawing surface when it is first repainted after being painted.
+     * If the current frame is being animated, the surface is painted as soon as the animations
+     * of the frame have finished.
+     * @param aSurface the repainted surface.
+     * @return true if the surface will be painted with the current frame, or false if it should
+     * be painted later.
+     */
+    public boolean paintWithCurrentFrame(ZDrawingSurface aSurface) {
+        if (!fProcessingFrame) {
+            return false;
+        }
+        if (!fFrameSurfaces.contains(aSurface)) {
+            fFrameSurfaces.add(aSurface);
+        }
+        return true;
+    }
+
     /**
      * Schedule an animation together with its frame condition. Normally this will be done
      * automatically by </code>ZAnimation.play</code>. NOTE the current implementation requires that
@@ -197,7 +315,7 @@ public class ZAnimationScheduler implements ActionListener {
      * Return true if the animation scheduler's timer is running.
      */
     public boolean isAnimationSchedulerRunning() {
-        return getTimer().isRunning();
+        return fRunning;
     }
 
     /**
@@ -219,30 +337,102 @@ public class ZAnimationScheduler implements ActionListener {
      * Start the timer that drives this animation scheduler.
      */
     protected synchronized void startAnimationScheduler() {
-        getTimer().start();
+        if (!fRunning) {
+            fRunning = true;
+            long start = frameClock();
+                                // The current time is not left at the last frame animated
+                                // before the scheduler stopped
+            fCurrentTime = toMillis(start);
+            fNextFrameTime = start + getFrameInterval() * theTicksPerMilli;
+            getTimer().setInitialDelay(getFrameInterval());
+            getTimer().start();
+        }
     }
 
     /**
      * Start the timer that drives this animation scheduler.
      */
     protected synchronized void stopAnimationScheduler() {
+        fRunning = false;
         getTimer().stop();
     }
 
     /**
-     * This method is called when the timer fires. This method
-     * in turn calls <code>processAnimations</code> with the current time.
+     * This method is called when the timer fires. This method in turn calls
+     * <code>processAnimations</code> with the current time, paints the surfaces
+     * that the animations repainted, and then starts the timer for the next frame.
      */
     public void actionPerformed(ActionEvent e) {
-        processAnimations(System.currentTimeMillis());
+        if (!fRunning) {
+            return;
+        }
+
+        long frameStart = frameClock();
+        long interval = getFrameInterval() * theTicksPerMilli;
+        if (frameStart - fNextFrameTime >= interval) {
+                                // Frames were due while the last frame was still being shown
+            fDroppedFrameCount += (frameStart - fNextFrameTime) / interval;
+        }
+
+        fProcessingFrame = true;
+        try {
+            processAnimations(toMillis(frameStart));
+        } finally {
+            fProcessingFrame = false;
+        }
+        long animateEnd = frameClock();
+
+        for (int i = 0; i < fFrameSurfaces.size(); i++) {
+            ((ZDrawingSurface) fFrameSurfaces.get(i)).paintImmediately();
+        }
+        fFrameSurfaces.clear();
+        long renderEnd = frameClock();
+
+        fLastAnimateTime = animateEnd - frameStart;
+        fLastRenderTime = renderEnd - animateEnd;
+        fAverageFrameCost = 0.9 * fAverageFrameCost + 0.1 * (renderEnd - frameStart);
+
+        if (fRunning) {
+            fNextFrameTime = frameStart + getFrameInterval() * theTicksPerMilli;
+            getTimer().setInitialDelay((int)Math.max(0, (fNextFrameTime - renderEnd) / theTicksPerMilli));
+            getTimer().restart();
+        }
+    }
+
+    /**
+     * internal method: Return the time on the clock that frames are timed with,
+     * in ticks of <code>theTicksPerMilli</code> per millisecond.
+     */
+    private static long frameClock() {
+        if (theNanoTime != null) {
+            try {
+                return ((Long) theNanoTime.invoke(null, NO_ARGS)).longValue();
+            } catch (Exception e) {
+                                // Keep the clock's units and epoch, only losing its resolution
+                return theClockBase + (System.currentTimeMillis() - theMillisBase) * theTicksPerMilli;
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * internal method: Convert a time on the frame clock to milliseconds since
+     * the epoch of System.currentTimeMillis().
+     */
+    private static long toMillis(long aClockTime) {
+        return theMillisBase + (aClockTime - theClockBase) / theTicksPerMilli;
     }
 
     /**
-     * Return the animation schedulers timer.
+     * Return the animation schedulers timer. The timer fires once, and is started again
+     * after each frame.
      */
     protected javax.swing.Timer getTimer() {
         if (fTimer == null) {
             fTimer = new javax.swing.Timer(getFrameDelay(), this);
+            fTimer.setRepeats(false);
+                                // Coalescing would lose a frame started while the last one is still firing
+            fTimer.setCoalesce(false);
         }
         return fTimer;
     }
@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2001-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.animation;
+
+import java.util.*;
+import java.awt.geom.*;
+
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * <b>ZBatchTransformAnimation</b> animates any number of objects conforming to the
+ * ZTransformable interface from their current transforms to destination transforms,
+ * all in the same frames. A ZAlpha class is used to specify the start time and duration
+ * of the animation, and an optional ZLerp shapes its timing, such as slow-in slow-out.
+ * <p>
+ * This is the animation that <code>ZTransformGroup.startAnimation</code> and
+ * <code>ZCamera.startCenter</code> start. They return as soon as the animation is
+ * started, and the animation runs from the ZAnimationScheduler's timer, so input is
+ * still handled while it runs. <code>ZTransformGroup.animate</code> and the animated
+ * ZTransformGroup and ZCamera methods start it too when
+ * <code>ZTransformGroup.ANIMATE_METHODS_USE_ANIMATION_FRAMEWORK</code> is true, but
+ * don't return it. The returned animation is a handle on the animation in progress:
+ * <ul>
+ * <li><code>stop</code> cancels the animation, leaving the targets where they are.
+ * <li><code>finish</code> moves the targets to their destinations at once.
+ * <li><code>setStoppedRunnable</code> specifies code to run when the animation ends,
+ * and <code>isFinished</code> tells whether it reached its destinations or was stopped.
+ * </ul>
+ * The source transforms are read from the targets when the animation is played, so it
+ * always starts from where the targets are. An object is only animated by one batch at
+ * a time, so playing a batch stops any other batch that is animating one of its targets.
+ * <p>
+ * A batch is meant to animate many objects, such as all the nodes of a graph being laid
+ * out again. It is scheduled as a single animation, keeps the source and destination
+ * matrices in flat arrays, and moves the targets in one loop inside a ZRoot batch, so
+ * the targets' events are fired and their layers repainted once per frame.
+ * <p>
+ * This code animates two rectangles at once, and prints a message when they get there.
+ * <p>
+ * <code>
+ * <pre>
+ * ZTransformable[] targets = {aLeaf.editor().getTransformGroup(), anotherLeaf.editor().getTransformGroup()};
+ * AffineTransform[] destinations = {AffineTransform.getTranslateInstance(300, 300),
+ *                                   AffineTransform.getScaleInstance(2, 2)};
+ * final ZBatchTransformAnimation animation = new ZBatchTransformAnimation(targets, destinations);
+ * animation.setAlpha(ZAlpha.createStandardAlpha(1000));
+ * animation.setLerp(new ZSISOLerp());
+ * animation.setSurface(canvas.getDrawingSurface());
+ * animation.setStoppedRunnable(new Runnable() {
+ *     public void run() {
+ *         if (animation.isFinished()) {
+ *             System.out.println("Done");
+ *         }
+ *     }
+ * });
+ * animation.play();
+ * </pre>
+ * </code>
+ * <p>
+ * @see ZTransformAnimation
+ * @see ZTransformGroup#animate
+ */
+public class ZBatchTransformAnimation extends ZAnimation {
+
+                                // The batch that is animating each target
+    private static Hashtable theRunningBatches = new Hashtable();
+
+    private ZTransformable[] fTargets;
+                                // The matrices of the targets, six values for each target
+    private double[] fSources;
+    private double[] fDestinations;
+                                // The roots of the targets that are nodes
+    private ZRoot[] fRoots;
+    private double[] fMatrix = new double[6];
+    private ZLerp fLerp;
+    private ZDrawingSurface fSurface;
+    private boolean fFinished = false;
+
+    /**
+     * Construct a new ZBatchTransformAnimation. If the arrays have different lengths,
+     * only the targets that have a destination are animated.
+     *
+     * @param aTargets      the objects to animate.
+     * @param aDestinations the transforms that the targets will end up at.
+     */
+    public ZBatchTransformAnimation(ZTransformable[] aTargets, AffineTransform[] aDestinations) {
+        super();
+        int len = Math.min(aTargets.length, aDestinations.length);
+        fTargets = new ZTransformable[len];
+        fSources = new double[6 * len];
+        fDestinations = new double[6 * len];
+        for (int i = 0; i < len; i++) {
+            fTargets[i] = aTargets[i];
+            aDestinations[i].getMatrix(fMatrix);
+            System.arraycopy(fMatrix, 0, fDestinations, 6 * i, 6);
+        }
+    }
+
+    /**
+     * Construct a new ZBatchTransformAnimation from destination matrices in a flat array,
+     * in the order returned by <code>AffineTransform.getMatrix</code>. This avoids creating
+     * a transform for each target when there are many of them.
+     *
+     * @param aTargets      the objects to animate.
+     * @param aDestinations the matrices that the targets will end up at, six values for each target.
+     */
+    public ZBatchTransformAnimation(ZTransformable[] aTargets, double[] aDestinations) {
+        super();
+        int len = Math.min(aTargets.length, aDestinations.length / 6);
+        fTargets = new ZTransformable[len];
+        fSources = new double[6 * len];
+        fDestinations = new double[6 * len];
+        System.arraycopy(aTargets, 0, fTargets, 0, len);
+        System.arraycopy(aDestinations, 0, fDestinations, 0, 6 * len);
+    }
+
+    /**
+     * Return the objects that this animation animates.
+     */
+    public ZTransformable[] getTransformTargets() {
+        return fTargets;
+    }
+
+    /**
+     * Return the function that shapes the timing of the animation, or null if
+     * the targets move at the rate of the alpha.
+     */
+    public ZLerp getLerp() {
+        return fLerp;
+    }
+
+    /**
+     * Set the function that shapes the timing of the animation. It is applied to the
+     * value of the alpha in each frame. If it is null, the targets move at the rate
+     * of the alpha.
+     */
+    public void setLerp(ZLerp aLerp) {
+        fLerp = aLerp;
+    }
+
+    /**
+     * Return the surface that is told the animation is running, or null.
+     */
+    public ZDrawingSurface getSurface() {
+        return fSurface;
+    }
+
+    /**
+     * Set the surface that is told the animation is running, so it renders at its
+     * interacting render quality until the animation ends.
+     */
+    public void setSurface(ZDrawingSurface aSurface) {
+        fSurface = aSurface;
+    }
+
+    /**
+     * Return true if the targets reached their destinations, or false if the
+     * animation is still running or was stopped before it finished.
+     */
+    public boolean isFinished() {
+        return fFinished;
+    }
+
+    /**
+     * Start animating the targets from their current transforms, stopping any other
+     * batch that is animating one of them.
+     */
+    public void play() {
+        if (!isStopped()) {
+            return;
+        }
+        for (int i = 0; i < fTargets.length; i++) {
+            ZBatchTransformAnimation other = (ZBatchTransformAnimation) theRunningBatches.get(fTargets[i]);
+            if ((other != null) && (other != this)) {
+                other.stop();
+            }
+        }
+        Vector roots = new Vector();
+        for (int i = 0; i < fTargets.length; i++) {
+            fTargets[i].getMatrix(fMatrix);
+            System.arraycopy(fMatrix, 0, fSources, 6 * i, 6);
+            theRunningBatches.put(fTargets[i], this);
+            if (fTargets[i] instanceof ZNode) {
+                ZRoot root = ((ZNode) fTargets[i]).getRoot();
+                if ((root != null) && !roots.contains(root)) {
+                    roots.addElement(root);
+                }
+            }
+        }
+        fRoots = new ZRoot[roots.size()];
+        roots.copyInto(fRoots);
+        fFinished = false;
+        if (fSurface != null) {
+            fSurface.setAnimating(true);
+        }
+        super.play();
+    }
+
+    /**
+     * Move the targets to their destinations at once, and end the animation.
+     */
+    public void finish() {
+        if (!isStopped()) {
+            moveTargets(1.0);
+            fFinished = true;
+            stop();
+        }
+    }
+
+    /**
+     * Animate one frame of this animation for the given time. The time parameter is
+     * used to generate an alpha value, which is shaped by the lerp function, and then
+     * used to set each target to a transform interpolated between its source and
+     * destination transforms.
+     */
+    protected void animateFrameForTime(long aTime) {
+        if (getAlpha().isFinished(aTime)) {
+            moveTargets(1.0);
+            fFinished = true;
+        } else {
+            double t = getAlpha().value(aTime);
+            if (fLerp != null) {
+                t = fLerp.lerpTime(t);
+            }
+            moveTargets(t);
+        }
+        super.animateFrameForTime(aTime);
+    }
+
+    /**
+     * Release the targets, and tell the surface the animation is over.
+     */
+    protected void animationStopped() {
+        for (int i = 0; i < fTargets.length; i++) {
+            if (theRunningBatches.get(fTargets[i]) == this) {
+                theRunningBatches.remove(fTargets[i]);
+            }
+        }
+        if (fSurface != null) {
+            fSurface.setAnimating(false);
+        }
+        super.animationStopped();
+    }
+
+    /**
+     * Set each target to the transform the specified fraction of the way from
+     * its source to its destination.
+     */
+    private void moveTargets(double t) {
+        double[] src = fSources;
+        double[] dest = fDestinations;
+        for (int i = 0; i < fRoots.length; i++) {
+            fRoots[i].startBatch();
+        }
+        try {
+            if (t >= 1.0) {
+                for (int i = 0, j = 0; i < fTargets.length; i++, j += 6) {
+                    fTargets[i].setTransform(dest[j], dest[j + 1], dest[j + 2], dest[j + 3], dest[j + 4], dest[j + 5]);
+                }
+            } else {
+                for (int i = 0, j = 0; i < fTargets.length; i++, j += 6) {
+                    fTargets[i].setTransform(src[j] + (t * (dest[j] - src[j])),
+                                             src[j + 1] + (t * (dest[j + 1] - src[j + 1])),
+                                             src[j + 2] + (t * (dest[j + 2] - src[j + 2])),
+                                             src[j + 3] + (t * (dest[j + 3] - src[j + 3])),
+                                             src[j + 4] + (t * (dest[j + 4] - src[j + 4])),
+                                             src[j + 5] + (t * (dest[j + 5] - src[j + 5])));
+                }
+            }
+        } finally {
+            for (int i = 0; i < fRoots.length; i++) {
+                fRoots[i].endBatch();
+            }
+        }
+    }
+}
\ No newline at end of file
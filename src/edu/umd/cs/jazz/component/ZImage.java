@@ -18,6 +18,12 @@ import edu.umd.cs.jazz.util.*;
 
 /**
  * <b>ZImage</b> is a graphic object that represents a raster image.
+ * <P>
+ * Images set from a file, a URL or bytes are decoded once and shared by all
+ * the ZImages that show the same image.  They are normally decoded before
+ * <code>setImage</code> returns, but can be decoded in the background instead,
+ * with {@link #setLoadAsynchronously}, so that loading many images does not
+ * block the application.
  *
  * <P>
  * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
@@ -32,6 +38,14 @@ public class ZImage extends ZVisualComponent implements Serializable {
     public static final boolean writeEmbeddedImage_DEFAULT = true;
     protected static final Frame staticFrame;
 
+    /**
+     * The color an image is drawn with while it is loaded in the background.
+     */
+    public static final Color PLACEHOLDER_COLOR = new Color(224, 224, 224);
+
+                                // True if images are decoded in the background
+    private static boolean loadAsynchronously = false;
+
     static {
         staticFrame = new Frame();
         staticFrame.addNotify();
@@ -61,6 +75,11 @@ public class ZImage extends ZVisualComponent implements Serializable {
 
     private static JComponent sComponent = null;
 
+    /**
+     * The request for the image being loaded in the background, or null if none is.
+     */
+    private transient ZImageLoader.Request pendingLoad = null;
+
     /**
      * Translation offset X.
      */
@@ -143,6 +162,11 @@ public class ZImage extends ZVisualComponent implements Serializable {
 
         newImage.observer = new ZImageObserver();
 
+                                // The copy gets the image too when it is loaded
+        if (pendingLoad != null) {
+            newImage.pendingLoad = ZImageLoader.follow(pendingLoad, newImage);
+        }
+
         return newImage;
     }
 
@@ -288,12 +312,33 @@ public class ZImage extends ZVisualComponent implements Serializable {
         return p;
     }
 
+    /**
+     * Specify if images set from a file, a URL or bytes are decoded in the background,
+     * rather than before <code>setImage</code> returns.  While an image is decoded, it
+     * has the size read from the header of its file, if it could be read, and is drawn
+     * as a placeholder.  When the image is decoded, it is set on the event dispatch
+     * thread, and the ZImage is reshaped and repainted. This is off by default.
+     * @param <code>b</code> True to decode images in the background.
+     */
+    public static void setLoadAsynchronously(boolean b) {
+        loadAsynchronously = b;
+    }
+
+    /**
+     * Determine if images set from a file, a URL or bytes are decoded in the background.
+     * @return true if images are decoded in the background.
+     */
+    public static boolean getLoadAsynchronously() {
+        return loadAsynchronously;
+    }
+
     /**
      * Set the image to the one consisting of the specified image.
      * Wait until the image is loaded before returning.
      * @param <code>i</code> the image.
      */
     public boolean setImage(Image im) {
+        pendingLoad = null;
         width = -1;
         height = -1;
 
@@ -311,43 +356,79 @@ public class ZImage extends ZVisualComponent implements Serializable {
 
     /**
      * Set the image to the one consisting of the specified bytes.
-     * Wait until the image is loaded before returning.
+     * Wait until the image is loaded before returning, unless images are
+     * loaded asynchronously.
      * @param <code>bytes</code> the bytes of the image.
+     * @return true if the image is loaded.
+     * @see #setLoadAsynchronously
      */
     public boolean setImage(byte[] bytes) {
-        Image im = Toolkit.getDefaultToolkit().createImage(bytes);
-        loadImage(im);
-        boolean success = setImage(im);
-        im.flush();
-        return success;
+        return setImage(ZImageLoader.createRequest(bytes));
     }
 
     /**
      * Set the image to the one at the specified URL or filename.
-     * Wait until the image is loaded before returning.
+     * Wait until the image is loaded before returning, unless images are
+     * loaded asynchronously.
      * @param <code>aFileName</code> the URL or file name of the image.
+     * @return true if the image is loaded.
+     * @see #setLoadAsynchronously
      */
     public boolean setImage(String aFileName) {
         fileName = aFileName;
-        Image im = Toolkit.getDefaultToolkit().createImage(fileName);
-        loadImage(im);
-        boolean success = setImage(im);
-        im.flush();
-        return success;
+        return setImage(ZImageLoader.createRequest(fileName));
     }
 
     /**
      * Set the image to the one at the specified URL.
-     * Wait until the image is loaded before returning.
+     * Wait until the image is loaded before returning, unless images are
+     * loaded asynchronously.
      * @param <code>aURL</code> the URL of the image.
+     * @return true if the image is loaded.
+     * @see #setLoadAsynchronously
      */
     public boolean setImage(URL aUrl) {
         url = aUrl;
-        Image im = Toolkit.getDefaultToolkit().createImage(url);
-        loadImage(im);
-        boolean success = setImage(im);
-        im.flush();
-        return success;
+        return setImage(ZImageLoader.createRequest(url));
+    }
+
+    /**
+     * Set the image to the one of the specified request, from the shared cache
+     * if it has been decoded already, and otherwise by decoding it now or in the
+     * background.
+     */
+    private boolean setImage(ZImageLoader.Request request) {
+        Image im = ZImageLoader.getCachedImage(request);
+        if (im == null) {
+            if (loadAsynchronously) {
+                image = null;
+                Dimension size = ZImageLoader.readSize(request);
+                if (size != null) {
+                    setDimension(size.width, size.height);
+                } else {
+                    setDimension(0, 0);
+                }
+                pendingLoad = request;
+                ZImageLoader.loadLater(this, request);
+                return false;
+            }
+            im = ZImageLoader.getImage(request);
+        }
+        return setImage(im) && (im != null);
+    }
+
+    /**
+     * Called on the event dispatch thread when an image that was loaded
+     * in the background has been decoded.
+     * @param request The request the image was loaded for.
+     * @param im The image, or null if it could not be decoded.
+     */
+    void imageLoaded(ZImageLoader.Request request, Image im) {
+                                // Ignore images that were replaced meanwhile
+        if (pendingLoad == request) {
+            setImage(im);
+            setLoaded(true);
+        }
     }
 
     /**
@@ -482,7 +563,12 @@ public class ZImage extends ZVisualComponent implements Serializable {
      * @param <code>renderContext</code> The graphics context to paint into.
      */
     public void render(ZRenderContext renderContext) {
-        if (image != null) {
+        if ((image == null) && (pendingLoad != null)) {
+                                // Draw a placeholder while the image is loaded
+            Graphics2D g2 = renderContext.getGraphics2D();
+            g2.setColor(PLACEHOLDER_COLOR);
+            g2.fill(bounds);
+        } else if (image != null) {
             Graphics2D g2 = renderContext.getGraphics2D();
 
             // Is the image translated?
@@ -554,7 +640,7 @@ public class ZImage extends ZVisualComponent implements Serializable {
     public boolean isLoaded() {
         boolean loaded;
 
-        if ((width == -1) || (height == -1)) {
+        if ((width == -1) || (height == -1) || (pendingLoad != null)) {
             loaded = false;
         } else {
             loaded = true;
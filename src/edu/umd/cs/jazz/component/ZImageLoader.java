@@ -0,0 +1,384 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.component;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.lang.ref.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+import javax.swing.*;
+
+/**
+ * <b>ZImageLoader</b> decodes the images of ZImages, and keeps the decoded images in
+ * a cache that is shared by all ZImages, so an image that is used several times is
+ * only decoded once. Images are identified by the absolute path of their file, by their
+ * URL, or by a hash of their bytes. The cache holds the decoded images through soft
+ * references, so images that no ZImage uses any more are released when memory runs low.
+ * <P>
+ * Images can be decoded on the calling thread, or on a few background threads. Images
+ * decoded in the background are handed to the ZImages that asked for them on the event
+ * dispatch thread. Requests for an image that is already being decoded follow the
+ * request that is decoding it, and are given the same image when it is decoded.
+ *
+ * @see ZImage#setLoadAsynchronously
+ */
+class ZImageLoader {
+    /**
+     * The maximum number of threads that decode images in the background.
+     */
+    static final int MAX_THREADS = 4;
+
+                                // The decoded images, as soft references, by key
+    static private Hashtable cache = new Hashtable();
+
+                                // An object to synchronize on for each key whose image
+                                // is being decoded, so it is only decoded once
+    static private Hashtable decodeLocks = new Hashtable();
+
+                                // The requests that have not been decoded yet, in order,
+                                // and by key. These are guarded by the queue
+    static private Vector queue = new Vector();
+    static private Hashtable pendingRequests = new Hashtable();
+
+                                // The background threads, or null if they have not been started
+    static private Thread[] workers = null;
+
+    /**
+     * Return a request for the image in the specified file.  The file's modification
+     * time and length are part of its key, so a file that changes on disk is decoded again.
+     */
+    static Request createRequest(String aFileName) {
+        Request request = new Request();
+        request.fileName = aFileName;
+        File file = new File(aFileName);
+        request.key = "file:" + file.getAbsolutePath() + ':' + file.lastModified() + ':' + file.length();
+        return request;
+    }
+
+    /**
+     * Return a request for the image at the specified URL.
+     */
+    static Request createRequest(URL aUrl) {
+        Request request = new Request();
+        request.url = aUrl;
+        request.key = "url:" + aUrl;
+        return request;
+    }
+
+    /**
+     * Return a request for the image with the specified bytes.
+     */
+    static Request createRequest(byte[] bytes) {
+        Request request = new Request();
+        request.bytes = bytes;
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuffer key = new StringBuffer("bytes:");
+            for (int i = 0; i < digest.length; i++) {
+                key.append(Integer.toHexString((digest[i] >> 4) & 0xf));
+                key.append(Integer.toHexString(digest[i] & 0xf));
+            }
+            key.append(':');
+            key.append(bytes.length);
+            request.key = key.toString();
+        } catch (NoSuchAlgorithmException e) {
+                                // The image is decoded, but not cached
+        }
+        return request;
+    }
+
+    /**
+     * Return the decoded image of the specified request if it is in the cache.
+     * @return the image, or null if it has not been decoded or has been released.
+     */
+    static Image getCachedImage(Request request) {
+        if (request.key == null) {
+            return null;
+        }
+        Reference ref = (Reference)cache.get(request.key);
+        return (ref == null) ? null : (Image)ref.get();
+    }
+
+    /**
+     * Return the decoded image of the specified request, decoding it on this thread
+     * if it is not in the cache.
+     * @return the image, or null if it could not be decoded.
+     */
+    static Image getImage(Request request) {
+        if (request.key == null) {
+            return decodeImage(request);
+        }
+
+        Object lock;
+        synchronized (cache) {
+            Image im = getCachedImage(request);
+            if (im != null) {
+                return im;
+            }
+            lock = decodeLocks.get(request.key);
+            if (lock == null) {
+                lock = new Object();
+                decodeLocks.put(request.key, lock);
+            }
+        }
+
+        Image im;
+        synchronized (lock) {
+                                // Another thread may have decoded it meanwhile
+            im = getCachedImage(request);
+            if (im == null) {
+                im = decodeImage(request);
+                if (im != null) {
+                    synchronized (cache) {
+                        removeReleasedImages();
+                        cache.put(request.key, new SoftReference(im));
+                    }
+                }
+            }
+        }
+        synchronized (cache) {
+            decodeLocks.remove(request.key);
+        }
+        return im;
+    }
+
+    /**
+     * Decode the image of the specified request in the background, and give it to the
+     * specified ZImage on the event dispatch thread when it is decoded.  If the same image
+     * is already being decoded, the ZImage is given that image when it is decoded.
+     */
+    static void loadLater(ZImage image, Request request) {
+        request.image = image;
+        synchronized (queue) {
+            if (request.key != null) {
+                Request pending = (Request)pendingRequests.get(request.key);
+                if ((pending != null) && pending.addFollower(request)) {
+                    return;
+                }
+                pendingRequests.put(request.key, request);
+            }
+            queue.addElement(request);
+
+            if (workers == null) {
+                workers = new Thread[Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()))];
+                for (int i = 0; i < workers.length; i++) {
+                    workers[i] = new Thread(new Worker(), "Jazz image loader " + i);
+                    workers[i].setDaemon(true);
+                    workers[i].start();
+                }
+            }
+            queue.notify();
+        }
+    }
+
+    /**
+     * Return a request for the specified ZImage that is given the image of the
+     * specified request when it is decoded.
+     * @return the new request, or null if the image has already been given.
+     */
+    static Request follow(Request request, ZImage image) {
+        Request follower = new Request();
+        follower.fileName = request.fileName;
+        follower.url = request.url;
+        follower.bytes = request.bytes;
+        follower.key = request.key;
+        follower.image = image;
+        Request leader = (request.leader != null) ? request.leader : request;
+        return leader.addFollower(follower) ? follower : null;
+    }
+
+    /**
+     * Read the width and height of the image of the specified request from the
+     * header of the image, without decoding it.  This is only done for images in
+     * files and in bytes, as reading from other URLs may block.
+     * @return the size, or null if it could not be read.
+     */
+    static Dimension readSize(Request request) {
+        Object source;
+        if (request.bytes != null) {
+            source = new ByteArrayInputStream(request.bytes);
+        } else if (request.fileName != null) {
+            source = new File(request.fileName);
+        } else if (request.url.getProtocol().equals("file")) {
+                                // Go through a URI so escapes such as %20 are decoded
+            try {
+                source = new File(new URI(request.url.toString()));
+            } catch (URISyntaxException e) {
+                return null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        Dimension size = null;
+        try {
+            ImageInputStream input = ImageIO.createImageInputStream(source);
+            if (input != null) {
+                Iterator readers = ImageIO.getImageReaders(input);
+                if (readers.hasNext()) {
+                    ImageReader reader = (ImageReader)readers.next();
+                    reader.setInput(input, true, true);
+                    size = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                    reader.dispose();
+                }
+                input.close();
+            }
+        } catch (IOException e) {
+        }
+        return size;
+    }
+
+    /**
+     * Decode the image of the specified request into a BufferedImage, which Java renders fastest.
+     * @return the image, or null if it could not be decoded.
+     */
+    static private Image decodeImage(Request request) {
+        Image im;
+        if (request.bytes != null) {
+            im = Toolkit.getDefaultToolkit().createImage(request.bytes);
+        } else if (request.url != null) {
+            im = Toolkit.getDefaultToolkit().createImage(request.url);
+        } else {
+            im = Toolkit.getDefaultToolkit().createImage(request.fileName);
+        }
+
+        BufferedImage result = null;
+        Image loaded = ZImage.loadImage(im);
+        if (loaded != null) {
+            int width = loaded.getWidth(null);
+            int height = loaded.getHeight(null);
+            if ((width > 0) && (height > 0)) {
+                result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2 = result.createGraphics();
+                g2.drawImage(loaded, 0, 0, null);
+                g2.dispose();
+            }
+        }
+        im.flush();
+        return result;
+    }
+
+    /**
+     * Remove the keys of the images that have been released from the cache.
+     * Must be called while synchronized on the cache.
+     */
+    static private void removeReleasedImages() {
+        Enumeration keys = cache.keys();
+        while (keys.hasMoreElements()) {
+            Object key = keys.nextElement();
+            if (((Reference)cache.get(key)).get() == null) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * internal class: An image to decode for a ZImage.
+     */
+    static class Request {
+        String fileName = null;
+        URL url = null;
+        byte[] bytes = null;
+
+                                // The key of the image in the cache, or null if it is not cached
+        String key = null;
+
+                                // The ZImage the image is for
+        ZImage image = null;
+
+                                // The requests for the same image that wait for this one,
+                                // the request this one waits for, if any, and whether the
+                                // image has been given
+        private Vector followers = new Vector();
+        private Request leader = null;
+        private boolean delivered = false;
+
+        public String toString() {
+            if (fileName != null) {
+                return fileName;
+            } else if (url != null) {
+                return url.toString();
+            } else {
+                return "<" + bytes.length + " bytes>";
+            }
+        }
+
+        synchronized boolean addFollower(Request follower) {
+            if (delivered) {
+                return false;
+            }
+            follower.leader = this;
+            followers.addElement(follower);
+            return true;
+        }
+
+                                // Give the decoded image to the ZImages of this request
+                                // and of its followers
+        void deliver(Image im) {
+            Request[] waiting;
+            synchronized (this) {
+                delivered = true;
+                waiting = new Request[followers.size()];
+                followers.copyInto(waiting);
+                followers.removeAllElements();
+            }
+            image.imageLoaded(this, im);
+            for (int i = 0; i < waiting.length; i++) {
+                waiting[i].image.imageLoaded(waiting[i], im);
+            }
+        }
+    }
+
+    /**
+     * internal class: A background thread that decodes the requests in the queue.
+     */
+    static class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                final Request request;
+                synchronized (queue) {
+                    while (queue.isEmpty()) {
+                        try {
+                            queue.wait();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    request = (Request)queue.elementAt(0);
+                    queue.removeElementAt(0);
+                }
+
+                Image im = null;
+                try {
+                    im = getImage(request);
+                    if (im == null) {
+                        System.err.println("Couldn't load image: " + request);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Couldn't load image: " + request + " (" + e + ")");
+                }
+
+                                // ZImages that ask for the image from now on find it in the cache
+                synchronized (queue) {
+                    if (request.key != null) {
+                        pendingRequests.remove(request.key);
+                    }
+                }
+                final Image decoded = im;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        request.deliver(decoded);
+                    }
+                });
+            }
+        }
+    }
+}
\ No newline at end of file
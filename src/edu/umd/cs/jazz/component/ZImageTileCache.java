@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.component;
+
+import java.awt.image.*;
+import java.util.*;
+
+/**
+ * <b>ZImageTileCache</b> keeps the decoded tiles of tiled images up to a memory
+ * budget that is shared by all the images, and evicts the least recently used
+ * tiles when the budget is exceeded. It may be used from several threads at once.
+ *
+ * @see ZTiledImage
+ */
+class ZImageTileCache {
+    private long memoryBudget;
+    private long memoryUsed = 0;
+
+                                // The cached tiles, most recently used first
+    private Hashtable tiles = new Hashtable();
+    private Tile head = null;
+    private Tile tail = null;
+
+                                // Key used to look up tiles without allocating
+    private TileKey lookupKey = new TileKey();
+
+    /**
+     * Constructs a new cache.
+     * @param aMemoryBudget the maximum number of bytes of tiles to keep.
+     */
+    ZImageTileCache(long aMemoryBudget) {
+        memoryBudget = aMemoryBudget;
+    }
+
+    /**
+     * Return the maximum number of bytes of tiles this cache keeps.
+     */
+    synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the maximum number of bytes of tiles this cache keeps, evicting
+     * tiles immediately if the cache is over the new budget.
+     */
+    synchronized void setMemoryBudget(long aMemoryBudget) {
+        memoryBudget = aMemoryBudget;
+        evict();
+    }
+
+    /**
+     * Return the number of bytes used by the tiles in the cache.
+     */
+    synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Return the number of tiles in the cache.
+     */
+    synchronized int getNumTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Return the specified tile of an image file, or null if it is not in the cache.
+     */
+    synchronized BufferedImage get(ZTiledImage.ImageSource source, int level, int col, int row) {
+        lookupKey.setKey(source, level, col, row);
+        Tile tile = (Tile)tiles.get(lookupKey);
+        if (tile == null) {
+            return null;
+        }
+        unlink(tile);
+        linkFirst(tile);
+        return tile.image;
+    }
+
+    /**
+     * Add the specified tile of an image file to the cache, evicting the least
+     * recently used tiles if the cache is over its budget.
+     */
+    synchronized void put(ZTiledImage.ImageSource source, int level, int col, int row, BufferedImage tileImage) {
+        lookupKey.setKey(source, level, col, row);
+        Tile tile = (Tile)tiles.remove(lookupKey);
+        if (tile != null) {
+            unlink(tile);
+            memoryUsed -= tile.bytes;
+        }
+        tile = new Tile();
+        tile.setKey(source, level, col, row);
+        tile.image = tileImage;
+        tile.bytes = getBytes(tileImage);
+        tiles.put(tile, tile);
+        linkFirst(tile);
+        memoryUsed += tile.bytes;
+        evict();
+    }
+
+    /**
+     * Remove all the tiles of the specified image file from the cache.
+     */
+    synchronized void removeAll(ZTiledImage.ImageSource source) {
+        Tile tile = head;
+        while (tile != null) {
+            Tile next = tile.next;
+            if (tile.source == source) {
+                remove(tile);
+            }
+            tile = next;
+        }
+    }
+
+    /**
+     * Evict the least recently used tiles until the cache is within its budget.
+     */
+    private void evict() {
+        while ((tail != null) && (memoryUsed > memoryBudget)) {
+            remove(tail);
+        }
+    }
+
+    private void remove(Tile tile) {
+        tiles.remove(tile);
+        unlink(tile);
+        memoryUsed -= tile.bytes;
+    }
+
+    private void linkFirst(Tile tile) {
+        tile.prev = null;
+        tile.next = head;
+        if (head != null) {
+            head.prev = tile;
+        }
+        head = tile;
+        if (tail == null) {
+            tail = tile;
+        }
+    }
+
+    private void unlink(Tile tile) {
+        if (tile.prev != null) {
+            tile.prev.next = tile.next;
+        } else {
+            head = tile.next;
+        }
+        if (tile.next != null) {
+            tile.next.prev = tile.prev;
+        } else {
+            tail = tile.prev;
+        }
+        tile.prev = null;
+        tile.next = null;
+    }
+
+    /**
+     * Return the number of bytes of the pixels of the specified image.
+     */
+    static long getBytes(BufferedImage anImage) {
+        DataBuffer buffer = anImage.getRaster().getDataBuffer();
+        return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * internal class: Identifies a tile of an image file.
+     */
+    static class TileKey {
+        ZTiledImage.ImageSource source;
+        int level;
+        int col;
+        int row;
+
+        void setKey(ZTiledImage.ImageSource aSource, int aLevel, int aCol, int aRow) {
+            source = aSource;
+            level = aLevel;
+            col = aCol;
+            row = aRow;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey key = (TileKey)obj;
+            return (key.source == source) && (key.level == level) && (key.col == col) && (key.row == row);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(source) ^ (level << 24) ^ (col * 31) ^ row;
+        }
+    }
+
+    /**
+     * internal class: A decoded tile in the cache.
+     */
+    static class Tile extends TileKey {
+        BufferedImage image;
+        long bytes;
+        Tile prev;
+        Tile next;
+    }
+}
\ No newline at end of file
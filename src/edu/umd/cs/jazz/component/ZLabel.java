@@ -110,6 +110,12 @@ public class ZLabel
 	 */
 	protected boolean boundsBug = false;
 
+	/**
+	 * The layouts of the line, for each font render context it has been
+	 * rendered or measured with, or null if there are none yet.
+	 */
+	private transient ZLineLayout[] lineLayouts = null;
+
 	/**
 	 * Translation offset X.
 	 */
@@ -162,6 +168,7 @@ public class ZLabel
 
 		// Copy the line of text.
 		newText.line = line;
+		newText.lineLayouts = null;
 
 		return newText;
 	}
@@ -327,13 +334,7 @@ public class ZLabel
 
 			if (backgroundColor != null) {
 				g2.setColor(backgroundColor);
-				Rectangle2D rect =
-					new Rectangle2D.Double(
-						bounds.getX(),
-						bounds.getY(),
-						bounds.getWidth(),
-						bounds.getHeight());
-				g2.fill(rect);
+				g2.fill(bounds);
 			}
 
 			// BBB: HACK ALERT - July 30, 1999
@@ -341,12 +342,16 @@ public class ZLabel
 			// fonts that are rendered at very small magnifications show up big!
 			// If the font is too small and not antialiased
 			// don't display it.
-			if (line.length() > 0 && (font.getSize() * renderContext.getCompositeMagnification()) >= 0.5) {
+			double renderedFontSize = font.getSize() * renderContext.getCompositeMagnification();
+			if (line.length() > 0 && renderedFontSize >= 0.5) {
 				g2.setColor(penColor);
 				g2.setFont(font);
-				FontRenderContext frc = g2.getFontRenderContext();
-				LineMetrics lm = font.getLineMetrics(line, frc);
-				g2.drawString(line, 0, lm.getAscent());
+				ZLineLayout layout = getLineLayout(g2.getFontRenderContext());
+				// Small text is drawn at whole pixel sizes if the
+				// render context asks for it
+				if ((renderedFontSize >= renderContext.getPixelTextSize()) || !layout.drawAtPixelSize(g2)) {
+					layout.draw(g2);
+				}
 			}
 			if (translated) {
 				g2.setTransform(at); // restore transform
@@ -354,13 +359,25 @@ public class ZLabel
 		}
 	}
 
+	/**
+	 * Returns the layout of the line for the specified font render context,
+	 * laying it out if it has changed since it was last laid out for it.
+	 * @param frc The font render context the line is rendered with.
+	 * @return the layout.
+	 */
+	private synchronized ZLineLayout getLineLayout(FontRenderContext frc) {
+		if (lineLayouts == null) {
+			lineLayouts = new ZLineLayout[ZLineLayout.NUM_LAYOUT_CONTEXTS];
+		}
+		return ZLineLayout.getLayout(lineLayouts, font, line, frc);
+	}
+
 	/**
 	 * Notifies this object that it has changed and that it
 	 * should update its notion of its bounding box.
 	 */
 	protected void computeBounds() {
 		Rectangle2D rect = null;
-		Rectangle2D bugBounds = null;
 		double lineWidth;
 		double maxWidth = 0.0;
 		double maxHeight = 0.0;
@@ -375,8 +392,8 @@ public class ZLabel
 			// If the only text is "" then it still needs a width
 			if ((line != null) && !line.equals("")) {
 
-				rect = font.getStringBounds(line, frc);
-				lineWidth = rect.getWidth();
+				ZLineLayout layout = getLineLayout(frc);
+				lineWidth = layout.getWidth(0);
 
 				if ((boundsBug) && (line.endsWith(" ")))
 					lineWidth =
@@ -390,7 +407,7 @@ public class ZLabel
 					maxWidth = lineWidth;
 				}
 
-				LineMetrics lm = font.getLineMetrics(line, frc);
+				LineMetrics lm = layout.getLineMetrics();
 				height = lm.getAscent() + lm.getDescent();
 
 			} else {
@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.component;
+
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * <b>ZLineLayout</b> holds the widths, metrics and shaped glyphs of some lines of
+ * text, laid out with one font and font render context. Text components keep the
+ * layouts they render and measure with, and only make new ones when their text or
+ * font changes, or when they are rendered with a different kind of font render
+ * context, so the text is not measured or shaped again at every render.
+ * <P>
+ * Layouts are made with font render contexts that have no transform, so the
+ * layout of the text does not change as it is zoomed, and the same layout is used
+ * at every magnification. Lines that need shaping, such as lines with combining
+ * marks or complex scripts, are shaped once when they are laid out, and lines with
+ * right to left text are kept as text layouts so that they are drawn in their visual
+ * order. Other lines need no shaping, and are drawn as strings, which Java2D draws
+ * straight from its glyph caches.
+ * <P>
+ * When lines are edited, the new layout is made from the previous one, and only
+ * the lines that changed are measured and shaped again, so editing a line of a long
+ * text does not slow down as the text grows.
+ * <P>
+ * Small text can also be drawn at the whole pixel font size nearest its size on the
+ * screen, without the scale of the graphics. Java2D rasterizes and caches the glyphs
+ * of each font at each size it draws, so as text is zoomed out it is drawn from a few
+ * cached sizes rather than rasterized again at every magnification.
+ * <P>
+ * A layout does not change once it is made, and it draws while synchronized on
+ * itself, so it can be rendered from several threads at once, as the
+ * {@link edu.umd.cs.jazz.util.ZParallelRenderer} does. Components find and make
+ * their layouts while synchronized on themselves, so a layout made by one thread
+ * is seen whole by the others.
+ */
+class ZLineLayout {
+    /**
+     * The number of different font render contexts text is laid out with.
+     */
+    static final int NUM_LAYOUT_CONTEXTS = 4;
+
+                                // The font render contexts text is laid out with,
+                                // indexed by getLayoutIndex
+    static private final FontRenderContext[] LAYOUT_CONTEXTS = {
+        new FontRenderContext(null, false, false),
+        new FontRenderContext(null, false, true),
+        new FontRenderContext(null, true, false),
+        new FontRenderContext(null, true, true)
+    };
+
+                                // The smallest font size, in pixels, text is drawn at
+                                // by drawAtPixelSize. Smaller sizes are too far from
+                                // the proportions of their fonts
+    static private final int MIN_PIXEL_SIZE = 2;
+
+                                // The maximum number of fonts whose whole pixel sizes
+                                // are kept in pixelFonts
+    static private final int MAX_PIXEL_FONTS = 64;
+
+                                // The fonts text is drawn with by drawAtPixelSize. Maps a
+                                // font to an array of the font derived at each pixel size
+    static private Hashtable pixelFonts = new Hashtable();
+
+    private final Font font;
+    private final FontRenderContext frc;
+    private final String[] lines;
+    private GlyphVector[] glyphs = null;
+    private TextLayout[] bidiLayouts = null;
+    private final double[] widths;
+    private double maxWidth = 0.0;
+    private final LineMetrics metrics;
+
+    /**
+     * Lay out the specified lines of text.
+     * @param aFont The font of the text.
+     * @param aLines The lines of text.
+     * @param aFrc The font render context the text is rendered with.
+     * @param previous A previous layout of the text for the same kind of font render
+     * context, whose unchanged lines are reused, or null.
+     */
+    ZLineLayout(Font aFont, String[] aLines, FontRenderContext aFrc, ZLineLayout previous) {
+        font = aFont;
+        frc = LAYOUT_CONTEXTS[getLayoutIndex(aFrc)];
+        lines = aLines;
+        widths = new double[lines.length];
+
+                                // Find the lines at the start and at the end of the
+                                // text that are the same as in the previous layout
+        int numStart = 0;
+        int numEnd = 0;
+        if ((previous != null) && (previous.font == font) && (previous.frc == frc)) {
+            int numCommon = Math.min(lines.length, previous.lines.length);
+            while ((numStart < numCommon) && (lines[numStart] == previous.lines[numStart])) {
+                numStart++;
+            }
+            while ((numEnd < numCommon - numStart) &&
+                   (lines[lines.length - 1 - numEnd] == previous.lines[previous.lines.length - 1 - numEnd])) {
+                numEnd++;
+            }
+            metrics = previous.metrics;
+        } else {
+                                // As with ZRenderContext.getLineMetrics, every line
+                                // is laid out with the metrics of the font
+            metrics = font.getLineMetrics((lines.length > 0) ? lines[0] : "", frc);
+        }
+
+        int offset = previous == null ? 0 : previous.lines.length - lines.length;
+        for (int i = 0; i < lines.length; i++) {
+            if (i < numStart) {
+                copyLine(previous, i, i);
+            } else if (i >= lines.length - numEnd) {
+                copyLine(previous, i + offset, i);
+            } else {
+                layoutLine(i);
+            }
+            if (widths[i] > maxWidth) {
+                maxWidth = widths[i];
+            }
+        }
+    }
+
+    /**
+     * Measure the specified line, and shape it if it needs shaping.
+     */
+    private void layoutLine(int line) {
+        char[] chars = lines[line].toCharArray();
+        if (isSimpleText(chars)) {
+            widths[line] = font.getStringBounds(chars, 0, chars.length, frc).getWidth();
+        } else if (Bidi.requiresBidi(chars, 0, chars.length)) {
+            if (bidiLayouts == null) {
+                bidiLayouts = new TextLayout[lines.length];
+            }
+            bidiLayouts[line] = new TextLayout(lines[line], font, frc);
+            widths[line] = bidiLayouts[line].getAdvance();
+        } else {
+            if (glyphs == null) {
+                glyphs = new GlyphVector[lines.length];
+            }
+            glyphs[line] = font.layoutGlyphVector(frc, chars, 0, chars.length, Font.LAYOUT_LEFT_TO_RIGHT);
+            widths[line] = glyphs[line].getLogicalBounds().getWidth();
+        }
+    }
+
+    /**
+     * Copy the layout of a line that has not changed from a previous layout.
+     */
+    private void copyLine(ZLineLayout previous, int previousLine, int line) {
+        widths[line] = previous.widths[previousLine];
+        if ((previous.glyphs != null) && (previous.glyphs[previousLine] != null)) {
+            if (glyphs == null) {
+                glyphs = new GlyphVector[lines.length];
+            }
+            glyphs[line] = previous.glyphs[previousLine];
+        }
+        if ((previous.bidiLayouts != null) && (previous.bidiLayouts[previousLine] != null)) {
+            if (bidiLayouts == null) {
+                bidiLayouts = new TextLayout[lines.length];
+            }
+            bidiLayouts[line] = previous.bidiLayouts[previousLine];
+        }
+    }
+
+    /**
+     * Determine if the specified characters can be drawn without shaping. This is so
+     * for characters before the combining diacritical marks, which each map to a
+     * single glyph.
+     */
+    static private boolean isSimpleText(char[] chars) {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= '\u0300') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the index, less than {@link #NUM_LAYOUT_CONTEXTS}, of the font render
+     * context that text rendered with the specified font render context is laid out with.
+     * Layouts made for font render contexts with the same index are interchangeable.
+     * @param aFrc The font render context text is rendered with.
+     * @return the index of the layout context.
+     */
+    static int getLayoutIndex(FontRenderContext aFrc) {
+        return (aFrc.isAntiAliased() ? 2 : 0) + (aFrc.usesFractionalMetrics() ? 1 : 0);
+    }
+
+    /**
+     * Return the layout of the specified lines from a component's layouts, making it
+     * if the component has not laid the lines out with the font and the font render
+     * context yet.  Must be called while synchronized on the component.
+     * @param layouts The component's layouts, indexed by {@link #getLayoutIndex}.
+     * @param aFont The font of the text.
+     * @param aLines The lines of text, as Strings.
+     * @param aFrc The font render context the text is rendered with.
+     * @return the layout.
+     */
+    static ZLineLayout getLayout(ZLineLayout[] layouts, Font aFont, java.util.List aLines, FontRenderContext aFrc) {
+        int index = getLayoutIndex(aFrc);
+        ZLineLayout layout = layouts[index];
+        if ((layout == null) || !layout.isLayoutFor(aFont, aLines)) {
+            String[] newLines = new String[aLines.size()];
+            aLines.toArray(newLines);
+            layout = new ZLineLayout(aFont, newLines, aFrc, layout);
+            layouts[index] = layout;
+        }
+        return layout;
+    }
+
+    /**
+     * Return the layout of a single line of text from a component's layouts, making it
+     * if the component has not laid the line out with the font and the font render
+     * context yet.  Must be called while synchronized on the component.
+     * @param layouts The component's layouts, indexed by {@link #getLayoutIndex}.
+     * @param aFont The font of the text.
+     * @param aLine The line of text.
+     * @param aFrc The font render context the text is rendered with.
+     * @return the layout.
+     */
+    static ZLineLayout getLayout(ZLineLayout[] layouts, Font aFont, String aLine, FontRenderContext aFrc) {
+        int index = getLayoutIndex(aFrc);
+        ZLineLayout layout = layouts[index];
+        if ((layout == null) || (layout.font != aFont) || (layout.lines.length != 1) || (layout.lines[0] != aLine)) {
+            String[] newLines = {aLine};
+            layout = new ZLineLayout(aFont, newLines, aFrc, null);
+            layouts[index] = layout;
+        }
+        return layout;
+    }
+
+    /**
+     * Determine if this layout is of the specified lines, in the specified font.
+     * The lines are compared by identity, as text components replace the strings
+     * of the lines they change.
+     */
+    private boolean isLayoutFor(Font aFont, java.util.List aLines) {
+        if ((font != aFont) || (lines.length != aLines.size())) {
+            return false;
+        }
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] != aLines.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of lines.
+     */
+    int getNumLines() {
+        return lines.length;
+    }
+
+    /**
+     * Return the advance width of the specified line.
+     */
+    double getWidth(int line) {
+        return widths[line];
+    }
+
+    /**
+     * Return the advance width of the widest line.
+     */
+    double getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Return the line metrics the lines are laid out with.
+     */
+    LineMetrics getLineMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the specified font derived at the specified whole pixel size.
+     */
+    static private Font getPixelFont(Font aFont, int pixelSize) {
+        synchronized (pixelFonts) {
+            Font[] fonts = (Font[])pixelFonts.get(aFont);
+            if (fonts == null) {
+                if (pixelFonts.size() >= MAX_PIXEL_FONTS) {
+                    pixelFonts.clear();
+                }
+                fonts = new Font[pixelSize + 1];
+                pixelFonts.put(aFont, fonts);
+            } else if (fonts.length <= pixelSize) {
+                Font[] newFonts = new Font[pixelSize + 1];
+                System.arraycopy(fonts, 0, newFonts, 0, fonts.length);
+                fonts = newFonts;
+                pixelFonts.put(aFont, fonts);
+            }
+            if (fonts[pixelSize] == null) {
+                fonts[pixelSize] = aFont.deriveFont((float)pixelSize);
+            }
+            return fonts[pixelSize];
+        }
+    }
+
+    /**
+     * Draw the lines onto the specified graphics as {@link #draw} does, but with the
+     * font at the largest whole pixel size that is no larger than the size the text
+     * is rendered at, and without the scale of the graphics. The lines are placed
+     * as they are by draw, but are drawn with the glyphs Java2D cached for that pixel
+     * size, and may be slightly narrower.
+     * <P>
+     * Text can only be drawn this way when the graphics is only translated and
+     * uniformly scaled, and when the text is rendered at least two pixels high.
+     * @param g2 The graphics to draw onto.
+     * @return true if the lines were drawn, or false if they could not be drawn this way.
+     */
+    synchronized boolean drawAtPixelSize(Graphics2D g2) {
+        AffineTransform transform = g2.getTransform();
+        if (((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) ||
+            font.isTransformed()) {
+            return false;
+        }
+        double scale = transform.getScaleX();
+        int pixelSize = (int)(font.getSize2D() * scale);
+        if (pixelSize < MIN_PIXEL_SIZE) {
+            return false;
+        }
+
+        float ascent = metrics.getAscent();
+        float height = metrics.getHeight();
+        g2.setTransform(AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+        g2.setFont(getPixelFont(font, pixelSize));
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].length() > 0) {
+                g2.drawString(lines[i], 0, (float)(scale * (ascent + (i * height))));
+            }
+        }
+        g2.setFont(font);
+        g2.setTransform(transform);
+        return true;
+    }
+
+    /**
+     * Draw the lines onto the specified graphics, with the top of the first line at
+     * the origin, in the graphics' current color.
+     * @param g2 The graphics to draw onto.
+     */
+    synchronized void draw(Graphics2D g2) {
+        float ascent = metrics.getAscent();
+        float height = metrics.getHeight();
+        for (int i = 0; i < lines.length; i++) {
+            float y = ascent + (i * height);
+            if ((glyphs != null) && (glyphs[i] != null)) {
+                g2.drawGlyphVector(glyphs[i], 0, y);
+            } else if ((bidiLayouts != null) && (bidiLayouts[i] != null)) {
+                bidiLayouts[i].draw(g2, 0, y);
+            } else if (lines[i].length() > 0) {
+                g2.drawString(lines[i], 0, y);
+            }
+        }
+    }
+}
\ No newline at end of file
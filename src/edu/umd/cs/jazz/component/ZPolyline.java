@@ -366,6 +366,26 @@ public class ZPolyline extends ZCoordList {
         return false;
     }
 
+    /**
+     * Paints the area where this polyline is picked into a pick buffer:
+     * its stroke, and the bounds of its arrowheads.
+     * @param renderContext The render context to paint with.
+     * @see ZPickBuffer
+     */
+    public void renderPickArea(ZRenderContext renderContext) {
+        if (penPaint == null) return;
+
+        Graphics2D g2 = renderContext.getGraphics2D();
+        g2.setStroke(new BasicStroke((float)getPenWidthForCurrentContext(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.draw(getShape());
+        if (firstArrowHead != null) {
+            g2.fill(firstArrowHead.getBounds2D());
+        }
+        if (lastArrowHead != null) {
+            g2.fill(lastArrowHead.getBounds2D());
+        }
+    }
+
     /**
      * Updates the internal representation of the arrowheads to reflect the
      * current state of the polyline.  This should be called whenever the
@@ -114,6 +114,23 @@ public abstract class ZShape extends ZBasicVisualComponent {
         return false;
     }
 
+    /**
+     * Paints the area where this shape is picked into a pick buffer: its fill if it
+     * has a fill paint, and its stroke if it has a pen paint.
+     * @param renderContext The render context to paint with.
+     * @see ZPickBuffer
+     */
+    public void renderPickArea(ZRenderContext renderContext) {
+        Graphics2D g2 = renderContext.getGraphics2D();
+        if (fillPaint != null) {
+            g2.fill(getShape());
+        }
+        if (penPaint != null) {
+            g2.setStroke(new BasicStroke((float)getPenWidthForCurrentContext(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2.draw(getShape());
+        }
+    }
+
     /**
      * Returns true if the specified rectangle intersects the shapes stroke.
      * @param rect Pick rectangle of object coordinates.
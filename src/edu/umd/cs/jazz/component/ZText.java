@@ -152,6 +152,12 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
 
     protected transient Line2D             caretShape = new Line2D.Double();
 
+    /**
+     * Stroke the caret was last drawn with, reused while the magnification doesn't change.
+     * It is volatile as the text may be rendered from several threads.
+     */
+    private transient volatile BasicStroke caretStroke = null;
+
     /**
      * Current text font.
      */
@@ -172,6 +178,12 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
      */
     protected transient FontRenderContext prevFRC = null;
 
+    /**
+     * The layouts of the lines, for each font render context they have been
+     * rendered or measured with, or null if there are none yet.
+     */
+    private transient ZLineLayout[] lineLayouts = null;
+
     /**
      * jdk version <= 1.2.1 has a bug: font.getStringBounds() gives the
      * bounds of a space " " as zero.
@@ -230,6 +242,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
 
                                 // Copy the lines vector.
         newText.lines = (ArrayList)lines.clone();
+        newText.lineLayouts = null;
 
         return newText;
     }
@@ -420,7 +433,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
 
         lines.set(caretLine, frontHalf + c + backHalf);
         caretPos++;
-        reshape();
+        reshapeLine(caretLine);
     }
 
     /**
@@ -449,13 +462,14 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
                 lines.set(caretLine, currentLine + (String)lines.get(caretLine + 1));
                 lines.remove(caretLine + 1);
             }
+            reshape();
         } else {
             String frontHalf = currentLine.substring(0, caretPos);
             String backHalf = currentLine.substring(caretPos + 1);
 
             lines.set(caretLine, frontHalf + backHalf);
+            reshapeLine(caretLine);
         }
-        reshape();
     }
 
     /**
@@ -480,7 +494,73 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
                                 // Else, Delete to end of line
             String frontHalf = ((String)lines.get(caretLine)).substring(0, caretPos);
             lines.set(caretLine, frontHalf);
+            reshapeLine(caretLine);
+        }
+    }
+
+    /**
+     * Reshapes this text after one of its lines has changed, without the number
+     * of lines changing. If the bounds of the text stay the same, only the changed
+     * line is repainted, and the bounds of the text and its ancestors are not
+     * invalidated. Otherwise the whole text is reshaped.
+     * @param line The line that changed.
+     */
+    protected void reshapeLine(int line) {
+        if (invalidBounds || inTransaction || getVolatileBounds()) {
             reshape();
+            return;
+        }
+
+        double x = bounds.getX();
+        double y = bounds.getY();
+        double width = bounds.getWidth();
+        double height = bounds.getHeight();
+        computeBounds();
+        if ((bounds.getX() != x) || (bounds.getY() != y) ||
+            (bounds.getWidth() != width) || (bounds.getHeight() != height)) {
+                                // Restore the old bounds, so that reshape repaints them
+            bounds.setRect(x, y, width, height);
+            reshape();
+            return;
+        }
+        repaintLine(line);
+    }
+
+    /**
+     * Repaints the part of this text the specified line covers, when rendered
+     * in any quality.
+     * @param line The line to repaint.
+     */
+    protected void repaintLine(int line) {
+        if (invalidBounds || getVolatileBounds()) {
+            repaint();
+            return;
+        }
+
+        double top = bounds.getHeight();
+        double bottom = 0.0;
+        for (int loop = 0; loop < 2; loop++) {
+            FontRenderContext frc = (loop == 0) ? LOW_QUALITY_FONT_CONTEXT : HIGH_QUALITY_FONT_CONTEXT;
+            LineMetrics lm = font.getLineMetrics((String)lines.get(0), frc);
+            top = Math.min(top, line * lm.getHeight());
+            bottom = Math.max(bottom, (line + 1) * lm.getHeight());
+        }
+        bottom = Math.min(bottom, bounds.getHeight());
+        if (bottom > top) {
+            repaint(new ZBounds(bounds.getX(), bounds.getY() + top, bounds.getWidth(), bottom - top));
+        }
+    }
+
+    /**
+     * Repaints the lines the caret was and is on, after it has moved.
+     * @param oldLine The line the caret was on.
+     */
+    private void repaintCaret(int oldLine) {
+        if (oldLine < lines.size()) {
+            repaintLine(oldLine);
+        }
+        if (caretLine != oldLine) {
+            repaintLine(caretLine);
         }
     }
 
@@ -490,6 +570,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
      * with zero.
      */
     public void setCaretLine(int line) {
+        int oldLine = caretLine;
         if (line < 0) {
             caretLine = 0;
         } else if (line >= lines.size()) {
@@ -500,7 +581,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
 
         // new line may be too short for current caret position
         setCaretPos(getCaretPos());
-        repaint();
+        repaintCaret(oldLine);
     }
 
 
@@ -509,6 +590,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
      *  @param <code>cp</code>Character position to use, starts with zero.
      */
     public void setCaretPos(int cp) {
+        int oldLine = caretLine;
         if (cp < 0) {
             if (caretLine > 0) {
                 caretLine--;
@@ -526,7 +608,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
         } else {
             caretPos = cp;
         }
-        repaint();
+        repaintCaret(oldLine);
     }
 
     /**
@@ -534,6 +616,7 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
      *  @param <code>pt</code> object coordinates of a mouse click.
      */
     public void setCaretPos(Point2D pt) {
+        int oldLine = caretLine;
         LineMetrics lm = font.getLineMetrics((String)lines.get(0), prevFRC);
         double height = lm.getHeight();
         double desc = lm.getDescent();
@@ -541,40 +624,16 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
         if (pt.getY() < desc) caretLine = 0;
         if (caretLine >= lines.size()) caretLine = lines.size() - 1;
 
-        Rectangle2D bounds = null;
-        double strWid, charWid;
         String textLine = (String)lines.get(caretLine);
-        String substr;
-        caretPos = textLine.length();
-        for (int ch=0; ch < textLine.length(); ch++) {
-            substr = textLine.substring(0,ch);
-            bounds = font.getStringBounds(substr, prevFRC);
-            strWid = bounds.getWidth();
-            charWid = font.getStringBounds(textLine.substring(ch, ch+1), prevFRC).getWidth();
-            // jkd version <= 1.2.1 bug:
-            // bounds of a space " " returned as zero
-            if (boundsBug) {
-                if ((substr != null) && (substr.length() > 0) &&
-                    (substr.charAt(substr.length()-1) == ' ')) {
-                    strWid += font.getStringBounds("t", prevFRC).getWidth();
-                    charWid = font.getStringBounds("t", prevFRC).getWidth();
-                }
-            }
-
-                                // position cursor before or after character clicked on
-            if (strWid > pt.getX()) {
-                if (pt.getX() > strWid - (charWid / 2)) {
-                    caretPos = ch;
-                } else {
-                    caretPos = ch - 1;
-                    if (caretPos < 0) {
-                        caretPos = 0;
-                    }
-                }
-                break;
-            }
+        if (textLine.length() == 0) {
+            caretPos = 0;
+        } else {
+                                // Lay the line out once, and position the caret before
+                                // or after the character clicked on
+            TextLayout layout = new TextLayout(textLine, font, prevFRC);
+            caretPos = layout.hitTestChar((float)pt.getX(), 0).getInsertionIndex();
         }
-        repaint();
+        repaintCaret(oldLine);
     }
 
     /**
@@ -801,7 +860,8 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
 
             if (greekColor != null) {
                 g2.setColor(greekColor);
-                Rectangle2D rect = new Rectangle2D.Double(0.0, 0.0, bounds.getWidth(), bounds.getHeight());
+                Rectangle2D rect = renderContext.getTmpRectangle();
+                rect.setRect(0.0, 0.0, bounds.getWidth(), bounds.getHeight());
                 g2.fill(rect);
             }
     }
@@ -816,7 +876,8 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
         Graphics2D g2 = renderContext.getGraphics2D();
         if (backgroundColor != null) {
             g2.setColor(backgroundColor);
-            Rectangle2D rect = new Rectangle2D.Double(0.0, 0.0, bounds.getWidth(), bounds.getHeight());
+            Rectangle2D rect = renderContext.getTmpRectangle();
+            rect.setRect(0.0, 0.0, bounds.getWidth(), bounds.getHeight());
             g2.fill(rect);
         }
 
@@ -829,41 +890,23 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
         g2.setColor(penColor);
         g2.setFont(font);
 
-        int lineNum = 0;
-        String line;
-        LineMetrics lm;
-        GlyphVector gv;
-        GlyphMetrics gm;
-        double x, y;
-        long startTime=0, endTime=0;
-        int gLength;
-
-        String character;
-        Rectangle2D charBounds, lineSoFarBounds;
-
-        for (Iterator i = lines.iterator() ; i.hasNext() ; ) {
-            line = (String)i.next();
-
-	    // ADDED BY LEG ON 2/25/03 - BUG CAUSING PROBLEMS AT CERTAIN
-	    // SCALES WHEN LINE WAS EMPTY
-	    line = (line.equals("")) ? " " : line;
-
-            lm = font.getLineMetrics(line, frc);
-            y = lm.getAscent() + (lineNum * lm.getHeight());
-
-			if (line.length() > 0) {
-            	g2.drawString(line, 0, (float)y);
-			}
-			
-            lineNum++;
+                                // The glyphs are only laid out again when the text,
+                                // the font or the kind of font render context changes
+        ZLineLayout layout = getLineLayout(frc);
+                                // Small text is drawn at whole pixel sizes if the
+                                // render context asks for it
+        double renderedFontSize = font.getSize() * renderContext.getCompositeMagnification();
+        if ((renderedFontSize >= renderContext.getPixelTextSize()) || !layout.drawAtPixelSize(g2)) {
+            layout.draw(g2);
         }
+        LineMetrics lm = layout.getLineMetrics();
+
                                 // Draw the caret
         if (editable) {
 
 
             caretX = 0;
             String textLine = (String)lines.get(caretLine);
-            lm = font.getLineMetrics(textLine, frc);
             if (caretPos > 0) {
                 if ((boundsBug) && (textLine.substring(0,caretPos).endsWith(" "))) {
                     caretX = font.getStringBounds((textLine.substring(0, caretPos-1))+'t', frc).getWidth();
@@ -874,21 +917,39 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
             caretY = lm.getAscent() + (caretLine * lm.getHeight());
 
             g2.setColor(caretColor);
-            g2.setStroke(new BasicStroke((float)(2.0 / renderContext.getCompositeMagnification()),
-                                         BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
+            float caretWidth = (float)(2.0 / renderContext.getCompositeMagnification());
+            BasicStroke stroke = caretStroke;
+            if ((stroke == null) || (stroke.getLineWidth() != caretWidth)) {
+                stroke = new BasicStroke(caretWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+                caretStroke = stroke;
+            }
+            g2.setStroke(stroke);
             caretShape.setLine(caretX, caretY, caretX, (caretY - lm.getAscent()));
             g2.draw(caretShape);
         }
 
     }
 
+    /**
+     * Returns the layout of the lines for the specified font render context,
+     * laying them out if they have changed since they were last laid out for it.
+     * This is synchronized, as the text may be rendered from several threads.
+     * @param frc The font render context the lines are rendered with.
+     * @return the layout.
+     */
+    private synchronized ZLineLayout getLineLayout(FontRenderContext frc) {
+        if (lineLayouts == null) {
+            lineLayouts = new ZLineLayout[ZLineLayout.NUM_LAYOUT_CONTEXTS];
+        }
+        return ZLineLayout.getLayout(lineLayouts, font, lines, frc);
+    }
+
     /**
      * Notifies this object that it has changed and that it
      * should update its notion of its bounding box.
      */
     protected void computeBounds() {
         Rectangle2D rect = null;
-        Rectangle2D bugBounds = null;
         double lineWidth;
         double maxWidth = 0.0;
         double maxHeight = 0.0;
@@ -907,32 +968,27 @@ public class ZText extends ZVisualComponent implements ZPenColor, ZPenPaint, Ser
                 hasText = false;
             }
             if (!lines.isEmpty() && hasText) {
-                String line;
-                LineMetrics lm;
-                int lineNum = 0;
-                for (Iterator i = lines.iterator() ; i.hasNext() ; ) {
-                    line = (String)i.next();
-                    lm = font.getLineMetrics(line, frc);
+                ZLineLayout layout = getLineLayout(frc);
+                LineMetrics lm = layout.getLineMetrics();
+                int numLines = layout.getNumLines();
 
                                 // Find the longest line in the text
-                    rect = font.getStringBounds(line, frc);
-                    lineWidth = rect.getWidth();
-
-                    if ((boundsBug) && (line.endsWith(" ")))
-                        lineWidth = font.getStringBounds((line.substring(0, line.length()-1))+'t', frc).getWidth();
-
-                    if (lineWidth > maxWidth) {
-                        maxWidth = lineWidth;
-                    }
-                                // Find the heighest line in the text
-                    if (lineNum == 0) {
-                        height += lm.getAscent() + lm.getDescent();
-                    } else {
-                        height += lm.getHeight();
+                if (layout.getMaxWidth() > maxWidth) {
+                    maxWidth = layout.getMaxWidth();
+                }
+                if (boundsBug) {
+                    for (int lineNum = 0; lineNum < numLines; lineNum++) {
+                        String line = (String)lines.get(lineNum);
+                        if (line.endsWith(" ")) {
+                            lineWidth = font.getStringBounds((line.substring(0, line.length()-1))+'t', frc).getWidth();
+                            if (lineWidth > maxWidth) {
+                                maxWidth = lineWidth;
+                            }
+                        }
                     }
-
-                    lineNum++;
                 }
+                                // Find the height of the text
+                height = lm.getAscent() + lm.getDescent() + ((numLines - 1) * lm.getHeight());
             } else {
                                 // If no text, then we want to have the bounds of a space character,
                                 // so get those bounds here
@@ -0,0 +1,645 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.component;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.io.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * <b>ZTiledImage</b> is a graphic object that represents a large raster image,
+ * such as a scan or a map, that is decoded a tile at a time as it is viewed.
+ * <P>
+ * The image is viewed through a pyramid of levels. Level 0 is the full image, and
+ * each level above it has half the resolution of the level below, up to a level that
+ * fits in a single tile. Each level is split into square tiles of
+ * {@link #DEFAULT_TILE_SIZE} pixels. When the image is rendered, the level whose
+ * resolution is closest to, but not below, the resolution of the screen is picked from
+ * the magnification, and only the tiles of that level that are visible are decoded,
+ * so a zoomed out image is drawn from a few small tiles rather than by resampling the
+ * full image, and a zoomed in image only holds the tiles in view.
+ * <P>
+ * Tiles are decoded with Image I/O, which reads the pixels of a region of the image file
+ * at a level's resolution. Applications that keep their images as pre-built pyramids of
+ * tiles can override {@link #decodeTiles} to read them instead. Decoded tiles are kept in
+ * a cache that is shared by all tiled images, up to a memory budget, and the least recently
+ * used tiles are evicted when the budget is exceeded.
+ * <P>
+ * Tiles are decoded on the thread that renders the image, when they are first rendered.
+ * Copies of a tiled image share its image file and its cached tiles.
+ *
+ * <P>
+ * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
+ * compatible with future Jazz releases. The current serialization support is
+ * appropriate for short term storage or RMI between applications running the
+ * same version of Jazz. A future release of Jazz will provide support for long
+ * term persistence.
+ *
+ * @see ZImage
+ */
+public class ZTiledImage extends ZVisualComponent implements Serializable {
+    /**
+     * The width and height of a tile, in pixels of its level.
+     */
+    static public final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * The default memory budget of the tile cache, in bytes.
+     */
+    static public final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+
+                                // The tiles decoded by every tiled image
+    static private ZImageTileCache tileCache = new ZImageTileCache(DEFAULT_MEMORY_BUDGET);
+
+    /**
+     * URL of the image.
+     */
+    protected URL url = null;
+
+    /**
+     * The dimensions of the full image.  0 if there is no image.
+     */
+    protected int width = 0;
+    protected int height = 0;
+
+    /**
+     * The number of levels of the pyramid.
+     */
+    protected int numLevels = 0;
+
+                                // The image file, shared with the copies of this image,
+                                // or null if there is no image
+    private transient ImageSource source = null;
+
+    /**
+     * Constructs a new ZTiledImage with no image.
+     */
+    public ZTiledImage() {
+    }
+
+    /**
+     * Constructs a new ZTiledImage from a file.
+     */
+    public ZTiledImage(String aFileName) {
+        setImage(aFileName);
+    }
+
+    /**
+     * Constructs a new ZTiledImage from a URL.
+     */
+    public ZTiledImage(URL aUrl) {
+        setImage(aUrl);
+    }
+
+    /**
+     * Returns a clone of this object.
+     *
+     * @see ZSceneGraphObject#duplicateObject
+     */
+    protected Object duplicateObject() {
+        ZTiledImage newImage = (ZTiledImage)super.duplicateObject();
+
+                                // The copy shares the image file and its tiles
+        if (source != null) {
+            synchronized (source) {
+                source.numUsers++;
+            }
+        }
+
+        return newImage;
+    }
+
+    /**
+     * Set the image to the one in the specified file.  Only the size of the
+     * image is read before returning.
+     * @param <code>aFileName</code> the file name of the image.
+     * @return true if the image could be read.
+     */
+    public boolean setImage(String aFileName) {
+        try {
+            return setImage(new File(aFileName).toURI().toURL());
+        } catch (MalformedURLException e) {
+            System.err.println("Couldn't read image: " + aFileName);
+            return setImage((URL)null);
+        }
+    }
+
+    /**
+     * Set the image to the one at the specified URL.  Only the size of the
+     * image is read before returning.
+     * @param <code>aURL</code> the URL of the image, or null for no image.
+     * @return true if the image could be read.
+     */
+    public boolean setImage(URL aUrl) {
+        synchronized (this) {
+            releaseSource();
+            url = aUrl;
+            width = 0;
+            height = 0;
+            numLevels = 0;
+            if ((url != null) && getSource().open()) {
+                try {
+                    width = source.reader.getWidth(0);
+                    height = source.reader.getHeight(0);
+                } catch (IOException e) {
+                    System.err.println("Couldn't read image: " + url);
+                }
+                                // Add levels until the top one fits in a tile
+                numLevels = 1;
+                while ((Math.max(width, height) >> (numLevels - 1)) > DEFAULT_TILE_SIZE) {
+                    numLevels++;
+                }
+            }
+        }
+        reshape();
+
+        return isLoaded();
+    }
+
+    /**
+     * Return the URL of the image.
+     * @return the URL, or null if there is no image.
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Return width of the full image.
+     * @return width, or 0 if there is no image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Return height of the full image.
+     * @return height, or 0 if there is no image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Determines if the image could be read.
+     * @return true if the image has a size.
+     */
+    public boolean isLoaded() {
+        return (width > 0) && (height > 0);
+    }
+
+    /**
+     * Return the number of levels of the pyramid.  The top level fits in a single tile.
+     * @return the number of levels, or 0 if there is no image.
+     */
+    public int getNumLevels() {
+        return numLevels;
+    }
+
+    /**
+     * Return the level that is rendered at the specified magnification.  This is the
+     * level with the lowest resolution that is not below the resolution of the screen.
+     * @param mag The magnification the image is rendered at.
+     * @return the level, where 0 is the full image.
+     */
+    public int getLevel(double mag) {
+        int level = 0;
+        while ((level < numLevels - 1) && ((2 << level) * mag <= 1.0)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Release the decoded tiles of this image and its copies, and close the image file.
+     * The image is opened and decoded again when it is next rendered.
+     */
+    public void flush() {
+        ImageSource flushSource = getSource();
+        if (flushSource != null) {
+            tileCache.removeAll(flushSource);
+            flushSource.close();
+        }
+    }
+
+    /**
+     * Set the maximum number of bytes of decoded tiles that are kept for all
+     * tiled images.  Tiles are evicted immediately if the cache is over the new budget.
+     * @param aMemoryBudget the memory budget.
+     */
+    static public void setTileMemoryBudget(long aMemoryBudget) {
+        tileCache.setMemoryBudget(aMemoryBudget);
+    }
+
+    /**
+     * Return the maximum number of bytes of decoded tiles that are kept for all tiled images.
+     * @return the memory budget.
+     */
+    static public long getTileMemoryBudget() {
+        return tileCache.getMemoryBudget();
+    }
+
+    /**
+     * Return the number of bytes used by the decoded tiles of all tiled images.
+     * @return the memory used.
+     */
+    static public long getTileMemoryUsed() {
+        return tileCache.getMemoryUsed();
+    }
+
+    /**
+     * Return the number of decoded tiles that are kept for all tiled images.
+     * @return the number of tiles.
+     */
+    static public int getNumCachedTiles() {
+        return tileCache.getNumTiles();
+    }
+
+    /**
+     * Return the number of image files that are open for all tiled images.
+     * @return the number of open files.
+     */
+    static public int getNumOpenImages() {
+        return ImageSource.getNumOpen();
+    }
+
+    /**
+     * Return the image file of this image, creating it if this image was
+     * read with Java serialization.
+     * @return the image file, or null if there is no image.
+     */
+    private synchronized ImageSource getSource() {
+        if ((source == null) && (url != null)) {
+            source = new ImageSource(url);
+        }
+        return source;
+    }
+
+    /**
+     * Stop using the image file, and close it and release its tiles
+     * if no copy of this image uses it.
+     */
+    private synchronized void releaseSource() {
+        if (source != null) {
+            boolean unused;
+            synchronized (source) {
+                source.numUsers--;
+                unused = (source.numUsers == 0);
+            }
+            if (unused) {
+                tileCache.removeAll(source);
+                source.close();
+            }
+            source = null;
+        }
+    }
+
+    /**
+     * Notifies this object that it has changed and that it should update
+     * its notion of its bounding box.  Note that this should not be called
+     * directly.  Instead, it is called by <code>updateBounds</code> when needed.
+     */
+    protected void computeBounds() {
+        bounds.setRect(0.0, 0.0, width, height);
+    }
+
+    /**
+     * Paints this object.
+     * <p>
+     * The transform, clip, and composite will be set appropriately when this object
+     * is rendered.  It is up to this object to restore the transform, clip, and composite of
+     * the Graphics2D if this node changes any of them. However, the color, font, and stroke are
+     * unspecified by Jazz.  This object should set those things if they are used, but
+     * they do not need to be restored.
+     * <p>
+     * Only the tiles that intersect the clip of the graphics, or the visible bounds
+     * if there is no clip, are drawn.
+     *
+     * @param <code>renderContext</code> The graphics context to paint into.
+     */
+    public void render(ZRenderContext renderContext) {
+        ImageSource renderSource = getSource();
+        if (!isLoaded() || (renderSource == null)) {
+            return;
+        }
+        Graphics2D g2 = renderContext.getGraphics2D();
+        int level = getLevel(renderContext.getCompositeMagnification());
+
+                                // The size of a tile in pixels of the full image
+        int size = DEFAULT_TILE_SIZE << level;
+
+                                // The clip is used rather than the visible bounds, as it is
+                                // in local coordinates when a display list is replayed too.
+                                // Without a clip, as when printing, the visible bounds are
+                                // used, so only the tiles that can be seen are decoded
+        Shape clip = g2.getClip();
+        Rectangle2D clipBounds = (clip != null) ? clip.getBounds2D() : renderContext.getVisibleBounds();
+        if (clipBounds == null) {
+            clipBounds = getBoundsReference();
+        }
+        int col0 = Math.max(0, (int)Math.floor(clipBounds.getMinX() / size));
+        int row0 = Math.max(0, (int)Math.floor(clipBounds.getMinY() / size));
+        int col1 = Math.min((width - 1) / size, (int)Math.floor(clipBounds.getMaxX() / size));
+        int row1 = Math.min((height - 1) / size, (int)Math.floor(clipBounds.getMaxY() / size));
+
+                                // Draw the cached tiles, and find the ones that are not
+        int missingCol0 = col1 + 1;
+        int missingRow0 = row1 + 1;
+        int missingCol1 = col0 - 1;
+        int missingRow1 = row0 - 1;
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                BufferedImage tile = tileCache.get(renderSource, level, col, row);
+                if (tile != null) {
+                    drawTile(g2, tile, size, col, row);
+                } else {
+                    missingCol0 = Math.min(missingCol0, col);
+                    missingRow0 = Math.min(missingRow0, row);
+                    missingCol1 = Math.max(missingCol1, col);
+                    missingRow1 = Math.max(missingRow1, row);
+                }
+            }
+        }
+
+                                // Decode the missing tiles together, and draw them
+        if (missingCol1 >= missingCol0) {
+            BufferedImage[][] tiles = getTiles(renderSource, level, missingCol0, missingRow0, missingCol1, missingRow1);
+            for (int row = missingRow0; row <= missingRow1; row++) {
+                for (int col = missingCol0; col <= missingCol1; col++) {
+                    BufferedImage tile = tiles[row - missingRow0][col - missingCol0];
+                    if (tile != null) {
+                        drawTile(g2, tile, size, col, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw a tile stretched over the part of the image it covers.
+     */
+    private void drawTile(Graphics2D g2, BufferedImage tile, int size, int col, int row) {
+        int x = col * size;
+        int y = row * size;
+        g2.drawImage(tile, x, y, Math.min(x + size, width), Math.min(y + size, height),
+                     0, 0, tile.getWidth(), tile.getHeight(), null);
+    }
+
+    /**
+     * Return the specified tiles of a level, decoding the ones that are not in the
+     * tile cache.  The tiles are decoded while synchronized on the image file, which
+     * is shared by the copies of this image.
+     * @return the tiles, indexed by row and then by column from the first tile, with
+     * null for the tiles that could not be decoded.
+     */
+    private BufferedImage[][] getTiles(ImageSource tileSource, int level, int col0, int row0, int col1, int row1) {
+        BufferedImage[][] tiles = new BufferedImage[row1 - row0 + 1][col1 - col0 + 1];
+        synchronized (tileSource) {
+            boolean missing = false;
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) {
+                                // Another thread may have decoded some of them meanwhile
+                    tiles[row - row0][col - col0] = tileCache.get(tileSource, level, col, row);
+                    if (tiles[row - row0][col - col0] == null) {
+                        missing = true;
+                    }
+                }
+            }
+            if (missing) {
+                BufferedImage[][] decoded = decodeTiles(level, col0, row0, col1, row1);
+                for (int row = row0; row <= row1; row++) {
+                    for (int col = col0; col <= col1; col++) {
+                        BufferedImage tile = decoded[row - row0][col - col0];
+                        if ((tiles[row - row0][col - col0] == null) && (tile != null)) {
+                            tiles[row - row0][col - col0] = tile;
+                            tileCache.put(tileSource, level, col, row, tile);
+                        }
+                    }
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Decode the specified tiles of a level from the image.  A tile covers the square of
+     * <code>DEFAULT_TILE_SIZE &lt;&lt; level</code> pixels of the full image at its
+     * column and row, clipped to the image, and has <code>1 &lt;&lt; level</code> times
+     * fewer pixels across.  It is drawn stretched over the part of the image it covers.
+     * <P>
+     * The tiles are decoded together, with a single read of their part of the image
+     * file, as most image formats can only be decoded from the start of the file.
+     * This is called while synchronized on the image file, which is shared by the
+     * copies of this image.  Subclasses can override it to read tiles from a pre-built
+     * pyramid.
+     * @param level The level of the tiles.
+     * @param col0 The column of the first tile.
+     * @param row0 The row of the first tile.
+     * @param col1 The column of the last tile.
+     * @param row1 The row of the last tile.
+     * @return the tiles, indexed by row and then by column from the first tile, with
+     * null for the tiles that could not be decoded.
+     */
+    protected BufferedImage[][] decodeTiles(int level, int col0, int row0, int col1, int row1) {
+        BufferedImage[][] tiles = new BufferedImage[row1 - row0 + 1][col1 - col0 + 1];
+        ImageSource decodeSource = getSource();
+        if ((decodeSource == null) || !decodeSource.open()) {
+            return tiles;
+        }
+        ImageReader reader = decodeSource.reader;
+        int subsampling = 1 << level;
+        int size = DEFAULT_TILE_SIZE << level;
+        int x = col0 * size;
+        int y = row0 * size;
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(x, y, Math.min((col1 + 1) * size, width) - x, Math.min((row1 + 1) * size, height) - y));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+        BufferedImage region;
+        try {
+            region = reader.read(0, param);
+        } catch (IOException e) {
+            System.err.println("Couldn't decode image tiles: " + url);
+            return tiles;
+        }
+
+                                // Copy each tile out of the region, in a type that
+                                // Java2D draws quickly
+        int type = region.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB;
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int tileX = (col - col0) * DEFAULT_TILE_SIZE;
+                int tileY = (row - row0) * DEFAULT_TILE_SIZE;
+                int tileWidth = Math.min(DEFAULT_TILE_SIZE, region.getWidth() - tileX);
+                int tileHeight = Math.min(DEFAULT_TILE_SIZE, region.getHeight() - tileY);
+                if ((tileWidth > 0) && (tileHeight > 0)) {
+                    BufferedImage tile = new BufferedImage(tileWidth, tileHeight, type);
+                    Graphics2D g2 = tile.createGraphics();
+                    g2.drawImage(region, 0, 0, tileWidth, tileHeight,
+                                 tileX, tileY, tileX + tileWidth, tileY + tileHeight, null);
+                    g2.dispose();
+                    tiles[row - row0][col - col0] = tile;
+                }
+            }
+        }
+        return tiles;
+    }
+
+
+    /**
+     * Generate a string that represents this object for debugging.
+     * @return the string that represents this object for debugging
+     * @see ZDebug#dump
+     */
+    public String dump() {
+        String str = super.dump();
+        if (url != null) {
+            str += "\n URL = '" + url + "'";
+        }
+
+        return str;
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    //
+    // Saving
+    //
+    /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write out all of this object's state.
+     * @param out The stream that this object writes into
+     */
+    public void writeObject(ZObjectOutputStream out) throws IOException {
+        super.writeObject(out);
+
+                                // URLs are written as strings, which the
+                                // Jazz file format can hold
+        if (url != null) {
+            out.writeState("String", "url", url.toString());
+        }
+    }
+
+    /**
+     * Set some state of this object as it gets read back in.
+     * After the object is created with its default no-arg constructor,
+     * this method will be called on the object once for each bit of state
+     * that was written out through calls to ZObjectOutputStream.writeState()
+     * within the writeObject method.
+     * @param fieldType The fully qualified type of the field
+     * @param fieldName The name of the field
+     * @param fieldValue The value of the field
+     */
+    public void setState(String fieldType, String fieldName, Object fieldValue) {
+        super.setState(fieldType, fieldName, fieldValue);
+
+        if (fieldName.compareTo("url") == 0) {
+            try {
+                setImage(new URL((String)fieldValue));
+            } catch (MalformedURLException e) {
+                System.err.println("Couldn't read image: " + fieldValue);
+            }
+        }
+    }
+
+    /**
+     * internal class: The image file of a tiled image, and the reader its tiles are
+     * decoded with.  Copies of the image share it, so the file is opened once, and
+     * the tiles are cached once, for all of them.
+     */
+    static class ImageSource {
+                                // The number of image files that are open
+        static private int numOpen = 0;
+
+        URL url;
+
+                                // The number of tiled images that use this file
+        int numUsers = 1;
+
+                                // The reader tiles are decoded with, and its input,
+                                // or null if the file has not been opened
+        ImageReader reader = null;
+        private ImageInputStream input = null;
+        private InputStream urlInput = null;
+
+        ImageSource(URL aUrl) {
+            url = aUrl;
+        }
+
+        /**
+         * Open the image for reading, if it is not open.
+         * @return true if there is a reader for the image.
+         */
+        synchronized boolean open() {
+            if (reader != null) {
+                return true;
+            }
+            try {
+                                // Files are read directly, other URLs through a cache
+                if (url.getProtocol().equals("file")) {
+                    input = ImageIO.createImageInputStream(new File(new URI(url.toString())));
+                } else {
+                    urlInput = url.openStream();
+                    input = ImageIO.createImageInputStream(urlInput);
+                }
+                if (input != null) {
+                    Iterator readers = ImageIO.getImageReaders(input);
+                    if (readers.hasNext()) {
+                        reader = (ImageReader)readers.next();
+                        reader.setInput(input, false, true);
+                        synchronized (ImageSource.class) {
+                            numOpen++;
+                        }
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+            } catch (URISyntaxException e) {
+            } catch (IllegalArgumentException e) {
+                                // The file URL has an authority or a query
+            }
+            System.err.println("Couldn't read image: " + url);
+            close();
+            return false;
+        }
+
+        /**
+         * Close the image if it is open.
+         */
+        synchronized void close() {
+            if (reader != null) {
+                reader.dispose();
+                reader = null;
+                synchronized (ImageSource.class) {
+                    numOpen--;
+                }
+            }
+            try {
+                if (input != null) {
+                    input.close();
+                }
+                if (urlInput != null) {
+                    urlInput.close();
+                }
+            } catch (IOException e) {
+            }
+            input = null;
+            urlInput = null;
+        }
+
+        static synchronized int getNumOpen() {
+            return numOpen;
+        }
+    }
+}
\ No newline at end of file
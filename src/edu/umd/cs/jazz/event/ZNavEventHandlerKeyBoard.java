@@ -11,6 +11,7 @@ import javax.swing.*;
 import java.io.*;
 
 import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.animation.*;
 import edu.umd.cs.jazz.util.*;
 
 /**
@@ -22,7 +23,9 @@ import edu.umd.cs.jazz.util.*;
  * If a key is held down so it auto-repeats, that is detected, and the camera
  * will then be continuously moved in until the key is released, or another
  * key is pressed at which point it will return to the original behavior
- * of one increment per key press.
+ * of one increment per key press. The continuous movement is animated by the
+ * ZAnimationScheduler, and its speed depends on the time between frames, so it
+ * is the same however fast the camera renders.
  * <p>
  * The default parameters are:
  *   PageUp zooms in
@@ -62,7 +65,9 @@ public class ZNavEventHandlerKeyBoard implements ZEventHandler, ZMouseMotionList
     private int     panDownKey  = KeyEvent.VK_DOWN;       // Key that pans to the up
     private int     homeKey     = KeyEvent.VK_HOME;       // Key that navigates to home
     private int     prevKeyPress = 0;     // The previous key pressed (or 0 if previous key event not a press)
-    private int     delay = 20;           // Delay (in milliseconds) between auto-nav increments
+    private int     delay = 20;           // Time (in milliseconds) that each auto-nav increment is spread over
+    private transient ZAnimation navAnimation = null;  // The animation that moves the camera during auto-nav
+    private long    lastNavTime;          // The time of the last auto-nav step
     private double   minMag = 0.0;        // The minimum allowed magnification
     private double   maxMag = -1.0;       // The maximum allowed magnification (or disabled if less than 0)
     
@@ -319,7 +324,16 @@ public class ZNavEventHandlerKeyBoard implements ZEventHandler, ZMouseMotionList
     public void startAutoNav() {
 	if (!autoNav) {
 	    autoNav = true;
-	    navOneStep();
+	    navAnimation = new ZAnimation() {
+		protected void animateFrameForTime(long aTime) {
+		    navOneStep();
+		    super.animateFrameForTime(aTime);
+		}
+	    };
+	    navAnimation.play();
+				// Steps are timed by the scheduler's clock, which is
+				// current once the animation has been scheduled
+	    lastNavTime = ZAnimationScheduler.instance().getCurrentTime();
 	}
     }
 
@@ -328,6 +342,10 @@ public class ZNavEventHandlerKeyBoard implements ZEventHandler, ZMouseMotionList
      */
     public void stopAutoNav() {
 	autoNav = false;
+	if (navAnimation != null) {
+	    navAnimation.stop();
+	    navAnimation = null;
+	}
     }
 
     /**
@@ -355,17 +373,26 @@ public class ZNavEventHandlerKeyBoard implements ZEventHandler, ZMouseMotionList
     }
 
     /**
-     * Implements auto-navigation
+     * Implements auto-navigation. This is called by the animation scheduler once a
+     * frame, and moves the camera by the amount for the time since the last step.
      */
     public void navOneStep() {
 	ZCamera camera = canvas.getCamera();
 
 	if (autoNav) {
+	    long time = ZAnimationScheduler.instance().getCurrentTime();
+				// The fraction of an increment that this step moves
+	    double steps = (double)(time - lastNavTime) / delay;
+	    lastNavTime = time;
+	    if (steps <= 0) {
+		return;
+	    }
+
 	    if (autoZoomDelta > 0) {
 				// Check for magnification bounds
-		double delta = autoZoomDelta;
+		double delta = Math.pow(autoZoomDelta, steps);
 		double currentMag = camera.getMagnification();
-		double newMag = currentMag * autoZoomDelta;
+		double newMag = currentMag * delta;
 		if (newMag < minMag) {
 		    delta = minMag / currentMag;
 		}
@@ -378,24 +405,7 @@ public class ZNavEventHandlerKeyBoard implements ZEventHandler, ZMouseMotionList
 		camera.scale(delta, pt.getX(), pt.getY());
 	    }
 	    if ((autoPanXDelta != 0) || (autoPanYDelta != 0)) {
-		camera.translate(autoPanXDelta, autoPanYDelta);
-	    }
-
-	    try {
-				// The sleep here is necessary.  Otherwise, there won't be
-				// time for the primary event thread to get and respond to
-				// input events.
-		Thread.sleep(20);
-
-				// If the sleep was interrupted, then cancel the zooming,
-				// so don't do the next zooming step
-		SwingUtilities.invokeLater(new Runnable() {
-		    public void run() {
-			ZNavEventHandlerKeyBoard.this.navOneStep();
-		    }
-		});
-	    } catch (InterruptedException e) {
-		autoNav = false;
+		camera.translate(steps * autoPanXDelta, steps * autoPanYDelta);
 	    }
 	}
     }
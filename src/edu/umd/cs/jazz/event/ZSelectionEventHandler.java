@@ -47,8 +47,9 @@ public class ZSelectionEventHandler implements ZEventHandler, ZMouseListener, ZM
     private ZNode       node = null;         // The node the event handlers are attached to
     private ZCanvas     canvas = null;       // The canvas this event handler is associated with
 
-    private ArrayList   prevMotionSelection; // Reusable list for implementing marquee selection
-    private ArrayList   itemsToRemove;       // Reusable list for implementing marquee selection
+    private Hashtable   prevMotionSelection; // Nodes selected by the marquee so far
+    private ZBounds     prevMarqueeBounds;   // Global bounds of the marquee when the selection was last updated
+    private double      prevMarqueeMag;      // Camera magnification when the selection was last updated
     private ZNode       selNode;             // Selected object
     private transient Point2D     pt1, pt2;            // Utiltity points used temporarily within event handlers
     private transient Point2D     pressPt;             // Event coords of mouse press event (in window coordinates)
@@ -98,8 +99,8 @@ public class ZSelectionEventHandler implements ZEventHandler, ZMouseListener, ZM
         pressPt = new Point2D.Double();
         dragPt = new Point2D.Double();
         prevPt = new Point2D.Double();
-        prevMotionSelection = new ArrayList();
-        itemsToRemove = new ArrayList();
+        prevMotionSelection = new Hashtable();
+        prevMarqueeBounds = new ZBounds();
         this.marqueeLayer = marqueeLayer;
         marquee = null;
     }
@@ -370,37 +371,42 @@ public class ZSelectionEventHandler implements ZEventHandler, ZMouseListener, ZM
                 ZRectangle rect = (ZRectangle)marquee.getFirstVisualComponent();
                 rect.setRect(x, y, width, height);
 
-                                // Then, update the selected items overlapping the rectangle
+                                // Then, update the selected items overlapping the rectangle.
+                                // Only items overlapping the parts the marquee grew or shrank
+                                // by can change, so only those are found, unless the
+                                // magnification has changed.
+                ZBounds marqueeBounds = marquee.getGlobalBounds();
+                double mag = camera.getMagnification();
+                Hashtable candidates = new Hashtable();
+                if (mag == prevMarqueeMag) {
+                    findNodesOutside(camera, marqueeBounds, prevMarqueeBounds, mag, candidates);
+                    findNodesOutside(camera, prevMarqueeBounds, marqueeBounds, mag, candidates);
+                } else {
+                    findNodesIn(camera, marqueeBounds, mag, candidates);
+                    for (Enumeration i=prevMotionSelection.keys(); i.hasMoreElements();) {
+                        Object node = i.nextElement();
+                        candidates.put(node, node);
+                    }
+                }
+                prevMarqueeBounds = marqueeBounds;
+                prevMarqueeMag = mag;
+
                                 // 1) Select newly overlapped ones, and
                                 // 2) Unselect newly un-overlapped ones
-
-                                // 1) select each item that overlaps region, but not previously selected
-                ZFindFilter filter = new ZMagBoundsFindFilter(marquee.getGlobalBounds(), camera.getMagnification());
+                ZFindFilter filter = new ZMagBoundsFindFilter(marqueeBounds, mag);
                 ZNode node;
-                ArrayList nodes = camera.findNodes(filter);
-                for (Iterator i=nodes.iterator(); i.hasNext();) {
-                    node = (ZNode)i.next();
-
-                    if (!prevMotionSelection.contains(node)) {
-                        ZSelectionManager.select(node);
-                        prevMotionSelection.add(node);
-                    }
-                }
-                                // 2) unselect items that don't overlap region, but previously did
-                                // Make a list of these items to safely remove from list afterwards
-                itemsToRemove.clear();
-                for (Iterator i=prevMotionSelection.iterator(); i.hasNext();) {
-                    node = (ZNode)i.next();
-                    if (!nodes.contains(node)) {
+                for (Enumeration i=candidates.keys(); i.hasMoreElements();) {
+                    node = (ZNode)i.nextElement();
+                    if (filter.accept(node)) {
+                        if (!prevMotionSelection.containsKey(node)) {
+                            ZSelectionManager.select(node);
+                            prevMotionSelection.put(node, node);
+                        }
+                    } else if (prevMotionSelection.containsKey(node)) {
                         ZSelectionManager.unselect(node);
-                        itemsToRemove.add(node);
+                        prevMotionSelection.remove(node);
                     }
                 }
-
-                for (Iterator i=itemsToRemove.iterator(); i.hasNext();) {
-                    node = (ZNode)i.next();
-                    prevMotionSelection.remove(node);
-                }
             }
         }
     }
@@ -415,6 +421,7 @@ public class ZSelectionEventHandler implements ZEventHandler, ZMouseListener, ZM
 
             selNode = null;
             prevMotionSelection.clear();
+            prevMarqueeBounds = new ZBounds();
 
             if (marquee != null) {
                 marqueeLayer.removeChild(marquee);
@@ -424,6 +431,50 @@ public class ZSelectionEventHandler implements ZEventHandler, ZMouseListener, ZM
         }
     }
 
+    /**
+     * Add the nodes the camera sees that overlap the part of one rectangle
+     * outside of another rectangle to a table.
+     * @param camera The camera to search.
+     * @param rect The rectangle to search, in global coordinates.
+     * @param outside The part of the rectangle to leave out, in global coordinates.
+     * @param mag The magnification to use for filtering.
+     * @param nodes The table to add the nodes found to.
+     */
+    private void findNodesOutside(ZCamera camera, ZBounds rect, ZBounds outside, double mag, Hashtable nodes) {
+        if (rect.isEmpty()) {
+            return;
+        }
+        if (outside.isEmpty() || !rect.intersects(outside)) {
+            findNodesIn(camera, rect, mag, nodes);
+            return;
+        }
+                                // Search the strips of the rectangle above, below,
+                                // left of, and right of the intersection
+        Rectangle2D overlap = rect.createIntersection(outside);
+        findNodesIn(camera, new ZBounds(rect.getX(), rect.getY(), rect.getWidth(), overlap.getY() - rect.getY()), mag, nodes);
+        findNodesIn(camera, new ZBounds(rect.getX(), overlap.getMaxY(), rect.getWidth(), rect.getMaxY() - overlap.getMaxY()), mag, nodes);
+        findNodesIn(camera, new ZBounds(rect.getX(), overlap.getY(), overlap.getX() - rect.getX(), overlap.getHeight()), mag, nodes);
+        findNodesIn(camera, new ZBounds(overlap.getMaxX(), overlap.getY(), rect.getMaxX() - overlap.getMaxX(), overlap.getHeight()), mag, nodes);
+    }
+
+    /**
+     * Add the nodes the camera sees that overlap a rectangle to a table.
+     * @param camera The camera to search.
+     * @param rect The rectangle to search, in global coordinates.
+     * @param mag The magnification to use for filtering.
+     * @param nodes The table to add the nodes found to.
+     */
+    private void findNodesIn(ZCamera camera, ZBounds rect, double mag, Hashtable nodes) {
+        if ((rect.getWidth() <= 0) || (rect.getHeight() <= 0)) {
+            return;
+        }
+        ArrayList found = camera.findNodes(new ZMagBoundsFindFilter(rect, mag));
+        for (int i=0; i<found.size(); i++) {
+            Object node = found.get(i);
+            nodes.put(node, node);
+        }
+    }
+
     /**
      * Invoked when the mouse enters a component.
      */
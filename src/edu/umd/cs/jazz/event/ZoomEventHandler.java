@@ -2,9 +2,9 @@ package edu.umd.cs.jazz.event;
 
 import java.awt.geom.*;
 import java.awt.event.*;
-import javax.swing.SwingUtilities;
 
 import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.animation.*;
 import edu.umd.cs.jazz.util.*;
 
 /**
@@ -14,7 +14,9 @@ import edu.umd.cs.jazz.util.*;
  * moving the mouse to the right zooms with a speed proportional
  * to the amount the mouse is moved to the right of the anchor point.
  * Similarly, if the mouse is moved to the left, the the camera is
- * zoomed out.
+ * zoomed out. The zooming is animated by the ZAnimationScheduler, and the
+ * speed depends on the time between frames, so it is the same however
+ * fast the camera renders.
  * <P>
  * On a Mac with its single mouse button one may wish to change the
  * standard right mouse button zooming behavior. This can be easily done
@@ -39,7 +41,11 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
     private boolean fIsZooming;
     private double fMinMagnification;
     private double fMaxMagnification;
+    private double fZoomSpeed;
     private Point2D fGlobalPressPoint;
+    private ZAnimation fZoomAnimation;
+    private long fLastStepTime;
+    private long fStepElapsedTime;
 
     /**
      * Constructs a new ZoomEventHandler.
@@ -52,6 +58,8 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
         fIsZooming = false;
         fMinMagnification = 0.0;
         fMaxMagnification = -1.0;
+        fZoomSpeed = 0.05;
+        fStepElapsedTime = 20;  // The time between the steps of older versions
     }
     /**
      * When the dragging action ends invoke <code>stopZooming</code>.
@@ -64,15 +72,30 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
     }
     /**
      * Return the next view transform for the current cameras zooming
-     * sequence.
+     * sequence, for the time since the last zooming step.  This is called
+     * once a frame while zooming, and calls <code>generateNextViewTransform(long)</code>.
+     * Subclasses that override it still zoom, but by the amount they return
+     * for each frame, however long the frame took.
      *
      * @return the next view transform for the zooming camera.
+     * @deprecated As of Jazz version 1.3,
+     * override <code>generateNextViewTransform(long aElapsedTime)</code> instead.
      */
     protected AffineTransform generateNextViewTransform() {
+        return generateNextViewTransform(fStepElapsedTime);
+    }
+    /**
+     * Return the next view transform for the current cameras zooming
+     * sequence.
+     *
+     * @param aElapsedTime the time in milliseconds since the last view transform.
+     * @return the next view transform for the zooming camera.
+     */
+    protected AffineTransform generateNextViewTransform(long aElapsedTime) {
         AffineTransform result = getInteractionCamera().getViewTransform();
 
         double dx = getCurrentScreenPoint().getX() - getDragStartScreenPoint().getX();
-        double scaleDelta = (1.0 + (0.001 * dx));
+        double scaleDelta = Math.exp(fZoomSpeed * dx * aElapsedTime / 1000.0);
 
         double currentMag = getInteractionCamera().getMagnification();
         double newMag = currentMag * scaleDelta;
@@ -109,6 +132,16 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
     public double getMinMagnification() {
         return fMinMagnification;
     }
+    /**
+     * Return the zoom speed. Each second, the magnification is multiplied by
+     * <code>Math.exp(zoomSpeed * dx)</code>, where dx is the number of pixels
+     * the mouse is to the right of the anchor point. The default value is 0.05.
+     *
+     * @return the zoom speed.
+     */
+    public double getZoomSpeed() {
+        return fZoomSpeed;
+    }
     /**
      * Return the current event filter. If no filter is specified then return a filter that only
      * accepts BUTTON3 by default.
@@ -159,6 +192,16 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
     public void setMinMagnification(double aMagnification) {
         fMinMagnification = aMagnification;
     }
+    /**
+     * Set the zoom speed. Each second, the magnification is multiplied by
+     * <code>Math.exp(zoomSpeed * dx)</code>, where dx is the number of pixels
+     * the mouse is to the right of the anchor point.
+     *
+     * @param aZoomSpeed the new zoom speed.
+     */
+    public void setZoomSpeed(double aZoomSpeed) {
+        fZoomSpeed = aZoomSpeed;
+    }
     /**
      * When the dragging action starts invoke <code>startZooming</code>.
      *
@@ -181,7 +224,19 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
         e.getPath().screenToCamera(fGlobalPressPoint, getInteractionCamera());
         getInteractionCamera().cameraToLocal(fGlobalPressPoint, null);
 
-        zoomOneStep();
+        if (fZoomAnimation != null) {
+            fZoomAnimation.stop();
+        }
+        fZoomAnimation = new ZAnimation() {
+            protected void animateFrameForTime(long aTime) {
+                zoomOneStep();
+                super.animateFrameForTime(aTime);
+            }
+        };
+        fZoomAnimation.play();
+                                // Steps are timed by the scheduler's clock, which is
+                                // current once the animation has been scheduled
+        fLastStepTime = ZAnimationScheduler.instance().getCurrentTime();
     }
     /**
      * Stop animated zooming.
@@ -190,25 +245,27 @@ public class ZoomEventHandler extends ZDragSequenceEventHandler {
      */
     protected void stopZooming(ZMouseEvent e) {
         isZooming(false);
+        if (fZoomAnimation != null) {
+            fZoomAnimation.stop();
+            fZoomAnimation = null;
+        }
     }
     /**
-     * Do one zooming step, sleep a short amount, and schedule the next zooming step.
-     * This effectively continuously zooms while still accepting input events so
-     * that the zoom center point can be changed, and zooming can be stopped.
+     * Do one zooming step, zooming by the amount for the time since the last step.
+     * This is called by the animation scheduler once a frame while zooming, so the
+     * camera continuously zooms while still accepting input events so that the
+     * zoom center point can be changed, and zooming can be stopped.
      */
     protected void zoomOneStep() {
         if (isZooming()) {
-            getInteractionCamera().setViewTransform(generateNextViewTransform());
-
-            try {
-                Thread.sleep(20);
-                SwingUtilities.invokeLater(new Runnable() {
-                    public void run() {
-                        ZoomEventHandler.this.zoomOneStep();
-                    }
-                });
-            } catch (InterruptedException e) {
-                isZooming(false);
+            long time = ZAnimationScheduler.instance().getCurrentTime();
+            long elapsedTime = time - fLastStepTime;
+            fLastStepTime = time;
+            if (elapsedTime > 0) {
+                                // Called through the old method, so subclasses
+                                // that override it still zoom
+                fStepElapsedTime = elapsedTime;
+                getInteractionCamera().setViewTransform(generateNextViewTransform());
             }
         }
     }
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+/**
+ * <b>ZBoundedFindFilter</b> is a find filter that only accepts nodes in a known
+ * region. It gives a bounds hint that lets a search skip the parts of the
+ * scenegraph that can not contain any accepted node, such as by querying the
+ * spatial index of a {@link edu.umd.cs.jazz.ZLayerGroup}.
+ *
+ * @see edu.umd.cs.jazz.ZLayerGroup#setSpatialIndexed
+ */
+public interface ZBoundedFindFilter extends ZFindFilter {
+    /**
+     * Return the region that contains every node accepted by this filter, in global
+     * coordinates. The filter must not accept a node whose global bounds do not
+     * overlap this region, and must not ask for the children of such a node to be
+     * searched.
+     * @return The bounds hint, or null if the filter can accept nodes anywhere.
+     */
+    public ZBounds getBoundsHint();
+}
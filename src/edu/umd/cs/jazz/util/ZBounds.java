@@ -91,39 +91,53 @@ public class ZBounds extends Rectangle2D.Double implements Serializable {
     	if (isEmpty()) {
     		return;
     	}
-    	
-                    // First, transform all 4 corners of the rectangle
-        double[] pts = new double[8];
-        pts[0] = x;          // top left corner
-        pts[1] = y;
-        pts[2] = x + width;  // top right corner
-        pts[3] = y;
-        pts[4] = x + width;  // bottom right corner
-        pts[5] = y + height;
-        pts[6] = x;          // bottom left corner
-        pts[7] = y + height;
-        tf.transform(pts, 0, pts, 0, 4);
+        transform(tf.getScaleX(), tf.getShearX(), tf.getShearY(), tf.getScaleY(), tf.getTranslateX(), tf.getTranslateY());
+    }
 
-                    // Then, find the bounds of those 4 transformed points.
-        double minX = pts[0];
-        double minY = pts[1];
-        double maxX = pts[0];
-        double maxY = pts[1];
-        int i;
-        for (i=1; i<4; i++) {
-            if (pts[2*i] < minX) {
-                minX = pts[2*i];
-            }
-            if (pts[2*i+1] < minY) {
-                minY = pts[2*i+1];
-            }
-            if (pts[2*i] > maxX) {
-                maxX = pts[2*i];
-            }
-            if (pts[2*i+1] > maxY) {
-                maxY = pts[2*i+1];
-            }
+    /**
+     * Modify the object by applying the inverse of the given transform, without
+     * allocating the inverse transform.
+     * @param tf the AffineTransform whose inverse to apply.
+     * @exception NoninvertibleTransformException if the transform has no inverse.
+     */
+    public void inverseTransform(AffineTransform tf) throws NoninvertibleTransformException {
+        double m00 = tf.getScaleX();
+        double m01 = tf.getShearX();
+        double m10 = tf.getShearY();
+        double m11 = tf.getScaleY();
+        double m02 = tf.getTranslateX();
+        double m12 = tf.getTranslateY();
+        double det = m00 * m11 - m01 * m10;
+        if (Math.abs(det) <= java.lang.Double.MIN_VALUE) {
+            throw new NoninvertibleTransformException("Determinant is " + det);
         }
+    	if (isEmpty()) {
+    		return;
+    	}
+        transform(m11 / det, -m01 / det, -m10 / det, m00 / det,
+                  (m01 * m12 - m11 * m02) / det, (m10 * m02 - m00 * m12) / det);
+    }
+
+    /**
+     * Modify the object by applying the transform with the given matrix.
+     */
+    private void transform(double m00, double m01, double m10, double m11, double m02, double m12) {
+                    // Transform the x and y extents separately. Each coordinate of a
+                    // transformed corner is a sum of terms that depend on x or on y only,
+                    // so the smallest and largest of each term give the transformed bounds
+                    // without transforming the 4 corners into a temporary array.
+        double x0 = m00 * x;
+        double x1 = m00 * (x + width);
+        double y0 = m01 * y;
+        double y1 = m01 * (y + height);
+        double minX = Math.min(x0, x1) + Math.min(y0, y1) + m02;
+        double maxX = Math.max(x0, x1) + Math.max(y0, y1) + m02;
+        x0 = m10 * x;
+        x1 = m10 * (x + width);
+        y0 = m11 * y;
+        y1 = m11 * (y + height);
+        double minY = Math.min(x0, x1) + Math.min(y0, y1) + m12;
+        double maxY = Math.max(x0, x1) + Math.max(y0, y1) + m12;
         setRect(minX, minY, maxX - minX, maxY - minY);
     }
 
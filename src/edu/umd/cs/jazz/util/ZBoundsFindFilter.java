@@ -25,7 +25,7 @@ import java.io.*;
  *
  * @author Ben Bederson
  */
-public class ZBoundsFindFilter implements ZFindFilter, Serializable {
+public class ZBoundsFindFilter implements ZBoundedFindFilter, Serializable {
     ZBounds bounds = null;
 
     /**
@@ -79,4 +79,12 @@ public class ZBoundsFindFilter implements ZFindFilter, Serializable {
     public ZBounds getBounds() {
 	return(bounds);
     }
+
+    /**
+     * Return the bounds hint of this filter, which is its search region.
+     * @return The bounds.
+     */
+    public ZBounds getBoundsHint() {
+	return(bounds);
+    }
 }
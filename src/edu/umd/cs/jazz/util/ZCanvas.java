@@ -203,22 +203,51 @@ public class ZCanvas extends JComponent implements Serializable {
 
     /**
      * This renders the Jazz scene attached to this component by passing on the Swing paint request
-     * to the underlying Jazz surface.
+     * to the underlying Jazz surface. Swing paints the union of the regions that need
+     * painting, so each region the surface has flushed is painted separately, with its
+     * own clip, and the area between them is left alone.
      * @param g The graphics to be painted onto
+     * @see ZDrawingSurface#takePaintRegions
      */
-    public void paintComponent(Graphics g) {    	
+    public void paintComponent(Graphics g) {
         try {
 			ZDebug.startProcessingOutput();
-			Graphics2D g2 = (Graphics2D) g.create();		
-		    g2.setColor(getBackground());
-		    g2.fillRect(0, 0, getWidth(), getHeight());			
-            surface.paint(g2);
-			ZDebug.endProcessingOutput();				
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            Rectangle[] regions = surface.takePaintRegions(clip);
+            for (int i = 0; i < regions.length; i++) {
+                Rectangle region = regions[i];
+                Graphics2D g2 = (Graphics2D) g.create();
+                g2.clipRect(region.x, region.y, region.width, region.height);
+                g2.setColor(getBackground());
+                g2.fillRect(region.x, region.y, region.width, region.height);
+                surface.paint(g2);
+                g2.dispose();
+            }
+			ZDebug.endProcessingOutput();
         } catch (ZNoninvertibleTransformException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Overridden to tell the surface about repaints of this component that don't
+     * come from the surface, so that they are painted along with the surface's regions.
+     * @param tm Maximum time in milliseconds before update
+     * @param x The X coordinate of the region
+     * @param y The Y coordinate of the region
+     * @param width The width of the region
+     * @param height The height of the region
+     */
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (surface != null) {
+            surface.addPaintRegion(x, y, width, height);
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
     /**
      * This captures changes in the component's bounds so the underlying Jazz camera can
      * be updated to mirror bounds change.
@@ -722,13 +751,25 @@ public class ZCanvas extends JComponent implements Serializable {
         }
 
         protected void updateMouseOverPath(MouseEvent e) {
+            updateMouseOverPath(e, false);
+        }
+
+        /**
+         * Pick the path under the mouse. When reuse is true, the path picked last time may be
+         * returned again, so it is only used for mouse movements, whose paths aren't modified.
+         */
+        protected void updateMouseOverPath(MouseEvent e, boolean reuse) {
             // Needed for objects with volatile bounds over multiple cameras.
             ZCamera camera = surface.getCamera();
             ZRenderContext rc = camera.createRenderContext(camera);
             camera.getRoot().setCurrentRenderContext(rc);
 
             try {
-                mouseOverPath = getDrawingSurface().pick(e.getX(), e.getY());
+                if (reuse) {
+                    mouseOverPath = getDrawingSurface().pickCached(e.getX(), e.getY());
+                } else {
+                    mouseOverPath = getDrawingSurface().pick(e.getX(), e.getY());
+                }
             } catch (ZNoninvertibleTransformException ex) {
                 ex.printStackTrace();
             }
@@ -772,7 +813,7 @@ public class ZCanvas extends JComponent implements Serializable {
             if (getExcludeMouseMoveEvents())
                 return;
 
-            updateMouseOverPath(e);
+            updateMouseOverPath(e, true);
             updateTargetPath();
             checkForMouseEnteredOrExited(e);
             dispatchEventToPath(MouseEvent.MOUSE_MOVED, e, targetPath);            
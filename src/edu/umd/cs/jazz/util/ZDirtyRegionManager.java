@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * <b>ZDirtyRegionManager</b> accumulates the regions of a drawing surface that
+ * need to be repainted, so that many repaint requests made in one frame are
+ * passed on to Swing together. The regions are kept disjoint, and there are never more than
+ * a maximum number of them.
+ * <P>
+ * A new region is merged with an existing one if they overlap, or if painting their
+ * union costs little more than painting them separately. The cost of painting a region
+ * is estimated as its area, in pixels, plus a fixed cost for each region, which stands for
+ * traversing the scenegraph once more. When there are already the maximum number of
+ * regions, a new region is merged with the one it adds the least area to.
+ * So the many small repaints of a frame are reduced to a few regions before they
+ * are handed to Swing's RepaintManager, and a few scattered changes are painted as
+ * a few small regions, rather than as the single rectangle that contains all of them.
+ * <P>
+ * The manager is synchronized, so regions may be added from any thread.
+ *
+ * @see edu.umd.cs.jazz.ZDrawingSurface#flushRepaints
+ */
+public class ZDirtyRegionManager implements Serializable {
+    /**
+     * The default maximum number of regions.
+     */
+    static public final int DEFAULT_MAX_REGIONS = 8;
+
+    /**
+     * The default cost of painting a region, in pixels.
+     */
+    static public final int DEFAULT_REGION_COST = 64 * 64;
+
+    private int maxRegions;
+    private long regionCost;
+
+                                // The disjoint regions that need to be repainted
+    private ArrayList regions = new ArrayList();
+
+    /**
+     * Constructs a new dirty region manager with the default maximum number of
+     * regions and region cost.
+     */
+    public ZDirtyRegionManager() {
+        this(DEFAULT_MAX_REGIONS, DEFAULT_REGION_COST);
+    }
+
+    /**
+     * Constructs a new dirty region manager.
+     * @param aMaxRegions The maximum number of regions.
+     * @param aRegionCost The cost of painting a region, in addition to its area, in pixels.
+     */
+    public ZDirtyRegionManager(int aMaxRegions, int aRegionCost) {
+        if (aMaxRegions <= 0) {
+            throw new IllegalArgumentException("Maximum number of regions must be positive: " + aMaxRegions);
+        }
+        maxRegions = aMaxRegions;
+        regionCost = aRegionCost;
+    }
+
+    /**
+     * Return the maximum number of regions.
+     * @return the maximum number of regions.
+     */
+    public int getMaxRegions() {
+        return maxRegions;
+    }
+
+    /**
+     * Return the cost of painting a region, in addition to its area, in pixels.
+     * @return the region cost.
+     */
+    public int getRegionCost() {
+        return (int)regionCost;
+    }
+
+    /**
+     * Add a region that needs to be repainted.
+     * @param rect The region.
+     * @return true if there were no regions before this one was added, so the
+     * caller should arrange for the regions to be flushed.
+     */
+    public boolean add(Rectangle rect) {
+        return add(rect.x, rect.y, rect.width, rect.height);
+    }
+
+    /**
+     * Add a region that needs to be repainted.
+     * @param x The X coordinate of the region.
+     * @param y The Y coordinate of the region.
+     * @param width The width of the region.
+     * @param height The height of the region.
+     * @return true if there were no regions before this one was added, so the
+     * caller should arrange for the regions to be flushed.
+     */
+    public synchronized boolean add(int x, int y, int width, int height) {
+        if ((width <= 0) || (height <= 0)) {
+            return false;
+        }
+        boolean wasEmpty = regions.isEmpty();
+        Rectangle rect = new Rectangle(x, y, width, height);
+
+        while (true) {
+            int best = -1;
+            long bestCost = Long.MAX_VALUE;
+            boolean overlaps = false;
+            for (int i = 0; i < regions.size(); i++) {
+                Rectangle region = (Rectangle)regions.get(i);
+                if (region.contains(rect)) {
+                    return wasEmpty;
+                }
+                if (region.intersects(rect)) {
+                    best = i;
+                    overlaps = true;
+                    break;
+                }
+                long cost = mergeCost(region, rect);
+                if (cost < bestCost) {
+                    best = i;
+                    bestCost = cost;
+                }
+            }
+
+                                // Add the region if merging it would cost more than painting it separately
+            if (!overlaps && ((best < 0) || ((bestCost > regionCost) && (regions.size() < maxRegions)))) {
+                regions.add(rect);
+                return wasEmpty;
+            }
+
+                                // Otherwise merge it, and check the union against the other regions
+            rect.add((Rectangle)regions.get(best));
+            regions.remove(best);
+        }
+    }
+
+    /**
+     * Return true if there are no regions to repaint.
+     * @return true if there are no regions.
+     */
+    public synchronized boolean isEmpty() {
+        return regions.isEmpty();
+    }
+
+    /**
+     * Return the regions to repaint, and remove them from this manager.
+     * @return the disjoint regions to repaint, which may be empty.
+     */
+    public synchronized Rectangle[] flush() {
+        Rectangle[] result = new Rectangle[regions.size()];
+        regions.toArray(result);
+        regions.clear();
+        return result;
+    }
+
+    /**
+     * Return the extra area painted by painting the union of two
+     * disjoint rectangles rather than each of them.
+     */
+    static long mergeCost(Rectangle a, Rectangle b) {
+        long x1 = Math.min(a.x, b.x);
+        long y1 = Math.min(a.y, b.y);
+        long x2 = Math.max((long)a.x + a.width, (long)b.x + b.width);
+        long y2 = Math.max((long)a.y + a.height, (long)b.y + b.height);
+        return ((x2 - x1) * (y2 - y1)) - ((long)a.width * a.height) - ((long)b.width * b.height);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import edu.umd.cs.jazz.*;
+
+/**
+ * <b>ZDisplayList</b> is a flat, immutable snapshot of what a camera renders.
+ * It is compiled by rendering the camera once with a render context that records
+ * each visual component, together with the transform, clip, and composite it
+ * would have been rendered with, instead of rendering it. The display list can
+ * then be replayed any number of times, from any thread, without walking the
+ * scenegraph.
+ * <P>
+ * Records are in camera (screen) coordinates, and are kept in the order they
+ * were rendered. Each record also has its bounds in camera coordinates, so a
+ * replay only renders the records that intersect the bounds being painted.
+ * <P>
+ * Replaying a display list renders the recorded visual components, so any change
+ * to the state of those components shows in the next replay. Changes to the
+ * structure of the scenegraph, or to transforms, clips, or fading, do not show
+ * until the display list is compiled again. Nodes that draw directly in their
+ * render method, rather than through their visual components, are not recorded.
+ * <P>
+ * A display list can also be compiled as a snapshot that copies the visual
+ * components it records. A snapshot shares nothing with the scenegraph, so the
+ * thread that owns the model can compile it and publish it to a drawing surface
+ * with {@link ZDrawingSurface#setDisplayList}, and then go on changing the
+ * model while the event dispatch thread repaints from the snapshot:
+ * <pre>
+ *     ZDisplayList snapshot = ZDisplayList.compile(surface, bounds, ZDrawingSurface.RENDER_QUALITY_HIGH, true);
+ *     surface.setDisplayList(snapshot);
+ * </pre>
+ * Picking does not use the snapshot, and still walks the live scenegraph on the
+ * event dispatch thread.
+ *
+ * @see ZRenderContext#setDisplayList
+ */
+public class ZDisplayList {
+    /**
+     * The records, in render order.
+     */
+    private Record[] records;
+
+    /**
+     * The number of records.
+     */
+    private int size = 0;
+
+    /**
+     * The bounds that were compiled, in camera coordinates.
+     */
+    private Rectangle2D bounds;
+
+    /**
+     * The camera's view transform when this display list was compiled.
+     */
+    private AffineTransform viewTransform = new AffineTransform();
+
+    /**
+     * True if the recorded visual components are copies.
+     */
+    private boolean copyComponents = false;
+
+    /**
+     * Constructs a new, empty display list for the specified bounds.
+     * Display lists are filled by {@link #compile}.
+     * @param aBounds The bounds being compiled, in camera coordinates.
+     */
+    ZDisplayList(Rectangle2D aBounds) {
+        bounds = new Rectangle2D.Double(aBounds.getX(), aBounds.getY(), aBounds.getWidth(), aBounds.getHeight());
+        records = new Record[16];
+    }
+
+    /**
+     * Compile a display list of what the specified surface's camera renders within
+     * the specified bounds. This must be called from the thread that owns the
+     * scenegraph (normally the event dispatch thread).
+     * @param surface The surface whose camera is compiled.
+     * @param aBounds The bounds to compile, in camera coordinates.
+     * @param quality The render quality the display list will be replayed at.
+     * @return the display list.
+     */
+    static public ZDisplayList compile(ZDrawingSurface surface, Rectangle2D aBounds, int quality) {
+        return compile(surface, aBounds, quality, false);
+    }
+
+    /**
+     * Compile a display list of what the specified surface's camera renders within
+     * the specified bounds, optionally copying the visual components so that the
+     * display list is an immutable snapshot of the scenegraph. This must be called
+     * from the thread that owns the scenegraph, which need not be the event
+     * dispatch thread if the surface paints from published snapshots.
+     * @param surface The surface whose camera is compiled.
+     * @param aBounds The bounds to compile, in camera coordinates.
+     * @param quality The render quality the display list will be replayed at.
+     * @param copy True to record copies of the visual components.
+     * @return the display list.
+     * @see ZDrawingSurface#setDisplayList
+     */
+    static public ZDisplayList compile(ZDrawingSurface surface, Rectangle2D aBounds, int quality, boolean copy) {
+        ZCamera camera = surface.getCamera();
+        ZDisplayList displayList = new ZDisplayList(aBounds);
+        displayList.viewTransform = camera.getViewTransform();
+        displayList.copyComponents = copy;
+
+                                // Nothing is drawn while recording, so any graphics will do
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = scratch.createGraphics();
+        g2.clip(aBounds);
+
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(aBounds), surface, quality);
+        rc.setAccurateSpacing(surface.getUseFractionalMetrics());
+        rc.setDisplayList(displayList);
+                                // Restore the current render context afterwards, as
+                                // it may belong to a pick on the event dispatch thread
+        ZRoot root = camera.getRoot();
+        ZRenderContext saveRenderContext = (root == null) ? null : root.getCurrentRenderContext();
+        if (root != null) {
+            root.setCurrentRenderContext(rc);
+        }
+        try {
+            camera.render(rc);
+        } finally {
+            if (root != null) {
+                root.setCurrentRenderContext(saveRenderContext);
+            }
+            rc.setDisplayList(null);
+            g2.dispose();
+        }
+
+        displayList.trimToSize();
+        return displayList;
+    }
+
+    /**
+     * Return the bounds this display list was compiled for, in camera coordinates.
+     * @return the bounds.
+     */
+    public Rectangle2D getBounds() {
+        return new Rectangle2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
+    /**
+     * Return the camera's view transform when this display list was compiled.
+     * @return the view transform.
+     */
+    public AffineTransform getViewTransform() {
+        return new AffineTransform(viewTransform);
+    }
+
+    /**
+     * Return true if this display list records copies of the visual components,
+     * rather than the visual components of the scenegraph.
+     * @return true if the visual components are copies.
+     */
+    public boolean isSnapshot() {
+        return copyComponents;
+    }
+
+    /**
+     * Return the number of records in this display list.
+     * @return the number of records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the visual component of the specified record.
+     * @param i The index of the record.
+     * @return the visual component.
+     */
+    public ZVisualComponent getVisualComponent(int i) {
+        return records[i].component;
+    }
+
+    /**
+     * Return the bounds of the specified record, in camera coordinates.
+     * @param i The index of the record.
+     * @return the bounds.
+     */
+    public Rectangle2D getBounds(int i) {
+        Rectangle2D recordBounds = records[i].bounds;
+        return new Rectangle2D.Double(recordBounds.getX(), recordBounds.getY(), recordBounds.getWidth(), recordBounds.getHeight());
+    }
+
+    /**
+     * Internal method to return the specified record.
+     * @param i The index of the record.
+     * @return the record.
+     */
+    Record getRecord(int i) {
+        return records[i];
+    }
+
+    /**
+     * Replay this display list with the specified render context.
+     * The render context's graphics transform maps camera coordinates to the
+     * device, and its visible bounds are the part of the display list to
+     * render, in camera coordinates. Only the records that intersect the
+     * visible bounds are rendered.
+     * <P>
+     * Several threads may replay the same display list at once, each with
+     * its own render context.
+     * @param renderContext The render context to replay with.
+     */
+    public void render(ZRenderContext renderContext) {
+        Graphics2D g2 = renderContext.getGraphics2D();
+        Rectangle2D visibleBounds = renderContext.getVisibleBounds();
+        AffineTransform saveTransform = g2.getTransform();
+        Composite saveComposite = g2.getComposite();
+        Shape saveClip = g2.getClip();
+        ZCamera pushedCamera = null;
+
+                                // Without a clip, the records are clipped to the visible
+                                // bounds, so components that only draw what the clip
+                                // covers, such as tiled images, do not draw everything
+        Shape replayClip = ((saveClip == null) && (visibleBounds != null)) ? visibleBounds : saveClip;
+
+        for (int i = 0; i < size; i++) {
+            Record record = records[i];
+            if ((visibleBounds != null) && !visibleBounds.intersects(record.bounds)) {
+                continue;
+            }
+            if (record.camera != pushedCamera) {
+                if (pushedCamera != null) {
+                    renderContext.popCamera();
+                }
+                renderContext.pushCamera(record.camera);
+                pushedCamera = record.camera;
+            }
+            g2.setTransform(saveTransform);
+            g2.setClip(replayClip);
+            g2.transform(record.transform);
+            if (record.clip != null) {
+                g2.clip(record.clip);
+            }
+            g2.setComposite(record.composite);
+            record.component.render(renderContext);
+        }
+
+        if (pushedCamera != null) {
+            renderContext.popCamera();
+        }
+        g2.setTransform(saveTransform);
+        g2.setClip(saveClip);
+        g2.setComposite(saveComposite);
+    }
+
+    /**
+     * Internal method to record a visual component, with the current state of the
+     * render context's graphics. Called by the render context while compiling.
+     * @param renderContext The render context doing the recording.
+     * @param component The visual component.
+     */
+    void record(ZRenderContext renderContext, ZVisualComponent component) {
+        if (copyComponents) {
+            component = (ZVisualComponent)component.clone();
+        }
+        addRecord(renderContext, component);
+    }
+
+    /**
+     * Add a record of a visual component, with the current state of the
+     * render context's graphics.
+     */
+    private void addRecord(ZRenderContext renderContext, ZVisualComponent component) {
+        Graphics2D g2 = renderContext.getGraphics2D();
+        Record record = new Record();
+        record.transform = g2.getTransform();
+        record.clip = g2.getClip();
+        record.composite = g2.getComposite();
+        record.component = component;
+        record.camera = renderContext.getRenderingCamera();
+
+                                // The bounds are those of the component, in camera
+                                // coordinates, limited to the clip, and grown by a pixel
+                                // to cover antialiasing and proxies drawn as dots
+        ZBounds componentBounds = component.getBoundsReference();
+        record.bounds = new Rectangle2D.Double(componentBounds.getX(), componentBounds.getY(),
+                                               componentBounds.getWidth(), componentBounds.getHeight());
+        ZTransformGroup.transform(record.bounds, record.transform);
+        if (record.clip != null) {
+            Rectangle2D clipBounds = record.clip.getBounds2D();
+            ZTransformGroup.transform(clipBounds, record.transform);
+            Rectangle2D.intersect(record.bounds, clipBounds, record.bounds);
+        }
+        if ((record.bounds.getWidth() < 0) || (record.bounds.getHeight() < 0)) {
+            return;
+        }
+        record.bounds.setRect(record.bounds.getX() - 1, record.bounds.getY() - 1,
+                              record.bounds.getWidth() + 2, record.bounds.getHeight() + 2);
+
+        if (size == records.length) {
+            Record[] newRecords = new Record[size * 2];
+            System.arraycopy(records, 0, newRecords, 0, size);
+            records = newRecords;
+        }
+        records[size++] = record;
+    }
+
+    /**
+     * Internal method to record a filled shape, such as a camera's fill color.
+     * @param renderContext The render context doing the recording.
+     * @param shape The shape, in the current local coordinates.
+     * @param paint The paint to fill it with.
+     */
+    void recordFill(ZRenderContext renderContext, Shape shape, Paint paint) {
+        addRecord(renderContext, new FillComponent(shape, paint));
+    }
+
+    /**
+     * Internal method to record a level of detail proxy.
+     * @param renderContext The render context doing the recording.
+     * @param policy The policy that draws the proxy.
+     * @param region The region of the nodes the proxy stands for, in the current local coordinates.
+     * @param numNodes The number of nodes the proxy stands for.
+     */
+    void recordProxy(ZRenderContext renderContext, ZLevelOfDetailPolicy policy, Rectangle2D region, int numNodes) {
+        addRecord(renderContext, new ProxyComponent(policy, region, numNodes));
+    }
+
+    /**
+     * Trims the records array to the number of records.
+     */
+    private void trimToSize() {
+        if (size < records.length) {
+            Record[] newRecords = new Record[size];
+            System.arraycopy(records, 0, newRecords, 0, size);
+            records = newRecords;
+        }
+    }
+
+    /**
+     * internal class: A recorded visual component, with the graphics state
+     * it is rendered with.
+     */
+    static class Record {
+        AffineTransform transform;
+        Shape clip;
+        Composite composite;
+        ZVisualComponent component;
+        ZCamera camera;
+        Rectangle2D bounds;
+    }
+
+    /**
+     * internal class: A visual component that fills a shape.
+     */
+    static class FillComponent extends ZVisualComponent {
+        Shape shape;
+        Paint paint;
+
+        FillComponent(Shape aShape, Paint aPaint) {
+                                // The shape may be reused by its owner, so keep a copy
+            if (aShape instanceof Rectangle2D) {
+                Rectangle2D rect = (Rectangle2D)aShape;
+                shape = new Rectangle2D.Double(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+            } else {
+                shape = new GeneralPath(aShape);
+            }
+            paint = aPaint;
+            reshape();
+        }
+
+        public void render(ZRenderContext renderContext) {
+            Graphics2D g2 = renderContext.getGraphics2D();
+            g2.setPaint(paint);
+            g2.fill(shape);
+        }
+
+        protected void computeBounds() {
+            bounds.setRect(shape.getBounds2D());
+        }
+    }
+
+    /**
+     * internal class: A visual component that draws a level of detail proxy.
+     */
+    static class ProxyComponent extends ZVisualComponent {
+        ZLevelOfDetailPolicy policy;
+        Rectangle2D region;
+        int numNodes;
+
+        ProxyComponent(ZLevelOfDetailPolicy aPolicy, Rectangle2D aRegion, int aNumNodes) {
+            policy = aPolicy;
+            region = new Rectangle2D.Double(aRegion.getX(), aRegion.getY(), aRegion.getWidth(), aRegion.getHeight());
+            numNodes = aNumNodes;
+            reshape();
+        }
+
+        public void render(ZRenderContext renderContext) {
+            policy.renderProxy(renderContext, region, numNodes);
+        }
+
+        protected void computeBounds() {
+            bounds.setRect(region);
+        }
+    }
+}
\ No newline at end of file
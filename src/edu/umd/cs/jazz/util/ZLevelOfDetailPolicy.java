@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.geom.*;
+
+/**
+ * <b>ZLevelOfDetailPolicy</b> decides how a spatial index renders nodes that
+ * are too small to be seen at the current magnification. Nodes smaller than
+ * the minimum size are not rendered. Instead, each cluster of such nodes found
+ * by the index is passed to {@link #renderProxy}, which may draw a cheap stand-in
+ * for them, or nothing at all.
+ *
+ * @see edu.umd.cs.jazz.ZSpatialIndex#setLevelOfDetailPolicy
+ */
+public interface ZLevelOfDetailPolicy {
+    /**
+     * Return the size, in screen pixels, below which nodes are not rendered.
+     * A node is too small if both its width and its height, multiplied by the
+     * current magnification, are less than this size.
+     * @return the minimum size.
+     */
+    public double getMinimumSize();
+
+    /**
+     * Render a stand-in for a cluster of nodes that are all too small to be rendered.
+     * The Graphics2D of the render context is set up to draw in the coordinate system
+     * of the spatial index.
+     * @param renderContext The graphics context to use for rendering.
+     * @param region the bounds of the cluster, in the coordinate system of the spatial index.
+     * @param numNodes the number of nodes in the cluster.
+     */
+    public void renderProxy(ZRenderContext renderContext, Rectangle2D region, int numNodes);
+}
\ No newline at end of file
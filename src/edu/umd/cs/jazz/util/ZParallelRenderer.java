@@ -0,0 +1,396 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import edu.umd.cs.jazz.*;
+
+/**
+ * <b>ZParallelRenderer</b> renders a surface's camera with several threads.
+ * The area being painted is split into tiles. The camera is first compiled into a
+ * {@link ZDisplayList} on the calling thread, and then worker threads replay the
+ * display list into an offscreen image per tile, each with its own graphics and
+ * render context. The calling thread renders tiles too, and copies each finished
+ * tile to the destination graphics, so only the calling thread touches the
+ * scenegraph and the destination.
+ * <P>
+ * When the camera has an opaque fill color, every tile is opaque, so tiles are
+ * rendered into opaque images and copied exactly, giving the same pixels as
+ * rendering directly. Otherwise tiles are rendered into translucent images and
+ * composited over the destination, which may round translucent colors slightly
+ * differently than rendering directly.
+ * <P>
+ * This speeds up large renders, such as printing, exporting large images, or
+ * repainting a big window, on machines with several processors. Visual components
+ * are rendered from several threads at once, so they must not change their state
+ * when they render, other than caches they update while synchronized. The standard
+ * Jazz visual components only update such caches, such as the layouts of their text.
+ * <P>
+ * The worker threads are daemon threads that are started by the first render.
+ * Call {@link #dispose} to stop them when the renderer is no longer needed.
+ *
+ * @see ZDrawingSurface#setParallelRenderer
+ */
+public class ZParallelRenderer {
+    /**
+     * The default size of a tile, in pixels.
+     */
+    static public final int DEFAULT_TILE_SIZE = 256;
+
+    private int numThreads;
+    private int tileSize;
+
+                                // Only one render at a time uses the worker threads
+    private Object renderLock = new Object();
+
+                                // The worker threads, or null if they have not been started
+    private Thread[] workers = null;
+    private boolean disposed = false;
+
+                                // The render in progress. The fields below are guarded by this
+    private ZDisplayList displayList = null;
+    private ZDrawingSurface surface = null;
+    private int quality;
+    private AffineTransform transform = null;
+    private boolean opaque = false;
+    private Tile[] tiles = null;
+    private int nextTile = 0;
+    private Vector completed = new Vector();
+    private Vector spareImages = new Vector();
+    private int numImages = 0;
+    private int maxImages = 0;
+    private RuntimeException runtimeFailure = null;
+    private Error errorFailure = null;
+
+    /**
+     * Constructs a new parallel renderer with a thread for each processor
+     * and the default tile size.
+     */
+    public ZParallelRenderer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs a new parallel renderer.
+     * @param aNumThreads The number of threads that render tiles, including the calling thread.
+     * @param aTileSize The width and height of a tile, in pixels.
+     */
+    public ZParallelRenderer(int aNumThreads, int aTileSize) {
+        if (aTileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + aTileSize);
+        }
+        numThreads = Math.max(aNumThreads, 1);
+        tileSize = aTileSize;
+    }
+
+    /**
+     * Return the number of threads that render tiles, including the calling thread.
+     * @return the number of threads.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Return the width and height of a tile, in pixels.
+     * @return the tile size.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Stop the worker threads. The renderer can still be used afterwards,
+     * and will render on the calling thread only.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        notifyAll();
+    }
+
+    /**
+     * Render the specified surface's camera onto the specified graphics. This must
+     * be called from the thread that owns the scenegraph (normally the event dispatch
+     * thread).
+     * @param g2 The graphics to render onto. Its transform maps camera coordinates to the device.
+     * @param bounds The bounds to render, in camera coordinates.
+     * @param aSurface The surface whose camera is rendered.
+     * @param aQuality The render quality.
+     * @return true if the camera was rendered, or false if the area is too small
+     * to be worth rendering in parallel, and it should be rendered directly.
+     */
+    public boolean render(Graphics2D g2, Rectangle2D bounds, ZDrawingSurface aSurface, int aQuality) {
+        AffineTransform g2Transform = g2.getTransform();
+        AffineTransform inverse;
+        try {
+            inverse = g2Transform.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            return false;
+        }
+
+                                // Find the device pixels to render
+        Rectangle2D deviceBounds = new Rectangle2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+        ZTransformGroup.transform(deviceBounds, g2Transform);
+        Shape clip = g2.getClip();
+        if (clip != null) {
+            Rectangle2D clipBounds = clip.getBounds2D();
+            ZTransformGroup.transform(clipBounds, g2Transform);
+            Rectangle2D.intersect(deviceBounds, clipBounds, deviceBounds);
+        }
+        int x0 = (int)Math.floor(deviceBounds.getMinX());
+        int y0 = (int)Math.floor(deviceBounds.getMinY());
+        int x1 = (int)Math.ceil(deviceBounds.getMaxX());
+        int y1 = (int)Math.ceil(deviceBounds.getMaxY());
+        if ((x1 - x0 <= tileSize) && (y1 - y0 <= tileSize)) {
+            return false;
+        }
+
+        synchronized (renderLock) {
+            ZDisplayList aDisplayList = ZDisplayList.compile(aSurface, bounds, aQuality);
+
+            Vector tileList = new Vector();
+            for (int y = y0; y < y1; y += tileSize) {
+                for (int x = x0; x < x1; x += tileSize) {
+                    Tile tile = new Tile();
+                    tile.x = x;
+                    tile.y = y;
+                    tile.width = Math.min(tileSize, x1 - x);
+                    tile.height = Math.min(tileSize, y1 - y);
+                                // The part of the display list the tile shows
+                    tile.visibleBounds = new ZBounds(x, y, tile.width, tile.height);
+                    ZTransformGroup.transform(tile.visibleBounds, inverse);
+                    tileList.addElement(tile);
+                }
+            }
+            Tile[] newTiles = new Tile[tileList.size()];
+            tileList.copyInto(newTiles);
+
+                                // The camera fills the whole of every tile with an opaque color
+            Color fillColor = aSurface.getCamera().getFillColor();
+            boolean opaqueTiles = (fillColor != null) && (fillColor.getAlpha() == 255);
+
+            startRender(aDisplayList, aSurface, aQuality, g2Transform, opaqueTiles, newTiles);
+            try {
+                compositeTiles(g2, newTiles.length);
+            } finally {
+                finishRender();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start rendering the specified tiles, waking the worker threads.
+     */
+    private synchronized void startRender(ZDisplayList aDisplayList, ZDrawingSurface aSurface, int aQuality,
+                                          AffineTransform aTransform, boolean anOpaque, Tile[] newTiles) {
+        displayList = aDisplayList;
+        surface = aSurface;
+        quality = aQuality;
+        transform = aTransform;
+        opaque = anOpaque;
+        tiles = newTiles;
+        nextTile = 0;
+        completed.removeAllElements();
+        runtimeFailure = null;
+        errorFailure = null;
+                                // Enough images for every thread to render while one is copied
+        maxImages = 2 * numThreads;
+
+        if ((workers == null) && !disposed && (numThreads > 1)) {
+            workers = new Thread[numThreads - 1];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(new Worker(), "Jazz parallel renderer " + i);
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Clear the render in progress, and report any failure from the worker threads.
+     */
+    private synchronized void finishRender() {
+        tiles = null;
+        displayList = null;
+        surface = null;
+        completed.removeAllElements();
+        if (errorFailure != null) {
+            Error error = errorFailure;
+            errorFailure = null;
+            throw error;
+        }
+        if (runtimeFailure != null) {
+            RuntimeException exception = runtimeFailure;
+            runtimeFailure = null;
+            throw exception;
+        }
+    }
+
+    /**
+     * Copy tiles to the destination as they are finished, rendering tiles
+     * on this thread while none are ready.
+     */
+    private void compositeTiles(Graphics2D g2, int numTiles) {
+        AffineTransform saveTransform = g2.getTransform();
+        g2.setTransform(new AffineTransform());
+        try {
+            for (int numComposited = 0; numComposited < numTiles; numComposited++) {
+                Tile tile = nextCompletedTile();
+                if (tile.image != null) {
+                    g2.drawImage(tile.image, tile.x, tile.y, null);
+                    releaseImage(tile.image);
+                    tile.image = null;
+                }
+            }
+        } finally {
+            g2.setTransform(saveTransform);
+        }
+    }
+
+    /**
+     * Return the next finished tile, rendering a tile on this thread if none
+     * are finished and an image is free.
+     */
+    private Tile nextCompletedTile() {
+        while (true) {
+            Tile tile = null;
+            BufferedImage image = null;
+            synchronized (this) {
+                if (!completed.isEmpty()) {
+                    tile = (Tile)completed.elementAt(0);
+                    completed.removeElementAt(0);
+                    return tile;
+                }
+                if ((nextTile < tiles.length) && ((numImages < maxImages) || !spareImages.isEmpty())) {
+                    tile = tiles[nextTile++];
+                    image = acquireImage();
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                    }
+                    continue;
+                }
+            }
+            tile.image = image;
+            renderTile(tile);
+            return tile;
+        }
+    }
+
+    /**
+     * Return a free tile image for the render in progress, waiting for one if
+     * necessary. Opaque renders use opaque images, so tiles are copied to the
+     * destination without rounding translucent colors. Must be called while
+     * synchronized on this renderer.
+     */
+    private BufferedImage acquireImage() {
+        while (spareImages.isEmpty() && (numImages >= maxImages)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+            }
+        }
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE;
+        for (int i = spareImages.size() - 1; i >= 0; i--) {
+            BufferedImage image = (BufferedImage)spareImages.elementAt(i);
+            if (image.getType() == type) {
+                spareImages.removeElementAt(i);
+                return image;
+            }
+        }
+        if (numImages >= maxImages) {
+                                // Replace a spare image of the other type
+            spareImages.removeElementAt(spareImages.size() - 1);
+            numImages--;
+        }
+        numImages++;
+        return new BufferedImage(tileSize, tileSize, type);
+    }
+
+    /**
+     * Return a tile image to the free images.
+     */
+    private synchronized void releaseImage(BufferedImage image) {
+        spareImages.addElement(image);
+        notifyAll();
+    }
+
+    /**
+     * Render one tile into its image, recording any failure.
+     */
+    private void renderTile(Tile tile) {
+        Graphics2D tg = tile.image.createGraphics();
+        try {
+            tg.setComposite(AlphaComposite.Clear);
+            tg.fillRect(0, 0, tileSize, tileSize);
+            tg.setComposite(AlphaComposite.SrcOver);
+            tg.clipRect(0, 0, tile.width, tile.height);
+            tg.translate(-tile.x, -tile.y);
+            tg.transform(transform);
+
+            ZRenderContext rc = surface.getCamera().createRenderContext(tg, tile.visibleBounds, surface, quality);
+            rc.setAccurateSpacing(surface.getUseFractionalMetrics());
+            displayList.render(rc);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                runtimeFailure = e;
+            }
+        } catch (Error e) {
+            synchronized (this) {
+                errorFailure = e;
+            }
+        } finally {
+            tg.dispose();
+        }
+    }
+
+    /**
+     * internal class: A part of the destination rendered by one thread.
+     */
+    static class Tile {
+        int x;
+        int y;
+        int width;
+        int height;
+        ZBounds visibleBounds;
+        BufferedImage image;
+    }
+
+    /**
+     * internal class: A worker thread that renders tiles while there are any left.
+     */
+    class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                Tile tile;
+                synchronized (ZParallelRenderer.this) {
+                    while (!disposed && ((tiles == null) || (nextTile >= tiles.length))) {
+                        try {
+                            ZParallelRenderer.this.wait();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    if (disposed) {
+                        return;
+                    }
+                    tile = tiles[nextTile++];
+                    tile.image = acquireImage();
+                }
+                renderTile(tile);
+                synchronized (ZParallelRenderer.this) {
+                    completed.addElement(tile);
+                    ZParallelRenderer.this.notifyAll();
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import edu.umd.cs.jazz.*;
+
+/**
+ * <b>ZPickBuffer</b> picks the objects a drawing surface shows by looking them up in
+ * an offscreen buffer of object ids, rather than by testing the geometry of each object.
+ * The buffer is a raster at the resolution of the surface's camera, with each pickable
+ * visual component drawn into it with a flat color that is its id, in the order it is
+ * rendered. A pick then only looks at the pixels under the pick rectangle, and takes
+ * the frontmost id, so it takes the same time however many objects are in the scene,
+ * and however complex their shapes are.
+ * <P>
+ * The buffer is drawn again the first time the surface picks after anything it shows
+ * has been repainted, after its camera has changed, or after any transform or
+ * pickability has changed. A pick buffer therefore suits dense scenes that are picked
+ * much more often than they change, such as a scene the pointer is moved over.
+ * <P>
+ * Each visual component draws the area that picks it with {@link ZVisualComponent#renderPickArea},
+ * so shapes are picked by their fill and stroke, and other components by their bounds, as
+ * with geometric picking. Results can still differ slightly at the edges of objects, as
+ * the buffer has the resolution of the screen. Where an id can't stand for a single path,
+ * such as in portals, handle groups, clip groups, level of detail proxies, or visual
+ * components with several parents, the surface falls back to picking geometrically.
+ * Portals that draw nothing, and nodes with their own pick methods, are only picked by
+ * what they draw. As the ids are colors, there are about 16 million of them. When a scene
+ * draws more objects than that, the objects drawn after the ids run out are picked
+ * geometrically too.
+ *
+ * @see edu.umd.cs.jazz.ZDrawingSurface#setPickBuffer
+ */
+public class ZPickBuffer {
+                                // The id of pixels where nothing pickable is drawn
+    static private final int NO_ID = 0;
+
+                                // The largest id a pixel can hold. Once the ids run out, this is
+                                // a fallback id for everything drawn after it
+    static private final int MAX_ID = 0xffffff;
+
+                                // The ids of the pixels, row by row, or null if not allocated
+    private int[] ids = null;
+    private BufferedImage image = null;
+    private int width = 0;
+    private int height = 0;
+
+                                // Where the buffer is, in camera coordinates
+    private int originX = 0;
+    private int originY = 0;
+
+                                // What each id stands for, indexed by id
+    private Entry[] entries = new Entry[16];
+    private int numEntries = 0;
+
+                                // The camera the buffer was drawn for, or null if it must be drawn again
+    private ZCamera camera = null;
+
+                                // Statistics
+    private int renderCount = 0;
+    private int fallbackCount = 0;
+
+    /**
+     * Constructs a new pick buffer. It is drawn when the surface it is set on first picks.
+     */
+    public ZPickBuffer() {
+    }
+
+    /**
+     * Return the number of times this buffer has been drawn.
+     * @return the render count.
+     */
+    public int getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * Return the number of picks the buffer could not answer, and that were picked geometrically.
+     * @return the fallback count.
+     */
+    public int getFallbackCount() {
+        return fallbackCount;
+    }
+
+    /**
+     * Reset the render and fallback counts to zero.
+     */
+    public void resetStatistics() {
+        renderCount = 0;
+        fallbackCount = 0;
+    }
+
+    /**
+     * Mark the buffer as out of date, so it is drawn again by the next pick.
+     */
+    public void invalidate() {
+        camera = null;
+    }
+
+    /**
+     * Returns the path to the first object intersecting the specified rectangle within halo pixels,
+     * as {@link ZDrawingSurface#pick(int, int, int)} does, from the buffer, drawing the buffer first
+     * if it is out of date. This must be called from the thread that owns the scenegraph.
+     * @param surface The surface to pick from.
+     * @param x X-coord of pick point in window coordinates.
+     * @param y Y-coord of pick point in window coordinates.
+     * @param halo The amount the point can miss an object and still pick it
+     * @return The ZSceneGraphPath to the picked object, or null if the surface must
+     * pick geometrically at this point.
+     */
+    public ZSceneGraphPath pick(ZDrawingSurface surface, int x, int y, int halo) {
+        ZCamera aCamera = surface.getCamera();
+        if (aCamera == null) {
+            return null;
+        }
+        if (camera != aCamera) {
+            render(surface);
+        }
+
+                                // The frontmost id under the pick rectangle
+        int x0 = Math.max(x - halo - originX, 0);
+        int y0 = Math.max(y - halo - originY, 0);
+                                // A pick rectangle only intersects the pixels it overlaps
+        int x1 = Math.min(x + halo - 1 - originX, width - 1);
+        int y1 = Math.min(y + halo - 1 - originY, height - 1);
+        int id = NO_ID;
+        for (int j = y0; j <= y1; j++) {
+            int row = j * width;
+            for (int i = x0; i <= x1; i++) {
+                int pixelId = ids[row + i] & 0xffffff;
+                if (pixelId > id) {
+                    id = pixelId;
+                }
+            }
+        }
+
+        if (id >= numEntries) {
+            fallbackCount++;
+            return null;
+        }
+        Entry entry = entries[id];
+        if ((entry != null) && (entry.component == null)) {
+            fallbackCount++;
+            return null;
+        }
+
+        ZSceneGraphPath path = new ZSceneGraphPath();
+        path.setRoot(camera.getRoot());
+        path.setTopCamera(camera);
+        path.setTopCameraNode(surface.getCameraNode());
+        if ((x1 < x0) || (y1 < y0) ||
+            !camera.getBoundsReference().intersects(x - halo, y - halo, halo + halo, halo + halo)) {
+            return path;
+        }
+
+                                // Build the path as ZCamera.pick would
+        path.push(camera);
+        path.pushCamera(camera);
+        path.pushTransformer(camera);
+        AffineTransform tm = path.getTransformReference();
+        path.setCameraTransform(tm);
+        tm.concatenate(camera.getViewTransform());
+        if (entry != null) {
+            buildPath(path, entry);
+        }
+        return path;
+    }
+
+    /**
+     * Push the nodes from the layer down to the entry's node onto the path, as
+     * the pick methods of the nodes would, and set the picked object.
+     */
+    private void buildPath(ZSceneGraphPath path, Entry entry) {
+        ArrayList ancestors = new ArrayList();
+        for (ZNode each = entry.node; each != entry.layer; each = each.getParent()) {
+            ancestors.add(0, each);
+        }
+        ancestors.add(0, entry.layer);
+
+        AffineTransform[] ancestorTms = new AffineTransform[ancestors.size()];
+        AffineTransform tm = path.getTransformReference();
+        for (int i = 0; i < ancestors.size(); i++) {
+            ZNode each = (ZNode)ancestors.get(i);
+            if (each instanceof ZTransformGroup) {
+                path.pushTransformer((ZTransformGroup)each);
+                tm.concatenate(((ZTransformGroup)each).getTransformReference());
+                ancestorTms[i] = new AffineTransform(tm);
+            }
+            path.push(each);
+        }
+        path.setObject(entry.component);
+
+                                // Groups whose children are not pickable are
+                                // picked instead of the node, as in ZGroup.pick().
+        for (int i = ancestors.size() - 2; i >= 0; i--) {
+            ZGroup each = (ZGroup)ancestors.get(i);
+            if (!each.getChildrenPickable()) {
+                path.pop(each);
+                path.setObject(each);
+                if (ancestorTms[i] != null) {
+                    path.setTransform(ancestorTms[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw the buffer for the specified surface's camera.
+     */
+    private void render(ZDrawingSurface surface) {
+        ZCamera aCamera = surface.getCamera();
+        ZBounds cameraBounds = aCamera.getBoundsReference();
+        originX = (int)Math.floor(cameraBounds.getX());
+        originY = (int)Math.floor(cameraBounds.getY());
+        int newWidth = Math.max((int)Math.ceil(cameraBounds.getMaxX()) - originX, 1);
+        int newHeight = Math.max((int)Math.ceil(cameraBounds.getMaxY()) - originY, 1);
+        if ((image == null) || (newWidth != width) || (newHeight != height)) {
+            width = newWidth;
+            height = newHeight;
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            ids = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        } else {
+            Arrays.fill(ids, NO_ID);
+        }
+        for (int i = 0; i < numEntries; i++) {
+            entries[i] = null;
+        }
+        numEntries = 1;
+
+        ZRoot root = aCamera.getRoot();
+        ZRenderContext saveRenderContext = (root == null) ? null : root.getCurrentRenderContext();
+
+                                // Find what the camera draws, in the order it draws it
+        ZDisplayList displayList = ZDisplayList.compile(surface, cameraBounds, ZDrawingSurface.RENDER_QUALITY_HIGH);
+
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g2.translate(-originX, -originY);
+        AffineTransform baseTransform = g2.getTransform();
+        Shape baseClip = g2.getClip();
+
+        ZRenderContext rc = aCamera.createRenderContext(g2, new ZBounds(cameraBounds), surface, ZDrawingSurface.RENDER_QUALITY_LOW);
+        rc.pushCamera(aCamera);
+        if (root != null) {
+            root.setCurrentRenderContext(rc);
+        }
+
+        Hashtable fallbackGroups = new Hashtable();
+        try {
+            for (int i = 0; i < displayList.size(); i++) {
+                ZDisplayList.Record record = displayList.getRecord(i);
+                ZVisualComponent component = record.component;
+                g2.setTransform(baseTransform);
+                g2.setClip(baseClip);
+
+                if (record.camera != aCamera) {
+                                // Inside a portal
+                    fillFallback(g2, record.bounds);
+                    continue;
+                }
+                if (component instanceof ZDisplayList.ProxyComponent) {
+                    fillFallback(g2, record.bounds);
+                    continue;
+                }
+                if (component instanceof ZDisplayList.FillComponent) {
+                    continue;
+                }
+
+                Entry entry = createEntry(aCamera, component, g2, fallbackGroups);
+                if (entry == null) {
+                    continue;
+                }
+                g2.transform(record.transform);
+                if (record.clip != null) {
+                    g2.clip(record.clip);
+                }
+                g2.setColor(new Color(addEntry(entry)));
+                component.renderPickArea(rc);
+            }
+        } finally {
+            if (root != null) {
+                root.setCurrentRenderContext(saveRenderContext);
+            }
+            rc.popCamera();
+            g2.dispose();
+        }
+
+        camera = aCamera;
+        renderCount++;
+    }
+
+    /**
+     * Return the entry for the specified visual component, which picks it if it
+     * is pickable through the specified camera, or a fallback entry if its path
+     * can't be determined from the component, or null if it isn't pickable.
+     * The bounds of groups that have their own way of picking are filled with
+     * fallback ids the first time they are found.
+     */
+    private Entry createEntry(ZCamera aCamera, ZVisualComponent component, Graphics2D g2, Hashtable fallbackGroups) {
+        if (component.getNumParents() != 1) {
+            return new Entry();
+        }
+
+        ZNode node = component.getParentsReference()[0];
+        if (node instanceof ZVisualLeaf) {
+            if (!node.isPickable()) {
+                return null;
+            }
+        } else if (node instanceof ZVisualGroup) {
+            ZVisualGroup group = (ZVisualGroup)node;
+            if ((component == group.getFrontVisualComponent()) ? !group.isFrontVisualComponentPickable()
+                                                                : !group.isBackVisualComponentPickable()) {
+                return null;
+            }
+        } else {
+            return new Entry();
+        }
+
+        ZLayerGroup[] layers = aCamera.getLayersReference();
+        int numLayers = aCamera.getNumLayers();
+        boolean fallback = false;
+        for (ZGroup each = node.getParent(); each != null; each = each.getParent()) {
+            if (!each.isPickable()) {
+                return null;
+            }
+            if ((each instanceof ZHandleGroup) || (each instanceof ZClipGroup)) {
+                if (fallbackGroups.get(each) == null) {
+                    fallbackGroups.put(each, each);
+                    Rectangle2D groupBounds = each.getGlobalBounds();
+                    ZTransformGroup.transform(groupBounds, aCamera.getViewTransform());
+                    fillFallback(g2, groupBounds);
+                }
+                fallback = true;
+            }
+            for (int i = 0; i < numLayers; i++) {
+                if (each == layers[i]) {
+                    if (fallback) {
+                        return new Entry();
+                    }
+                    Entry entry = new Entry();
+                    entry.component = component;
+                    entry.node = node;
+                    entry.layer = (ZLayerGroup)each;
+                    return entry;
+                }
+            }
+        }
+        return new Entry();
+    }
+
+    /**
+     * Fill the specified bounds, in camera coordinates, with a new fallback id.
+     */
+    private void fillFallback(Graphics2D g2, Rectangle2D bounds) {
+        g2.setColor(new Color(addEntry(new Entry())));
+        g2.fill(bounds);
+    }
+
+    /**
+     * Add the specified entry, and return its id. Once there are no more ids, the
+     * entry is dropped, and the fallback id that is the last one is returned.
+     */
+    private int addEntry(Entry entry) {
+        if (numEntries > MAX_ID) {
+            return MAX_ID;
+        }
+        if (numEntries == MAX_ID) {
+                                // Out of ids, so everything drawn from here on is picked geometrically
+            entry = new Entry();
+        }
+        if (numEntries == entries.length) {
+            Entry[] newEntries = new Entry[numEntries * 2];
+            System.arraycopy(entries, 0, newEntries, 0, numEntries);
+            entries = newEntries;
+        }
+        entries[numEntries] = entry;
+        return numEntries++;
+    }
+
+    /**
+     * internal class: What an id stands for. An entry without a
+     * component means the surface must pick geometrically.
+     */
+    static class Entry {
+        ZVisualComponent component;
+        ZNode node;
+        ZLayerGroup layer;
+    }
+}
\ No newline at end of file
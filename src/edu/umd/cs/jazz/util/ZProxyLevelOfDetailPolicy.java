@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.io.*;
+import java.awt.*;
+import java.awt.geom.*;
+
+/**
+ * <b>ZProxyLevelOfDetailPolicy</b> is a level of detail policy that draws
+ * clusters of nodes that are too small to be seen with a simple proxy:
+ * nothing, the outline of the cluster's bounds, the filled bounds (a "greeked"
+ * version of the cluster), or a single dot at the center of the cluster.
+ *
+ * <P>
+ * <b>Warning:</b> Serialized and ZSerialized objects of this class will not be
+ * compatible with future Jazz releases. The current serialization support is
+ * appropriate for short term storage or RMI between applications running the
+ * same version of Jazz. A future release of Jazz will provide support for long
+ * term persistence.
+ *
+ * @see edu.umd.cs.jazz.ZSpatialIndex#setLevelOfDetailPolicy
+ */
+public class ZProxyLevelOfDetailPolicy implements ZLevelOfDetailPolicy, Serializable {
+    /**
+     * Proxy style that draws nothing for clusters of small nodes.
+     */
+    static public final int PROXY_NONE = 0;
+
+    /**
+     * Proxy style that draws the outline of the bounds of a cluster of small nodes.
+     */
+    static public final int PROXY_BOUNDS = 1;
+
+    /**
+     * Proxy style that fills the bounds of a cluster of small nodes.
+     */
+    static public final int PROXY_FILL = 2;
+
+    /**
+     * Proxy style that draws a one pixel dot at the center of a cluster of small nodes.
+     */
+    static public final int PROXY_DOT = 3;
+
+    static public final double minimumSize_DEFAULT = 1.0;
+    static public final int proxyStyle_DEFAULT = PROXY_DOT;
+    static public final Color proxyColor_DEFAULT = Color.gray;
+
+    private double minimumSize = minimumSize_DEFAULT;
+    private int proxyStyle = proxyStyle_DEFAULT;
+    private Color proxyColor = proxyColor_DEFAULT;
+
+    /**
+     * Rectangle used to draw proxies.
+     */
+    private transient Rectangle2D tmpRect = new Rectangle2D.Double();
+
+    /**
+     * Constructs a new policy with the default minimum size, style, and color.
+     */
+    public ZProxyLevelOfDetailPolicy() {
+    }
+
+    /**
+     * Constructs a new policy with the specified minimum size and style.
+     * @param aMinimumSize the size, in screen pixels, below which nodes are not rendered.
+     * @param aProxyStyle one of PROXY_NONE, PROXY_BOUNDS, PROXY_FILL, or PROXY_DOT.
+     */
+    public ZProxyLevelOfDetailPolicy(double aMinimumSize, int aProxyStyle) {
+        minimumSize = aMinimumSize;
+        proxyStyle = aProxyStyle;
+    }
+
+    /**
+     * Return the size, in screen pixels, below which nodes are not rendered.
+     * @return the minimum size.
+     */
+    public double getMinimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * Set the size, in screen pixels, below which nodes are not rendered.
+     * @param aMinimumSize the minimum size.
+     */
+    public void setMinimumSize(double aMinimumSize) {
+        minimumSize = aMinimumSize;
+    }
+
+    /**
+     * Return the style of the proxies drawn for clusters of small nodes.
+     * @return one of PROXY_NONE, PROXY_BOUNDS, PROXY_FILL, or PROXY_DOT.
+     */
+    public int getProxyStyle() {
+        return proxyStyle;
+    }
+
+    /**
+     * Set the style of the proxies drawn for clusters of small nodes.
+     * @param aProxyStyle one of PROXY_NONE, PROXY_BOUNDS, PROXY_FILL, or PROXY_DOT.
+     */
+    public void setProxyStyle(int aProxyStyle) {
+        proxyStyle = aProxyStyle;
+    }
+
+    /**
+     * Return the color of the proxies drawn for clusters of small nodes.
+     * @return the color.
+     */
+    public Color getProxyColor() {
+        return proxyColor;
+    }
+
+    /**
+     * Set the color of the proxies drawn for clusters of small nodes.
+     * @param aColor the color.
+     */
+    public void setProxyColor(Color aColor) {
+        proxyColor = aColor;
+    }
+
+    /**
+     * Render a proxy for a cluster of nodes that are all too small to be rendered.
+     * @param renderContext The graphics context to use for rendering.
+     * @param region the bounds of the cluster, in the coordinate system of the spatial index.
+     * @param numNodes the number of nodes in the cluster.
+     */
+    public void renderProxy(ZRenderContext renderContext, Rectangle2D region, int numNodes) {
+        if (proxyStyle == PROXY_NONE) {
+            return;
+        }
+
+        Graphics2D g2 = renderContext.getGraphics2D();
+        double pixel = 1.0 / renderContext.getCompositeMagnification();
+        g2.setColor(proxyColor);
+
+        switch (proxyStyle) {
+        case PROXY_BOUNDS:
+            g2.setStroke(new BasicStroke((float)pixel));
+            g2.draw(region);
+            break;
+        case PROXY_FILL:
+            g2.fill(region);
+            break;
+        case PROXY_DOT:
+            tmpRect.setRect(region.getCenterX() - (pixel / 2), region.getCenterY() - (pixel / 2), pixel, pixel);
+            g2.fill(tmpRect);
+            break;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tmpRect = new Rectangle2D.Double();
+    }
+}
\ No newline at end of file
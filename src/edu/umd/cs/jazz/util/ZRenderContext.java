@@ -5,7 +5,12 @@
 package edu.umd.cs.jazz.util;
 
 import java.util.Stack;
+import java.util.Hashtable;
+import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.font.*;
 import java.awt.geom.*;
 import java.awt.RenderingHints;
 import java.io.*;
@@ -30,6 +35,7 @@ import edu.umd.cs.jazz.*;
  */
 public class ZRenderContext implements Serializable {
     private static final int DEFAULT_NUM_VISIBLE_BOUNDS = 10;
+    private static final int MAX_CACHED_LINE_METRICS = 64;
 
     /**
      * List of (recursive) cameras currently rendering the scenegraph
@@ -76,6 +82,26 @@ public class ZRenderContext implements Serializable {
      */
     private boolean accurateSpacing = true;
 
+    /**
+     * Text rendered smaller than this size, in pixels, is drawn at whole pixel font sizes.
+     */
+    private double pixelTextSize = 0.0;
+
+    /**
+     * The display list being compiled, or null if visual components are rendered.
+     */
+    private transient ZDisplayList displayList = null;
+
+    /**
+     * A rectangle that visual components can use while they render.
+     */
+    private transient Rectangle2D tmpRect = null;
+
+    /**
+     * The line metrics of the fonts rendered with this context, keyed by font.
+     */
+    private transient Hashtable lineMetrics = null;
+
     //****************************************************************************
     //
     //               Constructors
@@ -115,6 +141,30 @@ public class ZRenderContext implements Serializable {
         surface = aSurface;
 	this.qualityRequested = qualityRequested;
 	this.accurateSpacing = surface.getUseFractionalMetrics();
+        this.pixelTextSize = surface.getPixelTextSize();
+        setRenderingHints(g2, qualityRequested);
+    }
+
+    /**
+     * Prepares this render context for another render.  A surface that paints
+     * repeatedly can reset its render context rather than creating a new one
+     * each time, so steady-state painting doesn't allocate a render context.
+     * @param aG2 The graphics for this render
+     * @param visibleBounds The bounds being rendered in screen coordinates
+     * @param aSurface The surface being rendered onto
+     * @param qualityRequested The quality to render with
+     */
+    public void reset(Graphics2D aG2, ZBounds visibleBounds, ZDrawingSurface aSurface, int qualityRequested) {
+        cameras.removeAllElements();
+        transforms.removeAllElements();
+        this.visibleBounds.clear();
+        this.visibleBounds.add(visibleBounds);
+        displayList = null;
+        g2 = aG2;
+        surface = aSurface;
+        this.qualityRequested = qualityRequested;
+        this.accurateSpacing = surface.getUseFractionalMetrics();
+        this.pixelTextSize = surface.getPixelTextSize();
         setRenderingHints(g2, qualityRequested);
     }
 
@@ -200,6 +250,132 @@ public class ZRenderContext implements Serializable {
         return greekText;
     }
 
+    /**
+     * Specify the size, in pixels, below which text is drawn at whole
+     * pixel font sizes rather than scaled to its exact size.  Text drawn
+     * this way is drawn from glyphs that Java2D has already rasterized
+     * at that size, which is faster when small text is zoomed.
+     * @param <code>size</code> The size in pixels, or 0 to always scale text.
+     */
+    public void setPixelTextSize(double size) {
+        pixelTextSize = size;
+    }
+
+    /**
+     * Determine the size, in pixels, below which text is drawn at whole
+     * pixel font sizes.
+     * @return the size in pixels
+     */
+    public double getPixelTextSize() {
+        return pixelTextSize;
+    }
+
+    /**
+     * Specify a display list that visual components should be recorded into,
+     * rather than rendered. This is used to compile display lists.
+     * @param aDisplayList The display list to record into, or null to render.
+     * @see ZDisplayList#compile
+     */
+    public void setDisplayList(ZDisplayList aDisplayList) {
+        displayList = aDisplayList;
+    }
+
+    /**
+     * Get the display list that visual components are being recorded into.
+     * @return the display list, or null if visual components are being rendered.
+     */
+    public ZDisplayList getDisplayList() {
+        return displayList;
+    }
+
+    /**
+     * Render the specified visual component with this render context, or,
+     * if a display list is being compiled, record it in the display list.
+     * Nodes should render their visual components with this method rather than
+     * by calling the visual component's render method directly.
+     * Cameras are always rendered, so the contents of portals are recorded.
+     * @param visualComponent The visual component to render.
+     */
+    public void renderVisualComponent(ZVisualComponent visualComponent) {
+        if ((displayList == null) || (visualComponent instanceof ZCamera)) {
+            visualComponent.render(this);
+        } else {
+            displayList.record(this, visualComponent);
+        }
+    }
+
+    /**
+     * Fill the specified shape with the specified paint, or, if a display list is
+     * being compiled, record the fill in the display list.
+     * @param shape The shape to fill, in the current local coordinates.
+     * @param paint The paint to fill it with.
+     */
+    public void fill(Shape shape, Paint paint) {
+        if (displayList == null) {
+            g2.setPaint(paint);
+            g2.fill(shape);
+        } else {
+            displayList.recordFill(this, shape, paint);
+        }
+    }
+
+    /**
+     * Render a level of detail proxy with the specified policy, or, if a display list
+     * is being compiled, record the proxy in the display list.
+     * @param policy The policy that draws the proxy.
+     * @param region The region of the nodes the proxy stands for, in the current local coordinates.
+     * @param numNodes The number of nodes the proxy stands for.
+     */
+    public void renderProxy(ZLevelOfDetailPolicy policy, Rectangle2D region, int numNodes) {
+        if (displayList == null) {
+            policy.renderProxy(this, region, numNodes);
+        } else {
+            displayList.recordProxy(this, policy, region, numNodes);
+        }
+    }
+
+    /**
+     * Returns a rectangle that a visual component can use for temporary
+     * geometry while it renders, such as a background to fill, rather than
+     * allocating one.  The rectangle is shared by every object rendered with
+     * this context, so it must not be kept after the call that uses it.
+     * @return a temporary rectangle with unspecified contents.
+     */
+    public Rectangle2D getTmpRectangle() {
+        if (tmpRect == null) {
+            tmpRect = new Rectangle2D.Double();
+        }
+        return tmpRect;
+    }
+
+    /**
+     * Returns the line metrics of the specified font, as
+     * <code>font.getLineMetrics(str, frc)</code> would, without allocating new metrics
+     * at every render.  The metrics are cached for each font rendered with this
+     * context, so they describe the font rather than the string, and
+     * {@link LineMetrics#getNumChars} is not meaningful.
+     * @param font The font.
+     * @param str A string rendered with the font.
+     * @param frc The font render context the string is rendered with.
+     * @return the line metrics.
+     */
+    public LineMetrics getLineMetrics(Font font, String str, FontRenderContext frc) {
+        if (lineMetrics == null) {
+            lineMetrics = new Hashtable();
+        }
+        CachedLineMetrics cached = (CachedLineMetrics)lineMetrics.get(font);
+        if ((cached == null) || !frc.equals(cached.frc)) {
+            if (lineMetrics.size() >= MAX_CACHED_LINE_METRICS) {
+                lineMetrics.clear();
+            }
+            cached = new CachedLineMetrics();
+            cached.frc = frc;
+            cached.metrics = font.getLineMetrics(str, frc);
+            lineMetrics.put(font, cached);
+        }
+        return cached.metrics;
+    }
+
     /**
      * Sets the rendering hints of the specified graphics to either or high or low.
      * This gets called whenever the surface is painted, and specifies how high and low
@@ -289,7 +465,9 @@ public class ZRenderContext implements Serializable {
     }
 
     /**
-     * Add a rendering camera
+     * Add a rendering camera.  The camera transform is the copy of the current
+     * transform that <code>Graphics2D.getTransform</code> returns, which Java2D
+     * allocates, as it has no way to copy the transform into an existing one.
      * @param camera The camera
      */
     public void pushCamera(ZCamera camera) {
@@ -330,4 +508,12 @@ public class ZRenderContext implements Serializable {
     public double getCompositeMagnification() {
         return ZTransformGroup.computeScale(g2.getTransform());
     }
+
+    /**
+     * internal class: The line metrics of a font for a font render context.
+     */
+    static class CachedLineMetrics {
+        FontRenderContext frc;
+        LineMetrics metrics;
+    }
 }
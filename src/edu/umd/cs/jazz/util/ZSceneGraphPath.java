@@ -6,6 +6,7 @@
 package edu.umd.cs.jazz.util;
 
 import java.io.*;
+import java.util.*;
 import java.awt.geom.*;
 
 import edu.umd.cs.jazz.*;
@@ -84,6 +85,13 @@ public final class ZSceneGraphPath implements Serializable {
     private AffineTransform cameraTransform = null; // The cumulative transformof the path, up to the bottom camera on the path
     private boolean cameraFound = false;            // True if camera has been found on return up recursive pick calls
 
+                                // Transforms and rectangles reused by nested pick calls, so
+                                // picking does not allocate them at every level of the tree.
+    private ArrayList savedTransforms = new ArrayList();
+    private int numSavedTransforms = 0;
+    private ArrayList tempRectangles = new ArrayList();
+    private int numTempRectangles = 0;
+
     /**
      * Constructs a new ZSceneGraphPath.
      */
@@ -220,6 +228,68 @@ public final class ZSceneGraphPath implements Serializable {
      */
     public void setTransform(AffineTransform tm) { transform.setTransform(tm); }
 
+    /**
+     * Returns a reference to the transform for this path.  Modifying it changes the
+     * path's transform.  This is used by pick methods to concatenate a transform
+     * without copying it.
+     * @return The transform for this path.
+     * @see #getTransform
+     */
+    public AffineTransform getTransformReference() { return transform; }
+
+    /**
+     * Saves a copy of the current transform for this path, and returns it.
+     * The copy is reused by later calls once {@link #popTransform} releases it,
+     * so callers must release saved transforms in the reverse order they saved them,
+     * and must not keep a reference to a released transform.
+     * @return The saved copy of the transform.
+     */
+    public AffineTransform pushTransform() {
+        AffineTransform saved;
+        if (numSavedTransforms < savedTransforms.size()) {
+            saved = (AffineTransform)savedTransforms.get(numSavedTransforms);
+            saved.setTransform(transform);
+        } else {
+            saved = new AffineTransform(transform);
+            savedTransforms.add(saved);
+        }
+        numSavedTransforms++;
+        return saved;
+    }
+
+    /**
+     * Releases the transform most recently saved by {@link #pushTransform}.
+     * This does not change the path's transform.
+     */
+    public void popTransform() {
+        numSavedTransforms--;
+    }
+
+    /**
+     * Returns a temporary rectangle for use by a pick method.
+     * The rectangle is reused by later calls once {@link #popRectangle} releases it,
+     * so callers must release rectangles in the reverse order they got them.
+     * @return A temporary rectangle with unspecified contents.
+     */
+    public Rectangle2D pushRectangle() {
+        Rectangle2D rect;
+        if (numTempRectangles < tempRectangles.size()) {
+            rect = (Rectangle2D)tempRectangles.get(numTempRectangles);
+        } else {
+            rect = new Rectangle2D.Double();
+            tempRectangles.add(rect);
+        }
+        numTempRectangles++;
+        return rect;
+    }
+
+    /**
+     * Releases the rectangle most recently returned by {@link #pushRectangle}.
+     */
+    public void popRectangle() {
+        numTempRectangles--;
+    }
+
     /**
      * Returns the camera transform for this path.  This is formed by
      * compositing all the tranforms of the scene graph objects in this path
@@ -0,0 +1,485 @@
+/**
+ * Copyright (C) 1998-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazz.util;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import edu.umd.cs.jazz.*;
+
+/**
+ * <b>ZTileCache</b> is an offscreen cache of rendered tiles for a drawing surface.
+ * When a surface has a tile cache, it paints by copying tiles of the scene that
+ * were rendered earlier, and only renders tiles that have not been seen before,
+ * such as the strips newly exposed by a pan.
+ * <P>
+ * Tiles are laid out on a grid of fixed size square tiles in screen pixels. There
+ * is one grid for each combination of camera scale, sub-pixel camera offset, and
+ * render quality, so panning reuses the tiles of the current grid, while zooming
+ * starts a new grid and keeps the tiles of the old one until they are evicted.
+ * Tiles are invalidated from the global coordinate bounds of every repaint request
+ * the surface's camera receives, and only the damaged part of a tile is rendered
+ * again. The cache holds tiles up to a memory budget, and evicts the least recently
+ * used tiles when the budget is exceeded.
+ * <P>
+ * The cache is only used when the camera's view transform is a translation and
+ * uniform scale. Views that rotate or shear are rendered directly. Because tiles are
+ * reused across camera moves, objects whose appearance depends on the camera's
+ * position (such as the children of a ZStickyGroup) are not drawn correctly from
+ * the cache, and should be viewed through a separate camera or surface.
+ *
+ * @see edu.umd.cs.jazz.ZDrawingSurface#setTileCache
+ */
+public class ZTileCache {
+    /**
+     * The default size of a tile, in pixels.
+     */
+    static public final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * The default memory budget, in bytes.
+     */
+    static public final long DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
+
+                                // Sub-pixel camera offsets closer than this share a grid
+    static private final double OFFSET_TOLERANCE = 1.0 / 16.0;
+
+                                // Relative difference in scale below which scales share a grid
+    static private final double SCALE_TOLERANCE = 1.0e-9;
+
+                                // Extra pixels invalidated around damaged bounds,
+                                // to cover antialiasing and rounding
+    static private final int DAMAGE_MARGIN = 2;
+
+    private int tileSize;
+    private long memoryBudget;
+
+                                // The grids that have tiles in the cache
+    private Vector grids = new Vector();
+
+                                // The cached tiles, most recently used first
+    private Tile head = null;
+    private Tile tail = null;
+    private int numTiles = 0;
+
+                                // An image from an evicted tile, kept to be reused
+    private BufferedImage spareImage = null;
+
+                                // Statistics
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int repairCount = 0;
+    private int evictionCount = 0;
+
+                                // Key used to look up tiles without allocating
+    private TileKey lookupKey = new TileKey();
+
+                                // Color used to clear damaged parts of tiles
+    private static final Color CLEAR_COLOR = new Color(0, 0, 0, 0);
+
+    /**
+     * Constructs a new tile cache with the default tile size and memory budget.
+     */
+    public ZTileCache() {
+        this(DEFAULT_TILE_SIZE, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructs a new tile cache.
+     * @param aTileSize the width and height of a tile, in pixels.
+     * @param aMemoryBudget the maximum number of bytes of tile images to keep.
+     */
+    public ZTileCache(int aTileSize, long aMemoryBudget) {
+        if (aTileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + aTileSize);
+        }
+        tileSize = aTileSize;
+        memoryBudget = aMemoryBudget;
+    }
+
+    /**
+     * Return the width and height of a tile, in pixels.
+     * @return the tile size.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Return the maximum number of bytes of tile images this cache keeps.
+     * @return the memory budget.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the maximum number of bytes of tile images this cache keeps.
+     * Tiles are evicted immediately if the cache is over the new budget.
+     * @param aMemoryBudget the memory budget.
+     */
+    public void setMemoryBudget(long aMemoryBudget) {
+        memoryBudget = aMemoryBudget;
+        spareImage = null;
+        evict(0);
+    }
+
+    /**
+     * Return the number of bytes used by the tiles in the cache.
+     * @return the memory used.
+     */
+    public long getMemoryUsed() {
+        return numTiles * getTileBytes();
+    }
+
+    /**
+     * Return the number of tiles in the cache.
+     * @return the number of tiles.
+     */
+    public int getNumTiles() {
+        return numTiles;
+    }
+
+    /**
+     * Return the number of tiles that were painted from the cache without rendering.
+     * @return the number of hits.
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Return the number of tiles that had to be rendered because they were not in the cache.
+     * @return the number of misses.
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return the number of cached tiles that were partially rendered again
+     * because part of them was invalidated.
+     * @return the number of repairs.
+     */
+    public int getRepairCount() {
+        return repairCount;
+    }
+
+    /**
+     * Return the number of tiles evicted to stay within the memory budget.
+     * @return the number of evictions.
+     */
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Reset the hit, miss, repair, and eviction counts to zero.
+     */
+    public void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        repairCount = 0;
+        evictionCount = 0;
+    }
+
+    /**
+     * Invalidate the parts of all cached tiles that show the specified bounds.
+     * @param globalBounds the bounds that changed, in global coordinates.
+     */
+    public void invalidate(Rectangle2D globalBounds) {
+        if (globalBounds.isEmpty()) {
+            return;
+        }
+        for (Tile tile = head; tile != null; tile = tile.next) {
+            Grid grid = tile.grid;
+                                // Map the bounds into the pixels of the tile's grid
+            double tileX = tile.i * tileSize;
+            double tileY = tile.j * tileSize;
+            int x0 = (int)Math.max(Math.floor(globalBounds.getMinX() * grid.scale + grid.offsetX - tileX) - DAMAGE_MARGIN, 0);
+            int y0 = (int)Math.max(Math.floor(globalBounds.getMinY() * grid.scale + grid.offsetY - tileY) - DAMAGE_MARGIN, 0);
+            int x1 = (int)Math.min(Math.ceil(globalBounds.getMaxX() * grid.scale + grid.offsetX - tileX) + DAMAGE_MARGIN, tileSize);
+            int y1 = (int)Math.min(Math.ceil(globalBounds.getMaxY() * grid.scale + grid.offsetY - tileY) + DAMAGE_MARGIN, tileSize);
+            if ((x0 >= x1) || (y0 >= y1)) {
+                continue;
+            }
+            if (tile.damage == null) {
+                tile.damage = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+            } else {
+                tile.damage.add(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+            }
+        }
+    }
+
+    /**
+     * Remove all tiles from the cache.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < grids.size(); i++) {
+            ((Grid)grids.elementAt(i)).tiles.clear();
+        }
+        grids.removeAllElements();
+        head = null;
+        tail = null;
+        numTiles = 0;
+        spareImage = null;
+    }
+
+    /**
+     * Paint the specified surface's camera from the cache, rendering any
+     * tiles that are missing or damaged.
+     * @param g2 The graphics to paint onto.
+     * @param paintBounds The bounds to paint, in screen coordinates.
+     * @param surface The surface being painted.
+     * @param quality The render quality to paint with.
+     * @return true if the camera was painted, or false if its view can not
+     * be cached and it must be rendered directly.
+     */
+    public boolean paint(Graphics2D g2, Rectangle2D paintBounds, ZDrawingSurface surface, int quality) {
+        ZCamera camera = surface.getCamera();
+        AffineTransform view = camera.getViewTransform();
+        AffineTransform transform = g2.getTransform();
+        if (((view.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) ||
+            ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) ||
+            (transform.getTranslateX() != Math.floor(transform.getTranslateX())) ||
+            (transform.getTranslateY() != Math.floor(transform.getTranslateY())) ||
+            paintBounds.isEmpty()) {
+            return false;
+        }
+
+        Grid grid = getGrid(view, quality);
+                                // The screen position of the grid's origin
+        int originX = (int)Math.round(view.getTranslateX() - grid.offsetX);
+        int originY = (int)Math.round(view.getTranslateY() - grid.offsetY);
+
+        int i0 = floorDiv((int)Math.floor(paintBounds.getMinX()) - originX);
+        int j0 = floorDiv((int)Math.floor(paintBounds.getMinY()) - originY);
+        int i1 = floorDiv((int)Math.ceil(paintBounds.getMaxX()) - 1 - originX);
+        int j1 = floorDiv((int)Math.ceil(paintBounds.getMaxY()) - 1 - originY);
+
+        for (int j = j0; j <= j1; j++) {
+            for (int i = i0; i <= i1; i++) {
+                lookupKey.setKey(grid, i, j);
+                Tile tile = (Tile)grid.tiles.get(lookupKey);
+                int x = originX + i * tileSize;
+                int y = originY + j * tileSize;
+                if (tile == null) {
+                    missCount++;
+                    tile = createTile(grid, i, j);
+                    renderTile(tile, new Rectangle(0, 0, tileSize, tileSize), x, y, surface, quality);
+                } else {
+                    if (tile.damage != null) {
+                        repairCount++;
+                        Rectangle damage = tile.damage;
+                        tile.damage = null;
+                        renderTile(tile, damage, x, y, surface, quality);
+                    } else {
+                        hitCount++;
+                    }
+                    unlink(tile);
+                    link(tile);
+                }
+                g2.drawImage(tile.image, x, y, null);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Render part of a tile.
+     * @param tile The tile to render into.
+     * @param region The part of the tile to render, in tile pixels.
+     * @param x,y The screen position of the tile.
+     * @param surface The surface being painted.
+     * @param quality The render quality.
+     */
+    private void renderTile(Tile tile, Rectangle region, int x, int y, ZDrawingSurface surface, int quality) {
+        ZCamera camera = surface.getCamera();
+        Graphics2D tg = tile.image.createGraphics();
+        tg.setComposite(AlphaComposite.Src);
+        tg.setColor(CLEAR_COLOR);
+        tg.fill(region);
+        tg.setComposite(AlphaComposite.SrcOver);
+        tg.clip(region);
+        tg.translate(-x, -y);
+
+        ZBounds visibleBounds = new ZBounds(x + region.x, y + region.y, region.width, region.height);
+        ZRenderContext rc = camera.createRenderContext(tg, visibleBounds, surface, quality);
+        rc.setAccurateSpacing(surface.getUseFractionalMetrics());
+        camera.getRoot().setCurrentRenderContext(rc);
+        camera.render(rc);
+        camera.getRoot().setCurrentRenderContext(null);
+        tg.dispose();
+    }
+
+    /**
+     * Return the grid for the specified view and quality, creating it if necessary.
+     */
+    private Grid getGrid(AffineTransform view, int quality) {
+        double scale = view.getScaleX();
+        for (int i = 0; i < grids.size(); i++) {
+            Grid grid = (Grid)grids.elementAt(i);
+            if ((grid.quality == quality) &&
+                (Math.abs(grid.scale - scale) <= SCALE_TOLERANCE * Math.abs(scale)) &&
+                isAligned(view.getTranslateX() - grid.offsetX) &&
+                isAligned(view.getTranslateY() - grid.offsetY)) {
+                return grid;
+            }
+        }
+        Grid grid = new Grid();
+        grid.scale = scale;
+        grid.offsetX = view.getTranslateX() - Math.floor(view.getTranslateX());
+        grid.offsetY = view.getTranslateY() - Math.floor(view.getTranslateY());
+        grid.quality = quality;
+        grids.addElement(grid);
+        return grid;
+    }
+
+    /**
+     * Determine if the specified value is within the offset tolerance of an integer.
+     */
+    private boolean isAligned(double value) {
+        return Math.abs(value - Math.rint(value)) < OFFSET_TOLERANCE;
+    }
+
+    /**
+     * Return the tile index that contains the specified grid pixel.
+     */
+    private int floorDiv(int pixel) {
+        return (pixel >= 0) ? (pixel / tileSize) : -((-pixel - 1) / tileSize) - 1;
+    }
+
+    /**
+     * Return the number of bytes used by the image of one tile.
+     */
+    private long getTileBytes() {
+        return 4L * tileSize * tileSize;
+    }
+
+    /**
+     * Create a new tile and add it to the cache, evicting tiles if necessary.
+     */
+    private Tile createTile(Grid grid, int i, int j) {
+        evict(1);
+        if (!grids.contains(grid)) {
+                                // All of the grid's tiles were just evicted
+            grids.addElement(grid);
+        }
+        Tile tile = new Tile();
+        tile.setKey(grid, i, j);
+        if (spareImage != null) {
+            tile.image = spareImage;
+            spareImage = null;
+        } else {
+            tile.image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        grid.tiles.put(tile, tile);
+        link(tile);
+        numTiles++;
+        return tile;
+    }
+
+    /**
+     * Evict least recently used tiles until the specified number of
+     * new tiles fit within the memory budget.
+     */
+    private void evict(int numNew) {
+        while ((tail != null) && ((numTiles + numNew) * getTileBytes() > memoryBudget)) {
+            Tile tile = tail;
+            unlink(tile);
+            tile.grid.tiles.remove(tile);
+            if (tile.grid.tiles.isEmpty()) {
+                grids.removeElement(tile.grid);
+            }
+            numTiles--;
+            evictionCount++;
+            spareImage = tile.image;
+        }
+    }
+
+    /**
+     * Add a tile at the most recently used end of the list.
+     */
+    private void link(Tile tile) {
+        tile.prev = null;
+        tile.next = head;
+        if (head != null) {
+            head.prev = tile;
+        }
+        head = tile;
+        if (tail == null) {
+            tail = tile;
+        }
+    }
+
+    /**
+     * Remove a tile from the list.
+     */
+    private void unlink(Tile tile) {
+        if (tile.prev != null) {
+            tile.prev.next = tile.next;
+        } else {
+            head = tile.next;
+        }
+        if (tile.next != null) {
+            tile.next.prev = tile.prev;
+        } else {
+            tail = tile.prev;
+        }
+        tile.prev = null;
+        tile.next = null;
+    }
+
+    /**
+     * internal class: The tiles for one scale, sub-pixel offset, and render quality.
+     */
+    static class Grid {
+        double scale;
+        double offsetX;
+        double offsetY;
+        int quality;
+        Hashtable tiles = new Hashtable();
+    }
+
+    /**
+     * internal class: The position of a tile within its grid.
+     */
+    static class TileKey {
+        Grid grid;
+        int i;
+        int j;
+
+        void setKey(Grid aGrid, int anI, int aJ) {
+            grid = aGrid;
+            i = anI;
+            j = aJ;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey key = (TileKey)obj;
+            return (key.grid == grid) && (key.i == i) && (key.j == j);
+        }
+
+        public int hashCode() {
+            return (i * 31) ^ j;
+        }
+    }
+
+    /**
+     * internal class: A rendered tile, with the part of it that is out of date,
+     * and its place in the least recently used list.
+     */
+    static class Tile extends TileKey {
+        BufferedImage image;
+        Rectangle damage;
+        Tile prev;
+        Tile next;
+    }
+}
\ No newline at end of file
@@ -22,6 +22,7 @@ public class RunAllPerformanceTests {
         suite.addTest(new TestSuite(ZRenderingPerformance.class));
         suite.addTest(new TestSuite(ZPickingPerformance.class));
         suite.addTest(new TestSuite(ZSceneGraphPerformance.class));
+        suite.addTest(new TestSuite(ZSpatialIndexPerformance.class));
 
         return suite;
     }
@@ -109,6 +109,38 @@ public class ZPickingPerformance extends TestCase {
         ZPerformanceLog.instance().logTest("SceneGraph Picking", (double) totalTime / 500.0);
     }
 
+    public double hoverSequence(ZDrawingSurface surface, boolean cached) {
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+                                // Wander over each rectangle for a while, as a pointer does
+            int x = 5 + 10 * ((i / 50) % 40) + (i % 2);
+            int y = 5 + 10 * ((i / 2000) % 40) + (i % 3) / 2;
+            if (cached) {
+                surface.pickCached(x, y);
+            } else {
+                surface.pick(x, y);
+            }
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        return (double) totalTime / 10000.0;
+    }
+
+    public void testPickHover() {
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                fCanvas.getLayer().addChild(new ZVisualLeaf(new ZRectangle(10 * i + 2, 10 * j + 2, 6, 6)));
+            }
+        }
+        ZDrawingSurface surface = fCanvas.getCamera().getDrawingSurface();
+        ZPerformanceLog.instance().logTest("Hover picking", hoverSequence(surface, false));
+        ZPerformanceLog.instance().logTest("Hover picking with cache", hoverSequence(surface, true));
+        surface.setPickBuffer(new ZPickBuffer());
+        ZPerformanceLog.instance().logTest("Hover picking with pick buffer", hoverSequence(surface, false));
+        surface.setPickBuffer(null);
+    }
+
     public void testPickText() {
         ZText component = ZComponentFactory.buildText();
         ZComponentFactory.leafInstance().setVisualComponent(component);
@@ -254,6 +254,278 @@ public class ZRenderingPerformance extends TestCase {
         ZPerformanceLog.instance().logTest("Render text", renderSequence());
     }
 
+    public double panSequence(ZDrawingSurface surface) {
+        ZCamera camera = surface.getCamera();
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 400, 400);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            camera.translate(-7, -3);
+            surface.paint(g2);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        g2.dispose();
+        camera.setViewTransform(new java.awt.geom.AffineTransform());
+        return (double) totalTime / 100;
+    }
+
+    public void testRenderPanWithTileCache() {
+        Random random = new Random(0);
+        ZRoot root = new ZRoot();
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.addLayer(layer);
+        camera.setBounds(0, 0, 400, 400);
+        for (int i = 0; i < 10000; i++) {
+            ZRectangle rect = new ZRectangle(random.nextDouble() * 2000, random.nextDouble() * 2000, 5 + random.nextDouble() * 20, 5 + random.nextDouble() * 20);
+            rect.setFillPaint(new java.awt.Color(random.nextInt(0xffffff)));
+            layer.addChild(new ZVisualLeaf(rect));
+        }
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+
+        ZPerformanceLog.instance().logTest("Render pan without tile cache", panSequence(surface));
+
+        surface.setTileCache(new ZTileCache());
+        ZPerformanceLog.instance().logTest("Render pan with tile cache", panSequence(surface));
+    }
+
+    public double largeRenderSequence(ZDrawingSurface surface) {
+        BufferedImage image = new BufferedImage(2000, 2000, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 2000, 2000);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            surface.paint(g2);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        g2.dispose();
+        return (double) totalTime / 5;
+    }
+
+    public void testRenderLargeInParallel() {
+        Random random = new Random(0);
+        ZRoot root = new ZRoot();
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.addLayer(layer);
+        camera.setBounds(0, 0, 2000, 2000);
+        for (int i = 0; i < 20000; i++) {
+            ZEllipse ellipse = new ZEllipse(random.nextDouble() * 2000, random.nextDouble() * 2000, 5 + random.nextDouble() * 40, 5 + random.nextDouble() * 40);
+            ellipse.setFillPaint(new java.awt.Color(random.nextInt(0xffffff)));
+            layer.addChild(new ZVisualLeaf(ellipse));
+        }
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+        surface.setRenderQuality(ZDrawingSurface.RENDER_QUALITY_HIGH);
+
+        ZPerformanceLog.instance().logTest("Render 2000x2000 serially", largeRenderSequence(surface));
+
+        ZParallelRenderer renderer = new ZParallelRenderer();
+        surface.setParallelRenderer(renderer);
+        ZPerformanceLog.instance().logTest("Render 2000x2000 in parallel", largeRenderSequence(surface));
+        renderer.dispose();
+    }
+
+    public double textRenderSequence(ZDrawingSurface surface, boolean zoom) {
+        ZCamera camera = surface.getCamera();
+        BufferedImage image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 800, 800);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            camera.setScale(zoom ? 1 + i / 20.0 : 1.5);
+            surface.paint(g2);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        g2.dispose();
+        camera.setViewTransform(new java.awt.geom.AffineTransform());
+        return (double) totalTime / 20;
+    }
+
+    public void testRenderManyLabels() {
+        Random random = new Random(0);
+        ZRoot root = new ZRoot();
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.addLayer(layer);
+        camera.setBounds(0, 0, 800, 800);
+        for (int i = 0; i < 2000; i++) {
+            ZLabel label = new ZLabel("Label number " + i);
+            label.setTranslation(random.nextDouble() * 750, random.nextDouble() * 790);
+            layer.addChild(new ZVisualLeaf(label));
+        }
+        for (int i = 0; i < 200; i++) {
+            ZText text = new ZText("Text number " + i + "\nwith a second line\nand a third");
+            text.setTranslation(random.nextDouble() * 750, random.nextDouble() * 750);
+            layer.addChild(new ZVisualLeaf(text));
+        }
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+
+        ZPerformanceLog.instance().logTest("Render 2000 labels and 200 texts", textRenderSequence(surface, false));
+        ZPerformanceLog.instance().logTest("Render 2000 labels and 200 texts zooming", textRenderSequence(surface, true));
+
+        surface.setRenderQuality(ZDrawingSurface.RENDER_QUALITY_HIGH);
+        ZPerformanceLog.instance().logTest("Render 2000 labels and 200 texts in high quality", textRenderSequence(surface, false));
+        ZPerformanceLog.instance().logTest("Render 2000 labels and 200 texts zooming in high quality", textRenderSequence(surface, true));
+    }
+
+    public void testRenderFarZoomText() {
+        Random random = new Random(0);
+        ZRoot root = new ZRoot();
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.addLayer(layer);
+        camera.setBounds(0, 0, 800, 800);
+                                // Texts of random printable characters, so that many
+                                // different glyphs are drawn at each magnification
+        char[] chars = new char[14];
+        for (int i = 0; i < 5000; i++) {
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('!' + random.nextInt(94));
+            }
+            ZText text = new ZText(new String(chars));
+            text.setTranslation(random.nextDouble() * 1900, random.nextDouble() * 1990);
+            layer.addChild(new ZVisualLeaf(text));
+        }
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+        camera.setScale(0.4);
+
+        BufferedImage image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 800, 800);
+        int[] qualities = {ZDrawingSurface.RENDER_QUALITY_LOW, ZDrawingSurface.RENDER_QUALITY_MEDIUM, ZDrawingSurface.RENDER_QUALITY_HIGH};
+        String[] names = {"greek", "medium quality", "high quality"};
+        for (int q = 0; q < qualities.length; q++) {
+            surface.setRenderQuality(qualities[q]);
+            ZPerformanceLog.instance().logTest("Render 5000 texts zoomed out, " + names[q], farZoomSequence(surface, g2, false));
+        }
+        for (int q = 1; q < qualities.length; q++) {
+            surface.setRenderQuality(qualities[q]);
+            surface.setPixelTextSize(0);
+            ZPerformanceLog.instance().logTest("Render 5000 texts zooming out, " + names[q], farZoomSequence(surface, g2, true));
+            surface.setPixelTextSize(8);
+            ZPerformanceLog.instance().logTest("Render 5000 texts zoomed out at pixel sizes, " + names[q], farZoomSequence(surface, g2, false));
+            ZPerformanceLog.instance().logTest("Render 5000 texts zooming out at pixel sizes, " + names[q], farZoomSequence(surface, g2, true));
+        }
+        g2.dispose();
+    }
+
+    protected double farZoomSequence(ZDrawingSurface surface, java.awt.Graphics2D g2, boolean zoom) {
+        ZCamera camera = surface.getCamera();
+        camera.setScale(0.4);
+        surface.paint(g2);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            if (zoom) {
+                camera.setScale(0.5 - i * 0.01);
+            }
+            surface.paint(g2);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        return (double) totalTime / 20;
+    }
+
+    public void testRenderTiledImage() throws java.io.IOException {
+        Random random = new Random(0);
+        BufferedImage source = new BufferedImage(4096, 4096, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D sg2 = source.createGraphics();
+        for (int i = 0; i < 2000; i++) {
+            sg2.setColor(new java.awt.Color(random.nextInt(0xffffff)));
+            sg2.fillRect(random.nextInt(4096), random.nextInt(4096), 20 + random.nextInt(200), 20 + random.nextInt(200));
+        }
+        sg2.dispose();
+        java.io.File file = java.io.File.createTempFile("ZRenderingPerformance", ".jpg");
+        javax.imageio.ImageIO.write(source, "jpg", file);
+
+        BufferedImage image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 800, 800);
+
+                                // The whole image drawn zoomed out, as a ZImage draws it,
+                                // at low and at high quality
+        g2.scale(800.0 / 4096, 800.0 / 4096);
+        System.gc();
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            g2.drawImage(source, 0, 0, null);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Render 4096x4096 image zoomed out", (double) totalTime / 20);
+
+        g2.setRenderingHint(java.awt.RenderingHints.KEY_RENDERING, java.awt.RenderingHints.VALUE_RENDER_QUALITY);
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            g2.drawImage(source, 0, 0, null);
+        }
+        totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Render 4096x4096 image zoomed out high quality", (double) totalTime / 20);
+        source = null;
+
+        ZRoot root = new ZRoot();
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.addLayer(layer);
+        camera.setBounds(0, 0, 800, 800);
+        ZTiledImage tiledImage = new ZTiledImage(file.getPath());
+        layer.addChild(new ZVisualLeaf(tiledImage));
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+
+        camera.setScale(800.0 / 4096);
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image zoomed out, first paint", tiledImageSequence(surface, 1));
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image zoomed out", tiledImageSequence(surface, 20));
+        surface.setRenderQuality(ZDrawingSurface.RENDER_QUALITY_HIGH);
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image zoomed out high quality", tiledImageSequence(surface, 20));
+        surface.setRenderQuality(ZDrawingSurface.RENDER_QUALITY_LOW);
+
+        camera.setScale(1);
+        camera.setTranslation(-1600, -1600);
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image zoomed in, first paint", tiledImageSequence(surface, 1));
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image zoomed in", tiledImageSequence(surface, 20));
+        ZPerformanceLog.instance().logTest("Render 4096x4096 tiled image, MB of decoded tiles", ZTiledImage.getTileMemoryUsed() / (1024.0 * 1024.0));
+
+        g2.dispose();
+        tiledImage.flush();
+        file.delete();
+    }
+
+    protected double tiledImageSequence(ZDrawingSurface surface, int numPaints) {
+        BufferedImage image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+        java.awt.Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 800, 800);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < numPaints; i++) {
+            surface.paint(g2);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        g2.dispose();
+        return (double) totalTime / numPaints;
+    }
+
     public void testRenderScenegraph10000By1() {
         ZComponentFactory.leafInstance().clearVisualComponents();
         ZNode aNode = ZComponentFactory.build10000By1Scenegraph(false);
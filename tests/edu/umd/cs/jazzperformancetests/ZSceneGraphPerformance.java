@@ -6,15 +6,21 @@ package edu.umd.cs.jazzperformancetests;
 
 import edu.umd.cs.jazz.component.*;
 import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.animation.*;
 import junit.framework.*;
 import edu.umd.cs.jazz.event.*;
 import java.util.*;
+import java.awt.geom.*;
+import javax.swing.SwingUtilities;
 import edu.umd.cs.jazztest.iotest.*;
 import edu.umd.cs.jazz.util.*;
 
 public class ZSceneGraphPerformance extends TestCase {
     private ZCanvas fCanvas = null;
 
+                                // Images are cached by content, so each run encodes new images
+    private static int fImageSeed = 0;
+
     public ZSceneGraphPerformance(String name) {
         super(name);
     }
@@ -44,6 +50,28 @@ public class ZSceneGraphPerformance extends TestCase {
 
     }
 
+    public void testUpdateBoundsAmongSiblings() {
+        ZGroup g = fCanvas.getLayer();
+        ArrayList rects = new ArrayList(50000);
+        for (int i = 0; i < 50000; i++) {
+            ZRectangle rect = new ZRectangle((i % 250) * 20, (i / 250) * 20, 10, 10);
+            g.addChild(new ZVisualLeaf(rect));
+            rects.add(rect);
+        }
+        g.getBoundsReference();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 5000; i++) {
+            ZRectangle rect = (ZRectangle)rects.get((i * 7919) % rects.size());
+            rect.setRect(rect.getX() + 1, rect.getY(), 10, 10);
+            g.getBoundsReference();
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Update bounds of 5000 of 50000 siblings", totalTime);
+    }
+
     public void testAdd2000NoTransaction() {
         ZGroup g = fCanvas.getLayer();
         ArrayList l = new ArrayList(2000);
@@ -185,4 +213,195 @@ public class ZSceneGraphPerformance extends TestCase {
         long totalTime = System.currentTimeMillis() - startTime;
         ZPerformanceLog.instance().logTest("Add 10000, with transaction", totalTime);
     }
+
+    public void testMove10000IndexedNoBatch() {
+        long totalTime = move10000IndexedNodes(false);
+        ZPerformanceLog.instance().logTest("Move 10000 in indexed layer, no batch", totalTime);
+    }
+
+    public void testMove10000IndexedWithBatch() {
+        long totalTime = move10000IndexedNodes(true);
+        ZPerformanceLog.instance().logTest("Move 10000 in indexed layer, with batch", totalTime);
+    }
+
+    public void testEditLargeText() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.append("A title line that is wider than the rest ");
+        }
+        for (int i = 0; i < 2000; i++) {
+            buffer.append("\nLine " + i + " of a long note");
+        }
+        ZText text = new ZText(buffer.toString());
+        text.setEditable(true);
+        fCanvas.getLayer().addChild(new ZVisualLeaf(text));
+        text.setCaretLine(1000);
+        text.setCaretPos(10);
+        text.getBoundsReference();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            text.addChar('x');
+            text.getBoundsReference();
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Type 500 characters into a 2000 line text", totalTime);
+
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            text.addEnterChar();
+            text.getBoundsReference();
+        }
+        totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Add 100 lines to a 2000 line text", totalTime);
+    }
+
+    public void testLoadImages() throws Exception {
+        ZPerformanceLog.instance().logTest("Load 500 images from bytes", loadImagesSequence(500));
+        ZPerformanceLog.instance().logTest("Load 500 images from bytes, 50 different", loadImagesSequence(50));
+
+        final ZImage[] images = new ZImage[500];
+        byte[][] bytes = createImageBytes(500);
+        System.gc();
+
+        ZImage.setLoadAsynchronously(true);
+        try {
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 500; i++) {
+                images[i] = new ZImage(bytes[i]);
+            }
+            long totalTime = System.currentTimeMillis() - startTime;
+            ZPerformanceLog.instance().logTest("Load 500 images from bytes asynchronously, until set", totalTime);
+
+                                // Wait at most a minute for the images to be decoded
+            final boolean[] loaded = {false};
+            while (!loaded[0] && (System.currentTimeMillis() - startTime < 60000)) {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    public void run() {
+                        loaded[0] = true;
+                        for (int i = 0; i < images.length; i++) {
+                            loaded[0] = loaded[0] && images[i].isLoaded();
+                        }
+                    }
+                });
+            }
+            assertTrue(loaded[0]);
+            totalTime = System.currentTimeMillis() - startTime;
+            ZPerformanceLog.instance().logTest("Load 500 images from bytes asynchronously, until decoded", totalTime);
+        } finally {
+            ZImage.setLoadAsynchronously(false);
+        }
+    }
+
+    public long loadImagesSequence(int numDifferent) throws Exception {
+        byte[][] bytes = createImageBytes(numDifferent);
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            new ZImage(bytes[i % numDifferent]);
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+                                // Encode different 300x200 images, as an application embeds them
+    protected byte[][] createImageBytes(int numImages) throws java.io.IOException {
+        Random random = new Random(fImageSeed++);
+        byte[][] bytes = new byte[numImages][];
+        for (int i = 0; i < numImages; i++) {
+            java.awt.image.BufferedImage image = new java.awt.image.BufferedImage(300, 200, java.awt.image.BufferedImage.TYPE_INT_RGB);
+            java.awt.Graphics2D g2 = image.createGraphics();
+            for (int j = 0; j < 20; j++) {
+                g2.setColor(new java.awt.Color(random.nextInt(0xffffff)));
+                g2.fillRect(random.nextInt(300), random.nextInt(200), 10 + random.nextInt(100), 10 + random.nextInt(100));
+            }
+            g2.dispose();
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            javax.imageio.ImageIO.write(image, "png", out);
+            bytes[i] = out.toByteArray();
+        }
+        return bytes;
+    }
+
+    public void testAnimate10000Separately() throws Exception {
+        double totalTime = animate10000Nodes(false);
+        ZPerformanceLog.instance().logTest("Animate 10000, frame with separate animations", totalTime);
+    }
+
+    public void testAnimate10000Batched() throws Exception {
+        double totalTime = animate10000Nodes(true);
+        ZPerformanceLog.instance().logTest("Animate 10000, frame with batched animation", totalTime);
+    }
+
+    public double animate10000Nodes(final boolean batch) throws Exception {
+        final double[] result = new double[1];
+                                // Run the frames here rather than from the scheduler's timer
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                ZLayerGroup layer = fCanvas.getLayer();
+                ZTransformable[] nodes = new ZTransformable[10000];
+                AffineTransform[] destinations = new AffineTransform[10000];
+                for (int i = 0; i < 10000; i++) {
+                    ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle((i % 100) * 20, (i / 100) * 20, 10, 10));
+                    layer.addChild(leaf);
+                    nodes[i] = leaf.editor().getTransformGroup();
+                    destinations[i] = AffineTransform.getTranslateInstance(100, 100);
+                }
+
+                if (batch) {
+                    ZBatchTransformAnimation animation = new ZBatchTransformAnimation(nodes, destinations);
+                    animation.setAlpha(ZAlpha.createStandardAlpha(1000));
+                    animation.play();
+                } else {
+                    for (int i = 0; i < nodes.length; i++) {
+                        ZTransformAnimation animation = new ZTransformAnimation(new AffineTransform(), destinations[i]);
+                        animation.setTransformTarget(nodes[i]);
+                        animation.setAlpha(ZAlpha.createStandardAlpha(1000));
+                        animation.play();
+                    }
+                }
+
+                System.gc();
+
+                ZAnimationScheduler scheduler = ZAnimationScheduler.instance();
+                long time = System.currentTimeMillis();
+                long startTime = System.currentTimeMillis();
+                for (int i = 1; i <= 10; i++) {
+                    scheduler.processAnimations(time + 50 * i);
+                }
+                result[0] = (double) (System.currentTimeMillis() - startTime) / 10;
+                scheduler.stopPendingAnimations();
+            }
+        });
+        return result[0];
+    }
+
+    public long move10000IndexedNodes(boolean batch) {
+        ZLayerGroup layer = fCanvas.getLayer();
+        ArrayList l = new ArrayList(10000);
+        for (int i = 0; i < 10000; i++) {
+            ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle((i % 100) * 20, (i / 100) * 20, 10, 10));
+            layer.addChild(leaf);
+            l.add(leaf.editor().getTransformGroup());
+        }
+        layer.setSpatialIndexed(true);
+        layer.getSpatialIndex().validate();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        if (batch) {
+            fCanvas.getRoot().startBatch();
+        }
+        for (int i = 0; i < l.size(); i++) {
+            ((ZTransformGroup)l.get(i)).translate(5, 5);
+        }
+        if (batch) {
+            fCanvas.getRoot().endBatch();
+        }
+        layer.getSpatialIndex().validate();
+        return System.currentTimeMillis() - startTime;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2001 by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazzperformancetests;
+
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
+import junit.framework.*;
+import java.util.*;
+import java.awt.geom.*;
+
+public class ZSpatialIndexPerformance extends TestCase {
+
+    static final int NUM_NODES = 20000;
+    static final int NUM_QUERIES = 2000;
+
+    ArrayList fNodes;
+    Rectangle2D[] fQueries;
+
+    public ZSpatialIndexPerformance(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        Random random = new Random(0);
+        fNodes = new ArrayList(NUM_NODES);
+        for (int i = 0; i < NUM_NODES; i++) {
+            fNodes.add(new ZVisualLeaf(new ZRectangle(random.nextDouble() * 10000, random.nextDouble() * 10000, 1 + random.nextDouble() * 20, 1 + random.nextDouble() * 20)));
+        }
+        fQueries = new Rectangle2D[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            fQueries[i] = new Rectangle2D.Double(random.nextDouble() * 10000, random.nextDouble() * 10000, 400, 300);
+        }
+    }
+
+    public double querySequence(ZSpatialIndex index) {
+        ArrayList result = new ArrayList();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            index.queryWindow(result, fQueries[i]);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        return (double) totalTime / NUM_QUERIES;
+    }
+
+    public void testInsertIndex() {
+        ZSpatialIndex index = new ZSpatialIndex();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUM_NODES; i++) {
+            index.addNode((ZNode) fNodes.get(i));
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+
+        ZPerformanceLog.instance().logTest("Spatial index build by insertion", totalTime);
+        ZPerformanceLog.instance().logTest("Spatial index query after insertion", querySequence(index));
+    }
+
+    public void testBulkLoadIndex() {
+        ZSpatialIndex index = new ZSpatialIndex();
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        index.bulkLoad(fNodes);
+        long totalTime = System.currentTimeMillis() - startTime;
+
+        ZPerformanceLog.instance().logTest("Spatial index build by bulk load", totalTime);
+        ZPerformanceLog.instance().logTest("Spatial index query after bulk load", querySequence(index));
+    }
+
+    public void testUpdateIndex() {
+        ZSpatialIndex index = new ZSpatialIndex();
+        index.bulkLoad(fNodes);
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUM_NODES; i += 10) {
+            ZVisualLeaf leaf = (ZVisualLeaf) fNodes.get(i);
+            ZRectangle rect = (ZRectangle) leaf.getFirstVisualComponent();
+            rect.setRect(rect.getRect().getX() + 5, rect.getRect().getY() + 5, rect.getRect().getWidth(), rect.getRect().getHeight());
+            index.updateNode(leaf);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+
+        ZPerformanceLog.instance().logTest("Spatial index incremental update", totalTime);
+    }
+
+    public void testLevelOfDetailQuery() {
+        ZSpatialIndex index = new ZSpatialIndex();
+        index.bulkLoad(fNodes);
+        Rectangle2D all = new Rectangle2D.Double(0, 0, 10000, 10000);
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            index.queryWindow(all, 0, 0.01);
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Spatial index zoomed out query", (double) totalTime / 100);
+
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            index.queryWindow(all, 1, 0.01);
+        }
+        totalTime = System.currentTimeMillis() - startTime;
+        ZPerformanceLog.instance().logTest("Spatial index zoomed out query with minimum size", (double) totalTime / 100);
+    }
+
+    public double pickSequence(ZLayerGroup layer) {
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            layer.pick(fQueries[i], new ZSceneGraphPath());
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        return (double) totalTime / NUM_QUERIES;
+    }
+
+    public double findSequence(ZCamera camera) {
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            camera.findNodes(new ZBoundsFindFilter(new ZBounds(fQueries[i])));
+        }
+        long totalTime = System.currentTimeMillis() - startTime;
+        return (double) totalTime / NUM_QUERIES;
+    }
+
+    public void testLayerFindNodes() {
+        ZLayerGroup layer = new ZLayerGroup();
+        ZCamera camera = new ZCamera();
+        camera.addLayer(layer);
+        for (int i = 0; i < NUM_NODES; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf) fNodes.get(i);
+            leaf.editor().getTransformGroup();
+            layer.addChild(leaf.editor().getTop());
+        }
+        ZPerformanceLog.instance().logTest("Layer find without spatial index", findSequence(camera));
+
+        layer.setSpatialIndexed(true);
+        ZPerformanceLog.instance().logTest("Layer find with spatial index", findSequence(camera));
+    }
+
+    public void testLayerIndex() {
+        ZLayerGroup layer = new ZLayerGroup();
+        ZGroup group = null;
+        for (int i = 0; i < NUM_NODES; i++) {
+            if (i % 100 == 0) {
+                group = new ZGroup();
+                layer.addChild(group);
+            }
+            ZVisualLeaf leaf = (ZVisualLeaf) fNodes.get(i);
+            leaf.editor().getTransformGroup();
+            group.addChild(leaf.editor().getTop());
+        }
+        ZPerformanceLog.instance().logTest("Layer pick without spatial index", pickSequence(layer));
+
+        System.gc();
+
+        long startTime = System.currentTimeMillis();
+        layer.setSpatialIndexed(true);
+        long totalTime = System.currentTimeMillis() - startTime;
+
+        ZPerformanceLog.instance().logTest("Layer spatial index build", totalTime);
+        ZPerformanceLog.instance().logTest("Layer pick with spatial index", pickSequence(layer));
+    }
+}
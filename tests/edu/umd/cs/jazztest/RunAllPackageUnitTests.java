@@ -20,6 +20,10 @@ public class RunAllPackageUnitTests {
         suite.addTest(new TestSuite(ZLayerGroupTest.class));
         suite.addTest(new TestSuite(ZClipGroupTest.class));
         suite.addTest(new TestSuite(ZSelectionGroupTest.class));
+        suite.addTest(new TestSuite(ZSpatialIndexTest.class));
+        suite.addTest(new TestSuite(ZTileCacheTest.class));
+        suite.addTest(new TestSuite(ZDrawingSurfaceTest.class));
+        suite.addTest(new TestSuite(ZRootTest.class));
         return suite;
     }
 
@@ -0,0 +1,553 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.lang.reflect.*;
+import java.util.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * Unit test for ZDrawingSurface.
+ */
+public class ZDrawingSurfaceTest extends TestCase {
+    protected ZLayerGroup layer = null;
+    protected ZCamera camera = null;
+    protected ZVisualLeaf cameraNode = null;
+    protected ZDrawingSurface surface = null;
+    protected ArrayList rects = null;
+    protected int[] result = null;
+
+    public ZDrawingSurfaceTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        Random random = new Random(1);
+        camera = new ZCamera();
+        layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+
+        rects = new ArrayList();
+        for (int i = 0; i < 200; i++) {
+            ZEllipse ellipse = new ZEllipse(random.nextInt(200), random.nextInt(200), 5 + random.nextInt(40), 5 + random.nextInt(40));
+            ellipse.setFillPaint(new Color(random.nextInt(0xffffff)));
+            layer.addChild(new ZVisualLeaf(ellipse));
+            rects.add(ellipse);
+        }
+
+        surface = new ZDrawingSurface(camera, cameraNode, new JPanel());
+        surface.setRenderQuality(ZDrawingSurface.RENDER_QUALITY_HIGH);
+        surface.setInteractingRenderQuality(ZDrawingSurface.RENDER_QUALITY_LOW);
+        surface.setProgressiveRendering(true);
+        surface.setProgressiveSliceTime(1);
+    }
+
+    public void testProgressiveRendering() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                surface.setInteracting(true);
+                surface.setInteracting(false);
+                assertTrue(surface.isRenderingProgressively());
+            }
+        });
+        waitForProgressiveRendering();
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+
+                                // Once the buffer is out of date, the surface renders normally
+        camera.translate(10, 10);
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+    }
+
+    public void testProgressiveRenderingCancel() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                surface.setInteracting(true);
+                surface.setInteracting(false);
+                assertTrue(surface.isRenderingProgressively());
+                surface.setInteracting(true);
+                assertTrue(!surface.isRenderingProgressively());
+            }
+        });
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_LOW), doRender()));
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                surface.setInteracting(false);
+                surface.setProgressiveRendering(false);
+                assertTrue(!surface.isRenderingProgressively());
+            }
+        });
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+    }
+
+    public void testProgressiveRenderingDamage() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                surface.setInteracting(true);
+                surface.setInteracting(false);
+                                // Change the scene while the render is in progress
+                for (int i = 0; i < rects.size(); i++) {
+                    ((ZEllipse) rects.get(i)).setFillPaint(Color.white);
+                }
+            }
+        });
+        waitForProgressiveRendering();
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+    }
+
+    public void testProgressiveRenderingWithoutComponent() {
+        surface.setComponent(null);
+        surface.setInteracting(true);
+        surface.setInteracting(false);
+        assertTrue(!surface.isRenderingProgressively());
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+    }
+
+    public void testParallelRendering() {
+        ZVisualLeaf faded = new ZVisualLeaf(new ZRectangle(20, 20, 100, 60));
+        faded.editor().getFadeGroup().setAlpha(0.5f);
+        faded.editor().getTransformGroup().rotate(0.3);
+        layer.addChild(faded.editor().getTop());
+        camera.setFillColor(Color.yellow);
+        camera.scale(1.5);
+
+                                // The camera fill is opaque, so tiles are copied exactly
+        surface.setProgressiveRendering(false);
+        surface.setParallelRenderer(new ZParallelRenderer(3, 64));
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+
+                                // Component changes show in the next render
+        ((ZEllipse) rects.get(0)).setFillPaint(Color.black);
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+
+                                // Without a fill, translucent tiles are composited
+        camera.setFillColor(null);
+        assertTrue(doCompare(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+
+                                // A disposed renderer still renders, on this thread
+        camera.setFillColor(Color.yellow);
+        surface.getParallelRenderer().dispose();
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+        surface.setParallelRenderer(null);
+    }
+
+    public void testPickCached() {
+        ZRectangle front = new ZRectangle(50, 50, 20, 20);
+        ZVisualLeaf frontLeaf = new ZVisualLeaf(front);
+        layer.addChild(frontLeaf);
+
+                                // Nothing is in front of the rectangle, so its path is reused
+        ZSceneGraphPath path = surface.pickCached(60, 60);
+        assertSame(front, path.getObject());
+        assertSame(path, surface.pickCached(62, 58));
+
+                                // But not once the point leaves it, or it changes
+        assertNotSame(front, surface.pickCached(90, 90).getObject());
+        assertSame(front, surface.pickCached(60, 60).getObject());
+        frontLeaf.setPickable(false);
+        assertNotSame(front, surface.pickCached(60, 60).getObject());
+        frontLeaf.setPickable(true);
+        assertSame(front, surface.pickCached(60, 60).getObject());
+        front.setRect(100, 100, 20, 20);
+        assertNotSame(front, surface.pickCached(60, 60).getObject());
+        assertSame(front, surface.pickCached(110, 110).getObject());
+        ZRectangle cover = new ZRectangle(105, 105, 10, 10);
+        layer.addChild(new ZVisualLeaf(cover));
+        assertSame(cover, surface.pickCached(110, 110).getObject());
+        camera.translate(50, 50);
+        assertSame(front, surface.pickCached(170, 170).getObject());
+
+                                // Cached picks find what a full pick finds as the scene changes
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            if (i % 50 == 0) {
+                ZEllipse ellipse = (ZEllipse) rects.get(random.nextInt(rects.size()));
+                Ellipse2D frame = ellipse.getEllipse();
+                ellipse.setFrame(random.nextInt(200), random.nextInt(200), frame.getWidth(), frame.getHeight());
+            }
+            if (i % 300 == 0) {
+                camera.translate(random.nextInt(10) - 5, random.nextInt(10) - 5);
+            }
+            int x = random.nextInt(200);
+            int y = random.nextInt(200);
+            for (int j = 0; j < 5; j++) {
+                x += random.nextInt(5) - 2;
+                y += random.nextInt(5) - 2;
+                path = surface.pickCached(x, y);
+                ZSceneGraphPath expected = surface.pick(x, y);
+                assertSame(expected.getObject(), path.getObject());
+                assertSame(expected.getNode(), path.getNode());
+            }
+        }
+    }
+
+    public void testPickCachedWithoutAllocating() throws Exception {
+        ZRectangle front = new ZRectangle(50, 50, 20, 20);
+        layer.addChild(new ZVisualLeaf(front));
+        assertSame(front, surface.pickCached(60, 60).getObject());
+
+                                // Moving over a cached pick reuses its path and scratch bounds
+        assertRunsWithoutAllocating("Cached picking", new Runnable() {
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    surface.pickCached(60 + i % 3, 60 - i % 3);
+                }
+            }
+        });
+    }
+
+    public void testPickBuffer() {
+        layer.removeAllChildren();
+        ZPickBuffer pickBuffer = new ZPickBuffer();
+        surface.setPickBuffer(pickBuffer);
+        ZDrawingSurface geometric = new ZDrawingSurface(camera, cameraNode, new JPanel());
+                                // The camera repaints only its latest surface
+        camera.setDrawingSurface(surface);
+
+                                // Rectangles on whole pixels, so the buffer and geometry agree exactly
+        Random random = new Random(3);
+        ArrayList leaves = new ArrayList();
+        ZGroup unpickableChildren = new ZGroup();
+        unpickableChildren.setChildrenPickable(false);
+        layer.addChild(unpickableChildren);
+        for (int i = 0; i < 300; i++) {
+            ZRectangle rect = new ZRectangle(random.nextInt(200), random.nextInt(200), 1 + random.nextInt(30), 1 + random.nextInt(30));
+            rect.setPenPaint(null);
+            ZVisualLeaf leaf = new ZVisualLeaf(rect);
+            leaves.add(leaf);
+            switch (i % 5) {
+            case 0:
+                leaf.editor().getTransformGroup().translate(random.nextInt(10), random.nextInt(10));
+                layer.addChild(leaf.editor().getTop());
+                break;
+            case 1:
+                unpickableChildren.addChild(leaf);
+                break;
+            case 2:
+                leaf.setPickable(false);
+                layer.addChild(leaf);
+                break;
+            default:
+                layer.addChild(leaf);
+                break;
+            }
+        }
+        ZClipGroup clip = new ZClipGroup();
+        clip.setClip(new ZRectangle(20, 20, 30, 30));
+        ZRectangle clipped = new ZRectangle(10, 10, 50, 50);
+        clipped.setPenPaint(null);
+        clip.addChild(new ZVisualLeaf(clipped));
+        layer.addChild(clip);
+
+        for (int i = 0; i < 2000; i++) {
+            if (i % 100 == 0) {
+                ZVisualLeaf leaf = (ZVisualLeaf) leaves.get(random.nextInt(leaves.size()));
+                ZRectangle rect = (ZRectangle) leaf.getFirstVisualComponent();
+                rect.setRect(random.nextInt(200), random.nextInt(200), rect.getRect().getWidth(), rect.getRect().getHeight());
+            }
+            if (i % 300 == 0) {
+                camera.translate(random.nextInt(10) - 5, random.nextInt(10) - 5);
+            }
+            if (i % 400 == 0) {
+                ZVisualLeaf leaf = (ZVisualLeaf) leaves.get(random.nextInt(leaves.size()));
+                leaf.setPickable(!leaf.isPickable());
+            }
+            int x = random.nextInt(200);
+            int y = random.nextInt(200);
+            ZSceneGraphPath path = surface.pick(x, y);
+            ZSceneGraphPath expected = geometric.pick(x, y);
+            assertSame(expected.getObject(), path.getObject());
+            assertSame(expected.getNode(), path.getNode());
+            assertEquals(expected.getTransform(), path.getTransform());
+        }
+
+                                // The buffer is only rendered again after the scene changes
+        int renderCount = pickBuffer.getRenderCount();
+        surface.pick(10, 10);
+        surface.pick(100, 100);
+        assertEquals(renderCount, pickBuffer.getRenderCount());
+        ZRectangle front = new ZRectangle(0, 0, 10, 10);
+        front.setPenPaint(null);
+        layer.addChild(new ZVisualLeaf(front));
+        assertSame(front, surface.pick(5, 5).getObject());
+        assertEquals(renderCount + 1, pickBuffer.getRenderCount());
+        assertTrue(pickBuffer.getFallbackCount() > 0);
+    }
+
+    public void testPublishDisplayList() throws Exception {
+        int[] expected = doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH);
+        camera.translate(30, 20);
+        int[] expectedTranslated = doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH);
+        camera.translate(-30, -20);
+
+                                // Compile and publish a snapshot, and then change the model, off the event thread
+        Thread thread = new Thread() {
+            public void run() {
+                ZDisplayList snapshot = ZDisplayList.compile(surface, new Rectangle(-200, -200, 600, 600), ZDrawingSurface.RENDER_QUALITY_HIGH, true);
+                surface.setDisplayList(snapshot);
+                for (int i = 0; i < rects.size(); i++) {
+                    ((ZEllipse) rects.get(i)).setFillPaint(Color.white);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(surface.getDisplayList().isSnapshot());
+        assertTrue(Arrays.equals(expected, doRender()));
+
+                                // The snapshot is drawn with the current view
+        camera.translate(30, 20);
+        assertTrue(doCompare(expectedTranslated, doRender()));
+
+        surface.setDisplayList(null);
+        assertTrue(Arrays.equals(doRenderDirect(ZDrawingSurface.RENDER_QUALITY_HIGH), doRender()));
+        assertTrue(!Arrays.equals(expectedTranslated, doRender()));
+    }
+
+    public void testPaintRegionsSeparately() throws Exception {
+        final ArrayList clips = new ArrayList();
+        final ZCanvas canvas = new ZCanvas();
+        canvas.setDrawingSurface(new ZDrawingSurface() {
+            public void paint(Graphics g) {
+                clips.add(g.getClipBounds());
+                super.paint(g);
+            }
+        });
+        canvas.setBounds(0, 0, 400, 400);
+
+                                // Swing paints the union of a component's dirty regions, so
+                                // two distant repaints are painted with one clip that spans both
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                ZDrawingSurface aSurface = canvas.getDrawingSurface();
+                aSurface.flushRepaints();
+                aSurface.takePaintRegions(new Rectangle(0, 0, 400, 400));
+
+                canvas.getLayer().addChild(new ZVisualLeaf(new ZRectangle(10, 10, 20, 20)));
+                canvas.getLayer().addChild(new ZVisualLeaf(new ZRectangle(350, 350, 20, 20)));
+                aSurface.flushRepaints();
+
+                BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g2 = image.createGraphics();
+                g2.setClip(15, 15, 350, 350);
+                clips.clear();
+                canvas.paintComponent(g2);
+                g2.dispose();
+            }
+        });
+
+        assertEquals(2, clips.size());
+        Rectangle first = (Rectangle) clips.get(0);
+        Rectangle second = (Rectangle) clips.get(1);
+        assertTrue(!first.intersects(second));
+        assertTrue(first.contains(20, 20) || second.contains(20, 20));
+        assertTrue(first.contains(360, 360) || second.contains(360, 360));
+        assertTrue(first.width < 100 && second.width < 100);
+
+                                // A clip that reaches outside the regions is painted whole
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g2 = image.createGraphics();
+                g2.setClip(0, 0, 400, 400);
+                clips.clear();
+                canvas.paintComponent(g2);
+                g2.dispose();
+            }
+        });
+        assertEquals(1, clips.size());
+        assertEquals(new Rectangle(0, 0, 400, 400), clips.get(0));
+    }
+
+    public void testPaintWithoutAllocating() throws Exception {
+        addAllocationScene();
+        assertPaintsWithoutAllocating();
+    }
+
+    public void testPaintIndexedWithoutAllocating() throws Exception {
+        addAllocationScene();
+        layer.setSpatialIndexed(true);
+        assertPaintsWithoutAllocating();
+    }
+
+    public void testPaintDisplayListWithoutAllocating() throws Exception {
+        addAllocationScene();
+        surface.setDisplayList(ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH));
+        camera.translate(5, 5);
+        assertPaintsWithoutAllocating();
+    }
+
+    public void testPickIndexedWithoutAllocating() throws Exception {
+        addAllocationScene();
+        layer.setSpatialIndexed(true);
+                                // Picking a stroke flattens the shape with a Java2D path
+                                // iterator, which Jazz does not control, so only pick fills
+        for (int i = 0; i < rects.size(); i++) {
+            ((ZEllipse) rects.get(i)).setPenPaint(null);
+        }
+        final ZSceneGraphPath path = new ZSceneGraphPath();
+        path.setRoot(camera.getRoot());
+        path.setTopCamera(camera);
+        path.setTopCameraNode(cameraNode);
+        final ZTransformGroup sentinel = new ZTransformGroup();
+        final Rectangle2D rect = new Rectangle2D.Double();
+        assertRunsWithoutAllocating("Picking", new Runnable() {
+            public void run() {
+                for (int x = 0; x < 200; x += 20) {
+                    for (int y = 0; y < 200; y += 20) {
+                                // Reuse the path, so that only the pick is measured
+                        path.push(sentinel);
+                        path.pushTransformer(sentinel);
+                        rect.setRect(x, y, 2, 2);
+                        layer.pick(rect, path);
+                        path.pop(sentinel);
+                        path.popTransformer(sentinel);
+                        path.setObject(null);
+                        path.getTransformReference().setToIdentity();
+                    }
+                }
+            }
+        });
+    }
+
+                                // Add texts and labels under transform and fade groups
+    protected void addAllocationScene() {
+        for (int i = 0; i < 20; i++) {
+            ZText text = new ZText("Text " + i + "\nsecond line");
+            text.setBackgroundColor(Color.yellow);
+            ZVisualLeaf leaf = new ZVisualLeaf(text);
+            leaf.editor().getTransformGroup().translate(i * 10, i * 5);
+            leaf.editor().getTransformGroup().scale(1.5);
+            leaf.editor().getFadeGroup().setAlpha(0.5);
+            layer.addChild(leaf.editor().getTop());
+
+            ZLabel label = new ZLabel("Label " + i);
+            label.setBackgroundColor(Color.cyan);
+            leaf = new ZVisualLeaf(label);
+            leaf.editor().getTransformGroup().rotate(0.1 * i);
+            layer.addChild(leaf.editor().getTop());
+        }
+        camera.scale(1.2);
+    }
+
+                                // Check that painting the surface allocates nothing. Java2D returns new
+                                // objects from Graphics2D methods such as getTransform, which Jazz calls
+                                // when it renders cameras and nodes, so this paints onto a graphics that
+                                // doesn't, to measure only what Jazz itself allocates
+    protected void assertPaintsWithoutAllocating() throws Exception {
+        final Graphics2D g2 = new ZNullGraphics2D();
+        assertRunsWithoutAllocating("Painting", new Runnable() {
+            public void run() {
+                surface.paint(g2);
+            }
+        });
+    }
+
+                                // Check that running a frame allocates nothing
+    protected void assertRunsWithoutAllocating(String what, Runnable frame) throws Exception {
+                                // Allocated bytes can only be measured on VMs whose thread bean reports them
+        Object threadBean;
+        Method getAllocatedBytes;
+        Object[] threadId;
+        try {
+            Class factory = Class.forName("java.lang.management.ManagementFactory");
+            threadBean = factory.getMethod("getThreadMXBean", new Class[0]).invoke(null, new Object[0]);
+            Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanClass.isInstance(threadBean)) {
+                return;
+            }
+            getAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", new Class[] {Long.TYPE});
+            threadId = new Object[] {Thread.class.getMethod("getId", new Class[0]).invoke(Thread.currentThread(), new Object[0])};
+        } catch (Exception e) {
+            return;
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            frame.run();
+            getAllocatedBytes.invoke(threadBean, threadId);
+        }
+        long overhead0 = ((Long)getAllocatedBytes.invoke(threadBean, threadId)).longValue();
+        long overhead1 = ((Long)getAllocatedBytes.invoke(threadBean, threadId)).longValue();
+
+                                // The VM can allocate now and then while it compiles the code,
+                                // so use the least allocated by several runs of 100 frames
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long start = ((Long)getAllocatedBytes.invoke(threadBean, threadId)).longValue();
+            for (int i = 0; i < 100; i++) {
+                frame.run();
+            }
+            long end = ((Long)getAllocatedBytes.invoke(threadBean, threadId)).longValue();
+            allocated = Math.min(allocated, (end - start) - (overhead1 - overhead0));
+        }
+
+                                // Less than a byte a frame means no frame allocated anything
+        assertTrue(what + " allocated " + allocated + " bytes in 100 frames", allocated < 100);
+    }
+
+    protected boolean doCompare(int[] expected, int[] actual) {
+                                // Translucent tiles are premultiplied, and composited
+                                // onto the destination, so their colors are rounded
+                                // twice. JDK 8 differs by up to 4 from rendering directly.
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int a = (expected[i] >> shift) & 0xff;
+                int b = (actual[i] >> shift) & 0xff;
+                if (Math.abs(a - b) > 4) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    protected void waitForProgressiveRendering() throws Exception {
+        final boolean[] done = new boolean[1];
+        for (int i = 0; (i < 1000) && !done[0]; i++) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    done[0] = !surface.isRenderingProgressively();
+                }
+            });
+        }
+        assertTrue(done[0]);
+    }
+
+    protected int[] doRender() {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        surface.paint(g2);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+
+    protected int[] doRenderDirect(int quality) {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(0, 0, 200, 200), surface, quality);
+        camera.getRoot().setCurrentRenderContext(rc);
+        camera.render(rc);
+        camera.getRoot().setCurrentRenderContext(null);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+}
\ No newline at end of file
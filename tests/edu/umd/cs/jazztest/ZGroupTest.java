@@ -11,6 +11,7 @@ import junit.framework.*;
 import edu.umd.cs.jazz.*;
 import edu.umd.cs.jazz.component.*;
 import edu.umd.cs.jazz.event.*;
+import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazztest.iotest.*;
 
 
@@ -249,4 +250,87 @@ public class ZGroupTest extends TestCase {
 
         assertEquals(g2.getBoundsReference(), g1.getBoundsReference());
     }
+    public void testIncrementalBounds() {
+        ZGroup g = new ZGroup();
+        ArrayList rects = new ArrayList();
+        for (int i = 0; i < 100; i++) {
+            ZRectangle rect = new ZRectangle(i * 10, i % 7, 20, 20);
+            g.addChild(new ZVisualLeaf(rect));
+            rects.add(rect);
+        }
+        assertEquals(unionOfChildren(g), g.getBoundsReference());
+
+                                // Changes inside the bounds, changes that grow them, and changes
+                                // and removals of the children on the edge
+        Random random = new Random(0);
+        for (int i = 0; i < 500; i++) {
+            ZRectangle rect = (ZRectangle)rects.get(random.nextInt(rects.size()));
+            switch (random.nextInt(4)) {
+            case 0:
+                rect.setRect(random.nextInt(1000), random.nextInt(100), 5, 5);
+                break;
+            case 1:
+                rect.setRect(random.nextInt(2000) - 500, random.nextInt(200) - 50, 20, 20);
+                break;
+            case 2:
+                ZNode leaf = rect.getParents()[0];
+                if (leaf.getParent() == g) {
+                    g.removeChild(leaf);
+                } else {
+                    g.addChild(leaf);
+                }
+                break;
+            case 3:
+                rect.setRect(random.nextInt(1000), random.nextInt(100), 1, 1);
+                break;
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(unionOfChildren(g), g.getBoundsReference());
+            }
+        }
+        assertEquals(unionOfChildren(g), g.getBoundsReference());
+    }
+
+    public void testTransformedBounds() {
+        final int[] childBoundsQueries = new int[1];
+        ZTransformGroup g = new ZTransformGroup();
+        for (int i = 0; i < 100; i++) {
+            g.addChild(new ZVisualLeaf(new ZRectangle(i * 10, i % 7, 20, 20)) {
+                public ZBounds getBoundsReference() {
+                    childBoundsQueries[0]++;
+                    return super.getBoundsReference();
+                }
+            });
+        }
+        g.getBoundsReference();
+
+                                // Changing the transform only transforms the children's union again
+        childBoundsQueries[0] = 0;
+        for (int i = 0; i < 10; i++) {
+            g.translate(5, 3);
+            g.scale(1.1);
+            ZBounds expected = unionOfChildren(g);
+            childBoundsQueries[0] = 0;
+            ZTransformGroup.transform(expected, g.getTransformReference());
+            assertEquals(expected, g.getBoundsReference());
+            assertEquals(0, childBoundsQueries[0]);
+        }
+
+                                // Children that change are still included
+        ZVisualLeaf leaf = (ZVisualLeaf)g.getChild(0);
+        ((ZRectangle)leaf.getFirstVisualComponent()).setRect(-500, -500, 10, 10);
+        g.rotate(0.5);
+        ZBounds expected = unionOfChildren(g);
+        ZTransformGroup.transform(expected, g.getTransformReference());
+        assertEquals(expected, g.getBoundsReference());
+    }
+
+    private ZBounds unionOfChildren(ZGroup g) {
+        ZBounds union = new ZBounds();
+        ZNode[] children = g.getChildren();
+        for (int i = 0; i < children.length; i++) {
+            union.add(children[i].getBoundsReference());
+        }
+        return union;
+    }
 }
\ No newline at end of file
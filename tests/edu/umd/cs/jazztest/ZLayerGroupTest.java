@@ -4,6 +4,9 @@
  */
 package edu.umd.cs.jazztest;
 
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
 import java.util.*;
 
 import junit.framework.*;
@@ -11,6 +14,7 @@ import junit.framework.*;
 import edu.umd.cs.jazz.component.*;
 import edu.umd.cs.jazz.*;
 import edu.umd.cs.jazz.event.*;
+import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazztest.iotest.*;
 
 /**
@@ -66,4 +70,210 @@ public class ZLayerGroupTest extends TestCase {
     public void testCreation() {
         ZLayerGroup g = new ZLayerGroup(new ZNode());
     }
+
+    public void testSpatialIndex() {
+        Random random = new Random(2);
+        ArrayList groups = new ArrayList();
+        for (int i = 0; i < 10; i++) {
+            ZGroup group = new ZGroup();
+            for (int j = 0; j < 20; j++) {
+                ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(0, 0, 1 + random.nextInt(30), 1 + random.nextInt(30)));
+                leaf.editor().getTransformGroup().translate(random.nextInt(1000), random.nextInt(1000));
+                group.addChild(leaf.editor().getTop());
+            }
+            groups.add(group);
+            layer.addChild(group);
+        }
+        ZTransformGroup scaled = ((ZGroup) groups.get(9)).editor().getTransformGroup();
+        layer.setSpatialIndexed(true);
+        assertTrue(layer.isSpatialIndexed());
+        doCompareIndex(random);
+
+                                // Transforms above indexed nodes
+        scaled.scale(0.5);
+        ((ZNode) getLeaves().get(7)).editor().getTransformGroup().translate(100, 50);
+        doCompareIndex(random);
+
+                                // Structure changes and reordering
+        ZGroup first = (ZGroup) groups.get(0);
+        ZVisualLeaf inserted = new ZVisualLeaf(new ZRectangle(500, 500, 20, 20));
+        first.addChild(inserted);
+        doCompareIndex(random);
+        first.raise();
+        doCompareIndex(random);
+        inserted.lower();
+        doCompareIndex(random);
+        layer.removeChild((ZNode) groups.get(3));
+        doCompareIndex(random);
+
+                                // A visual group is indexed as a single node
+        ZVisualGroup visualGroup = new ZVisualGroup(new ZRectangle(200, 200, 10, 10), null);
+        visualGroup.addChild(new ZVisualLeaf(new ZRectangle(400, 400, 10, 10)));
+        ((ZGroup) groups.get(5)).addChild(visualGroup);
+        doCompareIndex(random);
+        assertTrue(layer.getSpatialIndex().containsNode(visualGroup));
+        visualGroup.getChild(0).editor().getTransformGroup().translate(100, 100);
+        doCompareIndex(random);
+
+        layer.setSpatialIndexed(false);
+        assertNull(layer.getSpatialIndex());
+    }
+
+    public void testSpatialIndexPick() {
+        Random random = new Random(3);
+        for (int i = 0; i < 5; i++) {
+            ZGroup group = new ZGroup();
+            for (int j = 0; j < 40; j++) {
+                ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(random.nextInt(500), random.nextInt(500), 10 + random.nextInt(50), 10 + random.nextInt(50)));
+                if (j % 2 == 0) {
+                    leaf.editor().getTransformGroup().rotate(0.1);
+                }
+                group.addChild(leaf.editor().getTop());
+            }
+            if (i == 2) {
+                group.setChildrenPickable(false);
+            }
+            layer.addChild(group);
+        }
+        ((ZGroup) layer.getChild(1)).editor().getTransformGroup().translate(20, 30);
+
+        for (int i = 0; i < 100; i++) {
+            Rectangle2D rect = new Rectangle2D.Double(random.nextInt(600), random.nextInt(600), 1, 1);
+            layer.setSpatialIndexed(false);
+            ZSceneGraphPath expected = new ZSceneGraphPath();
+            boolean expectedPicked = layer.pick(rect, expected);
+
+            layer.setSpatialIndexed(true);
+            ZSceneGraphPath path = new ZSceneGraphPath();
+            assertEquals(expectedPicked, layer.pick(rect, path));
+            assertEquals(expected.getObject(), path.getObject());
+            assertEquals(expected.getNumParents(), path.getNumParents());
+            for (int j = 0; j < path.getNumParents(); j++) {
+                assertEquals(expected.getParent(j), path.getParent(j));
+            }
+            assertEquals(expected.getTransform(), path.getTransform());
+        }
+    }
+
+    public void testSpatialIndexFindNodes() {
+        Random random = new Random(6);
+        for (int i = 0; i < 5; i++) {
+            ZGroup group = new ZGroup();
+            for (int j = 0; j < 40; j++) {
+                ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(random.nextInt(500), random.nextInt(500), 10 + random.nextInt(50), 10 + random.nextInt(50)));
+                if (j % 3 == 0) {
+                    leaf.editor().getTransformGroup().rotate(0.1);
+                }
+                if (j % 7 == 0) {
+                    leaf.setFindable(false);
+                }
+                group.addChild(leaf.editor().getTop());
+            }
+            layer.addChild(group);
+        }
+        ((ZGroup) layer.getChild(1)).editor().getTransformGroup().translate(20, 30);
+        ((ZGroup) layer.getChild(3)).setFindable(false);
+        ZVisualGroup visualGroup = new ZVisualGroup(new ZRectangle(100, 100, 10, 10), null);
+        visualGroup.addChild(new ZVisualLeaf(new ZRectangle(150, 150, 10, 10)));
+        layer.addChild(visualGroup);
+
+        for (int i = 0; i < 50; i++) {
+            ZBounds rect = new ZBounds(random.nextInt(600), random.nextInt(600), random.nextInt(100), random.nextInt(100));
+            layer.setSpatialIndexed(false);
+            ArrayList expected = camera.findNodes(new ZBoundsFindFilter(rect));
+
+            layer.setSpatialIndexed(true);
+            assertEquals(expected, camera.findNodes(new ZBoundsFindFilter(rect)));
+        }
+    }
+
+    public void testSpatialIndexRender() {
+        Random random = new Random(4);
+        for (int i = 0; i < 5; i++) {
+            ZGroup group = new ZGroup();
+            for (int j = 0; j < 40; j++) {
+                ZRectangle rect = new ZRectangle(random.nextInt(300), random.nextInt(300), 5 + random.nextInt(40), 5 + random.nextInt(40));
+                rect.setFillPaint(new Color(random.nextInt(0xffffff)));
+                ZVisualLeaf leaf = new ZVisualLeaf(rect);
+                leaf.editor().getTransformGroup().rotate(random.nextDouble());
+                group.addChild(leaf.editor().getTop());
+            }
+            layer.addChild(group);
+        }
+        ((ZGroup) layer.getChild(2)).editor().getTransformGroup().scale(1.5);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+        camera.center(new Rectangle2D.Double(50, 50, 200, 200), 0, null);
+
+        int[] expected = doRender(cameraNode);
+        layer.setSpatialIndexed(true);
+        int[] result = doRender(cameraNode);
+        assertTrue(Arrays.equals(expected, result));
+
+                                // Everything is too small for this policy
+        ZProxyLevelOfDetailPolicy policy = new ZProxyLevelOfDetailPolicy(1000, ZProxyLevelOfDetailPolicy.PROXY_NONE);
+        layer.getSpatialIndex().setLevelOfDetailPolicy(policy);
+        result = doRender(cameraNode);
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(0, result[i] & 0xffffff);
+        }
+
+        policy.setProxyStyle(ZProxyLevelOfDetailPolicy.PROXY_FILL);
+        policy.setProxyColor(Color.white);
+        result = doRender(cameraNode);
+        assertEquals(0xffffff, result[100 * 200 + 100] & 0xffffff);
+    }
+
+    protected int[] doRender(ZNode cameraNode) {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode);
+        surface.paint(g2);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+
+    protected void doCompareIndex(Random random) {
+        ZLayerSpatialIndex index = layer.getSpatialIndex();
+        index.validate();
+        ArrayList leaves = getLeaves();
+        assertEquals(leaves.size(), index.size());
+
+        ArrayList result = new ArrayList();
+        for (int i = 0; i < 50; i++) {
+            Rectangle2D query = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000), random.nextInt(200), random.nextInt(200));
+            index.queryWindow(result, query);
+
+            ArrayList expected = new ArrayList();
+            for (int j = 0; j < leaves.size(); j++) {
+                ZNode each = (ZNode) leaves.get(j);
+                if (each.getGlobalBounds().intersects(query)) {
+                    expected.add(each);
+                }
+            }
+                                // Results come in the order the layer draws them
+            assertEquals(expected, result);
+        }
+    }
+
+    protected ArrayList getLeaves() {
+        ArrayList leaves = new ArrayList();
+        collectLeaves(layer, leaves);
+        return leaves;
+    }
+
+    protected void collectLeaves(ZNode node, ArrayList leaves) {
+        if (node != layer && node.getClass() != ZGroup.class && node.getClass() != ZTransformGroup.class) {
+            leaves.add(node);
+            return;
+        }
+        ZNode[] children = ((ZGroup) node).getChildren();
+        for (int i = 0; i < children.length; i++) {
+            collectLeaves(children[i], leaves);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,308 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest;
+
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.awt.image.renderable.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * A graphics that keeps its state but draws nothing, used to measure the objects
+ * Jazz itself allocates while rendering. Graphics2D must return a new transform from
+ * getTransform, so this graphics returns transforms from a small pool instead.
+ * A returned transform stays valid until TRANSFORM_POOL_SIZE more have been returned,
+ * which is enough for the nesting depth of the scenegraphs it is used with.
+ * It has no clip.
+ */
+public class ZNullGraphics2D extends Graphics2D {
+    static final int TRANSFORM_POOL_SIZE = 64;
+
+    protected AffineTransform transform = new AffineTransform();
+    protected AffineTransform[] transformPool = new AffineTransform[TRANSFORM_POOL_SIZE];
+    protected int nextTransform = 0;
+    protected Paint paint = Color.black;
+    protected Color color = Color.black;
+    protected Color background = Color.white;
+    protected Composite composite = AlphaComposite.SrcOver;
+    protected Stroke stroke = new BasicStroke();
+    protected Font font = new Font("Serif", Font.PLAIN, 12);
+    protected RenderingHints hints = new RenderingHints(null);
+    protected FontRenderContext fontRenderContext = new FontRenderContext(null, true, true);
+    protected Graphics2D metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+    protected Hashtable fontMetrics = new Hashtable();
+
+    public ZNullGraphics2D() {
+        for (int i = 0; i < TRANSFORM_POOL_SIZE; i++) {
+            transformPool[i] = new AffineTransform();
+        }
+    }
+
+    public AffineTransform getTransform() {
+        AffineTransform result = transformPool[nextTransform];
+        nextTransform = (nextTransform + 1) % TRANSFORM_POOL_SIZE;
+        result.setTransform(transform);
+        return result;
+    }
+
+    public void setTransform(AffineTransform at) {
+        transform.setTransform(at);
+    }
+
+    public void transform(AffineTransform at) {
+        transform.concatenate(at);
+    }
+
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    public Paint getPaint() {
+        return paint;
+    }
+
+    public void setPaint(Paint aPaint) {
+        paint = aPaint;
+        if (aPaint instanceof Color) {
+            color = (Color) aPaint;
+        }
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public void setColor(Color aColor) {
+        color = aColor;
+        paint = aColor;
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    public void setBackground(Color aColor) {
+        background = aColor;
+    }
+
+    public Composite getComposite() {
+        return composite;
+    }
+
+    public void setComposite(Composite aComposite) {
+        composite = aComposite;
+    }
+
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    public void setStroke(Stroke aStroke) {
+        stroke = aStroke;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public void setFont(Font aFont) {
+        font = aFont;
+    }
+
+    public FontMetrics getFontMetrics(Font aFont) {
+        FontMetrics metrics = (FontMetrics) fontMetrics.get(aFont);
+        if (metrics == null) {
+            metrics = metricsGraphics.getFontMetrics(aFont);
+            fontMetrics.put(aFont, metrics);
+        }
+        return metrics;
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return fontRenderContext;
+    }
+
+    public void setRenderingHint(RenderingHints.Key key, Object value) {
+        hints.put(key, value);
+    }
+
+    public Object getRenderingHint(RenderingHints.Key key) {
+        return hints.get(key);
+    }
+
+    public void setRenderingHints(Map map) {
+        hints.clear();
+        hints.putAll(map);
+    }
+
+    public void addRenderingHints(Map map) {
+        hints.putAll(map);
+    }
+
+    public RenderingHints getRenderingHints() {
+        return hints;
+    }
+
+    public Shape getClip() {
+        return null;
+    }
+
+    public Rectangle getClipBounds() {
+        return null;
+    }
+
+    public void clip(Shape s) {
+    }
+
+    public void clipRect(int x, int y, int width, int height) {
+    }
+
+    public void setClip(int x, int y, int width, int height) {
+    }
+
+    public void setClip(Shape clip) {
+    }
+
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return metricsGraphics.getDeviceConfiguration();
+    }
+
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return false;
+    }
+
+    public Graphics create() {
+        return new ZNullGraphics2D();
+    }
+
+    public void dispose() {
+    }
+
+    public void setPaintMode() {
+    }
+
+    public void setXORMode(Color c) {
+    }
+
+    public void draw(Shape s) {
+    }
+
+    public void fill(Shape s) {
+    }
+
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        return true;
+    }
+
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+    }
+
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+    }
+
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+    }
+
+    public void drawString(String str, int x, int y) {
+    }
+
+    public void drawString(String str, float x, float y) {
+    }
+
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+    }
+
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+    }
+
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+    }
+
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    }
+
+    public void drawLine(int x1, int y1, int x2, int y2) {
+    }
+
+    public void fillRect(int x, int y, int width, int height) {
+    }
+
+    public void clearRect(int x, int y, int width, int height) {
+    }
+
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+    }
+
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+    }
+
+    public void drawOval(int x, int y, int width, int height) {
+    }
+
+    public void fillOval(int x, int y, int width, int height) {
+    }
+
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+    }
+
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+    }
+
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+    }
+
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+    }
+
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+    }
+
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        return true;
+    }
+
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return true;
+    }
+
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        return true;
+    }
+}
\ No newline at end of file
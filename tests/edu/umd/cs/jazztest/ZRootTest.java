@@ -0,0 +1,247 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest;
+
+import java.awt.geom.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.event.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * Unit test for ZRoot.
+ */
+public class ZRootTest extends TestCase {
+    protected ZRoot root = null;
+    protected ZLayerGroup layer = null;
+    protected ZCamera camera = null;
+    protected ArrayList added = null;
+    protected ArrayList removed = null;
+    protected ArrayList boundsChanged = null;
+    protected ArrayList repaints = null;
+
+    public ZRootTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        root = new ZRoot();
+        layer = new ZLayerGroup();
+        root.addChild(layer);
+        added = new ArrayList();
+        removed = new ArrayList();
+        boundsChanged = new ArrayList();
+        repaints = new ArrayList();
+
+        camera = new ZCamera() {
+            public void repaint(ZBounds repaintBounds) {
+                repaints.add(repaintBounds.clone());
+            }
+        };
+        camera.addLayer(layer);
+        repaints.clear();
+
+        layer.addGroupListener(new ZGroupAdapter() {
+            public void nodeAdded(ZGroupEvent e) {
+                added.add(e.getChild());
+            }
+            public void nodeRemoved(ZGroupEvent e) {
+                removed.add(e.getChild());
+            }
+        });
+        layer.addNodeListener(new ZNodeAdapter() {
+            public void boundsChanged(ZNodeEvent e) {
+                boundsChanged.add(e.getNode());
+            }
+        });
+    }
+
+    public void testBatchNesting() {
+        assertTrue(!root.isInBatch());
+        root.startBatch();
+        root.startBatch();
+        assertTrue(root.isInBatch());
+        root.endBatch();
+        assertTrue(root.isInBatch());
+        root.endBatch();
+        assertTrue(!root.isInBatch());
+
+        try {
+            root.endBatch();
+            fail("Ending a batch that is not open should fail");
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public void testBatchEvents() {
+        ZVisualLeaf a = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        ZVisualLeaf b = new ZVisualLeaf(new ZRectangle(20, 20, 10, 10));
+        ZVisualLeaf c = new ZVisualLeaf(new ZRectangle(40, 40, 10, 10));
+        layer.addChild(a);
+        layer.getBoundsReference();
+        added.clear();
+        boundsChanged.clear();
+        repaints.clear();
+
+        root.startBatch();
+        layer.addChild(b);
+        layer.addChild(c);
+        layer.removeChild(c);
+        layer.removeChild(a);
+        ((ZRectangle)b.getFirstVisualComponent()).setRect(20, 20, 100, 100);
+        layer.getBoundsReference();
+
+        assertEquals(0, added.size());
+        assertEquals(0, removed.size());
+        assertEquals(0, boundsChanged.size());
+        assertEquals(0, repaints.size());
+        root.endBatch();
+
+                                // c was added and removed, so it gets no events
+        assertEquals(1, added.size());
+        assertSame(b, added.get(0));
+        assertEquals(1, removed.size());
+        assertSame(a, removed.get(0));
+        assertEquals(1, Collections.frequency(boundsChanged, layer));
+        assertTrue(!root.isInBatch());
+
+        assertEquals(b.getBoundsReference(), layer.getBoundsReference());
+    }
+
+    public void testBatchRepaint() {
+        ZVisualLeaf a = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        layer.addChild(a);
+        layer.getBoundsReference();
+        repaints.clear();
+
+        root.startBatch();
+        for (int i = 0; i < 10; i++) {
+            a.editor().getTransformGroup().translate(10, 10);
+        }
+        assertEquals(0, repaints.size());
+        root.endBatch();
+
+                                // One repaint covers where the node was and where it is now
+        assertEquals(1, repaints.size());
+        ZBounds repaintBounds = (ZBounds)repaints.get(0);
+        assertTrue(repaintBounds.contains(new Rectangle2D.Double(0, 0, 10, 10)));
+        assertTrue(repaintBounds.contains(new Rectangle2D.Double(100, 100, 10, 10)));
+    }
+
+    public void testBatchRepaintOutsideLayer() {
+        ZGroup group = new ZGroup() {
+            public void repaint(ZBounds repaintBounds) {
+                repaints.add(repaintBounds.clone());
+            }
+        };
+        root.addChild(group);
+        ZVisualLeaf a = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        group.addChild(a);
+        a.editor().getTransformGroup();
+        group.getBoundsReference();
+        repaints.clear();
+
+        root.startBatch();
+        for (int i = 0; i < 10; i++) {
+            a.editor().getTransformGroup().translate(10, 10);
+        }
+        assertEquals(0, repaints.size());
+        root.endBatch();
+
+                                // The node is not in a layer, so its parent repaints it
+        assertEquals(1, repaints.size());
+        ZBounds repaintBounds = (ZBounds)repaints.get(0);
+        assertTrue(repaintBounds.contains(new Rectangle2D.Double(0, 0, 10, 10)));
+        assertTrue(repaintBounds.contains(new Rectangle2D.Double(100, 100, 10, 10)));
+    }
+
+    public void testBatchSpatialIndex() {
+        Random random = new Random(3);
+        ArrayList leaves = new ArrayList();
+        for (int i = 0; i < 100; i++) {
+            ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(random.nextInt(1000), random.nextInt(1000), 10, 10));
+            leaf.editor().getTransformGroup();
+            layer.addChild(leaf.editor().getTop());
+            leaves.add(leaf);
+        }
+        layer.setSpatialIndexed(true);
+        ZLayerSpatialIndex index = layer.getSpatialIndex();
+
+        root.startBatch();
+        for (int i = 0; i < 50; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            leaf.editor().getTransformGroup().translate(random.nextInt(100), random.nextInt(100));
+        }
+        for (int i = 50; i < 60; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            layer.removeChild(leaf.editor().getTop());
+        }
+        ZGroup group = new ZGroup();
+        layer.addChild(group);
+        for (int i = 50; i < 60; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            group.addChild(leaf.editor().getTop());
+        }
+        root.endBatch();
+
+        index.validate();
+        assertEquals(100, index.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            Rectangle2D rect = leaf.editor().getTop().getBounds();
+            ArrayList result = new ArrayList();
+            index.queryWindow(result, rect);
+            assertTrue(result.contains(leaf));
+        }
+    }
+
+    public void testBatchSpatialIndexGroup() {
+        Random random = new Random(4);
+        ZGroup group = new ZGroup();
+        ArrayList leaves = new ArrayList();
+        for (int i = 0; i < 100; i++) {
+            ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(random.nextInt(1000), random.nextInt(1000), 10, 10));
+            leaf.editor().getTransformGroup();
+            group.addChild(leaf.editor().getTop());
+            leaves.add(leaf);
+        }
+        layer.addChild(group);
+        ZSpatialIndexGroup indexGroup = group.editor().getSpatialIndexGroup();
+        ZSpatialIndex index = indexGroup.getSpatialIndex();
+
+                                // Move, remove, and add nodes in a batch
+        root.startBatch();
+        for (int i = 0; i < 50; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            leaf.editor().getTransformGroup().translate(2000, 2000);
+        }
+        for (int i = 50; i < 60; i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            group.removeChild(leaf.editor().getTop());
+        }
+        ZVisualLeaf added = new ZVisualLeaf(new ZRectangle(5000, 5000, 10, 10));
+        group.addChild(added);
+        leaves.add(added);
+        root.endBatch();
+
+        assertEquals(91, index.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            ZVisualLeaf leaf = (ZVisualLeaf)leaves.get(i);
+            ArrayList result = new ArrayList();
+            index.queryWindow(result, leaf.getGlobalBounds());
+            assertEquals((i < 50) || (i >= 60), result.contains(leaf));
+        }
+
+                                // The rebuilt index is still kept up to date afterwards
+        ((ZVisualLeaf)leaves.get(0)).editor().getTransformGroup().translate(2000, 2000);
+        ArrayList result = new ArrayList();
+        index.queryWindow(result, ((ZVisualLeaf)leaves.get(0)).getGlobalBounds());
+        assertTrue(result.contains(leaves.get(0)));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest;
+
+import java.awt.geom.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * Unit test for ZSpatialIndex and ZSpatialIndexGroup.
+ */
+public class ZSpatialIndexTest extends TestCase {
+    protected ZSpatialIndex index = null;
+    protected ArrayList leaves = null;
+    protected Random random = null;
+
+    public ZSpatialIndexTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        index = new ZSpatialIndex();
+        leaves = new ArrayList();
+        random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            leaves.add(new ZVisualLeaf(new ZRectangle(random.nextInt(1000), random.nextInt(1000), 1 + random.nextInt(50), 1 + random.nextInt(50))));
+        }
+    }
+
+    public void testAddNode() {
+        for (int i = 0; i < leaves.size(); i++) {
+            index.addNode((ZNode) leaves.get(i));
+        }
+        assertEquals(leaves.size(), index.size());
+        doCompareQueries();
+    }
+
+    public void testBulkLoad() {
+        index.bulkLoad(leaves);
+        assertEquals(leaves.size(), index.size());
+        doCompareQueries();
+
+        index.bulkLoad(new ArrayList());
+        assertEquals(0, index.size());
+        ArrayList result = new ArrayList();
+        index.queryWindow(result, new Rectangle2D.Double(0, 0, 2000, 2000));
+        assertEquals(0, result.size());
+    }
+
+    public void testRemoveNode() {
+        index.bulkLoad(leaves);
+        for (int i = leaves.size() - 1; i >= 0; i -= 2) {
+            assertTrue(index.removeNode((ZNode) leaves.get(i)));
+            leaves.remove(i);
+        }
+        assertTrue(!index.removeNode(new ZVisualLeaf(new ZRectangle(0, 0, 10, 10))));
+        assertEquals(leaves.size(), index.size());
+        doCompareQueries();
+    }
+
+    public void testUpdateNode() {
+        index.bulkLoad(leaves);
+        for (int i = 0; i < leaves.size(); i += 3) {
+            ZVisualLeaf leaf = (ZVisualLeaf) leaves.get(i);
+            ZRectangle rect = (ZRectangle) leaf.getFirstVisualComponent();
+            if (i % 2 == 0) {
+                                // Small move that stays within the leaf region
+                rect.setRect(rect.getRect().getX() + 1, rect.getRect().getY(), rect.getRect().getWidth() - 1, rect.getRect().getHeight());
+            } else {
+                rect.setRect(random.nextInt(1000), random.nextInt(1000), 10, 10);
+            }
+            assertTrue(index.updateNode(leaf));
+        }
+        assertTrue(!index.updateNode(new ZVisualLeaf(new ZRectangle(0, 0, 10, 10))));
+        assertEquals(leaves.size(), index.size());
+        doCompareQueries();
+    }
+
+    public void testReIndex() {
+        index.bulkLoad(leaves);
+        index.setMaxChildren(20);
+        index.setMinChildren(8);
+        doCompareQueries();
+        index.setStatus(false);
+        index.setStatus(true);
+        doCompareQueries();
+    }
+
+    public void testSpatialIndexGroup() {
+        ZGroup group = new ZGroup();
+        for (int i = 0; i < leaves.size(); i++) {
+            group.addChild((ZNode) leaves.get(i));
+        }
+        ZSpatialIndexGroup indexGroup = group.editor().getSpatialIndexGroup();
+
+                                // Nodes added or removed below the indexed group
+                                // should be indexed and unindexed.
+        ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(5000, 5000, 10, 10));
+        group.addChild(leaf);
+        ZSceneGraphPath path = new ZSceneGraphPath();
+        assertTrue(indexGroup.pick(new Rectangle2D.Double(5005, 5005, 1, 1), path));
+        assertEquals(leaf, path.getNode());
+
+        group.removeChild(leaf);
+        assertTrue(!indexGroup.pick(new Rectangle2D.Double(5005, 5005, 1, 1), new ZSceneGraphPath()));
+
+                                // Moving a transformed node should re-index it
+        leaf.editor().getTransformGroup();
+        group.addChild(leaf.editor().getTop());
+        leaf.editor().getTransformGroup().translate(1000, 1000);
+        assertTrue(!indexGroup.pick(new Rectangle2D.Double(5005, 5005, 1, 1), new ZSceneGraphPath()));
+        path = new ZSceneGraphPath();
+        assertTrue(indexGroup.pick(new Rectangle2D.Double(6005, 6005, 1, 1), path));
+        assertEquals(leaf, path.getNode());
+
+        assertTrue(group.editor().removeSpatialIndexGroup());
+    }
+
+    public void testSpatialIndexGroupFind() {
+        ZGroup group = new ZGroup();
+        for (int i = 0; i < leaves.size(); i++) {
+            group.addChild((ZNode) leaves.get(i));
+        }
+        ZSpatialIndexGroup indexGroup = group.editor().getSpatialIndexGroup();
+
+                                // Only the nodes that overlap the bounds are searched
+        Rectangle2D query = new Rectangle2D.Double(100, 100, 100, 100);
+        ArrayList found = new ArrayList();
+        int searched = indexGroup.findNodes(new ZBoundsFindFilter(new ZBounds(query)), found);
+        assertEquals(bruteForceQuery(query), new HashSet(found));
+        assertTrue(searched < leaves.size() / 2);
+
+                                // Found in draw order, through the nodes' edit groups
+        ZVisualLeaf leaf = (ZVisualLeaf) found.get(0);
+        leaf.editor().getTransformGroup().translate(5000, 5000);
+        ArrayList foundAgain = new ArrayList();
+        indexGroup.findNodes(new ZBoundsFindFilter(new ZBounds(leaf.getGlobalBounds())), foundAgain);
+        assertEquals(1, foundAgain.size());
+        assertEquals(leaf, foundAgain.get(0));
+    }
+
+    public void testDrawOrder() {
+        index.bulkLoad(leaves);
+        for (int i = 0; i < leaves.size(); i += 4) {
+            index.removeNode((ZNode) leaves.get(i));
+        }
+        ZVisualLeaf last = new ZVisualLeaf(new ZRectangle(0, 0, 1000, 1000));
+        index.addNode(last);
+
+        int count = index.queryWindow(new Rectangle2D.Double(0, 0, 1000, 1000), 0, 1);
+        ZNode[] result = index.getQueryResultsReference();
+        assertEquals(last, result[count - 1]);
+        for (int i = 1; i < count; i++) {
+            assertTrue(index.getDrawOrder(result[i - 1]) < index.getDrawOrder(result[i]));
+        }
+
+                                // Moving a node to the front of the draw order
+        index.setDrawOrder(last, 0);
+        count = index.queryWindow(new Rectangle2D.Double(0, 0, 1000, 1000), 0, 1);
+        assertEquals(last, index.getQueryResultsReference()[0]);
+        assertEquals(-1, index.getDrawOrder((ZNode) leaves.get(0)));
+    }
+
+    public void testSpatialIndexGroupDrawOrder() {
+        ZGroup group = new ZGroup();
+        ZVisualLeaf a = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        ZVisualLeaf b = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        ZVisualLeaf c = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        group.addChild(a);
+        group.addChild(b);
+        ZSpatialIndexGroup indexGroup = group.editor().getSpatialIndexGroup();
+        group.addChild(c);
+        assertEquals(c, doQueryTop(indexGroup));
+
+        a.raise();
+        assertEquals(a, doQueryTop(indexGroup));
+        a.lower();
+        assertEquals(c, doQueryTop(indexGroup));
+        c.lowerTo(b);
+        assertEquals(b, doQueryTop(indexGroup));
+
+                                // Inserting an edit group keeps the node's place
+        b.editor().getTransformGroup();
+        assertEquals(b, doQueryTop(indexGroup));
+        b.editor().getTop().lower();
+        assertEquals(c, doQueryTop(indexGroup));
+
+        group.removeChild(c);
+        assertEquals(a, doQueryTop(indexGroup));
+    }
+
+    public void testLevelOfDetail() {
+        index.bulkLoad(leaves);
+        Rectangle2D all = new Rectangle2D.Double(0, 0, 2000, 2000);
+        index.queryWindow(all, 0, 1);
+        int fullSearch = index.getNodesSearched();
+        assertEquals(0, index.getNumPruned());
+
+                                // Only nodes at least 40 units across are found
+        ArrayList result = new ArrayList();
+        for (int i = 0; i < 20; i++) {
+            Rectangle2D query = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000), random.nextInt(400), random.nextInt(400));
+            index.queryWindow(result, query, 20, 0.5);
+            Set expected = new HashSet();
+            int small = 0;
+            for (Iterator j = bruteForceQuery(query).iterator(); j.hasNext();) {
+                ZNode each = (ZNode) j.next();
+                ZBounds bounds = each.getBounds();
+                if (Math.max(bounds.getWidth(), bounds.getHeight()) >= 40) {
+                    expected.add(each);
+                } else {
+                    small++;
+                }
+            }
+            assertEquals(expected, new HashSet(result));
+
+            int pruned = 0;
+            for (int j = 0; j < index.getNumPruned(); j++) {
+                assertTrue(index.getPrunedRegionsReference()[j].intersects(query));
+                pruned += index.getPrunedSizesReference()[j];
+            }
+            assertTrue(pruned >= small);
+        }
+
+                                // Nothing is big enough, so whole subtrees are skipped
+        assertEquals(0, index.queryWindow(all, 1, 0.001));
+        assertTrue(index.getNodesSearched() < fullSearch);
+        int pruned = 0;
+        for (int j = 0; j < index.getNumPruned(); j++) {
+            pruned += index.getPrunedSizesReference()[j];
+        }
+        assertEquals(leaves.size(), pruned);
+    }
+
+    public void testInverseGroupNodeTransform() {
+        assertTrue(index.getInverseGroupNodeTransform().isIdentity());
+
+                                // The inverse is kept until the transform is set again
+        AffineTransform at = AffineTransform.getScaleInstance(2, 4);
+        at.translate(10, 20);
+        index.setGroupNodeTransform(at);
+        AffineTransform inverse = index.getInverseGroupNodeTransform();
+        assertSame(inverse, index.getInverseGroupNodeTransform());
+        Point2D pt = inverse.transform(at.transform(new Point2D.Double(3, 5), null), null);
+        assertEquals(3, pt.getX(), 1e-9);
+        assertEquals(5, pt.getY(), 1e-9);
+
+        index.setGroupNodeTransform(AffineTransform.getScaleInstance(0, 0));
+        assertNull(index.getInverseGroupNodeTransform());
+    }
+
+    public void testNestedQuery() {
+        index.bulkLoad(leaves);
+        Rectangle2D query = new Rectangle2D.Double(0, 0, 300, 300);
+        int count = index.queryWindow(query, 0, 1);
+        ZNode[] nodes = new ZNode[count];
+        System.arraycopy(index.getQueryResultsReference(), 0, nodes, 0, count);
+
+                                // A list query must not disturb the result buffer
+        ArrayList result = new ArrayList();
+        index.queryWindow(result, new Rectangle2D.Double(500, 500, 300, 300));
+        for (int i = 0; i < count; i++) {
+            assertEquals(nodes[i], index.getQueryResultsReference()[i]);
+        }
+    }
+
+    protected ZNode doQueryTop(ZSpatialIndexGroup indexGroup) {
+        ZSpatialIndex groupIndex = indexGroup.getSpatialIndex();
+        int count = groupIndex.queryWindow(new Rectangle2D.Double(5, 5, 1, 1), 0, 1);
+        assertTrue(count > 0);
+        return groupIndex.getQueryResultsReference()[count - 1];
+    }
+
+    protected void doCompareQueries() {
+        ArrayList result = new ArrayList();
+        for (int i = 0; i < 50; i++) {
+            Rectangle2D query = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000), random.nextInt(200), random.nextInt(200));
+            index.queryWindow(result, query);
+            assertEquals(bruteForceQuery(query), new HashSet(result));
+
+            Point2D pt = new Point2D.Double(random.nextInt(1000), random.nextInt(1000));
+            index.queryPoint(result, pt);
+            for (int j = 0; j < result.size(); j++) {
+                assertTrue(((ZNode) result.get(j)).getBounds().contains(pt));
+            }
+        }
+    }
+
+    protected Set bruteForceQuery(Rectangle2D query) {
+        HashSet result = new HashSet();
+        for (int i = 0; i < leaves.size(); i++) {
+            ZNode each = (ZNode) leaves.get(i);
+            if (each.getBounds().intersects(query)) {
+                result.add(each);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * Unit test for ZTileCache.
+ */
+public class ZTileCacheTest extends TestCase {
+    protected ZLayerGroup layer = null;
+    protected ZCamera camera = null;
+    protected ZDrawingSurface surface = null;
+    protected ZTileCache cache = null;
+    protected ArrayList rects = null;
+
+    public ZTileCacheTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        Random random = new Random(1);
+        camera = new ZCamera();
+        layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+
+        rects = new ArrayList();
+        for (int i = 0; i < 200; i++) {
+            ZRectangle rect = new ZRectangle(random.nextInt(600), random.nextInt(600), 5 + random.nextInt(40), 5 + random.nextInt(40));
+            rect.setFillPaint(new Color(random.nextInt(0xffffff)));
+            layer.addChild(new ZVisualLeaf(rect));
+            rects.add(rect);
+        }
+
+        surface = new ZDrawingSurface(camera, cameraNode);
+        cache = new ZTileCache(64, ZTileCache.DEFAULT_MEMORY_BUDGET);
+        surface.setTileCache(cache);
+    }
+
+    public void testPaint() {
+        int[] expected = doRenderDirect();
+        assertTrue(Arrays.equals(expected, doRender()));
+        assertTrue(cache.getMissCount() > 0);
+        assertEquals(0, cache.getHitCount());
+
+                                // Painting again only copies tiles
+        int misses = cache.getMissCount();
+        assertTrue(Arrays.equals(expected, doRender()));
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(misses, cache.getHitCount());
+    }
+
+    public void testPan() {
+        camera.translate(-0.5, -0.25);
+        doRender();
+        cache.resetStatistics();
+
+                                // Only the newly exposed strips are rendered
+        camera.translate(-100, -40);
+        int[] result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getMissCount() > 0);
+        assertTrue(cache.getMissCount() < cache.getHitCount());
+
+                                // Panning back reuses the original tiles
+        cache.resetStatistics();
+        camera.translate(100, 40);
+        result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testZoom() {
+        doRender();
+        camera.scale(2, 100, 100);
+        cache.resetStatistics();
+        int[] result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(0, cache.getHitCount());
+
+                                // The tiles at the first scale are still cached
+        camera.scale(0.5, 100, 100);
+        cache.resetStatistics();
+        result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testInvalidate() {
+        doRender();
+        cache.resetStatistics();
+
+        for (int i = 0; i < rects.size(); i++) {
+            ZRectangle rect = (ZRectangle) rects.get(i);
+            if (rect.getBounds().intersects(0, 0, 200, 200)) {
+                rect.setFillPaint(Color.white);
+                break;
+            }
+        }
+        int[] result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertTrue(cache.getRepairCount() > 0);
+        assertEquals(0, cache.getMissCount());
+
+                                // Changes that are not visible still invalidate cached tiles
+        camera.translate(-300, -300);
+        doRender();
+        for (int i = 0; i < rects.size(); i++) {
+            ((ZRectangle) rects.get(i)).setFillPaint(Color.red);
+        }
+        camera.translate(300, 300);
+        result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+
+        camera.setFillColor(Color.blue);
+        cache.resetStatistics();
+        result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    public void testMemoryBudget() {
+        cache.setMemoryBudget(4 * 4 * 64 * 64);
+        int[] result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(4, cache.getNumTiles());
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getMemoryUsed() <= cache.getMemoryBudget());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getNumTiles());
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    public void testRotatedView() {
+        camera.setViewTransform(AffineTransform.getRotateInstance(0.3));
+        int[] result = doRender();
+        assertTrue(Arrays.equals(doRenderDirect(), result));
+        assertEquals(0, cache.getNumTiles());
+    }
+
+    protected int[] doRender() {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        surface.paint(g2);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+
+    protected int[] doRenderDirect() {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(0, 0, 200, 200), surface, surface.getRenderQuality());
+        camera.getRoot().setCurrentRenderContext(rc);
+        camera.render(rc);
+        camera.getRoot().setCurrentRenderContext(null);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+}
\ No newline at end of file
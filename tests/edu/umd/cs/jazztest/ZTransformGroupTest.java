@@ -4,6 +4,7 @@
  */
 package edu.umd.cs.jazztest;
 
+import java.awt.geom.*;
 import java.util.*;
 
 import junit.framework.*;
@@ -76,6 +77,53 @@ public class ZTransformGroupTest extends TestCase {
         assertEquals(a.getTransform(), b.getTransform());
     }
 
+    public void testLocalToGlobalTransform() throws NoninvertibleTransformException {
+        ZTransformGroup outer = new ZTransformGroup();
+        ZTransformGroup inner = new ZTransformGroup();
+        ZGroup group = new ZGroup();
+        ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(0, 0, 10, 10));
+        outer.addChild(group);
+        group.addChild(inner);
+        inner.addChild(leaf);
+        outer.translate(10, 20);
+        inner.scale(2);
+
+        AffineTransform expected = new AffineTransform();
+        expected.translate(10, 20);
+        expected.scale(2, 2);
+        AffineTransform result = new AffineTransform();
+        assertEquals(expected, leaf.getLocalToGlobalTransform(result));
+        assertEquals(expected, leaf.getLocalToGlobalTransform());
+
+                                // Changing an ancestor invalidates the cached transforms
+        outer.translate(5, 0);
+        expected.preConcatenate(AffineTransform.getTranslateInstance(5, 0));
+        assertEquals(expected, inner.getLocalToGlobalTransform(result));
+        assertEquals(expected.createInverse(), leaf.getGlobalToLocalTransform(result));
+
+                                // Changing an unrelated transform, or the node's own
+                                // transform, leaves the right transform cached
+        ZTransformGroup unrelated = new ZTransformGroup();
+        unrelated.translate(100, 100);
+        assertEquals(expected, inner.getLocalToGlobalTransform(result));
+        inner.scale(0.5);
+        expected.scale(0.5, 0.5);
+        assertEquals(expected, leaf.getLocalToGlobalTransform(result));
+        inner.scale(2);
+        expected.scale(2, 2);
+
+                                // Moving the node to a new parent invalidates them too
+        ZTransformGroup other = new ZTransformGroup();
+        other.scale(3);
+        group.removeChild(inner);
+        other.addChild(inner);
+        assertEquals(AffineTransform.getScaleInstance(6, 6), leaf.getLocalToGlobalTransform(result));
+        assertEquals(AffineTransform.getScaleInstance(1.0 / 6, 1.0 / 6), leaf.getGlobalToLocalTransform());
+
+        ZTransformGroup copy = (ZTransformGroup) inner.clone();
+        assertEquals(AffineTransform.getScaleInstance(2, 2), copy.getLocalToGlobalTransform());
+    }
+
     public void testDuplicate() {
         ZTransformGroup g = (ZTransformGroup) transformGroup.clone();
         doCompare(g, transformGroup);
@@ -14,6 +14,8 @@ public class RunAllPackageUnitTests {
     public static Test suite ( ) {
         TestSuite suite= new TestSuite();
         suite.addTest(new TestSuite(ZAlphaTest.class));
+        suite.addTest(new TestSuite(ZAnimationSchedulerTest.class));
+        suite.addTest(new TestSuite(ZBatchTransformAnimationTest.class));
         return suite;
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest.animationtest;
+
+import javax.swing.*;
+import junit.framework.*;
+
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.animation.*;
+import edu.umd.cs.jazz.component.*;
+
+/**
+ * Unit test for ZAnimationScheduler.
+ */
+public class ZAnimationSchedulerTest extends TestCase {
+    static final int NUM_FRAMES = 30;
+
+    protected ZDrawingSurface surface = null;
+    protected ZVisualLeaf leaf = null;
+    protected int numPaints = 0;
+    protected int numFrames = 0;
+    protected int paintsMissed = 0;
+    protected boolean finished = false;
+
+    public ZAnimationSchedulerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        ZCamera camera = new ZCamera();
+        ZLayerGroup layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+        leaf = new ZVisualLeaf(new ZRectangle(10, 10, 50, 50));
+        layer.addChild(leaf);
+
+        surface = new ZDrawingSurface(camera, cameraNode, new JPanel()) {
+            public void paintImmediately() {
+                numPaints++;
+                super.paintImmediately();
+            }
+        };
+    }
+
+    public void testCurrentTimeMillis() throws Exception {
+                                // The animation clock keeps the epoch of the system clock,
+                                // and never goes backwards
+        long time = ZAnimationScheduler.currentTimeMillis();
+        assertTrue(Math.abs(time - System.currentTimeMillis()) < 1000);
+        for (int i = 0; i < 1000; i++) {
+            long next = ZAnimationScheduler.currentTimeMillis();
+            assertTrue(next >= time);
+            time = next;
+        }
+        Thread.sleep(50);
+        assertTrue(ZAnimationScheduler.currentTimeMillis() - time >= 40);
+    }
+
+    public void testFrameClock() throws Exception {
+        final ZAnimationScheduler scheduler = ZAnimationScheduler.instance();
+        final ZAnimation animation = new ZAnimation() {
+            protected void animateFrameForTime(long aTime) {
+                                // Each frame paints what the frame before it repainted
+                if (numPaints != numFrames) {
+                    paintsMissed++;
+                }
+                numFrames++;
+                leaf.repaint();
+                try {
+                                // Slow frames, with one much slower than the others
+                    Thread.sleep((numFrames == NUM_FRAMES / 2) ? 300 : 30);
+                } catch (InterruptedException e) {
+                }
+                if (numFrames == NUM_FRAMES) {
+                    stop();
+                    finished = true;
+                } else {
+                    super.animateFrameForTime(aTime);
+                }
+            }
+        };
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                scheduler.resetFrameStatistics();
+                animation.play();
+            }
+        });
+        for (int i = 0; i < 200; i++) {
+            final boolean[] done = new boolean[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    done[0] = finished;
+                }
+            });
+            if (done[0]) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                assertTrue(finished);
+                assertEquals(0, paintsMissed);
+                assertEquals(NUM_FRAMES, numPaints);
+
+                                // Frames are spaced out to fit how long they take
+                assertTrue(scheduler.getFrameInterval() > scheduler.getFrameDelay());
+                assertTrue(scheduler.getLastAnimateTime() >= 30);
+                assertTrue(scheduler.getDroppedFrameCount() > 0);
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest.animationtest;
+
+import java.awt.geom.*;
+import javax.swing.*;
+import junit.framework.*;
+
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.animation.*;
+import edu.umd.cs.jazz.component.*;
+
+/**
+ * Unit test for ZBatchTransformAnimation.
+ */
+public class ZBatchTransformAnimationTest extends TestCase {
+
+    protected ZCamera camera = null;
+    protected ZDrawingSurface surface = null;
+    protected ZTransformGroup node1 = null;
+    protected ZTransformGroup node2 = null;
+    protected int numStopped = 0;
+
+    public ZBatchTransformAnimationTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        camera = new ZCamera();
+        ZLayerGroup layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+        surface = new ZDrawingSurface(camera, cameraNode, new JPanel());
+
+        ZVisualLeaf leaf1 = new ZVisualLeaf(new ZRectangle(0, 0, 50, 50));
+        ZVisualLeaf leaf2 = new ZVisualLeaf(new ZRectangle(0, 0, 50, 50));
+        node1 = leaf1.editor().getTransformGroup();
+        node2 = leaf2.editor().getTransformGroup();
+        layer.addChild(node1);
+        layer.addChild(node2);
+    }
+
+    /**
+     * A batch animation whose frames can be animated directly, without moving
+     * the time of the animation scheduler that the other tests share.
+     */
+    static class SteppedAnimation extends ZBatchTransformAnimation {
+        public SteppedAnimation(ZTransformable[] aTargets, double[] aDestinations) {
+            super(aTargets, aDestinations);
+        }
+
+        public void step(long aTime) {
+            animateFrameForTime(aTime);
+        }
+    }
+
+    /**
+     * Wait on this thread until the specified animation has stopped.
+     */
+    protected void waitUntilStopped(final ZAnimation animation) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            final boolean[] stopped = new boolean[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    stopped[0] = animation.isStopped();
+                }
+            });
+            if (stopped[0]) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Animation did not stop");
+    }
+
+    public void testAnimate() throws Exception {
+        final AffineTransform[] destinations = {AffineTransform.getTranslateInstance(100, 50),
+                                                AffineTransform.getScaleInstance(2, 2)};
+        final ZBatchTransformAnimation[] animation = new ZBatchTransformAnimation[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                ZTransformable[] nodes = {node1, node2};
+                animation[0] = ZTransformGroup.startAnimation(nodes, destinations, 200, surface);
+                animation[0].setStoppedRunnable(new Runnable() {
+                    public void run() {
+                        numStopped++;
+                    }
+                });
+
+                                // The nodes have not moved yet
+                assertTrue(!animation[0].isStopped());
+                assertTrue(!animation[0].isFinished());
+                assertEquals(new AffineTransform(), node1.getTransform());
+            }
+        });
+
+        waitUntilStopped(animation[0]);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                assertTrue(animation[0].isFinished());
+                assertEquals(1, numStopped);
+                assertEquals(destinations[0], node1.getTransform());
+                assertEquals(destinations[1], node2.getTransform());
+            }
+        });
+    }
+
+    public void testStopAndFinish() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                AffineTransform destination = AffineTransform.getTranslateInstance(100, 50);
+                ZBatchTransformAnimation first = ZTransformGroup.startAnimation(node1, destination, 10000, surface);
+                ZBatchTransformAnimation second = ZTransformGroup.startAnimation(node1, destination, 10000, surface);
+
+                                // Only one animation moves a node at a time
+                assertTrue(first.isStopped());
+                assertTrue(!first.isFinished());
+                assertTrue(!second.isStopped());
+
+                second.finish();
+                assertTrue(second.isStopped());
+                assertTrue(second.isFinished());
+                assertEquals(destination, node1.getTransform());
+
+                                // Without animating, there is nothing to return
+                assertNull(ZTransformGroup.startAnimation(node1, new AffineTransform(), 0, surface));
+
+                                // By default, animate blocks until the node gets there
+                AffineTransform back = AffineTransform.getTranslateInstance(10, 20);
+                ZTransformGroup.animate(node1, back, 50, surface);
+                assertEquals(back, node1.getTransform());
+            }
+        });
+    }
+
+    public void testFlatMatrices() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                ZTransformable[] nodes = {node1, node2};
+                double[] destinations = {1, 0, 0, 1, 100, 50,
+                                         2, 0, 0, 2, 0, 0};
+                SteppedAnimation animation = new SteppedAnimation(nodes, destinations);
+                animation.setAlpha(ZAlpha.createStandardAlpha(1000));
+                animation.play();
+
+                                // Halfway through, both nodes are halfway there
+                animation.step(animation.getAlpha().getTriggerTime() + 500);
+                assertEquals(new AffineTransform(1, 0, 0, 1, 50, 25), node1.getTransform());
+                assertEquals(new AffineTransform(1.5, 0, 0, 1.5, 0, 0), node2.getTransform());
+                assertTrue(!node1.getRoot().isInBatch());
+
+                animation.finish();
+                assertEquals(AffineTransform.getTranslateInstance(100, 50), node1.getTransform());
+                assertEquals(AffineTransform.getScaleInstance(2, 2), node2.getTransform());
+            }
+        });
+    }
+
+    public void testCamera() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                Rectangle2D bounds = new Rectangle2D.Double(50, 50, 100, 100);
+                ZCamera expected = new ZCamera();
+                expected.setBounds(camera.getBounds());
+                expected.center(bounds, 0, null);
+
+                ZBatchTransformAnimation animation = camera.startCenter(bounds, 10000, surface);
+                assertTrue(!animation.isStopped());
+                animation.finish();
+                assertEquals(expected.getViewTransform(), camera.getViewTransform());
+            }
+        });
+    }
+}
\ No newline at end of file
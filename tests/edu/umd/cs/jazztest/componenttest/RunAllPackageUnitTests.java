@@ -15,6 +15,7 @@ public class RunAllPackageUnitTests {
         TestSuite suite= new TestSuite();
         suite.addTest(new TestSuite(ZTextTest.class));
         suite.addTest(new TestSuite(ZImageTest.class));
+        suite.addTest(new TestSuite(ZTiledImageTest.class));
         suite.addTest(new TestSuite(ZLabelTest.class));
         suite.addTest(new TestSuite(ZRoundedRectangleTest.class));
         suite.addTest(new TestSuite(ZLineTest.class));
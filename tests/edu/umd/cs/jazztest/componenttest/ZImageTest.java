@@ -5,10 +5,14 @@
 package edu.umd.cs.jazztest.componenttest;
 
 import java.io.*;
+import java.awt.*;
+import java.awt.image.*;
+import javax.imageio.*;
 import junit.framework.*;
 import edu.umd.cs.jazz.component.*;
 import javax.swing.*;
 import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazztest.eventtest.*;
 import edu.umd.cs.jazztest.iotest.*;
 
@@ -50,6 +54,71 @@ public class ZImageTest extends TestCase {
 
     }
 
+    public void testSharedImage() throws IOException {
+        File file = createImageFile();
+        ZImage a = new ZImage(file.getPath());
+        ZImage b = new ZImage(file.getPath());
+        assertTrue(a.isLoaded());
+        assertEquals(40, a.getWidth());
+        assertEquals(30, a.getHeight());
+        assertTrue(a.getImage() == b.getImage());
+
+                                // The same bytes are decoded once too
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        in.readFully(bytes);
+        in.close();
+        ZImage c = new ZImage(bytes);
+        ZImage d = new ZImage((byte[]) bytes.clone());
+        assertTrue(c.getImage() == d.getImage());
+        file.delete();
+    }
+
+    public void testLoadAsynchronously() throws Exception {
+        File file = createImageFile();
+        ZImage.setLoadAsynchronously(true);
+        try {
+            assertTrue(!image.setImage(file.getPath()));
+            ZImage copy = (ZImage) image.clone();
+
+                                // The size is read from the header before the image is decoded
+            assertEquals(new ZBounds(0, 0, 40, 30), image.getBounds());
+
+            for (int i = 0; (i < 100) && !image.isLoaded(); i++) {
+                Thread.sleep(50);
+                                // Wait for the image to be set on the event dispatch thread
+                javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+                    public void run() {
+                    }
+                });
+            }
+            assertTrue(image.isLoaded());
+            assertTrue(image.getImage() != null);
+            assertTrue(copy.getImage() == image.getImage());
+            assertEquals(new ZBounds(0, 0, 40, 30), image.getBounds());
+
+                                // Once decoded, the image is set immediately
+            ZImage other = new ZImage(file.getPath());
+            assertTrue(other.isLoaded());
+            assertTrue(other.getImage() == image.getImage());
+        } finally {
+            ZImage.setLoadAsynchronously(false);
+            file.delete();
+        }
+    }
+
+                                // Write a 40x30 image to a new file
+    protected File createImageFile() throws IOException {
+        BufferedImage source = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = source.createGraphics();
+        g2.setColor(Color.red);
+        g2.fillRect(0, 0, 20, 30);
+        g2.dispose();
+        File file = File.createTempFile("ZImageTest", ".png");
+        ImageIO.write(source, "png", file);
+        return file;
+    }
+
     public void testDuplicate() {
         ZImage i = (ZImage) image.clone();
         doCompare(i, image);
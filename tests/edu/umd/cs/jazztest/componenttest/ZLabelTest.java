@@ -5,8 +5,12 @@
 package edu.umd.cs.jazztest.componenttest;
 
 import java.io.*;
+import java.awt.*;
+import java.awt.image.*;
 import junit.framework.*;
+import edu.umd.cs.jazz.*;
 import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazztest.iotest.*;
 import edu.umd.cs.jazz.io.*;
 
@@ -56,6 +60,65 @@ public class ZLabelTest extends TestCase {
         assertTrue(label.getTranslateX() == 2);
         assertTrue(label.getTranslateY() == 2);
     }
+    public void testRenderText() {
+                                // Simple text, text with a combining mark, and right to left text
+        String[] texts = {"Hello World", "Cafe\u0301", "\u05e9\u05dc\u05d5\u05dd"};
+        for (int i = 0; i < texts.length; i++) {
+            label.setText(texts[i]);
+            assertTrue(label.getBoundsReference().getWidth() > 0);
+            assertTrue(isDrawn(label));
+
+                                // Rendering again draws the same text from the cached layout
+            assertTrue(isDrawn(label));
+        }
+    }
+
+    public void testRenderAtPixelSize() {
+        ZDrawingSurface surface = new ZDrawingSurface(new ZCamera(), null);
+        surface.setPixelTextSize(8);
+        assertTrue(surface.getPixelTextSize() == 8);
+
+                                // The label is rendered 6 pixels high, so it is drawn
+                                // at 6 pixels, within its bounds
+        int[] drawn = getDrawnBounds(label, 0.5, surface);
+        assertTrue(drawn != null);
+        assertTrue(drawn[2] <= Math.ceil(0.5 * label.getBoundsReference().getWidth()));
+        assertTrue(drawn[3] <= Math.ceil(0.5 * label.getBoundsReference().getHeight()));
+
+                                // Larger text is scaled as usual
+        assertTrue(getDrawnBounds(label, 1, surface) != null);
+    }
+
+    protected boolean isDrawn(ZLabel aLabel) {
+        return getDrawnBounds(aLabel, 1, new ZDrawingSurface(new ZCamera(), null)) != null;
+    }
+
+                                // Return the smallest and largest x and y of the pixels the label draws
+                                // at the specified scale, or null if it draws nothing
+    protected int[] getDrawnBounds(ZLabel aLabel, double scale, ZDrawingSurface surface) {
+        BufferedImage image = new BufferedImage(100, 30, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.white);
+        g2.fillRect(0, 0, 100, 30);
+        g2.scale(scale, scale);
+        ZRenderContext rc = new ZRenderContext(g2, new ZBounds(0, 0, 100 / scale, 30 / scale), surface, ZDrawingSurface.RENDER_QUALITY_HIGH);
+        aLabel.render(rc);
+        g2.dispose();
+        int[] drawn = null;
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 30; y++) {
+                if (image.getRGB(x, y) != Color.white.getRGB()) {
+                    if (drawn == null) {
+                        drawn = new int[] {x, y, x, y};
+                    }
+                    drawn[2] = Math.max(drawn[2], x);
+                    drawn[3] = Math.max(drawn[3], y);
+                }
+            }
+        }
+        return drawn;
+    }
+
     protected void doCompare(ZLabel a, ZLabel b) {
         assertEquals(a.getText(), b.getText());
         assertEquals(a.getTranslation(), b.getTranslation());
@@ -5,8 +5,15 @@
 package edu.umd.cs.jazztest.componenttest;
 
 import java.io.*;
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
 import junit.framework.*;
+import edu.umd.cs.jazz.*;
 import edu.umd.cs.jazz.component.ZText;
+import edu.umd.cs.jazz.util.*;
 import edu.umd.cs.jazztest.iotest.*;
 
 /**
@@ -41,6 +48,105 @@ public class ZTextTest extends TestCase {
         assertTrue(text.getTranslateY() == 2);
     }
 
+    public void testBounds() {
+        text.setText("Hello\nWide World");
+        assertEquals(measureWidth(text.getFont(), "Wide World"), text.getBoundsReference().getWidth(), 0.001);
+
+                                // Edits lay the text out again
+        text.setCaretLine(0);
+        text.setCaretPos(5);
+        text.addChar('!');
+        text.addChar(' ');
+        text.addChar('A');
+        text.addChar(' ');
+        text.addChar('m');
+        text.addChar('u');
+        text.addChar('c');
+        text.addChar('h');
+        text.addChar(' ');
+        text.addChar('w');
+        text.addChar('i');
+        text.addChar('d');
+        text.addChar('e');
+        text.addChar('r');
+        assertEquals("Hello! A much wider\nWide World", text.getText());
+        assertEquals(measureWidth(text.getFont(), "Hello! A much wider"), text.getBoundsReference().getWidth(), 0.001);
+
+        text.setFont(new Font("Serif", Font.PLAIN, 30));
+        assertEquals(measureWidth(text.getFont(), "Hello! A much wider"), text.getBoundsReference().getWidth(), 0.001);
+    }
+
+    public void testEditRepaintsLine() {
+        final Vector repaints = new Vector();
+        new ZVisualLeaf(text) {
+            public void repaint(ZBounds repaintBounds) {
+                repaints.addElement(repaintBounds.clone());
+                super.repaint(repaintBounds);
+            }
+        };
+        text.setText("A wide first line of text\nshort\nthird");
+        text.setCaretLine(1);
+        text.setCaretPos(5);
+        ZBounds textBounds = text.getBounds();
+
+                                // Only the edited line is repainted while the bounds stay the same
+        repaints.removeAllElements();
+        text.addChar('!');
+        assertEquals(textBounds, text.getBoundsReference());
+        assertEquals(1, repaints.size());
+        ZBounds damage = (ZBounds)repaints.elementAt(0);
+        assertTrue(damage.getMinY() > textBounds.getMinY());
+        assertTrue(damage.getMaxY() < textBounds.getMaxY());
+
+                                // Moving the caret and deleting repaint the line too
+        repaints.removeAllElements();
+        text.deleteCharBeforeCaret();
+        assertEquals("A wide first line of text\nshort\nthird", text.getText());
+        for (int i = 0; i < repaints.size(); i++) {
+            assertEquals(damage, repaints.elementAt(i));
+        }
+
+                                // Growing the text repaints all of it
+        for (int i = 0; i < 40; i++) {
+            text.addChar('x');
+        }
+        assertTrue(text.getBoundsReference().getWidth() > textBounds.getWidth());
+        assertEquals(measureWidth(text.getFont(), "shortxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx"), text.getBoundsReference().getWidth(), 0.001);
+        ZBounds lastDamage = (ZBounds)repaints.lastElement();
+        assertEquals(text.getBoundsReference().getHeight(), lastDamage.getHeight(), 0.001);
+    }
+
+    public void testSetCaretPosFromPoint() {
+        text.setText("Hello World\nSecond line");
+        text.setEditable(true);
+                                // Render once, so the text knows its font render context
+        BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        text.render(new ZRenderContext(g2, new ZBounds(0, 0, 100, 50), new ZDrawingSurface(new ZCamera(), null), ZDrawingSurface.RENDER_QUALITY_HIGH));
+        g2.dispose();
+
+        Font font = text.getFont();
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        LineMetrics lm = font.getLineMetrics("Second", frc);
+        double x = font.getStringBounds("Second l", frc).getWidth() + 1;
+        double y = lm.getHeight() + lm.getDescent() + 1;
+        text.setCaretPos(new Point2D.Double(x, y));
+        assertEquals(1, text.getCaretLine());
+        assertEquals(8, text.getCaretPos());
+
+        text.setCaretPos(new Point2D.Double(1000, 1));
+        assertEquals(0, text.getCaretLine());
+        assertEquals(11, text.getCaretPos());
+    }
+
+    protected double measureWidth(Font font, String line) {
+        double low = font.getStringBounds(line, new FontRenderContext(null, false, false)).getWidth();
+        double high = font.getStringBounds(line, new FontRenderContext(null, true, true)).getWidth();
+        return Math.max(low, high);
+    }
+
     public void testDuplicate() {
         doCompare((ZText)text.clone(), text);
     }
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2000-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest.componenttest;
+
+import java.io.*;
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import javax.imageio.*;
+import javax.swing.*;
+import junit.framework.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.util.*;
+import edu.umd.cs.jazztest.iotest.*;
+
+/**
+ * Unit test for ZTiledImage.
+ */
+public class ZTiledImageTest extends TestCase {
+    protected File file;
+    protected ZTiledImage image;
+
+    public ZTiledImageTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws IOException {
+                                // An image with a red, green, blue and white quarter
+        BufferedImage source = new BufferedImage(1000, 700, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = source.createGraphics();
+        g2.setColor(Color.red);
+        g2.fillRect(0, 0, 500, 350);
+        g2.setColor(Color.green);
+        g2.fillRect(500, 0, 500, 350);
+        g2.setColor(Color.blue);
+        g2.fillRect(0, 350, 500, 350);
+        g2.setColor(Color.white);
+        g2.fillRect(500, 350, 500, 350);
+        g2.dispose();
+
+        file = File.createTempFile("ZTiledImageTest", ".png");
+        ImageIO.write(source, "png", file);
+        image = new ZTiledImage(file.getPath());
+    }
+
+    public void tearDown() {
+        image.flush();
+        file.delete();
+    }
+
+    public void testLevels() {
+        assertTrue(image.isLoaded());
+        assertEquals(1000, image.getWidth());
+        assertEquals(700, image.getHeight());
+        assertEquals(new ZBounds(0, 0, 1000, 700), image.getBounds());
+
+                                // 1000, 500 and 250 pixels across
+        assertEquals(3, image.getNumLevels());
+        assertEquals(0, image.getLevel(2));
+        assertEquals(0, image.getLevel(1));
+        assertEquals(0, image.getLevel(0.6));
+        assertEquals(1, image.getLevel(0.5));
+        assertEquals(2, image.getLevel(0.25));
+        assertEquals(2, image.getLevel(0.01));
+    }
+
+    public void testRenderZoomedOut() {
+        int numTiles = ZTiledImage.getNumCachedTiles();
+        BufferedImage result = render(0.1, 100, 70);
+
+                                // The top level fits in one tile
+        assertEquals(numTiles + 1, ZTiledImage.getNumCachedTiles());
+        assertEquals(Color.red.getRGB(), result.getRGB(10, 10));
+        assertEquals(Color.green.getRGB(), result.getRGB(90, 10));
+        assertEquals(Color.blue.getRGB(), result.getRGB(10, 60));
+        assertEquals(Color.white.getRGB(), result.getRGB(90, 60));
+
+                                // Rendering again draws the cached tile
+        render(0.1, 100, 70);
+        assertEquals(numTiles + 1, ZTiledImage.getNumCachedTiles());
+    }
+
+    public void testRenderZoomedIn() {
+        int numTiles = ZTiledImage.getNumCachedTiles();
+        BufferedImage result = render(1, 300, 300);
+
+                                // Only the full resolution tiles in view are decoded
+        assertEquals(numTiles + 4, ZTiledImage.getNumCachedTiles());
+        assertEquals(Color.red.getRGB(), result.getRGB(10, 10));
+        assertEquals(Color.red.getRGB(), result.getRGB(299, 299));
+
+        image.flush();
+        assertEquals(numTiles, ZTiledImage.getNumCachedTiles());
+    }
+
+    public void testRenderUnclipped() {
+        int numTiles = ZTiledImage.getNumCachedTiles();
+        BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = result.createGraphics();
+        g2.setClip(null);
+        ZRenderContext rc = new ZRenderContext(g2, new ZBounds(0, 0, 300, 300), new ZDrawingSurface(new ZCamera(), null), ZDrawingSurface.RENDER_QUALITY_LOW);
+        image.render(rc);
+        g2.dispose();
+
+                                // Without a clip, only the tiles on the device are decoded
+        assertEquals(numTiles + 4, ZTiledImage.getNumCachedTiles());
+        assertEquals(Color.red.getRGB(), result.getRGB(299, 299));
+    }
+
+    public void testSnapshots() {
+        ZCamera camera = new ZCamera();
+        ZLayerGroup layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 300, 300);
+        layer.addChild(new ZVisualLeaf(image));
+        ZDrawingSurface surface = new ZDrawingSurface(camera, cameraNode, new JPanel());
+
+        replay(ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 300, 300), ZDrawingSurface.RENDER_QUALITY_LOW, true));
+        int numTiles = ZTiledImage.getNumCachedTiles();
+        int numOpen = ZTiledImage.getNumOpenImages();
+
+                                // The copies in later snapshots share the file and the tiles
+        BufferedImage result = replay(ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 300, 300), ZDrawingSurface.RENDER_QUALITY_LOW, true));
+        assertEquals(numTiles, ZTiledImage.getNumCachedTiles());
+        assertEquals(numOpen, ZTiledImage.getNumOpenImages());
+        assertEquals(Color.red.getRGB(), result.getRGB(10, 10));
+    }
+
+    public void testMemoryBudget() {
+        long budget = ZTiledImage.getTileMemoryBudget();
+        try {
+            ZTiledImage.setTileMemoryBudget(2 * 256 * 256 * 4);
+            render(1, 1000, 700);
+            assertTrue(ZTiledImage.getTileMemoryUsed() <= 2 * 256 * 256 * 4);
+            assertTrue(ZTiledImage.getNumCachedTiles() <= 2);
+        } finally {
+            ZTiledImage.setTileMemoryBudget(budget);
+        }
+    }
+
+    public void testDuplicate() {
+        ZTiledImage i = (ZTiledImage) image.clone();
+        doCompare(i, image);
+        assertEquals(Color.red.getRGB(), render(i, 0.1, 100, 70).getRGB(10, 10));
+        i.flush();
+    }
+
+    public void testSerialize() {
+        try {
+            ZTiledImage result = (ZTiledImage) FileSavingSimulator.doSerialize(image);
+            doCompare(result, image);
+            result.flush();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+    }
+
+    public void testZSerialize() {
+        try {
+            ZTiledImage result = (ZTiledImage) FileSavingSimulator.doZSerialize(image);
+            doCompare(result, image);
+            result.flush();
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), false);
+        }
+    }
+
+    protected void doCompare(ZTiledImage a, ZTiledImage b) {
+        assertEquals(a.getBounds(), b.getBounds());
+        assertEquals(a.getUrl(), b.getUrl());
+        assertEquals(a.getNumLevels(), b.getNumLevels());
+    }
+
+    protected BufferedImage render(double scale, int width, int height) {
+        return render(image, scale, width, height);
+    }
+
+                                // Replay a display list into an image
+    protected BufferedImage replay(ZDisplayList displayList) {
+        BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = result.createGraphics();
+        g2.setClip(0, 0, 300, 300);
+        ZRenderContext rc = new ZRenderContext(g2, new ZBounds(0, 0, 300, 300), new ZDrawingSurface(new ZCamera(), null), ZDrawingSurface.RENDER_QUALITY_LOW);
+        displayList.render(rc);
+        g2.dispose();
+        return result;
+    }
+
+                                // Render the image at the specified scale into an image
+                                // of the specified size
+    protected BufferedImage render(ZTiledImage aImage, double scale, int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = result.createGraphics();
+        g2.setClip(0, 0, width, height);
+        g2.scale(scale, scale);
+        ZRenderContext rc = new ZRenderContext(g2, new ZBounds(0, 0, width / scale, height / scale), new ZDrawingSurface(new ZCamera(), null), ZDrawingSurface.RENDER_QUALITY_LOW);
+        aImage.render(rc);
+        g2.dispose();
+        return result;
+    }
+}
\ No newline at end of file
@@ -12,8 +12,10 @@ import junit.framework.*;
 import edu.umd.cs.jazz.component.ZText;
 import edu.umd.cs.jazz.event.*;
 import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.animation.*;
 import java.awt.*;
 import java.awt.event.*;
+import javax.swing.SwingUtilities;
 
 /**
  * Unit test for ZEventsTest
@@ -136,4 +138,82 @@ public class ZEventsTest extends TestCase {
         canvasSimulator.simulateEvent(MouseEvent.MOUSE_PRESSED, 10, 10);
         assertEquals(rect.getPenPaint(), Color.red);
     }
+
+    public void testMarqueeSelection() {
+        Random random = new Random(5);
+        ZLayerGroup layer = canvasSimulator.getLayer();
+        ArrayList leaves = new ArrayList();
+        for (int i = 0; i < 300; i++) {
+            ZVisualLeaf leaf = new ZVisualLeaf(new ZRectangle(random.nextInt(400), random.nextInt(400), 1 + random.nextInt(10), 1 + random.nextInt(10)));
+            layer.addChild(leaf);
+            leaves.add(leaf);
+        }
+        canvasSimulator.setNavEventHandlersActive(false);
+        ZSelectionEventHandler handler = new ZSelectionEventHandler(canvasSimulator.getCameraNode(), canvasSimulator, layer);
+        handler.setActive(true);
+
+        doMarqueeSelection(layer, leaves, random);
+        layer.setSpatialIndexed(true);
+        doMarqueeSelection(layer, leaves, random);
+    }
+
+    public void testContinuousZoom() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                ZAnimationScheduler scheduler = ZAnimationScheduler.instance();
+                ZCamera camera = canvasSimulator.getCamera();
+                                // Frames are animated at times set by this test, from the
+                                // scheduler's time when zooming starts, whatever it was before
+                scheduler.processAnimations(ZAnimationScheduler.currentTimeMillis());
+                canvasSimulator.simulateEvent(MouseEvent.MOUSE_PRESSED, 200, 200, MouseEvent.BUTTON3_MASK);
+                canvasSimulator.simulateEvent(MouseEvent.MOUSE_DRAGGED, 300, 200, MouseEvent.BUTTON3_MASK);
+                long time = scheduler.getCurrentTime();
+
+                                // The zoom depends on the time between frames, not on the number of frames
+                scheduler.processAnimations(time + 100);
+                double mag0 = camera.getMagnification();
+                scheduler.processAnimations(time + 150);
+                scheduler.processAnimations(time + 200);
+                double mag1 = camera.getMagnification();
+                scheduler.processAnimations(time + 300);
+                double mag2 = camera.getMagnification();
+                assertTrue(mag1 > mag0);
+                assertEquals(mag1 / mag0, mag2 / mag1, 0.000001);
+
+                                // Zooming stops when the mouse is released
+                canvasSimulator.simulateEvent(MouseEvent.MOUSE_RELEASED, 300, 200, MouseEvent.BUTTON3_MASK);
+                scheduler.processAnimations(time + 400);
+                assertEquals(mag2, camera.getMagnification(), 0.000001);
+            }
+        });
+    }
+
+    protected void doMarqueeSelection(ZLayerGroup layer, ArrayList leaves, Random random) {
+        ZCamera camera = canvasSimulator.getCamera();
+        canvasSimulator.simulateEvent(MouseEvent.MOUSE_PRESSED, 200, 200, MouseEvent.BUTTON1_MASK);
+        for (int i = 0; i < 30; i++) {
+            canvasSimulator.simulateEvent(MouseEvent.MOUSE_DRAGGED, random.nextInt(400), random.nextInt(400), MouseEvent.BUTTON1_MASK);
+
+            ZNode marquee = null;
+            for (int j = 0; j < layer.getNumChildren(); j++) {
+                if (!layer.getChild(j).isFindable()) {
+                    marquee = layer.getChild(j);
+                }
+            }
+            ZBounds marqueeBounds = marquee.getGlobalBounds();
+            ArrayList selection = ZSelectionManager.getSelectedNodes(camera);
+            int numSelected = 0;
+            for (int j = 0; j < leaves.size(); j++) {
+                ZNode leaf = (ZNode) leaves.get(j);
+                boolean overlaps = leaf.getGlobalBounds().intersects(marqueeBounds);
+                assertEquals(overlaps, selection.contains(leaf));
+                if (overlaps) {
+                    numSelected++;
+                }
+            }
+            assertEquals(numSelected, selection.size());
+        }
+        canvasSimulator.simulateEvent(MouseEvent.MOUSE_RELEASED, 0, 0, MouseEvent.BUTTON1_MASK);
+        ZSelectionManager.unselectAll(camera);
+    }
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ public class RunAllPackageUnitTests {
         suite.addTest(new TestSuite(ZNullListTest.class));
         suite.addTest(new TestSuite(ZCanvasTest.class));
         suite.addTest(new TestSuite(ZPriorityQueueTest.class));
+        suite.addTest(new TestSuite(ZDisplayListTest.class));
+        suite.addTest(new TestSuite(ZDirtyRegionManagerTest.class));
         return suite;
     }
 }
\ No newline at end of file
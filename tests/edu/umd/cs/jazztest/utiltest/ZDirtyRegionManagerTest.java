@@ -0,0 +1,91 @@
+/**
+ * Copyright 2001-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest.utiltest;
+
+import java.awt.*;
+import java.util.*;
+import edu.umd.cs.jazz.util.*;
+import junit.framework.*;
+
+/**
+ * Unit test for ZDirtyRegionManager
+ */
+public class ZDirtyRegionManagerTest extends TestCase {
+
+    public ZDirtyRegionManagerTest(String name) {
+        super(name);
+    }
+
+    public void testAdd() {
+        ZDirtyRegionManager manager = new ZDirtyRegionManager();
+        assertTrue(manager.isEmpty());
+        assertTrue(manager.add(new Rectangle(0, 0, 10, 10)));
+        assertTrue(!manager.add(new Rectangle(500, 500, 10, 10)));
+        assertTrue(!manager.add(new Rectangle(0, 0, 0, 10)));
+        assertTrue(!manager.isEmpty());
+
+                                // Far apart regions are painted separately
+        Rectangle[] regions = manager.flush();
+        assertEquals(2, regions.length);
+        assertTrue(manager.isEmpty());
+        assertEquals(0, manager.flush().length);
+        assertTrue(manager.add(new Rectangle(0, 0, 10, 10)));
+    }
+
+    public void testMerge() {
+        ZDirtyRegionManager manager = new ZDirtyRegionManager();
+
+                                // Contained and overlapping regions are merged
+        manager.add(new Rectangle(0, 0, 100, 100));
+        manager.add(new Rectangle(10, 10, 10, 10));
+        manager.add(new Rectangle(90, 0, 100, 100));
+        Rectangle[] regions = manager.flush();
+        assertEquals(1, regions.length);
+        assertEquals(new Rectangle(0, 0, 190, 100), regions[0]);
+
+                                // Nearby regions are merged because painting the gap costs little
+        manager.add(new Rectangle(0, 0, 10, 10));
+        manager.add(new Rectangle(12, 0, 10, 10));
+        regions = manager.flush();
+        assertEquals(1, regions.length);
+        assertEquals(new Rectangle(0, 0, 22, 10), regions[0]);
+
+                                // A merge that makes the union overlap another region merges that too
+        manager.add(new Rectangle(0, 0, 100, 10));
+        manager.add(new Rectangle(0, 200, 100, 10));
+        manager.add(new Rectangle(0, 0, 10, 210));
+        regions = manager.flush();
+        assertEquals(1, regions.length);
+        assertEquals(new Rectangle(0, 0, 100, 210), regions[0]);
+    }
+
+    public void testBounded() {
+        ZDirtyRegionManager manager = new ZDirtyRegionManager(4, 0);
+        Random random = new Random(0);
+        ArrayList added = new ArrayList();
+        for (int i = 0; i < 1000; i++) {
+            Rectangle rect = new Rectangle(random.nextInt(2000), random.nextInt(2000), 1 + random.nextInt(20), 1 + random.nextInt(20));
+            manager.add(rect);
+            added.add(rect);
+        }
+        Rectangle[] regions = manager.flush();
+        assertTrue(regions.length <= 4);
+
+                                // The regions are disjoint, and cover everything that was added
+        for (int i = 0; i < regions.length; i++) {
+            for (int j = i + 1; j < regions.length; j++) {
+                assertTrue(!regions[i].intersects(regions[j]));
+            }
+        }
+        for (int i = 0; i < added.size(); i++) {
+            Rectangle rect = (Rectangle)added.get(i);
+            boolean covered = false;
+            for (int j = 0; j < regions.length; j++) {
+                covered = covered || regions[j].contains(rect);
+            }
+            assertTrue(covered);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2001-@year@ by University of Maryland, College Park, MD 20742, USA
+ * All rights reserved.
+ */
+package edu.umd.cs.jazztest.utiltest;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+import javax.swing.*;
+
+import junit.framework.*;
+
+import edu.umd.cs.jazz.component.*;
+import edu.umd.cs.jazz.*;
+import edu.umd.cs.jazz.util.*;
+
+/**
+ * Unit test for ZDisplayList
+ */
+public class ZDisplayListTest extends TestCase {
+    protected ZLayerGroup layer = null;
+    protected ZCamera camera = null;
+    protected ZDrawingSurface surface = null;
+    protected ArrayList rects = null;
+
+    public ZDisplayListTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        Random random = new Random(1);
+        camera = new ZCamera();
+        layer = new ZLayerGroup();
+        camera.addLayer(layer);
+        ZVisualLeaf cameraNode = new ZVisualLeaf(camera);
+        ZRoot root = new ZRoot();
+        root.addChild(layer);
+        root.addChild(cameraNode);
+        camera.setBounds(0, 0, 200, 200);
+        camera.setFillColor(Color.white);
+
+        rects = new ArrayList();
+        for (int i = 0; i < 50; i++) {
+            ZRectangle rect = new ZRectangle(random.nextInt(200), random.nextInt(200), 5 + random.nextInt(40), 5 + random.nextInt(40));
+            rect.setFillPaint(new Color(random.nextInt(0xffffff)));
+            layer.addChild(new ZVisualLeaf(rect));
+            rects.add(rect);
+        }
+        ZVisualLeaf clipped = new ZVisualLeaf(new ZRectangle(50, 50, 100, 100));
+        ZClipGroup clip = new ZClipGroup();
+        clip.setClip(new ZRectangle(60, 60, 40, 40));
+        clip.addChild(clipped);
+        layer.addChild(clip);
+
+        surface = new ZDrawingSurface(camera, cameraNode, new JPanel());
+    }
+
+    public void testCompile() {
+        ZDisplayList displayList = ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH);
+                                // The camera fill, the leaves, and the clip
+        assertEquals(1 + rects.size() + 2, displayList.size());
+        assertEquals(rects.get(0), displayList.getVisualComponent(1));
+        assertEquals(new Rectangle2D.Double(0, 0, 200, 200), displayList.getBounds());
+
+                                // Records outside the compiled bounds are left out
+        displayList = ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 50, 50), ZDrawingSurface.RENDER_QUALITY_HIGH);
+        for (int i = 0; i < displayList.size(); i++) {
+            assertTrue(displayList.getBounds(i).intersects(0, 0, 50, 50));
+        }
+    }
+
+    public void testRender() {
+        ZDisplayList displayList = ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH);
+        assertTrue(Arrays.equals(doRenderDirect(), doReplay(displayList)));
+
+                                // Component changes show when the list is replayed
+        ((ZRectangle) rects.get(0)).setFillPaint(Color.black);
+        assertTrue(Arrays.equals(doRenderDirect(), doReplay(displayList)));
+
+                                // Structural changes only show once it is compiled again
+        layer.removeChild(layer.getChild(layer.getNumChildren() - 1));
+        assertTrue(!Arrays.equals(doRenderDirect(), doReplay(displayList)));
+        displayList = ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH);
+        assertTrue(Arrays.equals(doRenderDirect(), doReplay(displayList)));
+    }
+
+    public void testSnapshot() {
+        int[] expected = doRenderDirect();
+        ZDisplayList snapshot = ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH, true);
+        assertTrue(snapshot.isSnapshot());
+        assertTrue(snapshot.getVisualComponent(1) != rects.get(0));
+
+                                // Changes to the model do not show in a snapshot
+        for (int i = 0; i < rects.size(); i++) {
+            ((ZRectangle) rects.get(i)).setFillPaint(Color.black);
+        }
+        layer.removeChild(layer.getChild(layer.getNumChildren() - 1));
+        assertTrue(Arrays.equals(expected, doReplay(snapshot)));
+    }
+
+    public void testCompileKeepsRenderContext() {
+                                // A compile must not wipe the render context of a
+                                // pick that is in progress on another thread
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(0, 0, 200, 200), surface, ZDrawingSurface.RENDER_QUALITY_HIGH);
+        ZRoot root = camera.getRoot();
+        root.setCurrentRenderContext(rc);
+        ZDisplayList.compile(surface, new Rectangle2D.Double(0, 0, 200, 200), ZDrawingSurface.RENDER_QUALITY_HIGH, true);
+        assertSame(rc, root.getCurrentRenderContext());
+        root.setCurrentRenderContext(null);
+        g2.dispose();
+    }
+
+    protected int[] doReplay(ZDisplayList displayList) {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(0, 0, 200, 200), surface, ZDrawingSurface.RENDER_QUALITY_HIGH);
+        displayList.render(rc);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+
+    protected int[] doRenderDirect() {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setClip(0, 0, 200, 200);
+        ZRenderContext rc = camera.createRenderContext(g2, new ZBounds(0, 0, 200, 200), surface, ZDrawingSurface.RENDER_QUALITY_HIGH);
+        camera.getRoot().setCurrentRenderContext(rc);
+        camera.render(rc);
+        camera.getRoot().setCurrentRenderContext(null);
+        g2.dispose();
+        return image.getRGB(0, 0, 200, 200, null, 0, 200);
+    }
+}
\ No newline at end of file